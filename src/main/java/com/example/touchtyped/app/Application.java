@@ -2,16 +2,23 @@ package com.example.touchtyped.app;
 
 import com.example.touchtyped.controller.LearnViewController;
 import com.example.touchtyped.controller.PlayerNameDialog;
+import com.example.touchtyped.firestore.FirestoreClient;
+import com.example.touchtyped.firestore.Storage;
 import com.example.touchtyped.interfaces.ComputerVisionInterface;
 import com.example.touchtyped.interfaces.KeyboardInterface;
+import com.example.touchtyped.interfaces.KeyboardLayout;
+import com.example.touchtyped.interfaces.KeyboardPortWatcher;
 import com.example.touchtyped.model.ExampleKeypressListener;
 import com.example.touchtyped.model.TypingPlan;
 import com.example.touchtyped.model.TypingPlanManager;
 import com.example.touchtyped.model.PlayerRanking;
 import com.example.touchtyped.model.UserProfile;
 import com.example.touchtyped.service.AppSettingsService;
+import com.example.touchtyped.service.CorpusService;
 import com.example.touchtyped.service.GlobalRankingService;
 import com.example.touchtyped.service.RankingService;
+import com.example.touchtyped.service.ResultOutbox;
+import com.example.touchtyped.service.SoundService;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -26,13 +33,23 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class Application extends javafx.application.Application {
-    public static SerialPort ioPort;
-    public static boolean keyboardConnected;
+    public static volatile SerialPort ioPort;
+    public static volatile boolean keyboardConnected;
     public static KeyboardInterface keyboardInterface;
+    private static KeyboardPortWatcher portWatcher;
 
     @Override
     public void start(Stage stage) throws IOException {
+        // before anything reads an account: Firestore, or the local store for offline labs
+        FirestoreClient.setCredentialsPath(AppSettingsService.getInstance().getFirestoreCredentials());
+        Storage.configure(AppSettingsService.getInstance().getStorage());
         initKeyboard();
+        // read the practice texts in the background, before anyone starts a game
+        CorpusService.getInstance().preload();
+        // decode the sound effects in the background, so the first one plays without a delay
+        SoundService.getInstance().preload();
+        // upload any results saved while offline
+        ResultOutbox.getInstance().start();
 
         // Load custom fonts
         Font customFont = Font.loadFont(
@@ -110,10 +127,12 @@ public class Application extends javafx.application.Application {
             manager.saveTypingPlan();
             System.out.println("SAVING TYPING PLAN");
 
-            ioPort.closePort();
-            System.out.println(ioPort.isOpen());
-            if (keyboardConnected) {
-                keyboardInterface.stopHaptic();
+            // stop the motors before the port closes, so the stop command is actually written
+            if (keyboardInterface != null) {
+                keyboardInterface.close();
+            }
+            if (portWatcher != null) {
+                portWatcher.close();
             }
         }));
 
@@ -154,19 +173,17 @@ public class Application extends javafx.application.Application {
     }
     private void initKeyboard(){
         keyboardConnected = false;
-        try {
-            ioPort = SerialPort.getCommPort("/dev/ttyACM0");
-            if (ioPort.openPort()) {
-                System.out.println("port opened successfully");
-                keyboardConnected = true;
-                ioPort.setComPortParameters(9600, 8, 1, SerialPort.NO_PARITY);
-                ioPort.setComPortTimeouts(SerialPort.TIMEOUT_SCANNER, 0, 0);
-            } else {
-                System.out.println("unable to open port");
-            }
-        } catch (Exception e) {
-            System.out.println("no keyboard connected");
-        }
-        keyboardInterface = new KeyboardInterface(ioPort);
+        AppSettingsService settings = AppSettingsService.getInstance();
+        keyboardInterface = new KeyboardInterface(KeyboardLayout.load(settings.getKeyboardLayout()));
+        keyboardInterface.setHardwareInput(settings.isHardwareInput());
+
+        // look for the keyboard in the background, so the first scene doesn't wait on serial I/O,
+        // and keep looking so it is reconnected if its cable is reseated
+        portWatcher = new KeyboardPortWatcher(keyboardInterface,
+                KeyboardPortWatcher.parseUsbIds(settings.getKeyboardUsbIds()), port -> {
+                    ioPort = port;
+                    keyboardConnected = port != null;
+                });
+        portWatcher.start();
     }
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.example.touchtyped.controller;
 import com.example.touchtyped.constants.StyleConstants;
 import com.example.touchtyped.firestore.Classroom;
 import com.example.touchtyped.firestore.ClassroomDAO;
+import com.example.touchtyped.firestore.FirestoreCache;
+import com.example.touchtyped.firestore.SessionSummary;
 import com.example.touchtyped.firestore.UserAccount;
 import com.example.touchtyped.firestore.UserDAO;
 import com.example.touchtyped.model.*;
@@ -36,6 +38,7 @@ import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -221,6 +224,16 @@ public class ClassroomViewController {
      */
     private Task<RESTResponseWrapper> currentPDFTask = null;
 
+    /**
+     * used to check if a typing test's key logs still need to be displayed, or the user has clicked on a different one.
+     */
+    private Task<KeyLogsStructure> currentSessionTask = null;
+
+    /**
+     * how many of a student's typing tests are listed at once. "Show more" lists the next page.
+     */
+    private static final int SESSIONS_PER_PAGE = 20;
+
     /**
      * if the user has logged in before, and there account information is stored in the cache, load this information
      * otherwise, display "Student" or "Teacher" buttons to allow them to join or create a class.
@@ -390,7 +403,8 @@ public class ClassroomViewController {
         Task<Void> task = new Task<>() {
             @Override
             protected Void call() {
-                List<String> students = classroom.getStudentUsernames();
+                // a copy: the classroom is shared with FirestoreCache
+                List<String> students = new ArrayList<>(classroom.getStudentUsernames());
                 students.sort(String.CASE_INSENSITIVE_ORDER);
                 Platform.runLater(() -> {
                     studentListDescriptor.setFont(secondary_font);
@@ -538,50 +552,33 @@ public class ClassroomViewController {
     }
 
     private void performUsernameChange(String newUsername) {
-        // get the user
+        String oldUsername = selectedStudentUsername;
         Task<Void> task = new Task<>() {
             @Override
             protected Void call() {
                 try {
+                    // the account, its typing tests and the classroom's student list all change in one commit
+                    boolean renamed = ClassroomDAO.renameStudent(ourClassroomID, oldUsername, newUsername).get();
+                    if (!renamed) {
+                        showWarning("* Username '"+newUsername+"' is already taken or the student no longer exists.");
+                        return null;
+                    }
+                    System.out.println("Renamed user and replaced students list in classroom.");
 
-                    UserAccount user = UserDAO.getAccount(ourClassroomID, selectedStudentUsername);
-                    Classroom classroom = ClassroomDAO.getClassroom(ourClassroomID);
                     Platform.runLater(() -> {
-                        String userID = user.getUserID();
-
-                        try {
-                            // delete user from db, change UserAccount username, then save user.
-                            UserDAO.deleteUser(ourClassroomID, selectedStudentUsername);
-                            System.out.println("Deleted user from database.");
-                            user.setUsername(newUsername);
-                            UserDAO.addUserAccount(ourClassroomID, user);
-                            System.out.println("Added user with new username to database.");
-
-                            // update classroom's student list
-                            List<String> students = classroom.getStudentUsernames();
-                            int index = students.indexOf(selectedStudentUsername);
-                            students.set(index, newUsername);
-                            ClassroomDAO.replaceStudentList(ourClassroomID, students);
-                            System.out.println("Replaced students list in classroom.");
-
-                            // update UI
-                            selectedStudentLabel.setText(newUsername);
-                            showSuccess("* Successfully updated '"+selectedStudentUsername+"' to '"+newUsername+"'.");
-                            selectedStudentUsername = newUsername;
-                            accountTitle.setText("Account Details of "+selectedStudentUsername);
-                            accountUsername.setText("Student's Username: "+selectedStudentUsername);
-
-                            // empty accountChangeUsernameInput
-                            accountChangeUsernameInput.setText("");
-
-                        } catch (Exception e) {
-                            System.out.println("DATABASE FAILURE: Failed to update user or classroom student list.");
-                        }
-
+                        // update UI
+                        selectedStudentLabel.setText(newUsername);
+                        showSuccess("* Successfully updated '"+oldUsername+"' to '"+newUsername+"'.");
+                        selectedStudentUsername = newUsername;
+                        accountTitle.setText("Account Details of "+selectedStudentUsername);
+                        accountUsername.setText("Student's Username: "+selectedStudentUsername);
+
+                        // empty accountChangeUsernameInput
+                        accountChangeUsernameInput.setText("");
                     });
 
                 } catch (Exception e) {
-                    System.out.println("DATABASE FAILURE: Failed to get user or classroom.");
+                    System.out.println("DATABASE FAILURE: Failed to update user or classroom student list.");
                 }
                 return null;
             }
@@ -590,7 +587,8 @@ public class ClassroomViewController {
     }
 
     /**
-     * used to display a warning message in the errorLabel in the Accounts view.
+     * used to display a warning message in the errorLabel in the Accounts view. can be called from any thread, as
+     * background tasks do.
      * @param message is the message to display
      */
     private void showWarning(String message) {
@@ -630,12 +628,9 @@ public class ClassroomViewController {
             @Override
             protected Void call() {
                 try {
-                    UserDAO.deleteUser(ourClassroomID, selectedStudentUsername);
-                    System.out.println("Deleted user "+selectedStudentUsername);
+                    ClassroomDAO.removeStudent(ourClassroomID, selectedStudentUsername).get();
+                    System.out.println("Deleted user "+selectedStudentUsername+" and removed them from the classroom.");
                     List<String> studentsList = ClassroomDAO.getClassroom(ourClassroomID).getStudentUsernames();
-                    studentsList.remove(selectedStudentUsername);
-                    ClassroomDAO.replaceStudentList(ourClassroomID, studentsList);
-                    System.out.println("Updated students list in classroom to remove student.");
 
                     Platform.runLater(() -> {
                         studentListContainer.getChildren().remove(selectedStudentLabel);
@@ -692,66 +687,125 @@ public class ClassroomViewController {
         logContainer.getChildren().clear();
         keyLogDescriptor.setText("");
         studentKeyLogsDescriptor.setText("User's Typing Tests (LOADING...)");
-        Task<Void> task = new Task<>() {
-            protected Void call() {
-                Platform.runLater(() -> {
-                    try {
-                        UserAccount user = UserDAO.getAccount(classroomID, username);
-                        List<KeyLogsStructure> logs = user.getKeyLogs();
-                        if (logs != null && logs.size() > 0) {
-                            for (KeyLogsStructure log : logs) {
-                                long time = log.getTimeCreated();
-                                String formattedTime = Instant.ofEpochMilli(time)
-                                        .atZone(ZoneId.systemDefault())
-                                        .format(DateTimeFormatter.ofPattern("dd/MM '('EEE')' 'at' HH:mm"));
-                                Label logLabel = new Label(formattedTime);
-                                logLabel.setFont(secondary_font);
-                                logLabel.getStyleClass().add("log");
-                                logLabel.setPrefWidth((logs.size() > 10) ? 225 : 242);
-
-                                logLabel.setOnMouseClicked(e -> {
-
-                                    // cancel previous task
-                                    if (currentPDFTask != null && !currentPDFTask.isDone()) {
-                                        currentPDFTask.cancel();
-                                        System.out.println("Canceled previous PDF task.");
-                                    }
-
-                                    // clear previous selection
-                                    if (selectedKeyLogLabel != null) {
-                                        selectedKeyLogLabel.getStyleClass().remove("log-selected");
-                                    }
-
-                                    logLabel.getStyleClass().add("log-selected");
-                                    selectedKeyLogLabel = logLabel;
-
-                                    // load selected key log
-                                    loadKeyLog(log, username);
-                                });
+        Task<List<SessionSummary>> task = new Task<>() {
+            protected List<SessionSummary> call() {
+                // only the summaries: a test's key logs are loaded when it is selected
+                return UserDAO.getSessionSummaries(classroomID, username);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (!username.equals(selectedStudentUsername)) {
+                // a different student was selected while these loaded
+                return;
+            }
+            List<SessionSummary> summaries = task.getValue();
+            if (summaries == null) {
+                System.out.println("DATABASE FAILURE. Failed to load student's key logs.");
+                return;
+            }
+            if (!summaries.isEmpty()) {
+                showSessionPage(summaries, 0, classroomID, username);
+            } else {
+                // student has no logged typing tests results
+                Label logLabel = new Label("None");
+                logLabel.setFont(secondary_font);
+                logLabel.setStyle("-fx-font-size: 16px;");
+                logLabel.setTextFill(Color.rgb(97,97,97));
+                logLabel.setTextAlignment(TextAlignment.CENTER);
+                logLabel.setAlignment(Pos.CENTER);
+                logLabel.setPrefWidth(242);
+                studentKeyLogsContainer.getChildren().add(logLabel);
+            }
 
-                                studentKeyLogsContainer.getChildren().add(logLabel);
-                            }
-                        } else {
-                            // student has no logged typing tests results
-                            Label logLabel = new Label("None");
-                            logLabel.setFont(secondary_font);
-                            logLabel.setStyle("-fx-font-size: 16px;");
-                            logLabel.setTextFill(Color.rgb(97,97,97));
-                            logLabel.setTextAlignment(TextAlignment.CENTER);
-                            logLabel.setAlignment(Pos.CENTER);
-                            logLabel.setPrefWidth((logs.size() > 10) ? 225 : 242);
-                            studentKeyLogsContainer.getChildren().add(logLabel);
-                        }
+            studentKeyLogsDescriptor.setText("User's Typing Tests");
+        });
+        new Thread(task).start();
+    }
 
-                        studentKeyLogsDescriptor.setText("User's Typing Tests");
-                    } catch (Exception e) {
-                        System.out.println("DATABASE FAILURE. Failed to load student's key logs.");
-                    }
-                });
-                return null;
+    /**
+     * adds a page of a student's typing tests to the list, followed by "Show more" if there are more.
+     * @param summaries is all the student's typing tests, newest first.
+     * @param from is the index of the first test to add.
+     */
+    private void showSessionPage(List<SessionSummary> summaries, int from, String classroomID, String username) {
+        int to = Math.min(summaries.size(), from + SESSIONS_PER_PAGE);
+        for (SessionSummary summary : summaries.subList(from, to)) {
+            String formattedTime = Instant.ofEpochMilli(summary.getTimeCreated())
+                    .atZone(ZoneId.systemDefault())
+                    .format(DateTimeFormatter.ofPattern("dd/MM '('EEE')' 'at' HH:mm"));
+            Label logLabel = new Label(formattedTime);
+            logLabel.setFont(secondary_font);
+            logLabel.getStyleClass().add("log");
+            logLabel.setPrefWidth((summaries.size() > 10) ? 225 : 242);
+
+            logLabel.setOnMouseClicked(e -> {
+
+                // cancel previous task
+                if (currentPDFTask != null && !currentPDFTask.isDone()) {
+                    currentPDFTask.cancel();
+                    System.out.println("Canceled previous PDF task.");
+                }
+
+                // clear previous selection
+                if (selectedKeyLogLabel != null) {
+                    selectedKeyLogLabel.getStyleClass().remove("log-selected");
+                }
+
+                logLabel.getStyleClass().add("log-selected");
+                selectedKeyLogLabel = logLabel;
+
+                // load selected key log
+                loadSession(classroomID, username, summary);
+            });
+
+            studentKeyLogsContainer.getChildren().add(logLabel);
+        }
+
+        if (to < summaries.size()) {
+            Label moreLabel = new Label("Show more (" + (summaries.size() - to) + ")");
+            moreLabel.setFont(secondary_font);
+            moreLabel.getStyleClass().add("log");
+            moreLabel.setPrefWidth(225);
+            moreLabel.setOnMouseClicked(e -> {
+                studentKeyLogsContainer.getChildren().remove(moreLabel);
+                showSessionPage(summaries, to, classroomID, username);
+            });
+            studentKeyLogsContainer.getChildren().add(moreLabel);
+        }
+    }
+
+    /**
+     * this function downloads the key logs of a typing test the teacher has selected, then shows its results.
+     * @param summary is the selected typing test.
+     * @param username is the student's username
+     */
+    private void loadSession(String classroomID, String username, SessionSummary summary) {
+        keyLogContainer.setVisible(true);
+        logContainer.getChildren().clear();
+        keyLogDescriptor.setFont(secondary_font);
+        keyLogDescriptor.setText("Loading typing test...");
+        keyLogDescriptor.setAlignment(Pos.CENTER);
+
+        Task<KeyLogsStructure> sessionTask = new Task<>() {
+            @Override
+            protected KeyLogsStructure call() {
+                return UserDAO.getSession(classroomID, username, summary.getSessionID());
             }
         };
-        new Thread(task).start();
+        sessionTask.setOnSucceeded(event -> {
+            if (sessionTask != currentSessionTask) {
+                return;
+            }
+            KeyLogsStructure log = sessionTask.getValue();
+            if (log == null) {
+                keyLogDescriptor.setText("Failed to load typing test. Please try again later.");
+                return;
+            }
+            loadKeyLog(log, username);
+        });
+
+        currentSessionTask = sessionTask;
+        new Thread(sessionTask).start();
     }
 
     /**
@@ -1067,9 +1121,20 @@ public class ClassroomViewController {
                             });
                         } else {
                             // creating new account
-                            ClassroomDAO.addStudentToClassroom(classroomID, username);
                             TypingPlanManager manager = TypingPlanManager.getInstance();
-                            UserDAO.createUser(classroomID, username, manager.getDefaultPlan(), manager.getPersonalisedPlan());
+                            UserAccount account = new UserAccount(classroomID, UserDAO.generateUserID(), username,
+                                    manager.getDefaultPlan(), manager.getPersonalisedPlan(), new ArrayList<>(), null);
+                            if (!ClassroomDAO.addStudents(classroomID, List.of(account)).get()) {
+                                // the classroom was deleted, or the username taken, since they were checked
+                                String message = ClassroomDAO.classroomExists(classroomID)
+                                        ? "That username was taken while you were joining. Please choose another."
+                                        : "That classroom doesn't exist! Please ensure you entered the ID correctly.";
+                                Platform.runLater(() -> {
+                                    joinFormDescription.setText(message);
+                                    joinFormDescription.setTextFill(Color.RED);
+                                });
+                                return null;
+                            }
                             manager.deleteLocalFiles();
                             ClassroomDAO.saveUserCache(classroomID, username);
                             Platform.runLater(() -> {
@@ -1280,6 +1345,8 @@ public class ClassroomViewController {
         manager.saveTypingPlan();
         manager.clearTypingPlans();
         ClassroomDAO.deleteUserCache();
+        System.out.println("Logged out. " + FirestoreCache.getInstance());
+        FirestoreCache.getInstance().invalidateAll();
         displayStudentTeacherContainer();
     }
 
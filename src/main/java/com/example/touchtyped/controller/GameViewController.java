@@ -2,14 +2,22 @@ package com.example.touchtyped.controller;
 
 import com.example.touchtyped.app.Application;
 import com.example.touchtyped.constants.StyleConstants;
-import com.example.touchtyped.firestore.ClassroomDAO;
-import com.example.touchtyped.firestore.UserAccount;
-import com.example.touchtyped.firestore.UserDAO;
+import com.example.touchtyped.interfaces.KeyToken;
 import com.example.touchtyped.interfaces.KeyboardInterface;
+import com.example.touchtyped.model.AdaptiveTextGenerator;
 import com.example.touchtyped.model.GameKeypressListener;
+import com.example.touchtyped.model.GlyphLaneRenderer;
 import com.example.touchtyped.model.KeyLogsStructure;
+import com.example.touchtyped.model.SessionClock;
+import com.example.touchtyped.model.TargetText;
+import com.example.touchtyped.model.TypingSession;
+import com.example.touchtyped.model.TypingTextRenderer;
 import com.example.touchtyped.model.UserProfile;
 import com.example.touchtyped.service.AppSettingsService;
+import com.example.touchtyped.service.CorpusService;
+import com.example.touchtyped.service.ResultOutbox;
+import com.example.touchtyped.service.SoundService;
+import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.ScaleTransition;
 import javafx.animation.Timeline;
@@ -26,6 +34,7 @@ import javafx.geometry.Pos;
 import javafx.geometry.VPos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonBar;
@@ -46,8 +55,6 @@ import javafx.scene.text.TextAlignment;
 import javafx.scene.text.TextFlow;
 import javafx.stage.Stage;
 import javafx.util.Duration;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
@@ -88,10 +95,10 @@ public class GameViewController {
     @FXML private Label leftScoreLabel;
     @FXML private Label rightScoreLabel;
 
-    @FXML private TextFlow leftTextFlow;
-    @FXML private TextFlow rightTextFlow;
-    @FXML private Text leftCursor;
-    @FXML private Text rightCursor;
+    @FXML private Canvas leftLaneCanvas;
+    @FXML private Canvas rightLaneCanvas;
+    private GlyphLaneRenderer leftLane;
+    private GlyphLaneRenderer rightLane;
 
     @FXML private ImageView classroomButton;
 
@@ -122,31 +129,51 @@ public class GameViewController {
      */
     private Button tutorialNextButton, tutorialFinishButton;
 
-    private Timeline timeline;
+    /**
+     * keystrokes only update the game state and mark it dirty; uiPulse redraws once per frame, however many keys arrived
+     * in it. it also moves the countdown on, so the time left is shown to a tenth of a second. it runs while a game is
+     * in progress.
+     */
+    private boolean uiDirty = false;
+    private boolean leftLaneDirty = false;
+    private boolean rightLaneDirty = false;
+    private final AnimationTimer uiPulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (tickClock()) {
+                flushUI();
+            }
+        }
+    };
+    // the values the stats labels show, in tenths, so a label is only set when its text would change
+    private int shownWpmTenths = 0;
+    private int shownAccuracyTenths = 0;
+    private int shownTimeTenths = -1;
     private boolean gameStarted = false;
-    private long gameStartTime;
+    // times the game (or competition round) in progress: key logs, countdown and WPM all read it
+    private SessionClock clock;
     private int selectedTimeOption = 60; // Timed model time option 15/30/60/120
-    private int timeLeft = 60;
     private int competitionTime = 30;    // compttition model time
 
-    private int totalKeystrokes = 0;
-    private int correctKeystrokes = 0;
-    private int wrongKeystrokes = 0;
-
     private KeyboardInterface keyboardInterface;
     private GameKeypressListener keyPressListener;
     private KeyLogsStructure keyLogsStructure;
 
-    private List<String> sentencePool = new ArrayList<>();
-    private List<String> articles = new ArrayList<>();
+    private final CorpusService corpus = CorpusService.getInstance();
+    // timed text and competition letters lean towards the keys this user misses
+    private AdaptiveTextGenerator generator;
+    private static final int TIMED_START_WORDS = 30;
+
+    // whether keys and mistakes make a sound (AppSettingsService.isTypingSounds), read once per game
+    private boolean typingSounds;
+    private static final double KEYPRESS_VOLUME = 0.3;
+    private static final double ERROR_VOLUME = 0.6;
 
     // ====== Timed/Article ======
-    private StringBuilder currentSentence;
-    private int currentCharIndex;
-    private final boolean[] charErrorStates = new boolean[5000];
-    private boolean hasFirstError = false;
-    private boolean hasUnresolvedError = false;
-    private boolean currentWordHasMistake = false;
+    // the typing rules live in the session; this controller only draws what it reports
+    private TypingSession session;
+    private static final int TASK_VISIBLE_LEN = 50;
+    private TypingTextRenderer taskRenderer;
 
     // ====== Competition ======
     private boolean isSecondRound = false;
@@ -158,13 +185,10 @@ public class GameViewController {
 
     private static final int COMP_LETTER_COUNT = 500;
     private static final int COMP_VISIBLE_LEN   = 12;
+    private static final double COMP_FONT_SIZE  = 28;
 
-    private StringBuilder leftLetters;
-    private StringBuilder rightLetters;
-    private int leftIndex;
-    private int rightIndex;
-    private boolean[] leftErrorFlags;
-    private boolean[] rightErrorFlags;
+    private TypingSession leftSession;
+    private TypingSession rightSession;
 
     private boolean waitingForSpaceToStartRound = false;
     private boolean betweenRounds = false;
@@ -177,39 +201,16 @@ public class GameViewController {
         this.keyboardInterface = keyboardInterface;
     }
 
-    private static final Map<String, String> SPECIAL_KEY_TO_CHAR = Map.ofEntries(
-            Map.entry("SEMICOLON", ";"),
-            Map.entry("QUOTE", "'"),
-            Map.entry("COMMA", ","),
-            Map.entry("PERIOD", "."),
-            Map.entry("SLASH", "/"),
-            Map.entry("BACK_SLASH", "\\"),
-            Map.entry("OPEN_BRACKET", "["),
-            Map.entry("CLOSE_BRACKET", "]"),
-            Map.entry("MINUS", "-"),
-            Map.entry("EQUALS", "="),
-            Map.entry("BACK_QUOTE", "`"),
-            Map.entry("EXCLAMATION", "!"),
-            Map.entry("AT", "@"),
-            Map.entry("NUMBER_SIGN", "#"),
-            Map.entry("DOLLAR", "$"),
-            Map.entry("PERCENT", "%"),
-            Map.entry("CIRCUMFLEX", "^"),
-            Map.entry("AMPERSAND", "&"),
-            Map.entry("ASTERISK", "*"),
-            Map.entry("LEFT_PARENTHESIS", "("),
-            Map.entry("RIGHT_PARENTHESIS", ")"),
-            Map.entry("UNDERSCORE", "_"),
-            Map.entry("PLUS", "+"),
-            Map.entry("BRACELEFT", "{"),
-            Map.entry("BRACERIGHT", "}"),
-            Map.entry("COLON", ":"),
-            Map.entry("QUOTEDBL", "\""),
-            Map.entry("LESS", "<"),
-            Map.entry("GREATER", ">"),
-            Map.entry("QUESTION", "?"),
-            Map.entry("PIPE", "|")
-    );
+    /**
+     * characters that count as typing input. any other key (apart from BACK_SPACE) is ignored.
+     * held as a lookup table so a keypress can be checked without a regex.
+     */
+    private static final boolean[] TYPEABLE_CHARS = new boolean[256];
+    static {
+        for (char c : "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789,.;:'\"?!@#$%^&*()[]{}-_=+<>/\\|°`~ ".toCharArray()) {
+            TYPEABLE_CHARS[c] = true;
+        }
+    }
 
     private static final char[] LEFT_HAND_CHARS = {
             'q','w','e','r','t','a','s','d','f','g','z','x','c','v','b'
@@ -218,17 +219,71 @@ public class GameViewController {
             'y','u','i','o','p','h','j','k','l','n','m'
     };
 
-    // ========== Combo/Streak related variables ==========
     /**
-     * currentStreak, maxStreak are now counted by "word" units
+     * reacts to what a key did in Timed/Article mode: feedback for mistakes, the combo effect every 5 words in a row,
+     * and ending an article once it is typed.
      */
-    private int currentStreak = 0;   // Current word streak
-    private int maxStreak = 0;       // Historical maximum streak
+    private final TypingSession.Listener taskListener = new TypingSession.Listener() {
+        @Override
+        public void charTyped(int index, KeyToken key, boolean correct) {
+            if (!correct) {
+                provideErrorFeedback(key);
+            } else if (typingSounds) {
+                SoundService.getInstance().play(SoundService.Sound.KEYPRESS, KEYPRESS_VOLUME);
+            }
+        }
+
+        @Override
+        public void overrun(KeyToken key) {
+            provideErrorFeedback(key);
+        }
+
+        @Override
+        public void streakChanged(int streak) {
+            if (streak > 0 && streak % 5 == 0) {
+                triggerStreakEffect(streak);
+            }
+        }
+
+        @Override
+        public void sessionEnded() {
+            // the article took until its last key, not until the game is shown as over
+            clock.stop(session.lastKeyNanos());
+            // 短暂延迟后结束游戏，让用户看到最后一个字符
+            Platform.runLater(() -> {
+                // 更新一次UI确保显示最后一个字符
+                flushUI();
+                // 0.5秒延迟后结束游戏
+                Timeline delayedEnd = new Timeline(new KeyFrame(Duration.millis(500), e -> endGame()));
+                delayedEnd.play();
+            });
+        }
+    };
 
     /**
-     * Records the starting index of the current word to determine if the entire word is correct
+     * scores a competition lane, and marks it for redrawing.
      */
-    private int wordStartIndex = 0;
+    private class LaneListener implements TypingSession.Listener {
+        private final boolean left;
+
+        LaneListener(boolean left) {
+            this.left = left;
+        }
+
+        @Override
+        public void charTyped(int index, KeyToken key, boolean correct) {
+            if (correct) {
+                if (left) scoreLeft++;
+                else scoreRight++;
+            }
+        }
+
+        @Override
+        public void cursorMoved(int cursor) {
+            if (left) leftLaneDirty = true;
+            else rightLaneDirty = true;
+        }
+    }
 
     private AppSettingsService settingsService;
 
@@ -244,10 +299,8 @@ public class GameViewController {
         if (keyboardInterface == null) {
             keyboardInterface = Application.keyboardInterface;
         }
-        keyPressListener  = new GameKeypressListener(this, keyboardInterface);
-
-        loadSentencesFromFile();
-        loadArticlesFromFile();
+        keyPressListener = new GameKeypressListener(this, keyboardInterface, gameContainer);
+        generator = new AdaptiveTextGenerator(corpus.words(), userProfile.getKeyWeakness(), corpus.splitRandom());
 
         time15Button.setFocusTraversable(false);
         time30Button.setFocusTraversable(false);
@@ -279,151 +332,47 @@ public class GameViewController {
 
         updateInfoButtonVisibility();
 
-        leftCursor.setTextOrigin(VPos.BASELINE);
-        rightCursor.setTextOrigin(VPos.BASELINE);
         cursorLabel.setTextOrigin(VPos.BASELINE);
+        GlyphLaneRenderer.Palette lanePalette = GlyphLaneRenderer.Palette.forDisplayMode(settingsService.getDisplayMode());
+        leftLane = new GlyphLaneRenderer(leftLaneCanvas, COMP_VISIBLE_LEN, COMP_FONT_SIZE, lanePalette);
+        rightLane = new GlyphLaneRenderer(rightLaneCanvas, COMP_VISIBLE_LEN, COMP_FONT_SIZE, lanePalette);
+        taskRenderer = new TypingTextRenderer(taskLabel, TASK_VISIBLE_LEN);
 
         resetGame();
     }
 
-    private void loadSentencesFromFile(){
-        try{
-            var inputStream = getClass().getResourceAsStream("/com/example/touchtyped/sentences.txt");
-            if(inputStream==null){
-                System.out.println("sentences.txt not found!");
-                return;
-            }
-            try(Scanner sc = new Scanner(inputStream)){
-                while(sc.hasNextLine()){
-                    String line = sc.nextLine().trim();
-                    if(!line.isEmpty()){
-                        sentencePool.add(line);
-                    }
-                }
-            }
-        } catch(Exception e){
-            e.printStackTrace();
-        }
-    }
-
-    private void loadArticlesFromFile(){
-        try{
-            var inputStream = getClass().getResourceAsStream("/com/example/touchtyped/articles.txt");
-            if(inputStream==null){
-                System.out.println("articles.txt not found!");
-                return;
-            }
-            try(Scanner sc=new Scanner(inputStream)){
-                while(sc.hasNextLine()){
-                    String line = sc.nextLine().trim();
-                    if(!line.isEmpty()){
-                        articles.add(line);
-                    }
-                }
-            }
-        } catch(Exception e){
-            e.printStackTrace();
-        }
-    }
-
     // ========== Competition: Generate random letters for left and right hand practice ==========
     private void generateRandomLettersForCompetition(int lettersCount){
-        leftLetters = new StringBuilder();
-        rightLetters= new StringBuilder();
-        leftErrorFlags = new boolean[lettersCount];
-        rightErrorFlags= new boolean[lettersCount];
-        Arrays.fill(leftErrorFlags,false);
-        Arrays.fill(rightErrorFlags,false);
-
-        Random r=new Random();
+        StringBuilder leftLetters = new StringBuilder(lettersCount);
+        StringBuilder rightLetters= new StringBuilder(lettersCount);
+
         for(int i=0;i<lettersCount;i++){
-            leftLetters.append( LEFT_HAND_CHARS[r.nextInt(LEFT_HAND_CHARS.length)] );
-            rightLetters.append(RIGHT_HAND_CHARS[r.nextInt(RIGHT_HAND_CHARS.length)]);
+            leftLetters.append( generator.nextLetter(LEFT_HAND_CHARS) );
+            rightLetters.append(generator.nextLetter(RIGHT_HAND_CHARS));
         }
-        leftIndex=0;
-        rightIndex=0;
+        leftSession = new TypingSession(leftLetters, null, TypingSession.Rules.LANE);
+        leftSession.setListener(new LaneListener(true));
+        rightSession = new TypingSession(rightLetters, null, TypingSession.Rules.LANE);
+        rightSession.setListener(new LaneListener(false));
     }
 
     private void updateLeftDisplay(){
-        leftTextFlow.getChildren().clear();
-
-        int len  = leftLetters.length();
-        int start= Math.max(0, leftIndex - COMP_VISIBLE_LEN/2);
-        int end  = Math.min(len, start+COMP_VISIBLE_LEN);
-
-        // already typed
-        for(int i=start; i<leftIndex && i<end; i++){
-            Text t=new Text(String.valueOf(leftLetters.charAt(i)));
-            t.setTextOrigin(VPos.BASELINE);
-            if(leftErrorFlags[i]){
-                t.getStyleClass().add("error-text");
-            } else {
-                t.getStyleClass().add("typed-text");
-            }
-            leftTextFlow.getChildren().add(t);
-        }
-        // cursor
-        if(leftIndex<end){
-            leftCursor.setText("|");
-            leftCursor.setTextOrigin(VPos.BASELINE);
-            leftCursor.getStyleClass().add("cursor");
-            leftCursor.setVisible(true);
-            leftTextFlow.getChildren().add(leftCursor);
-        } else {
-            leftCursor.setVisible(false);
-        }
-        // not typed
-        for(int i=Math.max(leftIndex, start); i<end; i++){
-            Text t=new Text(String.valueOf(leftLetters.charAt(i)));
-            t.setTextOrigin(VPos.BASELINE);
-            t.getStyleClass().add("remaining-text");
-            leftTextFlow.getChildren().add(t);
-        }
+        leftLane.render(leftSession.text(), leftSession.cursor(), true);
     }
 
     private void updateRightDisplay(){
-        rightTextFlow.getChildren().clear();
-
-        int len  = rightLetters.length();
-        int start= Math.max(0, rightIndex - COMP_VISIBLE_LEN/2);
-        int end  = Math.min(len, start+COMP_VISIBLE_LEN);
-
-        // already typed
-        for(int i=start; i<rightIndex && i<end; i++){
-            Text t=new Text(String.valueOf(rightLetters.charAt(i)));
-            t.setTextOrigin(VPos.BASELINE);
-            if(rightErrorFlags[i]){
-                t.getStyleClass().add("error-text");
-            } else {
-                t.getStyleClass().add("typed-text");
-            }
-            rightTextFlow.getChildren().add(t);
-        }
-        // cursor
-        if(rightIndex<end){
-            rightCursor.setText("|");
-            rightCursor.setTextOrigin(VPos.BASELINE);
-            rightCursor.getStyleClass().add("cursor");
-            rightCursor.setVisible(true);
-            rightTextFlow.getChildren().add(rightCursor);
-        } else {
-            rightCursor.setVisible(false);
-        }
-        // not typed
-        for(int i=Math.max(rightIndex, start); i<end; i++){
-            Text t=new Text(String.valueOf(rightLetters.charAt(i)));
-            t.setTextOrigin(VPos.BASELINE);
-            t.getStyleClass().add("remaining-text");
-            rightTextFlow.getChildren().add(t);
-        }
+        rightLane.render(rightSession.text(), rightSession.cursor(), true);
     }
 
     @FXML
     public void resetGame(){
         keyboardInterface.stopHaptic();
-        if(timeline!=null){
-            timeline.stop();
-        }
+        uiPulse.stop();
+        clock=null;
+        shownTimeTenths=-1;
+        uiDirty = false;
+        leftLaneDirty = false;
+        rightLaneDirty = false;
         gameStarted=false;
 
         timeBox.setVisible(false);
@@ -438,30 +387,20 @@ public class GameViewController {
 
         timerLabel.setVisible(true);
         timerLabel.setManaged(true);
-        timeLeft= selectedTimeOption;
-        timerLabel.setText(String.valueOf(timeLeft));
+        timerLabel.setText(String.valueOf(selectedTimeOption));
 
-        totalKeystrokes=0;
-        correctKeystrokes=0;
-        wrongKeystrokes=0;
         wpmLabel.setText("WPM: 0.0");
         accuracyLabel.setText("Accuracy: 0.0%");
+        shownWpmTenths = 0;
+        shownAccuracyTenths = 0;
         inputField.clear();
         inputField.setDisable(false);
         resultContainer.setVisible(false);
 
-        currentSentence=null;
-        currentCharIndex=0;
-        Arrays.fill(charErrorStates,false);
-        hasFirstError=false;
-        hasUnresolvedError=false;
+        session=null;
+        taskRenderer.invalidate();
         keyLogsStructure=null;
 
-        // Reset word streak
-        currentStreak = 0;
-        maxStreak = 0;
-        wordStartIndex = 0; // Ensure each new task counts words from index 0
-
         if(isCompetitionMode()){
             isSecondRound = false;
             playerAOnLeft = true;
@@ -469,13 +408,12 @@ public class GameViewController {
             scoreRight=0;
             waitingForSpaceToStartRound = true;
             betweenRounds = false;
-            leftTextFlow.getChildren().clear();
-            rightTextFlow.getChildren().clear();
+            leftLane.clear();
+            rightLane.clear();
         }
 
         // update ui
         if(isArticleMode()){
-            timeLeft=0;
             timerLabel.setText("Article Mode");
             wpmLabel.setVisible(true);
             accuracyLabel.setVisible(true);
@@ -484,18 +422,17 @@ public class GameViewController {
         }
 
         if(isCompetitionMode()){
-            timeLeft= competitionTime;
-            compTimerLabel.setText("Time Left: "+timeLeft);
+            compTimerLabel.setText("Time Left: "+competitionTime);
             timerLabel.setVisible(false);
             timerLabel.setManaged(false);
             generateRandomLettersForCompetition(COMP_LETTER_COUNT);
-            leftTextFlow.getChildren().clear();
-            rightTextFlow.getChildren().clear();
-            updateLeftDisplay();
-            updateRightDisplay();
-
-            leftCursor.setVisible(false);
-            rightCursor.setVisible(false);
+            // the display mode may have changed since the lanes were created
+            GlyphLaneRenderer.Palette lanePalette = GlyphLaneRenderer.Palette.forDisplayMode(settingsService.getDisplayMode());
+            leftLane.setPalette(lanePalette);
+            rightLane.setPalette(lanePalette);
+            // the cursors stay hidden until the first keystroke
+            leftLane.render(leftSession.text(), leftSession.cursor(), false);
+            rightLane.render(rightSession.text(), rightSession.cursor(), false);
             leftScoreLabel.setText("PlayerA Score: 0");
             rightScoreLabel.setText("PlayerB Score: 0");
             competitionContainer.setVisible(true);
@@ -505,8 +442,7 @@ public class GameViewController {
 
         if (isTimeMode()){
             // Timed
-            timeLeft= selectedTimeOption;
-            timerLabel.setText(String.valueOf(timeLeft));
+            timerLabel.setText(String.valueOf(selectedTimeOption));
             timerLabel.setVisible(true);
             timerLabel.setManaged(true);
             timeBox.setVisible(true);
@@ -523,26 +459,30 @@ public class GameViewController {
 
     private void generateNewTask(){
         if(isArticleMode()){
-            Random r=new Random();
-            int idx=r.nextInt(articles.size());
-            String paragraph=articles.get(idx).replaceAll("\\r?\\n"," ");
-            currentSentence=new StringBuilder(paragraph);
+            String paragraph=corpus.randomArticle();
+            session=new TypingSession(paragraph!=null ? paragraph : "", null, TypingSession.Rules.ARTICLE);
 
         } else if(isTimeMode()){
-            Random r=new Random();
             StringBuilder sb=new StringBuilder();
-            for(int i=0;i<3;i++){
-                String s= sentencePool.get(r.nextInt(sentencePool.size()));
-                sb.append(s).append(" ");
+            for(int i=0;i<TIMED_START_WORDS;i++){
+                sb.append(getRandomWord()).append(" ");
             }
-            currentSentence=new StringBuilder(sb.toString().trim());
-        }
-        if(currentSentence==null){
-            currentSentence=new StringBuilder("");
+            // the text is topped up with more words as it is typed
+            session=new TypingSession(sb.toString().trim(), this::getRandomWord, TypingSession.Rules.TIMED);
+        } else {
+            session=new TypingSession("", null, TypingSession.Rules.ARTICLE);
         }
-        keyLogsStructure= new KeyLogsStructure(currentSentence.toString());
-        currentCharIndex=0;
-        wordStartIndex=0; // For newly generated sentences, start from 0
+        session.setListener(taskListener);
+        keyLogsStructure= newKeyLogsStructure();
+    }
+
+    /**
+     * @return a structure that logs keys against the session's text, however much it grows
+     */
+    private KeyLogsStructure newKeyLogsStructure(){
+        KeyLogsStructure structure=new KeyLogsStructure();
+        structure.followText(session.text());
+        return structure;
     }
 
     private boolean isArticleMode(){
@@ -555,39 +495,63 @@ public class GameViewController {
         return modeToggleGroup.getSelectedToggle() == timedModeRadio;
     }
 
-    private void startGame(){
+    /**
+     * starts the game (or a competition round).
+     * @param startNanos is the System.nanoTime() of the key that started it
+     */
+    private void startGame(long startNanos){
         keyboardInterface.stopHaptic();
         if(!gameStarted){
             gameStarted=true;
-            gameStartTime=System.currentTimeMillis();
+            // article games have no time limit
+            int limitSeconds = isCompetitionMode() ? competitionTime : (isArticleMode() ? 0 : selectedTimeOption);
+            clock=new SessionClock(limitSeconds);
+            clock.start(startNanos);
+            shownTimeTenths=-1;
+            typingSounds = AppSettingsService.getInstance().isTypingSounds();
+            uiPulse.start();
             if(!isCompetitionMode()){
                 // only show player's cursor
                 cursorLabel.setVisible(true);
             }
-            // other model
-            if(isCompetitionMode() || !isArticleMode()){
-                timeline=new Timeline(new KeyFrame(Duration.seconds(1), e->{
-                    timeLeft--;
-                    if(isCompetitionMode()){
-                        compTimerLabel.setText("Time Left: "+timeLeft);
-                    } else {
-                        timerLabel.setText(String.valueOf(timeLeft));
-                    }
-                    if(timeLeft<=0){
-                        endGame();
-                    }
-                }));
-                timeline.setCycleCount(Timeline.INDEFINITE);
-                timeline.play();
+        }
+    }
+
+    /**
+     * shows the time left, and ends the game once it runs out. called every pulse.
+     * @return false if the game has ended
+     */
+    private boolean tickClock(){
+        if(clock==null || !clock.hasLimit()){
+            return true;
+        }
+        long now=System.nanoTime();
+        if(clock.isExpired(now)){
+            endGame();
+            return false;
+        }
+        int timeTenths=clock.remainingTenths(now);
+        if(timeTenths!=shownTimeTenths){
+            shownTimeTenths=timeTenths;
+            if(isCompetitionMode()){
+                compTimerLabel.setText("Time Left: "+formatTenths(timeTenths));
+            } else {
+                timerLabel.setText(formatTenths(timeTenths));
             }
         }
+        return true;
     }
 
     private void endGame(){
-        keyboardInterface.stopHaptic();
-        if(timeline!=null){
-            timeline.stop();
+        if(clock==null){
+            // the game was reset before a delayed end came round
+            return;
         }
+        keyboardInterface.stopHaptic();
+        // a timed game that ran over (e.g. waiting for a pulse) only counts up to its limit
+        clock.stop(System.nanoTime());
+        flushUI();
+        uiPulse.stop();
 
         if(isCompetitionMode()){
             if(!isSecondRound){
@@ -604,17 +568,12 @@ public class GameViewController {
                 playerAOnLeft = !playerAOnLeft;
 
                 // generate next round letter
-                leftIndex=0;
-                rightIndex=0;
-                leftTextFlow.getChildren().clear();
-                rightTextFlow.getChildren().clear();
                 generateRandomLettersForCompetition(COMP_LETTER_COUNT);
                 updateLeftDisplay();
                 updateRightDisplay();
 
                 // Reset time and UI
-                timeLeft = competitionTime;
-                compTimerLabel.setText("Time Left: " + timeLeft);
+                compTimerLabel.setText("Time Left: " + competitionTime);
 
                 // update score
                 refreshCompetitionScoreUI();
@@ -660,12 +619,21 @@ public class GameViewController {
             }
         } else {
             // Timed or Article
-            double finalWpm=(correctKeystrokes/5.0)/(selectedTimeOption/60.0);
+            int correctKeystrokes=session.correctKeystrokes();
+            int wrongKeystrokes=session.wrongKeystrokes();
+            // over the time actually played: the whole limit in a timed game, up to the last key in an article
+            double elapsedMinutes=clock.elapsedMinutes(System.nanoTime());
+            double finalWpm=elapsedMinutes>0 ? (correctKeystrokes/5.0)/elapsedMinutes : 0.0;
             try{
                 FXMLLoader loader=new FXMLLoader(getClass().getResource("/com/example/touchtyped/game-result-view.fxml"));
                 Scene resultScene=new Scene(loader.load(),1200,700);
 
                 // game is over, display results and save keyLogsStructure.
+                // the text is only copied into wordsGiven now, however long the game ran
+                keyLogsStructure.finishText();
+                // the next game's text targets the keys missed in this one
+                generator.recordSession(keyLogsStructure);
+                userProfile.saveProfile();
 
                 GameResultViewController resultController=loader.getController();
 
@@ -679,7 +647,7 @@ public class GameViewController {
                         (int)finalWpm,
                         correctKeystrokes,
                         wrongKeystrokes,
-                        totalKeystrokes,
+                        session.totalKeystrokes(),
                         gameMode,
                         playerName
                 );
@@ -690,30 +658,8 @@ public class GameViewController {
                 keyLogsStructure.setCorrectKeystrokes(correctKeystrokes);
                 keyLogsStructure.setIncorrectKeystrokes(wrongKeystrokes);
 
-                // save keyLogsStructure to database
-                Map<String, String> userDetails = ClassroomDAO.loadUserCache();
-                if (userDetails != null) {
-                    try {
-                        String classroomID = userDetails.get("classroomID");
-                        String username = userDetails.get("username");
-                        String password = userDetails.getOrDefault("password", null);
-
-                        UserAccount userAccount = UserDAO.getAccount(classroomID, username, password);
-
-                        if (userAccount == null) {
-                            // either the user doesn't exist or password is wrong.
-                        } else {
-                            UserDAO.addKeyLog(classroomID, username, keyLogsStructure, password);
-                            System.out.println("Added key logs structure to database.");
-                        }
-
-                    } catch (Exception e) {
-                        System.out.println("DATABASE FAILURE. Failed to save keyLogsStructure to user account.");
-                    }
-
-                } else {
-                    // do nothing - user is not logged in
-                }
+                // save keyLogsStructure to database, in the background (kept on disk until it is uploaded)
+                ResultOutbox.getInstance().submit(keyLogsStructure);
 
                 Stage stage=(Stage)gameContainer.getScene().getWindow();
                 stage.setScene(resultScene);
@@ -737,27 +683,33 @@ public class GameViewController {
 
     @FXML
     public void handleKeyPress(String key){
-        // Add debugging info
-        System.out.println("Received key: " + key);
+        handleKeyPress(KeyToken.fromString(key));
+    }
 
-        // Handle special keys with direct mapping
-        if(SPECIAL_KEY_TO_CHAR.containsKey(key)){
-            System.out.println("Converting special key: " + key + " to: " + SPECIAL_KEY_TO_CHAR.get(key));
-            key = SPECIAL_KEY_TO_CHAR.get(key);
-        }
+    public void handleKeyPress(KeyToken key){
+        handleKeyPress(key, System.nanoTime());
+    }
+
+    /**
+     * handles a keypress.
+     * @param key is the key that was pressed
+     * @param pressNanos is the System.nanoTime() of the press, used for dwell and flight times
+     */
+    public void handleKeyPress(KeyToken key, long pressNanos){
         if(inputField.isDisabled()) return;
+        int typed = key.getCodepoint();
 
         // 1. If in competition mode
         if(isCompetitionMode()) {
             // Check if waiting for space to start a round (either first round or between rounds)
             if(!gameStarted || waitingForSpaceToStartRound) {
                 // In competition mode, when game hasn't started or waiting for next round, only space key can start
-                if(key.equals(" ")) {
+                if(key == KeyToken.SPACE) {
                     waitingForSpaceToStartRound = false;
                     betweenRounds = false;
-                    startGame();
-                    if(currentSentence!=null){
-                        keyLogsStructure=new KeyLogsStructure(currentSentence.toString());
+                    startGame(pressNanos);
+                    if(session!=null){
+                        keyLogsStructure=newKeyLogsStructure();
                     }
                 }
                 // In competition mode, if game hasn't started or waiting for next round, ignore non-space keys
@@ -769,16 +721,13 @@ public class GameViewController {
             // 2. Non-competition mode (Timed/Article)
             if(!gameStarted){
                 // Check if the first letter is typed correctly
-                if(currentSentence != null && currentSentence.length() > 0) {
-                    char expectedFirstChar = currentSentence.charAt(0);
-                    String expectedFirstKey = String.valueOf(expectedFirstChar);
+                if(session != null && session.text().length() > 0) {
+                    char expectedFirstChar = session.text().charAt(0);
 
                     // Only start the game if the first letter is typed correctly
-                    if(key.equals(expectedFirstKey)) {
-                        startGame();
-                        if(currentSentence!=null){
-                            keyLogsStructure=new KeyLogsStructure(currentSentence.toString());
-                        }
+                    if(typed == expectedFirstChar) {
+                        startGame(pressNanos);
+                        keyLogsStructure=newKeyLogsStructure();
                     } else {
                         // First letter is wrong, don't start the game
                         return;
@@ -789,188 +738,78 @@ public class GameViewController {
 
         // 3. Common logic for all modes
 
+        // keys after the end don't count, even if the game hasn't noticed it has ended yet
+        if(clock!=null){
+            if(clock.isStopped()){
+                return;
+            }
+            if(clock.isExpired(pressNanos)){
+                endGame();
+                return;
+            }
+        }
+
         // Only process visible characters and backspace
-        if(!key.equals("BACK_SPACE") && !key.matches("[a-zA-Z0-9,\\.;:'\"?!@#$%^&*()\\[\\]{}\\-_=+<>/\\\\|°`~ ]")){
-            System.out.println("Ignored key: " + key); // Add logging for debugging
+        if(key != KeyToken.BACK_SPACE && !(typed >= 0 && typed < TYPEABLE_CHARS.length && TYPEABLE_CHARS[typed])){
             return;
         }
         if(keyLogsStructure!=null){
-            keyLogsStructure.addKeyLog(key,System.currentTimeMillis()-gameStartTime);
+            keyLogsStructure.addKeyLog(key.getCode(),clock.millisAt(pressNanos),pressNanos);
         }
 
         if(isCompetitionMode()){
-            handleKeyForCompetition(key);
+            handleKeyForCompetition(key, pressNanos);
         } else {
-            handleKeyForTimedOrArticle(key);
+            handleKeyForTimedOrArticle(key, pressNanos);
         }
-        updateStatistics();
     }
 
 
-    // ========== Key handling in Competition mode ==========
-    private void handleKeyForCompetition(String key){
-        if(key.equals("BACK_SPACE")){
-            // Competition mode does not allow backspace
-            return;
+    /**
+     * records a key release against the current session's key logs.
+     * @param key is the key that was released
+     * @param releaseNanos is the System.nanoTime() of the release
+     */
+    public void handleKeyRelease(KeyToken key, long releaseNanos){
+        if(gameStarted && keyLogsStructure!=null){
+            keyLogsStructure.addKeyRelease(key.getCode(), releaseNanos);
         }
+    }
 
-        // 如果key长度大于1，说明是特殊键，忽略它
-        if (key.length() != 1) {
+    // ========== Key handling in Competition mode ==========
+    private void handleKeyForCompetition(KeyToken key, long pressNanos){
+        // 特殊键（包括BACK_SPACE，竞赛模式不允许退格）或非BMP字符，忽略它
+        if (key.isSpecial() || key.getCodepoint() > Character.MAX_VALUE) {
             return;
         }
 
-        char typedChar = key.charAt(0);
-        // Check if character belongs to left or right hand, without converting to lowercase
-        boolean belongsToLeft = false;
-        boolean belongsToRight = false;
-
         // 使用toLowerCase进行比较，这样我们只需要定义小写版本的LEFT_HAND_CHARS和RIGHT_HAND_CHARS
-        char lowerTypedChar = Character.toLowerCase(typedChar);
-
-        // 检查字符是否属于左手
-        for (char c : LEFT_HAND_CHARS) {
-            if (c == lowerTypedChar) {
-                belongsToLeft = true;
-                break;
-            }
-        }
-
-        // 检查字符是否属于右手
-        if (!belongsToLeft) {
-            for (char c : RIGHT_HAND_CHARS) {
-                if (c == lowerTypedChar) {
-                    belongsToRight = true;
-                    break;
-                }
-            }
-        }
-
-        if(belongsToLeft){
-            if(leftIndex<leftLetters.length()){
-                char expected = leftLetters.charAt(leftIndex);
-                if(typedChar == expected){
-                    correctKeystrokes++;
-                    scoreLeft++;
-                    leftErrorFlags[leftIndex]=false;
-                } else {
-                    wrongKeystrokes++;
-                    leftErrorFlags[leftIndex]=true;
-                }
-                leftIndex++;
-                updateLeftDisplay();
-            } else {
-                wrongKeystrokes++;
-            }
-        }
-        // right => scoreRight++
-        else if(belongsToRight){
-            if(rightIndex<rightLetters.length()){
-                char expected = rightLetters.charAt(rightIndex);
-                if(typedChar == expected){
-                    correctKeystrokes++;
-                    scoreRight++;
-                    rightErrorFlags[rightIndex]=false;
-                } else {
-                    wrongKeystrokes++;
-                    rightErrorFlags[rightIndex]=true;
-                }
-                rightIndex++;
-                updateRightDisplay();
-            } else {
-                wrongKeystrokes++;
-            }
-        }
-        // else => ignore
+        char lowerTypedChar = Character.toLowerCase((char) key.getCodepoint());
 
-        if(playerAOnLeft){
-            leftScoreLabel.setText("PlayerA Score: "+scoreLeft);
-            rightScoreLabel.setText("PlayerB Score: "+scoreRight);
+        // the key goes to the lane of the hand that types it; keys that belong to neither are ignored
+        if(arrayContains(LEFT_HAND_CHARS, lowerTypedChar)){
+            leftSession.keyPressed(key, pressNanos);
+        } else if(arrayContains(RIGHT_HAND_CHARS, lowerTypedChar)){
+            rightSession.keyPressed(key, pressNanos);
         } else {
-            leftScoreLabel.setText("PlayerB Score: "+scoreLeft);
-            rightScoreLabel.setText("PlayerA Score: "+scoreRight);
-        }
-    }
-
-    // ========== Key handling in Timed/Article mode: now judging combos by word ==========
-    private void handleKeyForTimedOrArticle(String key) {
-        if (key.equals("BACK_SPACE")) {
-            if (currentCharIndex > 0) {
-                currentCharIndex--;
-                charErrorStates[currentCharIndex] = false;
-            }
-            updateAllUI();
             return;
         }
 
-        if (currentCharIndex >= currentSentence.length()) {
-            wrongKeystrokes++;
-            provideErrorFeedback(key);
-            updateAllUI();
-            return;
-        }
-
-        char expectedChar = currentSentence.charAt(currentCharIndex);
-        String expectedKey = String.valueOf(expectedChar);
-
-        if (key.equals(expectedKey)) {
-            // correct
-            correctKeystrokes++;
-        } else {
-            // wrong
-            wrongKeystrokes++;
-            charErrorStates[currentCharIndex] = true;
-            currentWordHasMistake = true;
-            currentStreak = 0;
-            provideErrorFeedback(key);
-        }
-
-        currentCharIndex++;
-
-        if (expectedChar == ' ' || currentCharIndex == currentSentence.length()) {
-            if (!currentWordHasMistake) {
-                currentStreak++;
-                if (currentStreak > maxStreak) {
-                    maxStreak = currentStreak;
-                }
-                if (currentStreak % 5 == 0) {
-                    triggerStreakEffect(currentStreak);
-                }
-            } else {
-                currentStreak = 0;
-            }
-            currentWordHasMistake = false;
-            wordStartIndex = currentCharIndex;
-        }
-
-        // 如果是文章模式且已经完成了所有文本，结束游戏
-        if (isArticleMode() && currentCharIndex >= currentSentence.length()) {
-            // 短暂延迟后结束游戏，让用户看到最后一个字符
-            Platform.runLater(() -> {
-                // 更新一次UI确保显示最后一个字符
-                updateAllUI();
-                // 0.5秒延迟后结束游戏
-                Timeline delayedEnd = new Timeline(new KeyFrame(Duration.millis(500), e -> endGame()));
-                delayedEnd.play();
-            });
-        } else if (isTimeMode() && currentSentence.length() - currentCharIndex < 30) {
-            addNewWord();
-        }
+        // the lanes and scores are redrawn on the next pulse
+        uiDirty = true;
+    }
 
-        updateAllUI();
+    // ========== Key handling in Timed/Article mode: combos are judged by word ==========
+    private void handleKeyForTimedOrArticle(KeyToken key, long pressNanos) {
+        session.keyPressed(key, pressNanos);
+        uiDirty = true;
     }
 
     private void triggerStreakEffect(int streak) {
         comboLabel.setText("Combo x" + streak);
         comboLabel.setVisible(true); // Show label
 
-        try {
-            String soundPath = getClass().getResource("/com/example/touchtyped/sounds/338905__toxemiccarton__combo-clap.wav").toExternalForm();
-            Media sound = new Media(soundPath);
-            MediaPlayer mediaPlayer = new MediaPlayer(sound);
-            mediaPlayer.play();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        SoundService.getInstance().play(SoundService.Sound.COMBO, 1.0);
 
         // 3. Create a simple scale up + scale down animation
         ScaleTransition scaleUp = new ScaleTransition(Duration.millis(300), comboLabel);
@@ -991,124 +830,115 @@ public class GameViewController {
         scaleUp.play();
     }
 
-    private String addNewWord() {
-        if (currentSentence.length() == 0) {
-            String w = getRandomWord();
-            currentSentence.append(w);
-            return w;
-        } else {
-            currentSentence.append(" ");
-            String w = getRandomWord();
-            currentSentence.append(w);
-            if (keyLogsStructure != null) {
-                keyLogsStructure.setWordsGiven(keyLogsStructure.getWordsGiven() + " " + w);
-            }
-            return w;
-        }
+    private String getRandomWord() {
+        String word = generator.nextWord();
+        return word != null ? word : "word";
     }
 
-    private String getRandomWord() {
-        if (sentencePool.isEmpty()) return "word";
-        Random r = new Random();
-        return sentencePool.get(r.nextInt(sentencePool.size()));
+    /**
+     * redraw whatever keystrokes have changed since the last pulse.
+     */
+    private void flushUI(){
+        if(!uiDirty){
+            return;
+        }
+        uiDirty=false;
+        if(isCompetitionMode()){
+            if(leftLaneDirty){
+                leftLaneDirty=false;
+                updateLeftDisplay();
+            }
+            if(rightLaneDirty){
+                rightLaneDirty=false;
+                updateRightDisplay();
+            }
+            refreshCompetitionScoreUI();
+        } else {
+            updateAllUI();
+        }
     }
 
     private void updateAllUI(){
         if(!isCompetitionMode()){
             updateTaskDisplay();
         }
-        updateStatistics();
         updateRealtimeStats();
 
     }
 
     private void updateTaskDisplay() {
-        taskLabel.getChildren().clear();
-        if (currentSentence == null) return;
+        if (session == null) {
+            return;
+        }
 
-        int visibleLen = 50;
+        TargetText text = session.text();
+        int cursor = session.cursor();
+        int visibleLen = TASK_VISIBLE_LEN;
 
         int start;
-        if (isArticleMode() && currentSentence.length() <= visibleLen) {
+        if (isArticleMode() && text.length() <= visibleLen) {
             start = 0;
-        } else if (isArticleMode() && currentSentence.length() - currentCharIndex < visibleLen / 2) {
-            start = Math.max(0, currentSentence.length() - visibleLen);
+        } else if (isArticleMode() && text.length() - cursor < visibleLen / 2) {
+            start = Math.max(0, text.length() - visibleLen);
         } else {
-            start = Math.max(0, currentCharIndex - visibleLen / 2);
-        }
-
-        int end = Math.min(currentSentence.length(), start + visibleLen);
-
-        // Already typed part
-        for (int i = start; i < currentCharIndex; i++) {
-            Text t = new Text(String.valueOf(currentSentence.charAt(i)));
-            t.setTextOrigin(VPos.BASELINE);
-            t.getStyleClass().add(charErrorStates[i] ? "error-text" : "typed-text");
-            taskLabel.getChildren().add(t);
-        }
-
-        // Current character
-        if (currentCharIndex < currentSentence.length()) {
-            Text curr = new Text(String.valueOf(currentSentence.charAt(currentCharIndex)));
-            curr.setTextOrigin(VPos.BASELINE);
-            if (gameStarted && charErrorStates[currentCharIndex]) {
-                curr.getStyleClass().add("error-text");
-            } else {
-                curr.getStyleClass().add("remaining-text");
-            }
-            taskLabel.getChildren().add(curr);
+            start = Math.max(0, cursor - visibleLen / 2);
         }
 
-        // Remaining part
-        if (currentCharIndex + 1 < end) {
-            Text remain = new Text(currentSentence.substring(currentCharIndex + 1, end));
-            remain.setTextOrigin(VPos.BASELINE);
-            remain.getStyleClass().add("remaining-text");
-            taskLabel.getChildren().add(remain);
-        }
+        // only the characters around the cursor, and any that scrolled into view, are restyled
+        taskRenderer.render(text, cursor, gameStarted, start);
 
         // 更新光标位置，确保即使在文章结束时也能正确显示
         double baseX = -(visibleLen * StyleConstants.charWidth / 2.0);
-        double offset = (currentCharIndex - start) * StyleConstants.charWidth;
+        double offset = (cursor - start) * StyleConstants.charWidth;
         cursorLabel.setTranslateX(baseX + offset);
     }
 
-    private void updateStatistics(){
-        if(!gameStarted) return;
-        totalKeystrokes= correctKeystrokes+wrongKeystrokes;
-    }
-
     private void updateRealtimeStats(){
-        if(!gameStarted||gameStartTime==0) return;
-        long now=System.currentTimeMillis();
-        double elapsedSec=(now-gameStartTime)/1000.0;
+        if(!gameStarted||clock==null) return;
+        double elapsedSec=clock.elapsedNanos(System.nanoTime())/(double)SessionClock.NANOS_PER_SECOND;
 
         // 确保至少经过1秒钟才开始计算WPM，避免刚开始时数值异常大
-        if(elapsedSec < 1.0) {
-            wpmLabel.setText("WPM: 0.0");
-            int total = correctKeystrokes+wrongKeystrokes;
-            double acc = (total>0) ? (correctKeystrokes*100.0/total) : 0.0;
-            accuracyLabel.setText(String.format("Accuracy: %.1f%%", acc));
-            return;
+        int correctKeystrokes=session.correctKeystrokes();
+        double wpm=0.0;
+        if(elapsedSec >= 1.0) {
+            double elapsedMin=elapsedSec/60.0;
+            wpm=(correctKeystrokes/5.0)/elapsedMin;
         }
 
-        double elapsedMin=elapsedSec/60.0;
-        double wpm=(correctKeystrokes/5.0)/elapsedMin;
-        wpmLabel.setText(String.format("WPM: %.1f", wpm));
-
-        int total= correctKeystrokes+wrongKeystrokes;
+        int total= session.totalKeystrokes();
         double acc=(total>0)?(correctKeystrokes*100.0/total):0.0;
-        accuracyLabel.setText(String.format("Accuracy: %.1f%%",acc));
+
+        // the labels are only set (and formatted) when the value they show changes
+        int wpmTenths=(int)Math.round(wpm*10);
+        if(wpmTenths!=shownWpmTenths){
+            shownWpmTenths=wpmTenths;
+            wpmLabel.setText("WPM: "+formatTenths(wpmTenths));
+        }
+        int accuracyTenths=(int)Math.round(acc*10);
+        if(accuracyTenths!=shownAccuracyTenths){
+            shownAccuracyTenths=accuracyTenths;
+            accuracyLabel.setText("Accuracy: "+formatTenths(accuracyTenths)+"%");
+        }
+    }
+
+    /**
+     * @return a non-negative value held in tenths, with one decimal place (as "%.1f" would show it)
+     */
+    private static String formatTenths(int tenths){
+        return (tenths/10)+"."+(tenths%10);
     }
 
-    private void provideErrorFeedback(String key) {
-        keyboardInterface.sendHapticCommand(key, 500, 100);
+    private void provideErrorFeedback(KeyToken key) {
+        keyboardInterface.sendHapticCommand(key.toString(), 500, 100);
         keyboardInterface.activateLights(1000);
+        if (typingSounds) {
+            SoundService.getInstance().play(SoundService.Sound.ERROR, ERROR_VOLUME);
+        }
     }
 
     private void provideNextCharacterHint() {
-        if (currentSentence != null && currentCharIndex < currentSentence.length()) {
-            char c = currentSentence.charAt(currentCharIndex);
+        if (session != null && !session.isAtEnd()) {
+            char c = session.text().charAt(session.cursor());
             String ch = String.valueOf(c);
             if (ch.equals(" ")) {
                 ch = "SPACE";
@@ -1147,8 +977,7 @@ public class GameViewController {
             case 120 -> time120Button.getStyleClass().add("selected");
         }
         this.selectedTimeOption=selectedTime;
-        timeLeft=selectedTime;
-        timerLabel.setText(String.valueOf(timeLeft));
+        timerLabel.setText(String.valueOf(selectedTime));
     }
 
     public boolean isInputDisabled(){
@@ -1186,6 +1015,15 @@ public class GameViewController {
         });
     }
 
+    /**
+     * stop the game before the stage is given another scene. gameContainer stays in this scene, so nothing else
+     * notices the game has been left, and its pulse would keep running (and, in timed mode, end the game and show
+     * the results over whichever view is open).
+     */
+    private void leaveGame(){
+        resetGame();
+    }
+
     @FXML
     public void onLearnButtonClick(){
         try{
@@ -1198,6 +1036,7 @@ public class GameViewController {
             settingsService.applySettingsToScene(scene);
 
             Stage stage=(Stage)taskLabel.getScene().getWindow();
+            leaveGame();
 
             // 保存当前全屏状态和当前位置大小
             boolean wasFullScreen = stage.isFullScreen();
@@ -1234,6 +1073,7 @@ public class GameViewController {
             settingsService.applySettingsToScene(scene);
 
             Stage stage=(Stage)taskLabel.getScene().getWindow();
+            leaveGame();
 
             // 保存当前全屏状态
             boolean wasFullScreen = stage.isFullScreen();
@@ -1276,6 +1116,7 @@ public class GameViewController {
                 settingsService.applySettingsToScene(scene);
 
                 Stage stage = (Stage) classroomButton.getScene().getWindow();
+                leaveGame();
 
                 // 保存当前全屏状态
                 boolean wasFullScreen = stage.isFullScreen();
@@ -1759,6 +1600,7 @@ public class GameViewController {
             // Apply settings to the scene
             settingsService.applySettingsToScene(scene);
             Stage stage = (Stage) viewRankingButton.getScene().getWindow();
+            leaveGame();
             boolean wasFullScreen = stage.isFullScreen();
             stage.setScene(scene);
             if(wasFullScreen) {
@@ -105,7 +105,7 @@ public class LearnViewController {
 
                 keyboardInterface.attachToScene(scene);
                 // Example keypress listener
-                new ExampleKeypressListener(keyboardInterface);
+                new ExampleKeypressListener(keyboardInterface, vbox);
             } else {
                 System.err.println("Scene is not available yet.");
             }
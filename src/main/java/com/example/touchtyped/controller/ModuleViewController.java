@@ -4,7 +4,9 @@ import com.example.touchtyped.app.Application;
 import com.example.touchtyped.constants.StyleConstants;
 import com.example.touchtyped.interfaces.ComputerVisionInterface;
 import com.example.touchtyped.interfaces.KeyboardInterface;
-import com.example.touchtyped.interfaces.KeypressListener;
+import com.example.touchtyped.interfaces.KeyToken;
+import com.example.touchtyped.interfaces.KeyTokenListener;
+import com.example.touchtyped.interfaces.ListenerRegistration;
 import com.example.touchtyped.model.*;
 import com.example.touchtyped.model.Module;
 import com.example.touchtyped.service.AppSettingsService;
@@ -27,7 +29,7 @@ import java.util.*;
 /**
  * displays the Module that was clicked on in the Learn view.
  */
-public class ModuleViewController implements KeypressListener {
+public class ModuleViewController implements KeyTokenListener, TypingSession.Listener {
 
 
     @FXML
@@ -61,15 +63,25 @@ public class ModuleViewController implements KeypressListener {
     private Module module;
     private Level level;
     private List<Label> letterLabels = new ArrayList<>();
-    private int currentIndex;
+    // the level being typed; the typing rules live here, and this view only recolours what it reports
+    private TypingSession session;
     private KeyboardInterface keyboardInterface = Application.keyboardInterface;
-    private String typedString = "";
+    private ListenerRegistration keypressRegistration;
     private final int MAX_BOXES_PER_ROW = 16;
-    private Map<String, Character> keyMap = new HashMap<String, Character>();
     private ComputerVisionInterface computerVisionInterface;
 
     private AppSettingsService settingsService;
 
+    /**
+     * characters accepted as input in a level (alongside BACK_SPACE and space).
+     */
+    private static final boolean[] ACCEPTED_CHARS = new boolean[128];
+    static {
+        for (char c : "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789,./;'#[]-=`".toCharArray()) {
+            ACCEPTED_CHARS[c] = true;
+        }
+    }
+
     public void initialize() {
         // Get settings service
         settingsService = AppSettingsService.getInstance();
@@ -91,8 +103,8 @@ public class ModuleViewController implements KeypressListener {
         computerVisionInterface = new ComputerVisionInterface();
         computerVisionInterface.runCVProgramWithPopups();
 
-        // register as a keypress listener
-        keyboardInterface.addKeypressListener(this);
+        // register as a keypress listener, until this view's scene is replaced
+        keypressRegistration = keyboardInterface.addKeyTokenListener(this, closeButton);
 
         closeButton.setStyle(String.format("-fx-font-size: 20px; -fx-cursor: hand; -fx-text-fill: %s; -fx-padding: 10px 0px 0px 0px;", StyleConstants.GREY_COLOUR));
         StackPane.setMargin(closeButton, new Insets(40, 80, 0, 0));
@@ -113,19 +125,6 @@ public class ModuleViewController implements KeypressListener {
                 "-fx-cursor: hand;",
                 StyleConstants.BLUE_COLOUR
         ));
-
-        // populate special character key map
-        keyMap.put("COMMA", ',');
-        keyMap.put("PERIOD", '.');
-        keyMap.put("SLASH", '/');
-        keyMap.put("SEMICOLON", ';');
-        keyMap.put("QUOTE", '\'');
-        keyMap.put("HASHTAG", '#');
-        keyMap.put("OPEN_BRACKET", '[');
-        keyMap.put("CLOSE_BRACKET", ']');
-        keyMap.put("MINUS", '-');
-        keyMap.put("EQUALS", '=');
-
     }
 
     public void setKeyboardInterface(KeyboardInterface keyboardInterface){
@@ -155,8 +154,8 @@ public class ModuleViewController implements KeypressListener {
         // reset vars for next level
         charContainer.getChildren().clear();
         letterLabels.clear();
-        typedString = "";
-        currentIndex = 0;
+        session = new TypingSession(level.getTaskString(), null, TypingSession.Rules.LEVEL);
+        session.setListener(this);
 
         for (char c : level.getTaskString().toCharArray()) {
             StackPane letterBox = createLetterBox(c);
@@ -167,8 +166,8 @@ public class ModuleViewController implements KeypressListener {
         nextButton.setVisible(false);
 
         // vibrate first key
-        char key = level.getTaskString().toCharArray()[0];
-        keyboardInterface.sendHapticCommand(String.valueOf(key), 2000, 50);
+        char key = level.getTaskString().charAt(0);
+        keyboardInterface.sendHapticCommand(KeyToken.of(key).toString(), 2000, 50);
 
     }
 
@@ -202,78 +201,65 @@ public class ModuleViewController implements KeypressListener {
     }
 
     @Override
-    public void onKeypress(String key) {
-
-        // convert special characters to the character equivalent (so "OPEN_BRACKET" to '[')
-        key = (keyMap.containsKey(key)) ? convertKeyToChar(key) : key;
+    public void onKeyToken(KeyToken key, int modifiers, long timestampNanos) {
+        boolean isBackSpace = key == KeyToken.BACK_SPACE;
 
-        if (!(currentIndex == 0 && key.equals("BACK_SPACE"))) {
-            // ignore any key press except for alphanumeric or BACK_SPACE
-            if (!key.matches("[a-zA-Z0-9,./;'#\\[\\]\\-=`]") && !key.equals("BACK_SPACE") && !key.equals(" ")) {
-                return;
-            }
+        // ignore any key press except for alphanumeric, space or BACK_SPACE
+        int typed = key.getCodepoint();
+        boolean accepted = typed >= 0 && typed < ACCEPTED_CHARS.length && ACCEPTED_CHARS[typed];
+        if (!accepted && !isBackSpace && key != KeyToken.SPACE) {
+            return;
+        }
 
-            // check if BACK_SPACE , and that the level hasn't already been completed
-            if (key.equals("BACK_SPACE") && currentIndex > 0 && !level.isCompleted()) {
-                // move back a character, and turn the previous character grey
-                currentIndex--;
-                setLetterColour(currentIndex, StyleConstants.GREY_COLOUR);
-                typedString = typedString.substring(0, typedString.length() - 1);
+        // once the level is completed nothing can change it, and until then only BACK_SPACE works past the end
+        if (level.isCompleted() || (session.isAtEnd() && !isBackSpace)) {
+            return;
+        }
 
-                // vibrate the next character to be pressed
-                char keyToVibrate = level.getTaskString().charAt(currentIndex);
-                keyboardInterface.sendHapticCommand(String.valueOf(keyToVibrate), 500, 50);
+        session.keyPressed(key, timestampNanos);
+    }
 
-                return;
+    @Override
+    public void charTyped(int index, KeyToken key, boolean correct) {
+        if (correct) {
+            // the user typed the expected character.
+            setLetterColour(index, StyleConstants.BLUE_COLOUR);
+
+            if (index + 1 < letterLabels.size()) {
+                // vibrate the next key to be pressed
+                char keyToVibrate = level.getTaskString().charAt(index + 1);
+                keyboardInterface.sendHapticCommand(KeyToken.of(keyToVibrate).toString(), 500, 50);
             }
+        } else {
+            // the user typed the wrong character.
+            setLetterColour(index, StyleConstants.RED_COLOUR);
 
-            // check if all characters have already been typed
-            if (currentIndex < letterLabels.size()) {
-                char expectedChar = level.getTaskString().charAt(currentIndex);
-
-                // keep track of typed string
-                typedString += key;
-
-                if (key.equalsIgnoreCase(String.valueOf(expectedChar))) {
-                    // the user typed the expected character.
-                    setLetterColour(currentIndex, StyleConstants.BLUE_COLOUR);
-                    currentIndex++;
-
-                    if (currentIndex < letterLabels.size()) {
-                        // vibrate the next key to be pressed
-                        char keyToVibrate = level.getTaskString().charAt(currentIndex);
-                        keyboardInterface.sendHapticCommand(String.valueOf(keyToVibrate), 500, 50);
-                    }
-                } else {
-                    // the user typed the wrong character.
-                    setLetterColour(currentIndex, StyleConstants.RED_COLOUR);
-                    currentIndex++;
-
-                    // turn on LEDs
-                    keyboardInterface.activateLights(1000);
-
-                    // vibrate the BACK_SPACE key
-                    keyboardInterface.sendHapticCommand("BACK_SPACE", 500, 50);
-                }
-
-                if (currentIndex >= letterLabels.size()) {
-                    if (typedString.equalsIgnoreCase(level.getTaskString())) {
-                        // level has been completed
-                        level.setCompleted(true);
-                        System.out.println("COMPLETED LEVEL !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-
-                        // display the NEXT button
-                        nextButton.setVisible(true);
-                    } else {
-                        // user typed the whole string, but made a mistake.
-                    }
-                }
-            }
+            // turn on LEDs
+            keyboardInterface.activateLights(1000);
+
+            // vibrate the BACK_SPACE key
+            keyboardInterface.sendHapticCommand("BACK_SPACE", 500, 50);
         }
     }
 
-    private String convertKeyToChar(String key) {
-        return String.valueOf(keyMap.getOrDefault(key, null));
+    @Override
+    public void charErased(int index) {
+        // turn the character grey again, and vibrate it as the next to be pressed
+        setLetterColour(index, StyleConstants.GREY_COLOUR);
+        char keyToVibrate = level.getTaskString().charAt(index);
+        keyboardInterface.sendHapticCommand(KeyToken.of(keyToVibrate).toString(), 500, 50);
+    }
+
+    @Override
+    public void cursorMoved(int cursor) {
+        if (session.isAtEnd() && session.errorCount() == 0) {
+            // level has been completed
+            level.setCompleted(true);
+            System.out.println("COMPLETED LEVEL !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
+
+            // display the NEXT button
+            nextButton.setVisible(true);
+        }
     }
 
     private void setLetterColour(int index, String colour) {
@@ -315,7 +301,7 @@ public class ModuleViewController implements KeypressListener {
     public void onLearnButtonClick() {
 
         // remove this class as a keypress listener
-        keyboardInterface.removeKeypressListener(this);
+        keypressRegistration.remove();
 
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/touchtyped/learn-view.fxml"));
@@ -340,7 +326,7 @@ public class ModuleViewController implements KeypressListener {
     public void onGamesButtonClick() {
 
         // remove this class as a keypress listener
-        keyboardInterface.removeKeypressListener(this);
+        keypressRegistration.remove();
 
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/touchtyped/game-view.fxml"));
@@ -367,7 +353,7 @@ public class ModuleViewController implements KeypressListener {
     public void onBackButtonClick() {
 
         // remove this class as a keypress listener
-        keyboardInterface.removeKeypressListener(this);
+        keypressRegistration.remove();
 
         try {
             // update the module in the TypingPlan
@@ -395,7 +381,7 @@ public class ModuleViewController implements KeypressListener {
     public void onOptionsButtonClick() {
 
         // remove this class as a keypress listener
-        keyboardInterface.removeKeypressListener(this);
+        keypressRegistration.remove();
 
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/touchtyped/options-view.fxml"));
@@ -416,7 +402,7 @@ public class ModuleViewController implements KeypressListener {
     public void onClassroomButtonClick() {
 
         // remove this class as a keypress listener
-        keyboardInterface.removeKeypressListener(this);
+        keypressRegistration.remove();
 
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/touchtyped/classroom-view.fxml"));
@@ -26,6 +26,9 @@ public class OptionsViewController {
     @FXML
     private Slider fontSizeSlider;
     
+    @FXML
+    private CheckBox typingSoundsCheckBox;
+    
     @FXML
     private ImageView learnButton;
     
@@ -84,6 +87,9 @@ public class OptionsViewController {
             double savedFontSize = settingsService.getFontSize();
             fontSizeSlider.setValue(savedFontSize);
         }
+        
+        // Load typing sounds setting
+        typingSoundsCheckBox.setSelected(settingsService.isTypingSounds());
     }
     
     @FXML
@@ -147,6 +153,13 @@ public class OptionsViewController {
         settingsService.saveSettings();
     }
     
+    @FXML
+    public void onTypingSoundsChanged() {
+        // Takes effect from the next game
+        settingsService.setTypingSounds(typingSoundsCheckBox.isSelected());
+        settingsService.saveSettings();
+    }
+    
     @FXML
     public void onSaveButtonClick() {
         try {
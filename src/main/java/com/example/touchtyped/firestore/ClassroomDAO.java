@@ -1,7 +1,6 @@
 package com.example.touchtyped.firestore;
 
 import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
 
 import javax.swing.text.Document;
 import java.io.IOException;
@@ -10,17 +9,23 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 
+/**
+ * reads and writes classrooms, in whichever ClassroomRepository Storage chose (Firestore, unless configured otherwise).
+ * also keeps the logged in user's details in a file, so they stay logged in.
+ */
 public class ClassroomDAO {
 
-    private static final String CLASSROOM_COLLECTION = "classrooms";
     private static final String CACHE_FILE = "user_cache.txt";
 
     private ClassroomDAO() {}
 
+    private static ClassroomRepository repository() {
+        return Storage.classrooms();
+    }
+
     /**
      * create a classroom, but without supplying a list of students.
      * @param ownerID is the teacher's ID.
@@ -31,7 +36,8 @@ public class ClassroomDAO {
     }
 
     /**
-     * create a classroom. generateClassroomID() is used to generate a unique ID for the classroom.
+     * create a classroom, with a new ID from IdGenerator. the classroom is created with a write that fails if the ID
+     * is already taken (rather than checking first), so this is normally a single write.
      * @param ownerID is the teacher's ID.
      * @param classroomName is the classroom name.
      * @param studentUsernames (OPTIONAL) is the list of students in the classroom.
@@ -39,56 +45,23 @@ public class ClassroomDAO {
      */
     public static String createClassroom(String ownerID, String classroomName, List<String> studentUsernames) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            String classroomID = generateClassroomID();
-
-            Classroom classroom = new Classroom(ownerID, classroomID, classroomName, studentUsernames != null ? studentUsernames : new ArrayList<>());
-
-            DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
-            docRef.set(classroom).get();
-
-            return classroomID;
-
-        } catch (Exception e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Failed to create classroom.");
-        }
-    }
-
-    /**
-     * generate a classroomID, ensuring uniqueness.
-     * @return the generated classroomID
-     */
-    public static String generateClassroomID() {
-        try {
-            Firestore db = FirestoreClient.getFirestore();
-            SecureRandom random = new SecureRandom();
-            String char_pool = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-            int max_attempts = 100;
+            int max_attempts = 10;
 
             for (int i = 0; i < max_attempts; i++) {
-                // generate potential ID
-                StringBuilder sb = new StringBuilder("C");
-                for (int j = 0; j < 6; j++) {
-                    int index = random.nextInt(char_pool.length());
-                    sb.append(char_pool.charAt(index));
-                }
-                String id = sb.toString();
-
-                // check uniqueness
-                DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(id);
-                if (!docRef.get().get().exists()) {
-                    return id; // it is unique.
+                String classroomID = IdGenerator.classroomID();
+                Classroom classroom = new Classroom(ownerID, classroomID, classroomName, studentUsernames != null ? studentUsernames : new ArrayList<>());
+                if (repository().createClassroom(classroom)) {
+                    return classroomID;
                 }
+                // taken: try another ID.
             }
 
             throw new RuntimeException("DATABASE FAILURE. Failed to generate unique classroomID after "+max_attempts+" attempts.");
 
         } catch (Exception e) {
-            System.out.println("DATABASE FAILURE. Failed to generate classroom ID.");
-            return null;
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to create classroom.");
         }
-
     }
 
     /**
@@ -98,11 +71,9 @@ public class ClassroomDAO {
      */
     public static Classroom getClassroom(String classroomID) {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
-            DocumentSnapshot doc = docRef.get().get();
-            if (doc.exists()) {
-                return doc.toObject(Classroom.class);
+            Classroom classroom = repository().getClassroom(classroomID);
+            if (classroom != null) {
+                return classroom;
             } else {
                 System.out.println("Failed to get classroom: classroomID does not exist.");
                 return null;
@@ -116,12 +87,8 @@ public class ClassroomDAO {
 
     public static boolean replaceStudentList(String classroomID, List<String> studentList) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
-
             // Update the list of students
-            ApiFuture<WriteResult> result = docRef.update("studentUsernames", studentList);
-            result.get(); // Ensure the update is successful by waiting for the result.
+            repository().replaceStudentList(classroomID, studentList);
 
             return true;
         } catch (Exception e) {
@@ -133,9 +100,7 @@ public class ClassroomDAO {
 
     public static Boolean classroomExists(String classroomID) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
-            return docRef.get().get().exists();
+            return repository().getClassroom(classroomID) != null;
         } catch (Exception e) {
             Thread.currentThread().interrupt();
             System.out.println("DATABASE FAILURE. Failed to check if classroom exists.");
@@ -152,10 +117,7 @@ public class ClassroomDAO {
      */
     public static boolean addStudentToClassroom(String classroomID, String username) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
-            ApiFuture<WriteResult> result = docRef.update("studentUsernames", FieldValue.arrayUnion(username));
-            result.get();
+            repository().addStudent(classroomID, username);
             return true;
         } catch (Exception e) {
             Thread.currentThread().interrupt();
@@ -172,15 +134,12 @@ public class ClassroomDAO {
      */
     public static Boolean usernameExistsInClassroom(String classroomID, String username) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
-            DocumentSnapshot doc = docRef.get().get();
+            Classroom classroom = repository().getClassroom(classroomID);
 
-            if (!doc.exists()) {
+            if (classroom == null) {
                 return false;
             }
 
-            Classroom classroom = doc.toObject(Classroom.class);
             List<String> students = classroom.getStudentUsernames();
             return students != null && students.contains(username);
 
@@ -191,6 +150,48 @@ public class ClassroomDAO {
         }
     }
 
+    /*
+     * ROSTER CHANGES
+     * each of these changes a classroom's student list and its students' accounts in a single commit, so the two can
+     * never disagree, even if the app or the connection fails part way. they return straight away (or, with local
+     * storage, once done): wait on the future for the result.
+     */
+
+    /**
+     * rename a student. their account is moved to the new username (keeping its typing tests), and their username is
+     * replaced in the classroom's student list.
+     * @param classroomID is the student's classroom.
+     * @param oldUsername is the student's current username.
+     * @param newUsername is the username to give them.
+     * @return a future of whether they were renamed: false if they don't exist, or the new username is already taken.
+     */
+    public static ApiFuture<Boolean> renameStudent(String classroomID, String oldUsername, String newUsername) {
+        return repository().renameStudent(classroomID, oldUsername, newUsername);
+    }
+
+    /**
+     * remove a student: their account is deleted, and their username removed from the classroom's student list.
+     * @param classroomID is the student's classroom.
+     * @param username is the student's username.
+     * @return a future that completes once they are removed. their typing tests are deleted after that, in the
+     *         background.
+     */
+    public static ApiFuture<Void> removeStudent(String classroomID, String username) {
+        return repository().removeStudent(classroomID, username);
+    }
+
+    /**
+     * add new students to a classroom: their accounts are created, and their usernames added to the classroom's
+     * student list. either all of them are added or none are.
+     * @param classroomID is the classroom to add them to.
+     * @param students is the students' new accounts.
+     * @return a future of whether they were added: false if any of their usernames is already taken, or the classroom
+     *         doesn't exist.
+     */
+    public static ApiFuture<Boolean> addStudents(String classroomID, List<UserAccount> students) {
+        return repository().addStudents(classroomID, students);
+    }
+
     /**
      * does the same as the following saveUserCache function, but making the password argument optional.
      */
@@ -0,0 +1,48 @@
+package com.example.touchtyped.firestore;
+
+import com.google.api.core.ApiFuture;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * where classrooms are stored. implemented over Firestore by FirestoreClassroomRepository, and over a file on this
+ * computer by LocalClassroomRepository. ClassroomDAO uses whichever Storage chose.
+ *
+ * every method throws if the store couldn't be reached, and returns null or false if what it was asked for doesn't
+ * exist.
+ */
+public interface ClassroomRepository {
+
+    /**
+     * store a new classroom, under its classroomID.
+     * @return false if the ID is already taken
+     */
+    boolean createClassroom(Classroom classroom) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * @return the classroom, or null if it doesn't exist
+     */
+    Classroom getClassroom(String classroomID) throws InterruptedException, ExecutionException, IOException;
+
+    void replaceStudentList(String classroomID, List<String> studentList) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * add a username to the classroom's student list, if it isn't there already. doesn't create an account.
+     */
+    void addStudent(String classroomID, String username) throws InterruptedException, ExecutionException, IOException;
+
+    /*
+     * ROSTER CHANGES
+     * each of these changes a classroom's student list and its students' accounts together, so the two can never
+     * disagree. see ClassroomDAO for what they do.
+     */
+
+    ApiFuture<Boolean> renameStudent(String classroomID, String oldUsername, String newUsername);
+
+    ApiFuture<Void> removeStudent(String classroomID, String username);
+
+    ApiFuture<Boolean> addStudents(String classroomID, List<UserAccount> students);
+
+}
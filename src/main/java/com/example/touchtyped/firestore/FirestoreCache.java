@@ -0,0 +1,252 @@
+package com.example.touchtyped.firestore;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.ListenerRegistration;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * keeps the UserAccounts and Classrooms this session has read, so that reading one again (which every view does) is
+ * answered from memory instead of the database.
+ *
+ * a document is loaded by subscribing to it with a snapshot listener: the first snapshot is the read, and every change
+ * made to the document afterwards (by this app or any other) is pushed to the cache, so what it holds stays current.
+ * an entry that hasn't been refreshed for TTL_MILLIS is loaded again, in case its listener has quietly stopped. the
+ * DAOs invalidate a document when they write it, so their own writes are seen straight away.
+ *
+ * every entry holds a listener open, so there are at most MAX_DOCUMENTS of them (the least recently read is dropped to
+ * make room), and a background thread drops any that haven't been read for IDLE_MILLIS.
+ *
+ * the objects are shared by everyone who reads them: change one only just before writing it back.
+ */
+public final class FirestoreCache {
+
+    public static final long TTL_MILLIS = 10 * 60_000;
+    public static final long IDLE_MILLIS = 5 * 60_000;
+    public static final int MAX_DOCUMENTS = 200;
+    private static final long EXPIRY_INTERVAL_MILLIS = 60_000;
+    // how long to wait for a document's first snapshot before giving up
+    private static final long LOAD_TIMEOUT_SECONDS = 20;
+
+    private static FirestoreCache instance;
+
+    /**
+     * one document, decoded. value is null if the document doesn't exist.
+     */
+    private static final class Entry {
+        private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        private volatile Object value;
+        private volatile long refreshedAt;
+        private volatile long readAt;
+        private volatile ListenerRegistration listener;
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxDocuments;
+    private final LongSupplier clock;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+    /**
+     * constructor. nothing expires idle entries unless expire() is called.
+     * @param maxDocuments is the most documents to keep.
+     * @param clock gives the time in milliseconds.
+     */
+    FirestoreCache(int maxDocuments, LongSupplier clock) {
+        this.maxDocuments = maxDocuments;
+        this.clock = clock;
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized FirestoreCache getInstance() {
+        if (instance == null) {
+            instance = new FirestoreCache(MAX_DOCUMENTS, System::currentTimeMillis);
+            ScheduledThreadPoolExecutor expiry = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "firestore-cache-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            expiry.scheduleWithFixedDelay(instance::expire, EXPIRY_INTERVAL_MILLIS, EXPIRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return instance;
+    }
+
+    /**
+     * get a document, decoded, from memory if possible.
+     * @param document is the document to read.
+     * @param type is the class to decode it as (UserAccount or Classroom). a document must always be read as the same
+     *             class.
+     * @return the decoded document, or null if it doesn't exist.
+     * @throws ExecutionException if the database couldn't be read.
+     */
+    public <T> T get(DocumentReference document, Class<T> type) throws InterruptedException, ExecutionException {
+        String path = document.getPath();
+        long now = clock.getAsLong();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.loaded.isDone() && now - entry.refreshedAt > TTL_MILLIS) {
+            drop(path, entry);
+            entry = null;
+        }
+
+        if (entry != null && entry.loaded.isDone() && !entry.loaded.isCompletedExceptionally()) {
+            hits.incrementAndGet();
+            entry.readAt = now;
+            return type.cast(entry.value);
+        }
+
+        // one thread subscribes; any others asking for the same document at the same time wait for its first snapshot
+        Entry fresh = new Entry();
+        fresh.readAt = now;
+        entry = entries.putIfAbsent(path, fresh);
+        if (entry == null) {
+            misses.incrementAndGet();
+            entry = fresh;
+            subscribe(path, document, type, fresh);
+            evictLeastRecentlyRead();
+        } else {
+            hits.incrementAndGet();
+            entry.readAt = now;
+        }
+
+        try {
+            entry.loaded.get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            drop(path, entry);
+            throw new ExecutionException("Timed out reading " + path, e);
+        } catch (ExecutionException e) {
+            drop(path, entry);
+            throw e;
+        }
+        return type.cast(entry.value);
+    }
+
+    private <T> void subscribe(String path, DocumentReference document, Class<T> type, Entry entry) {
+        entry.listener = document.addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                // the subscription has ended: the next read starts a new one
+                System.out.println("DATABASE FAILURE. Stopped listening to " + path + ": " + error.getMessage());
+                entry.loaded.completeExceptionally(error);
+                drop(path, entry);
+                return;
+            }
+            entry.value = (snapshot != null && snapshot.exists()) ? snapshot.toObject(type) : null;
+            entry.refreshedAt = clock.getAsLong();
+            if (!entry.loaded.complete(null)) {
+                updates.incrementAndGet();
+            }
+        });
+        if (entries.get(path) != entry) {
+            // invalidated before the listener was stored, so drop() couldn't remove it
+            entry.listener.remove();
+        }
+    }
+
+    /**
+     * while there are too many documents, drop the one read longest ago. documents still loading are kept, as someone
+     * is waiting for them.
+     */
+    private void evictLeastRecentlyRead() {
+        while (entries.size() > maxDocuments) {
+            String oldestPath = null;
+            Entry oldest = null;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                Entry entry = candidate.getValue();
+                if (entry.loaded.isDone() && (oldest == null || entry.readAt < oldest.readAt)) {
+                    oldestPath = candidate.getKey();
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            drop(oldestPath, oldest);
+        }
+    }
+
+    /**
+     * drop every document that hasn't been read for IDLE_MILLIS, or refreshed for TTL_MILLIS, closing its listener.
+     * the singleton does this every minute.
+     */
+    void expire() {
+        long now = clock.getAsLong();
+        entries.forEach((path, entry) -> {
+            if (entry.loaded.isDone() && (now - entry.readAt > IDLE_MILLIS || now - entry.refreshedAt > TTL_MILLIS)) {
+                drop(path, entry);
+            }
+        });
+    }
+
+    /**
+     * forget a document, so the next read loads it from the database. called after writing it.
+     */
+    public void invalidate(DocumentReference document) {
+        String path = document.getPath();
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            drop(path, entry);
+        }
+    }
+
+    /**
+     * forget everything (e.g. when the user logs out).
+     */
+    public void invalidateAll() {
+        entries.forEach(this::drop);
+    }
+
+    private void drop(String path, Entry entry) {
+        // only if it is still the current entry: a newer one may already have replaced it
+        if (entries.remove(path, entry)) {
+            ListenerRegistration listener = entry.listener;
+            if (listener != null) {
+                listener.remove();
+            }
+        }
+    }
+
+    /**
+     * @return how many documents are held (each with an open listener)
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return how many reads were answered from memory
+     */
+    public long hitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return how many reads had to load the document from the database
+     */
+    public long missCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return how many changes to cached documents have been pushed by the database
+     */
+    public long updateCount() {
+        return updates.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FirestoreCache{" + size() + " documents, " + hits.get() + " hits, " + misses.get()
+                + " misses, " + updates.get() + " updates}";
+    }
+
+}
@@ -0,0 +1,289 @@
+package com.example.touchtyped.firestore;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * stores classrooms in Firestore, in the "classrooms" collection, under their classroomID. classrooms are read through
+ * FirestoreCache, so every write here invalidates the documents it changed.
+ *
+ * the roster changes run as one transaction or WriteBatch each. a student's typing tests are in a collection under
+ * their account, which can be too big to go in the same commit, so they are copied before and deleted after it: no
+ * account points at them at those times, so nothing can see them if that fails part way.
+ */
+public class FirestoreClassroomRepository implements ClassroomRepository {
+
+    private static final String CLASSROOM_COLLECTION = "classrooms";
+
+    @Override
+    public boolean createClassroom(Classroom classroom) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroom.getClassroomID());
+        try {
+            // fails, rather than replacing it, if the ID is taken
+            docRef.create(classroom).get();
+        } catch (ExecutionException e) {
+            if (FirestoreClient.alreadyExists(e)) {
+                return false;
+            }
+            throw e;
+        }
+        FirestoreCache.getInstance().invalidate(docRef);
+        return true;
+    }
+
+    @Override
+    public Classroom getClassroom(String classroomID) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        return FirestoreCache.getInstance().get(db.collection(CLASSROOM_COLLECTION).document(classroomID), Classroom.class);
+    }
+
+    @Override
+    public void replaceStudentList(String classroomID, List<String> studentList) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
+        docRef.update("studentUsernames", studentList).get();
+        FirestoreCache.getInstance().invalidate(docRef);
+    }
+
+    @Override
+    public void addStudent(String classroomID, String username) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference docRef = db.collection(CLASSROOM_COLLECTION).document(classroomID);
+        docRef.update("studentUsernames", FieldValue.arrayUnion(username)).get();
+        FirestoreCache.getInstance().invalidate(docRef);
+    }
+
+    @Override
+    public ApiFuture<Boolean> renameStudent(String classroomID, String oldUsername, String newUsername) {
+        Firestore db;
+        try {
+            db = FirestoreClient.getFirestore();
+        } catch (IOException e) {
+            return ApiFutures.immediateFailedFuture(e);
+        }
+        return new Rename(db, classroomID, oldUsername, newUsername).start();
+    }
+
+    /**
+     * renames a student. their typing tests are copied first, so the account never points at tests that aren't there;
+     * no account's summaries list the copies until the rename commits, so until then they are invisible. the
+     * transaction only commits if every test the account lists was copied: if one was added during the copy, the
+     * missing tests are copied and it tries again.
+     */
+    private static final class Rename {
+
+        private enum Outcome { RENAMED, NOT_POSSIBLE, TESTS_MISSING }
+
+        private static final int MAX_ATTEMPTS = 5;
+
+        private final Firestore db;
+        private final DocumentReference classroomDoc;
+        private final DocumentReference oldDoc;
+        private final DocumentReference newDoc;
+        private final String oldUsername;
+        private final String newUsername;
+        // the typing tests copied to the new account so far
+        private final List<String> copied = new ArrayList<>();
+
+        Rename(Firestore db, String classroomID, String oldUsername, String newUsername) {
+            this.db = db;
+            this.classroomDoc = db.collection(CLASSROOM_COLLECTION).document(classroomID);
+            this.oldDoc = FirestoreUserRepository.userDocument(db, classroomID, oldUsername);
+            this.newDoc = FirestoreUserRepository.userDocument(db, classroomID, newUsername);
+            this.oldUsername = oldUsername;
+            this.newUsername = newUsername;
+        }
+
+        ApiFuture<Boolean> start() {
+            // nothing is copied unless the new username is free, so another student's tests are never touched
+            return ApiFutures.transformAsync(db.getAll(oldDoc, newDoc), docs -> {
+                if (!docs.get(0).exists() || docs.get(1).exists()) {
+                    return ApiFutures.immediateFuture(false);
+                }
+                return copyAndCommit(1);
+            }, MoreExecutors.directExecutor());
+        }
+
+        private ApiFuture<Boolean> copyAndCommit(int attempt) {
+            // a failed copy deletes what it copied itself, but not what earlier attempts did
+            ApiFuture<List<String>> copy = deleteCopiesIfFailed(
+                    FirestoreUserRepository.copySessions(db, oldDoc, newDoc, new HashSet<>(copied)));
+            return ApiFutures.transformAsync(copy, ids -> {
+                copied.addAll(ids);
+                ApiFuture<Outcome> outcome = deleteCopiesIfFailed(db.runTransaction(this::commit));
+                return ApiFutures.transformAsync(outcome, result -> {
+                    invalidate(oldDoc, newDoc, classroomDoc);
+                    switch (result) {
+                        case RENAMED:
+                            // no account points at the old tests any more
+                            cleanUp(FirestoreUserRepository.deleteSessions(db, oldDoc), "typing tests left over from renaming " + oldUsername);
+                            return ApiFutures.immediateFuture(true);
+                        case NOT_POSSIBLE:
+                            deleteCopies();
+                            return ApiFutures.immediateFuture(false);
+                        default:
+                            if (attempt < MAX_ATTEMPTS) {
+                                return copyAndCommit(attempt + 1);
+                            }
+                            deleteCopies();
+                            return ApiFutures.immediateFailedFuture(new IllegalStateException(
+                                    "Typing tests kept being added to " + oldUsername + " while renaming them."));
+                    }
+                }, MoreExecutors.directExecutor());
+            }, MoreExecutors.directExecutor());
+        }
+
+        private Outcome commit(Transaction transaction) throws InterruptedException, ExecutionException {
+            List<DocumentSnapshot> docs = transaction.getAll(oldDoc, newDoc, classroomDoc).get();
+            if (!docs.get(0).exists() || docs.get(1).exists() || !docs.get(2).exists()) {
+                return Outcome.NOT_POSSIBLE;
+            }
+            UserAccount user = docs.get(0).toObject(UserAccount.class);
+            if (user.getSessionSummaries() != null) {
+                Set<String> copiedIDs = new HashSet<>(copied);
+                for (SessionSummary summary : user.getSessionSummaries()) {
+                    if (!copiedIDs.contains(summary.getSessionID())) {
+                        return Outcome.TESTS_MISSING;
+                    }
+                }
+            }
+            user.setUsername(newUsername);
+            List<String> students = docs.get(2).toObject(Classroom.class).getStudentUsernames();
+            students = (students == null) ? new ArrayList<>() : new ArrayList<>(students);
+            int index = students.indexOf(oldUsername);
+            if (index >= 0) {
+                students.set(index, newUsername);
+            } else {
+                students.add(newUsername);
+            }
+
+            transaction.create(newDoc, user);
+            transaction.delete(oldDoc);
+            transaction.update(classroomDoc, "studentUsernames", students);
+            return Outcome.RENAMED;
+        }
+
+        /**
+         * delete the copies, which no account points at, if the rename didn't happen.
+         */
+        private void deleteCopies() {
+            cleanUp(FirestoreUserRepository.deleteSessions(db, newDoc, new ArrayList<>(copied)),
+                    "typing tests copied while renaming " + oldUsername);
+        }
+
+        private <T> ApiFuture<T> deleteCopiesIfFailed(ApiFuture<T> future) {
+            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+                @Override
+                public void onFailure(Throwable t) {
+                    deleteCopies();
+                }
+
+                @Override
+                public void onSuccess(T result) { }
+            }, MoreExecutors.directExecutor());
+            return future;
+        }
+
+    }
+
+    @Override
+    public ApiFuture<Void> removeStudent(String classroomID, String username) {
+        Firestore db;
+        try {
+            db = FirestoreClient.getFirestore();
+        } catch (IOException e) {
+            return ApiFutures.immediateFailedFuture(e);
+        }
+        DocumentReference classroomDoc = db.collection(CLASSROOM_COLLECTION).document(classroomID);
+        DocumentReference userDoc = FirestoreUserRepository.userDocument(db, classroomID, username);
+
+        // nothing needs reading first, so one batch does it
+        WriteBatch batch = db.batch();
+        batch.delete(userDoc);
+        batch.update(classroomDoc, "studentUsernames", FieldValue.arrayRemove(username));
+        return ApiFutures.transform(batch.commit(), results -> {
+            invalidate(userDoc, classroomDoc);
+            // without an account, nothing can list them
+            cleanUp(FirestoreUserRepository.deleteSessions(db, userDoc), "typing tests of removed student " + username);
+            return null;
+        }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public ApiFuture<Boolean> addStudents(String classroomID, List<UserAccount> students) {
+        if (students.size() + 1 > FirestoreUserRepository.MAX_BATCH_WRITES) {
+            return ApiFutures.immediateFailedFuture(new IllegalArgumentException(
+                    "Can't add more than " + (FirestoreUserRepository.MAX_BATCH_WRITES - 1) + " students at once."));
+        }
+        Firestore db;
+        try {
+            db = FirestoreClient.getFirestore();
+        } catch (IOException e) {
+            return ApiFutures.immediateFailedFuture(e);
+        }
+        DocumentReference classroomDoc = db.collection(CLASSROOM_COLLECTION).document(classroomID);
+        DocumentReference[] docs = new DocumentReference[students.size() + 1];
+        Object[] usernames = new Object[students.size()];
+        docs[0] = classroomDoc;
+        for (int i = 0; i < students.size(); i++) {
+            usernames[i] = students.get(i).getUsername();
+            docs[i + 1] = FirestoreUserRepository.userDocument(db, classroomID, students.get(i).getUsername());
+        }
+
+        ApiFuture<Boolean> added = db.runTransaction(transaction -> {
+            // every document is read in one request
+            List<DocumentSnapshot> snapshots = transaction.getAll(docs).get();
+            if (!snapshots.get(0).exists()) {
+                return false;
+            }
+            for (DocumentSnapshot snapshot : snapshots.subList(1, snapshots.size())) {
+                if (snapshot.exists()) {
+                    return false;
+                }
+            }
+
+            for (int i = 0; i < students.size(); i++) {
+                transaction.create(docs[i + 1], students.get(i));
+            }
+            transaction.update(classroomDoc, "studentUsernames", FieldValue.arrayUnion(usernames));
+            return true;
+        });
+        return ApiFutures.transform(added, done -> {
+            invalidate(docs);
+            return done;
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static void invalidate(DocumentReference... docs) {
+        for (DocumentReference doc : docs) {
+            FirestoreCache.getInstance().invalidate(doc);
+        }
+    }
+
+    /**
+     * report if tidying up after a roster change fails. what is left behind can't be seen, so there is nothing to undo.
+     */
+    private static void cleanUp(ApiFuture<?> future, String description) {
+        ApiFutures.addCallback(future, new ApiFutureCallback<Object>() {
+            @Override
+            public void onFailure(Throwable t) {
+                System.out.println("DATABASE FAILURE. Failed to delete " + description + ".");
+            }
+
+            @Override
+            public void onSuccess(Object result) { }
+        }, MoreExecutors.directExecutor());
+    }
+
+}
@@ -1,23 +1,42 @@
 package com.example.touchtyped.firestore;
 
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
 
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * a class that gets interfaces with the database.
  */
 public class FirestoreClient {
 
+    // the service account key, looked for next to this class on the classpath if no file is given
+    public static final String CREDENTIALS_RESOURCE = "privatekey.json";
+
     private static Firestore db;
+    private static String credentialsPath;
+
+    /**
+     * read the credentials from a file instead of the classpath. call this before the database is first used.
+     * @param path is the path of the service account key, or null to use the one on the classpath.
+     */
+    public static synchronized void setCredentialsPath(String path) {
+        credentialsPath = path;
+    }
 
-    public static Firestore getFirestore() throws IOException {
+    public static synchronized Firestore getFirestore() throws IOException {
         if (db == null) {
             // load credentials from JSON file
-            GoogleCredentials credentials = GoogleCredentials.fromStream(new FileInputStream("src/main/resources/com/example/touchtyped/firestore/privatekey.json"));
+            GoogleCredentials credentials;
+            try (InputStream in = openCredentials()) {
+                credentials = GoogleCredentials.fromStream(in);
+            }
 
             FirestoreOptions options = FirestoreOptions.newBuilder().setCredentials(credentials).build();
 
@@ -25,4 +44,29 @@ public class FirestoreClient {
         }
         return db;
     }
+
+    private static InputStream openCredentials() throws IOException {
+        if (credentialsPath != null && !credentialsPath.isBlank()) {
+            return new FileInputStream(credentialsPath);
+        }
+        InputStream in = FirestoreClient.class.getResourceAsStream(CREDENTIALS_RESOURCE);
+        if (in == null) {
+            throw new FileNotFoundException("No Firestore credentials: set firestoreCredentials in app_settings.properties, "
+                    + "or GOOGLE_APPLICATION_CREDENTIALS, to the key file's path.");
+        }
+        return in;
+    }
+
+    /**
+     * @return whether a write failed because the document it was creating already exists.
+     */
+    static boolean alreadyExists(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException
+                    && ((ApiException) cause).getStatusCode().getCode() == StatusCode.Code.ALREADY_EXISTS) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
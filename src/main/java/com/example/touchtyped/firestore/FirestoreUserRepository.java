@@ -0,0 +1,277 @@
+package com.example.touchtyped.firestore;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import com.example.touchtyped.model.TypingPlan;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * stores user accounts in Firestore, in the "users" collection, under "classroomID,username".
+ *
+ * each typing test is stored as its own document in the account's "sessions" collection, and the account only keeps a
+ * SessionSummary of it, so loading an account doesn't download the user's whole history (and the account document
+ * doesn't grow towards Firestore's 1 MiB limit). accounts from before this kept every test in a "keyLogs" list; those
+ * are moved into the collection the first time a test is added or listed.
+ *
+ * accounts are read through FirestoreCache, so every write here invalidates the account it changed.
+ */
+public class FirestoreUserRepository implements UserRepository {
+
+    private static final String USER_COLLECTION = "users";
+    private static final String SESSION_COLLECTION = "sessions";
+    private static final String SUMMARIES_FIELD = "sessionSummaries";
+    private static final String LEGACY_KEY_LOGS_FIELD = "keyLogs";
+    // the most writes Firestore accepts in one batch
+    static final int MAX_BATCH_WRITES = 500;
+
+    /**
+     * @return the document a user's account is stored in.
+     */
+    static DocumentReference userDocument(Firestore db, String classroomID, String username) {
+        return db.collection(USER_COLLECTION).document(classroomID + "," + username);
+    }
+
+    @Override
+    public UserAccount getAccount(String classroomID, String username) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        return FirestoreCache.getInstance().get(userDocument(db, classroomID, username), UserAccount.class);
+    }
+
+    @Override
+    public UserAccount getAccountByID(String userID) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        Query query = db.collection(USER_COLLECTION).whereEqualTo("userID", userID).limit(1);
+        QuerySnapshot snapshot = query.get().get();
+        return snapshot.isEmpty() ? null : snapshot.getDocuments().get(0).toObject(UserAccount.class);
+    }
+
+    @Override
+    public boolean createAccount(String classroomID, UserAccount account) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userDoc = userDocument(db, classroomID, account.getUsername());
+        try {
+            // fails, rather than replacing it, if the account already exists
+            userDoc.create(account).get();
+        } catch (ExecutionException e) {
+            if (FirestoreClient.alreadyExists(e)) {
+                return false;
+            }
+            throw e;
+        }
+        FirestoreCache.getInstance().invalidate(userDoc);
+        return true;
+    }
+
+    @Override
+    public boolean deleteAccount(String classroomID, String username) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userDoc = userDocument(db, classroomID, username);
+        if (FirestoreCache.getInstance().get(userDoc, UserAccount.class) == null) {
+            return false;
+        }
+        // deleting a document leaves its collections behind, so the typing tests go first
+        deleteSessions(db, userDoc).get();
+        userDoc.delete().get();
+        FirestoreCache.getInstance().invalidate(userDoc);
+        return true;
+    }
+
+    @Override
+    public boolean updateDefaultTypingPlan(String classroomID, String username, TypingPlan plan) throws InterruptedException, ExecutionException, IOException {
+        return updateField(classroomID, username, "defaultTypingPlan", plan);
+    }
+
+    @Override
+    public boolean updatePersonalisedTypingPlan(String classroomID, String username, TypingPlan plan) throws InterruptedException, ExecutionException, IOException {
+        return updateField(classroomID, username, "personalisedTypingPlan", plan);
+    }
+
+    private boolean updateField(String classroomID, String username, String field, Object value) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userDoc = userDocument(db, classroomID, username);
+        if (FirestoreCache.getInstance().get(userDoc, UserAccount.class) == null) {
+            return false;
+        }
+        userDoc.update(field, value).get();
+        FirestoreCache.getInstance().invalidate(userDoc);
+        return true;
+    }
+
+    /**
+     * the key logs and their summary are written together, under an ID made from the key logs.
+     */
+    @Override
+    public boolean addSession(String classroomID, String username, KeyLogsStructure keyLogs) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userDoc = userDocument(db, classroomID, username);
+        UserAccount userAccount = FirestoreCache.getInstance().get(userDoc, UserAccount.class);
+        if (userAccount == null) {
+            return false;
+        }
+        migrateLegacyKeyLogs(db, userDoc, userAccount);
+
+        // store the key logs in their own document, and add their summary to the account
+        String sessionID = SessionSummary.sessionID(keyLogs);
+        WriteBatch batch = db.batch();
+        batch.set(userDoc.collection(SESSION_COLLECTION).document(sessionID), keyLogs);
+        batch.update(userDoc, SUMMARIES_FIELD, FieldValue.arrayUnion(new SessionSummary(sessionID, keyLogs)));
+        batch.commit().get();
+        FirestoreCache.getInstance().invalidate(userDoc);
+        return true;
+    }
+
+    /**
+     * move the typing tests an older account kept in its "keyLogs" list into its "sessions" collection. does nothing
+     * if it has none. if it is interrupted, running it again finishes the job without storing anything twice.
+     * @return the summaries of the tests moved.
+     */
+    private static List<SessionSummary> migrateLegacyKeyLogs(Firestore db, DocumentReference userDoc, UserAccount userAccount) throws InterruptedException, ExecutionException {
+        List<KeyLogsStructure> legacy = userAccount.getKeyLogs();
+        List<SessionSummary> moved = new ArrayList<>();
+        if (legacy == null || legacy.isEmpty()) {
+            return moved;
+        }
+        // each batch stores some tests, then adds their summaries to the account (and, in the last, deletes the list)
+        int perBatch = MAX_BATCH_WRITES - 1;
+        for (int start = 0; start < legacy.size(); start += perBatch) {
+            int end = Math.min(legacy.size(), start + perBatch);
+            WriteBatch batch = db.batch();
+            List<SessionSummary> summaries = new ArrayList<>();
+            for (KeyLogsStructure keyLogs : legacy.subList(start, end)) {
+                String sessionID = SessionSummary.sessionID(keyLogs);
+                batch.set(userDoc.collection(SESSION_COLLECTION).document(sessionID), keyLogs);
+                summaries.add(new SessionSummary(sessionID, keyLogs));
+            }
+            Map<String, Object> fields = new HashMap<>();
+            fields.put(SUMMARIES_FIELD, FieldValue.arrayUnion(summaries.toArray()));
+            if (end == legacy.size()) {
+                fields.put(LEGACY_KEY_LOGS_FIELD, FieldValue.delete());
+            }
+            batch.update(userDoc, fields);
+            batch.commit().get();
+            moved.addAll(summaries);
+        }
+        FirestoreCache.getInstance().invalidate(userDoc);
+        System.out.println("Moved " + moved.size() + " typing tests into the user's sessions collection.");
+        return moved;
+    }
+
+    @Override
+    public List<SessionSummary> getSessionSummaries(String classroomID, String username) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userDoc = userDocument(db, classroomID, username);
+        UserAccount userAccount = FirestoreCache.getInstance().get(userDoc, UserAccount.class);
+        if (userAccount == null) {
+            return null;
+        }
+
+        List<SessionSummary> summaries = new ArrayList<>();
+        if (userAccount.getSessionSummaries() != null) {
+            summaries.addAll(userAccount.getSessionSummaries());
+        }
+        summaries.addAll(migrateLegacyKeyLogs(db, userDoc, userAccount));
+        return summaries;
+    }
+
+    @Override
+    public KeyLogsStructure getSession(String classroomID, String username, String sessionID) throws InterruptedException, ExecutionException, IOException {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentSnapshot document = userDocument(db, classroomID, username)
+                .collection(SESSION_COLLECTION).document(sessionID).get().get();
+        return document.exists() ? document.toObject(KeyLogsStructure.class) : null;
+    }
+
+    /**
+     * delete every typing test in an account's sessions collection.
+     * @return a future that completes once they are deleted.
+     */
+    static ApiFuture<?> deleteSessions(Firestore db, DocumentReference userDoc) {
+        return ApiFutures.transformAsync(userDoc.collection(SESSION_COLLECTION).get(), snapshot ->
+                commitInBatches(db, snapshot.getDocuments(), (batch, session) -> batch.delete(session.getReference())),
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * delete the given typing tests from an account's sessions collection.
+     * @return a future that completes once they are deleted.
+     */
+    static ApiFuture<?> deleteSessions(Firestore db, DocumentReference userDoc, List<String> sessionIDs) {
+        CollectionReference sessions = userDoc.collection(SESSION_COLLECTION);
+        return commitInBatches(db, sessionIDs, (batch, sessionID) -> batch.delete(sessions.document(sessionID)));
+    }
+
+    /**
+     * copy the typing tests in one account's sessions collection to another's, except those listed in skip. each copy
+     * is created, rather than set, so a test already in the destination is never replaced: the batch it is in fails
+     * instead. if any batch fails, the copies the others made are deleted again before the returned future fails.
+     * @return the IDs of the copied sessions, once they are copied.
+     */
+    static ApiFuture<List<String>> copySessions(Firestore db, DocumentReference fromDoc, DocumentReference toDoc, Collection<String> skip) {
+        CollectionReference to = toDoc.collection(SESSION_COLLECTION);
+        return ApiFutures.transformAsync(fromDoc.collection(SESSION_COLLECTION).get(), snapshot -> {
+            List<QueryDocumentSnapshot> sessions = new ArrayList<>();
+            for (QueryDocumentSnapshot session : snapshot.getDocuments()) {
+                if (!skip.contains(session.getId())) {
+                    sessions.add(session);
+                }
+            }
+            List<ApiFuture<List<QueryDocumentSnapshot>>> batches = writeBatches(db, sessions,
+                    (batch, session) -> batch.create(to.document(session.getId()), session.getData()));
+
+            return ApiFutures.transformAsync(ApiFutures.successfulAsList(batches), written -> {
+                List<String> copied = new ArrayList<>();
+                for (List<QueryDocumentSnapshot> batch : written) {
+                    if (batch != null) {
+                        for (QueryDocumentSnapshot session : batch) {
+                            copied.add(session.getId());
+                        }
+                    }
+                }
+                if (copied.size() == sessions.size()) {
+                    return ApiFutures.immediateFuture(copied);
+                }
+                // a batch failed: delete what the others copied, then fail with its error
+                return ApiFutures.transformAsync(deleteSessions(db, toDoc, copied),
+                        deleted -> ApiFutures.transform(ApiFutures.allAsList(batches), all -> copied, MoreExecutors.directExecutor()),
+                        MoreExecutors.directExecutor());
+            }, MoreExecutors.directExecutor());
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * write a document per item, in as few batches as Firestore allows, all sent at once.
+     * @return a future that completes once every batch has been committed.
+     */
+    private static <T> ApiFuture<?> commitInBatches(Firestore db, List<T> items, BiConsumer<WriteBatch, T> write) {
+        return ApiFutures.allAsList(writeBatches(db, items, write));
+    }
+
+    /**
+     * write a document per item, in as few batches as Firestore allows, all sent at once.
+     * @return a future for each batch, of the items written in it, which completes once that batch has been committed.
+     */
+    private static <T> List<ApiFuture<List<T>>> writeBatches(Firestore db, List<T> items, BiConsumer<WriteBatch, T> write) {
+        List<ApiFuture<List<T>>> batches = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += MAX_BATCH_WRITES) {
+            List<T> written = items.subList(start, Math.min(items.size(), start + MAX_BATCH_WRITES));
+            WriteBatch batch = db.batch();
+            for (T item : written) {
+                write.accept(batch, item);
+            }
+            batches.add(ApiFutures.transform(batch.commit(), results -> written, MoreExecutors.directExecutor()));
+        }
+        return batches;
+    }
+
+}
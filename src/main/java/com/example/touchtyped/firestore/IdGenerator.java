@@ -0,0 +1,67 @@
+package com.example.touchtyped.firestore;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * makes user and classroom IDs without asking the database whether they are taken.
+ *
+ * IDs are written in Crockford's base32, which leaves out I, L, O and U, so an ID read off a screen can't be typed
+ * wrongly by mistaking one character for another.
+ *
+ * a user ID is the time it was made followed by random characters, so two IDs can only be the same if they were made
+ * in the same millisecond and drew the same 30 random bits. a classroom ID has to be short enough for students to type,
+ * so it is only random: ClassroomDAO creates the classroom with a write that fails if the ID is taken, and tries again
+ * with a new one.
+ */
+public final class IdGenerator {
+
+    static final String ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+    // 8 characters hold 40 bits of milliseconds since 2024: enough until 2058
+    private static final long EPOCH_MILLIS = 1_704_067_200_000L;
+    private static final int TIME_CHARS = 8;
+    private static final int USER_RANDOM_CHARS = 6;
+    private static final int CLASSROOM_CHARS = 6;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private IdGenerator() {}
+
+    /**
+     * @return a new user ID, e.g. "U01HQ3X5K7M2N8P".
+     */
+    public static String userID() {
+        return userID(System.currentTimeMillis(), RANDOM);
+    }
+
+    static String userID(long millis, Random random) {
+        StringBuilder sb = new StringBuilder("U");
+        appendBase32(sb, millis - EPOCH_MILLIS, TIME_CHARS);
+        appendBase32(sb, random.nextLong(), USER_RANDOM_CHARS);
+        return sb.toString();
+    }
+
+    /**
+     * @return a new classroom ID, e.g. "C7XK2MQ". it may already be taken: see ClassroomDAO.createClassroom.
+     */
+    public static String classroomID() {
+        return classroomID(RANDOM);
+    }
+
+    static String classroomID(Random random) {
+        StringBuilder sb = new StringBuilder("C");
+        appendBase32(sb, random.nextLong(), CLASSROOM_CHARS);
+        return sb.toString();
+    }
+
+    /**
+     * append the lowest (5 * chars) bits of value, most significant first.
+     */
+    private static void appendBase32(StringBuilder sb, long value, int chars) {
+        for (int i = chars - 1; i >= 0; i--) {
+            sb.append(ALPHABET.charAt((int) (value >>> (5 * i)) & 31));
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.example.touchtyped.firestore;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * stores classrooms in a LocalStore, under "classrooms/classroomID". a roster change writes the classroom and its
+ * students' accounts (through LocalUserRepository) in one batch, while holding the store's lock, so it is as atomic as
+ * a Firestore transaction. it is done before the future is returned.
+ */
+public class LocalClassroomRepository implements ClassroomRepository {
+
+    private final LocalStore store;
+    private final LocalUserRepository users;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public LocalClassroomRepository(LocalStore store, LocalUserRepository users) {
+        this.store = store;
+        this.users = users;
+    }
+
+    private static String classroomKey(String classroomID) {
+        return "classrooms/" + classroomID;
+    }
+
+    @Override
+    public boolean createClassroom(Classroom classroom) throws IOException {
+        synchronized (store) {
+            String key = classroomKey(classroom.getClassroomID());
+            if (store.contains(key)) {
+                return false;
+            }
+            store.batch().put(key, mapper.valueToTree(classroom)).commit();
+            return true;
+        }
+    }
+
+    @Override
+    public Classroom getClassroom(String classroomID) throws IOException {
+        JsonNode node = store.get(classroomKey(classroomID));
+        return node != null ? mapper.treeToValue(node, Classroom.class) : null;
+    }
+
+    /**
+     * @return the classroom, which must exist.
+     */
+    private Classroom existingClassroom(String classroomID) throws IOException {
+        Classroom classroom = getClassroom(classroomID);
+        if (classroom == null) {
+            throw new IOException("Classroom " + classroomID + " doesn't exist.");
+        }
+        if (classroom.getStudentUsernames() == null) {
+            classroom.setStudentUsernames(new ArrayList<>());
+        }
+        return classroom;
+    }
+
+    @Override
+    public void replaceStudentList(String classroomID, List<String> studentList) throws IOException {
+        synchronized (store) {
+            Classroom classroom = existingClassroom(classroomID);
+            classroom.setStudentUsernames(studentList);
+            store.batch().put(classroomKey(classroomID), mapper.valueToTree(classroom)).commit();
+        }
+    }
+
+    @Override
+    public void addStudent(String classroomID, String username) throws IOException {
+        synchronized (store) {
+            Classroom classroom = existingClassroom(classroomID);
+            if (!classroom.getStudentUsernames().contains(username)) {
+                classroom.getStudentUsernames().add(username);
+                store.batch().put(classroomKey(classroomID), mapper.valueToTree(classroom)).commit();
+            }
+        }
+    }
+
+    @Override
+    public ApiFuture<Boolean> renameStudent(String classroomID, String oldUsername, String newUsername) {
+        try {
+            synchronized (store) {
+                UserAccount user = users.getAccount(classroomID, oldUsername);
+                Classroom classroom = getClassroom(classroomID);
+                if (user == null || classroom == null || users.getAccount(classroomID, newUsername) != null) {
+                    return ApiFutures.immediateFuture(false);
+                }
+                List<String> students = classroom.getStudentUsernames() != null
+                        ? new ArrayList<>(classroom.getStudentUsernames()) : new ArrayList<>();
+                int index = students.indexOf(oldUsername);
+                if (index >= 0) {
+                    students.set(index, newUsername);
+                } else {
+                    students.add(newUsername);
+                }
+                classroom.setStudentUsernames(students);
+
+                LocalStore.Batch batch = store.batch();
+                users.copySessions(batch, LocalUserRepository.userKey(classroomID, oldUsername),
+                        LocalUserRepository.userKey(classroomID, newUsername));
+                users.deleteAccount(batch, classroomID, user);
+                user.setUsername(newUsername);
+                users.putAccount(batch, classroomID, user);
+                batch.put(classroomKey(classroomID), mapper.valueToTree(classroom));
+                batch.commit();
+                return ApiFutures.immediateFuture(true);
+            }
+        } catch (IOException e) {
+            return ApiFutures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ApiFuture<Void> removeStudent(String classroomID, String username) {
+        try {
+            synchronized (store) {
+                Classroom classroom = existingClassroom(classroomID);
+                classroom.getStudentUsernames().remove(username);
+
+                LocalStore.Batch batch = store.batch();
+                UserAccount user = users.getAccount(classroomID, username);
+                if (user != null) {
+                    users.deleteAccount(batch, classroomID, user);
+                }
+                batch.put(classroomKey(classroomID), mapper.valueToTree(classroom));
+                batch.commit();
+                return ApiFutures.immediateFuture(null);
+            }
+        } catch (IOException e) {
+            return ApiFutures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ApiFuture<Boolean> addStudents(String classroomID, List<UserAccount> students) {
+        try {
+            synchronized (store) {
+                Classroom classroom = getClassroom(classroomID);
+                if (classroom == null) {
+                    return ApiFutures.immediateFuture(false);
+                }
+                for (UserAccount student : students) {
+                    if (store.contains(LocalUserRepository.userKey(classroomID, student.getUsername()))) {
+                        return ApiFutures.immediateFuture(false);
+                    }
+                }
+                List<String> usernames = classroom.getStudentUsernames() != null
+                        ? new ArrayList<>(classroom.getStudentUsernames()) : new ArrayList<>();
+
+                LocalStore.Batch batch = store.batch();
+                for (UserAccount student : students) {
+                    users.putAccount(batch, classroomID, student);
+                    if (!usernames.contains(student.getUsername())) {
+                        usernames.add(student.getUsername());
+                    }
+                }
+                classroom.setStudentUsernames(usernames);
+                batch.put(classroomKey(classroomID), mapper.valueToTree(classroom));
+                batch.commit();
+                return ApiFutures.immediateFuture(true);
+            }
+        } catch (IOException e) {
+            return ApiFutures.immediateFailedFuture(e);
+        }
+    }
+
+}
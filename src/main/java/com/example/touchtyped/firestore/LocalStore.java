@@ -0,0 +1,345 @@
+package com.example.touchtyped.firestore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * a small database kept in one file on this computer, used instead of Firestore when running without the cloud (see
+ * Storage). it stores JSON documents under keys that look like Firestore paths, e.g. "users/C7XK2MQ,amy".
+ *
+ * the file is an append-only log: every change is added to the end, and nothing is ever written over. the latest
+ * position of each key in the file is kept in memory, so a read is one seek, and opening the store reads only the keys,
+ * not the documents. changes are written in batches, each ended by a commit record and flushed to disk before
+ * commit() returns: when the store is opened, a batch without its commit record (because the app stopped while writing
+ * it) is thrown away, so a batch is either stored completely or not at all. once most of the file is old versions of
+ * documents, it is compacted (rewritten with only the latest ones).
+ *
+ * all methods are synchronized on the store, so to read something and then write depending on it without another
+ * thread changing it in between, hold the store's lock: synchronized (store) { ... }.
+ */
+public final class LocalStore implements Closeable {
+
+    public static final String LOG_FILE = "store.log";
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte COMMIT = 3;
+    // a record is its length (4 bytes), then its type (1 byte), then its data
+    private static final int HEADER_BYTES = 5;
+    // don't bother compacting a file smaller than this
+    private static final long MIN_COMPACT_BYTES = 1 << 20;
+
+    private final Path file;
+    // wraps every channel the store opens. only tests change it, to make writes fail
+    private final UnaryOperator<FileChannel> channels;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // key -> position of its latest PUT record. sorted, so the keys under a path are next to each other
+    private final TreeMap<String, Long> index = new TreeMap<>();
+    private FileChannel log;
+    // bytes of the file taken up by the latest version of each document
+    private long liveBytes = 0;
+    // set if a failed batch couldn't be cut off the end of the file, after which nothing more can be written
+    private IOException broken;
+
+    /**
+     * a set of changes, stored together by commit(), or not at all.
+     */
+    public final class Batch {
+        // in the order they were made: a later change to the same key replaces an earlier one
+        private final Map<String, JsonNode> changes = new LinkedHashMap<>();
+
+        private Batch() { }
+
+        public Batch put(String key, JsonNode value) {
+            changes.remove(key);
+            changes.put(key, value);
+            return this;
+        }
+
+        public Batch delete(String key) {
+            changes.remove(key);
+            changes.put(key, null);
+            return this;
+        }
+
+        /**
+         * write the changes to disk. once this returns they are stored, even if the app stops straight afterwards. if
+         * it throws, none of them are.
+         */
+        public void commit() throws IOException {
+            LocalStore.this.commit(changes);
+        }
+    }
+
+    /**
+     * open the store in a directory, creating it if it doesn't exist.
+     */
+    public LocalStore(Path directory) throws IOException {
+        this(directory, UnaryOperator.identity());
+    }
+
+    /**
+     * constructor for tests, which can wrap the file's channel.
+     */
+    LocalStore(Path directory, UnaryOperator<FileChannel> channels) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(LOG_FILE);
+        this.channels = channels;
+        this.log = channels.apply(
+                FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        load();
+        compactIfWasteful();
+    }
+
+    /**
+     * @return a new, empty batch of changes.
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * @return the document stored under key, or null if there isn't one.
+     */
+    public synchronized JsonNode get(String key) throws IOException {
+        Long position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        ByteBuffer header = read(position, HEADER_BYTES);
+        ByteBuffer record = read(position + HEADER_BYTES, header.getInt() - 1);
+        int keyLength = record.getInt();
+        int valueStart = record.position() + keyLength;
+        return mapper.readTree(record.array(), valueStart, record.limit() - valueStart);
+    }
+
+    /**
+     * @return whether there is a document under key.
+     */
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * @return every key that starts with prefix, in order.
+     */
+    public synchronized List<String> keys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for (String key : index.tailMap(prefix).keySet()) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * @return how many documents are stored.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private synchronized void commit(Map<String, JsonNode> changes) throws IOException {
+        if (broken != null) {
+            throw new IOException("Store can't be written to after an earlier failure", broken);
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        long position = log.size();
+        Map<String, Long> written = new LinkedHashMap<>();
+        List<ByteBuffer> records = new ArrayList<>();
+        long length = 0;
+        for (Map.Entry<String, JsonNode> change : changes.entrySet()) {
+            ByteBuffer record = change.getValue() != null
+                    ? record(PUT, change.getKey(), mapper.writeValueAsBytes(change.getValue()))
+                    : record(DELETE, change.getKey(), new byte[0]);
+            written.put(change.getKey(), change.getValue() != null ? position + length : null);
+            length += record.remaining();
+            records.add(record);
+        }
+        records.add(record(COMMIT, null, null));
+
+        // one write, one flush
+        ByteBuffer[] buffers = records.toArray(new ByteBuffer[0]);
+        long end = position + length + HEADER_BYTES;
+        try {
+            log.position(position);
+            while (log.position() < end) {
+                log.write(buffers);
+            }
+            log.force(false);
+        } catch (IOException | RuntimeException e) {
+            // whatever got written must go: left there, the next batch's commit record would bring it back when the
+            // store is next opened, or half a record would hide every batch after it
+            try {
+                log.truncate(position);
+                log.force(false);
+            } catch (IOException | RuntimeException t) {
+                broken = new IOException("Failed to discard a failed batch from " + file, t);
+                e.addSuppressed(t);
+            }
+            throw e;
+        }
+
+        for (Map.Entry<String, Long> entry : written.entrySet()) {
+            apply(entry.getKey(), entry.getValue());
+        }
+        compactIfWasteful();
+    }
+
+    /**
+     * point key at the record at position (or remove it, if position is null), keeping count of the live bytes.
+     */
+    private void apply(String key, Long position) throws IOException {
+        Long old = position != null ? index.put(key, position) : index.remove(key);
+        if (old != null) {
+            liveBytes -= recordLength(old);
+        }
+        if (position != null) {
+            liveBytes += recordLength(position);
+        }
+    }
+
+    private long recordLength(long position) throws IOException {
+        return HEADER_BYTES - 1 + read(position, 4).getInt();
+    }
+
+    /**
+     * build the index from the file. anything after the last commit record is cut off.
+     */
+    private void load() throws IOException {
+        long size = log.size();
+        long position = 0;
+        long committed = 0;
+        Map<String, Long> pending = new LinkedHashMap<>();
+        try {
+            while (position + HEADER_BYTES <= size) {
+                ByteBuffer header = read(position, HEADER_BYTES);
+                int length = header.getInt();
+                byte type = header.get();
+                if (length < 1 || position + 4 + length > size || type < PUT || type > COMMIT) {
+                    break;
+                }
+                if (type == COMMIT) {
+                    for (Map.Entry<String, Long> entry : pending.entrySet()) {
+                        apply(entry.getKey(), entry.getValue());
+                    }
+                    pending.clear();
+                    committed = position + 4 + length;
+                } else {
+                    int keyLength = read(position + HEADER_BYTES, 4).getInt();
+                    if (keyLength < 0 || keyLength > length - 5) {
+                        break;
+                    }
+                    String key = StandardCharsets.UTF_8.decode(read(position + HEADER_BYTES + 4, keyLength)).toString();
+                    pending.remove(key);
+                    pending.put(key, type == PUT ? position : null);
+                }
+                position += 4 + length;
+            }
+        } catch (EOFException e) {
+            // cut off part way through a record
+        }
+        if (committed < size) {
+            System.err.println("STORE ERROR: Discarding " + (size - committed) + " bytes of unfinished changes.");
+            log.truncate(committed);
+            log.force(false);
+        }
+    }
+
+    /**
+     * compact the file if most of it is old versions. a failure is only reported: the changes are already stored, so
+     * it mustn't look like committing (or opening) failed.
+     */
+    private void compactIfWasteful() {
+        try {
+            long size = log.size();
+            if (size > MIN_COMPACT_BYTES && size - liveBytes > liveBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("STORE ERROR: Failed to compact " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * rewrite the file with only the latest version of each document.
+     */
+    public synchronized void compact() throws IOException {
+        Path temp = file.resolveSibling(LOG_FILE + ".tmp");
+        TreeMap<String, Long> moved = new TreeMap<>();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                long length = recordLength(entry.getValue());
+                moved.put(entry.getKey(), out.position());
+                long copied = 0;
+                while (copied < length) {
+                    copied += log.transferTo(entry.getValue() + copied, length - copied, out);
+                }
+            }
+            ByteBuffer commit = record(COMMIT, null, null);
+            while (commit.hasRemaining()) {
+                out.write(commit);
+            }
+            out.force(false);
+        }
+        // a crash before this leaves the old file as it was
+        log.close();
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // if the move failed, this reopens the old file, which the index still describes
+            log = channels.apply(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+        index.clear();
+        index.putAll(moved);
+        liveBytes = log.size() - HEADER_BYTES;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer record(byte type, String key, byte[] value) {
+        if (type == COMMIT) {
+            return ByteBuffer.allocate(HEADER_BYTES).putInt(1).put(type).flip();
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + 4 + keyBytes.length + value.length);
+        record.putInt(1 + 4 + keyBytes.length + value.length).put(type).putInt(keyBytes.length).put(keyBytes).put(value);
+        return record.flip();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+}
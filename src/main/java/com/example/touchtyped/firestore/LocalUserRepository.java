@@ -0,0 +1,196 @@
+package com.example.touchtyped.firestore;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import com.example.touchtyped.model.TypingPlan;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * stores user accounts in a LocalStore, under the same paths as in Firestore: "users/classroomID,username", with each
+ * typing test under ".../sessions/sessionID". every change is one batch, so it is stored completely or not at all.
+ *
+ * Firestore can find an account by any field; here "userIDs/userID" holds the path of the account with that userID.
+ */
+public class LocalUserRepository implements UserRepository {
+
+    private final LocalStore store;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public LocalUserRepository(LocalStore store) {
+        this.store = store;
+    }
+
+    static String userKey(String classroomID, String username) {
+        return "users/" + classroomID + "," + username;
+    }
+
+    private static String sessionKey(String userKey, String sessionID) {
+        return userKey + "/sessions/" + sessionID;
+    }
+
+    private static String userIDKey(String userID) {
+        return "userIDs/" + userID;
+    }
+
+    private UserAccount read(String key) throws IOException {
+        JsonNode node = store.get(key);
+        return node != null ? mapper.treeToValue(node, UserAccount.class) : null;
+    }
+
+    @Override
+    public UserAccount getAccount(String classroomID, String username) throws IOException {
+        return read(userKey(classroomID, username));
+    }
+
+    @Override
+    public UserAccount getAccountByID(String userID) throws IOException {
+        synchronized (store) {
+            JsonNode key = store.get(userIDKey(userID));
+            return key != null ? read(key.asText()) : null;
+        }
+    }
+
+    @Override
+    public boolean createAccount(String classroomID, UserAccount account) throws IOException {
+        synchronized (store) {
+            if (store.contains(userKey(classroomID, account.getUsername()))) {
+                return false;
+            }
+            LocalStore.Batch batch = store.batch();
+            putAccount(batch, classroomID, account);
+            batch.commit();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean deleteAccount(String classroomID, String username) throws IOException {
+        synchronized (store) {
+            UserAccount account = getAccount(classroomID, username);
+            if (account == null) {
+                return false;
+            }
+            LocalStore.Batch batch = store.batch();
+            deleteAccount(batch, classroomID, account);
+            batch.commit();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean updateDefaultTypingPlan(String classroomID, String username, TypingPlan plan) throws IOException {
+        synchronized (store) {
+            UserAccount account = getAccount(classroomID, username);
+            if (account == null) {
+                return false;
+            }
+            account.setDefaultTypingPlan(plan);
+            store.batch().put(userKey(classroomID, username), mapper.valueToTree(account)).commit();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean updatePersonalisedTypingPlan(String classroomID, String username, TypingPlan plan) throws IOException {
+        synchronized (store) {
+            UserAccount account = getAccount(classroomID, username);
+            if (account == null) {
+                return false;
+            }
+            account.setPersonalisedTypingPlan(plan);
+            store.batch().put(userKey(classroomID, username), mapper.valueToTree(account)).commit();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean addSession(String classroomID, String username, KeyLogsStructure keyLogs) throws IOException {
+        synchronized (store) {
+            UserAccount account = getAccount(classroomID, username);
+            if (account == null) {
+                return false;
+            }
+            String sessionID = SessionSummary.sessionID(keyLogs);
+            List<SessionSummary> summaries = new ArrayList<>();
+            if (account.getSessionSummaries() != null) {
+                for (SessionSummary summary : account.getSessionSummaries()) {
+                    if (!summary.getSessionID().equals(sessionID)) {
+                        summaries.add(summary);
+                    }
+                }
+            }
+            summaries.add(new SessionSummary(sessionID, keyLogs));
+            account.setSessionSummaries(summaries);
+
+            String key = userKey(classroomID, username);
+            store.batch()
+                    .put(sessionKey(key, sessionID), mapper.valueToTree(keyLogs))
+                    .put(key, mapper.valueToTree(account))
+                    .commit();
+            return true;
+        }
+    }
+
+    @Override
+    public List<SessionSummary> getSessionSummaries(String classroomID, String username) throws IOException {
+        UserAccount account = getAccount(classroomID, username);
+        if (account == null) {
+            return null;
+        }
+        return account.getSessionSummaries() != null ? account.getSessionSummaries() : new ArrayList<>();
+    }
+
+    @Override
+    public KeyLogsStructure getSession(String classroomID, String username, String sessionID) throws IOException {
+        JsonNode node = store.get(sessionKey(userKey(classroomID, username), sessionID));
+        return node != null ? mapper.treeToValue(node, KeyLogsStructure.class) : null;
+    }
+
+    /*
+     * for LocalClassroomRepository, which makes these changes in the same batch as a change to a classroom. the caller
+     * must hold the store's lock.
+     */
+
+    /**
+     * store an account (new, or replacing one), and point its userID at it.
+     */
+    void putAccount(LocalStore.Batch batch, String classroomID, UserAccount account) {
+        String key = userKey(classroomID, account.getUsername());
+        batch.put(key, mapper.valueToTree(account));
+        if (account.getUserID() != null) {
+            batch.put(userIDKey(account.getUserID()), TextNode.valueOf(key));
+        }
+    }
+
+    /**
+     * delete an account and its typing tests.
+     */
+    void deleteAccount(LocalStore.Batch batch, String classroomID, UserAccount account) {
+        String key = userKey(classroomID, account.getUsername());
+        for (String session : store.keys(key + "/sessions/")) {
+            batch.delete(session);
+        }
+        batch.delete(key);
+        if (account.getUserID() != null) {
+            batch.delete(userIDKey(account.getUserID()));
+        }
+    }
+
+    /**
+     * copy every typing test under one account to another.
+     */
+    void copySessions(LocalStore.Batch batch, String fromKey, String toKey) throws IOException {
+        String prefix = fromKey + "/sessions/";
+        for (String session : store.keys(prefix)) {
+            batch.put(sessionKey(toKey, session.substring(prefix.length())), store.get(session));
+        }
+    }
+
+}
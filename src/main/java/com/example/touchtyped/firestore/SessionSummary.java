@@ -0,0 +1,73 @@
+package com.example.touchtyped.firestore;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+
+/**
+ * the few numbers shown about a typing test in a list of them. a user's summaries are kept on their account, so the list
+ * can be shown without downloading any key logs; the full KeyLogsStructure is in the account's "sessions" collection,
+ * under sessionID.
+ */
+public class SessionSummary {
+    private String sessionID;
+    private long timeCreated;
+    private int wpm;
+    private double accuracy;
+
+    public SessionSummary() {}
+
+    /**
+     * constructor
+     * @param sessionID is the ID the key logs are stored under
+     * @param keyLogs is the typing test's key logs
+     */
+    public SessionSummary(String sessionID, KeyLogsStructure keyLogs) {
+        this.sessionID = sessionID;
+        this.timeCreated = keyLogs.getTimeCreated();
+        this.wpm = keyLogs.getWpm();
+        int total = keyLogs.getCorrectKeystrokes() + keyLogs.getIncorrectKeystrokes();
+        this.accuracy = total > 0 ? keyLogs.getCorrectKeystrokes() * 100.0 / total : 0.0;
+    }
+
+    /**
+     * @return the ID a typing test is stored under. the same key logs always get the same ID.
+     */
+    static String sessionID(KeyLogsStructure keyLogs) {
+        return String.valueOf(keyLogs.getTimeCreated());
+    }
+
+    // GETTERS AND SETTERS
+    public String getSessionID() {
+        return sessionID;
+    }
+
+    public void setSessionID(String sessionID) {
+        this.sessionID = sessionID;
+    }
+
+    public long getTimeCreated() {
+        return timeCreated;
+    }
+
+    public void setTimeCreated(long timeCreated) {
+        this.timeCreated = timeCreated;
+    }
+
+    public int getWpm() {
+        return wpm;
+    }
+
+    public void setWpm(int wpm) {
+        this.wpm = wpm;
+    }
+
+    /**
+     * @return the percentage of keystrokes that were correct
+     */
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public void setAccuracy(double accuracy) {
+        this.accuracy = accuracy;
+    }
+}
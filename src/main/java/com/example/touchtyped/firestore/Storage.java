@@ -0,0 +1,63 @@
+package com.example.touchtyped.firestore;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * chooses where UserDAO and ClassroomDAO store accounts and classrooms: in Firestore (the default), or in a LocalStore
+ * on this computer, so the app can run without the cloud (e.g. in an offline lab). set "storage=local" in
+ * app_settings.properties to use the local store. nothing connects to Firestore unless it is used.
+ */
+public final class Storage {
+
+    public static final String FIRESTORE = "firestore";
+    public static final String LOCAL = "local";
+    public static final String LOCAL_STORE_DIR = "local_store";
+
+    private static UserRepository users;
+    private static ClassroomRepository classrooms;
+
+    private Storage() {}
+
+    /**
+     * choose where to store things. call this once at startup, before anything is read or written.
+     * @param backend is FIRESTORE or LOCAL.
+     */
+    public static synchronized void configure(String backend) {
+        if (LOCAL.equals(backend)) {
+            try {
+                LocalStore store = new LocalStore(Paths.get(LOCAL_STORE_DIR));
+                LocalUserRepository localUsers = new LocalUserRepository(store);
+                use(localUsers, new LocalClassroomRepository(store, localUsers));
+                System.out.println("Using local storage in " + LOCAL_STORE_DIR + " (" + store.size() + " documents).");
+                return;
+            } catch (IOException e) {
+                System.err.println("STORAGE ERROR: Failed to open local storage, using Firestore instead: " + e.getMessage());
+            }
+        }
+        use(new FirestoreUserRepository(), new FirestoreClassroomRepository());
+    }
+
+    /**
+     * store things in the given repositories (e.g. a LocalStore in a temporary directory, for tests and benchmarks).
+     */
+    public static synchronized void use(UserRepository users, ClassroomRepository classrooms) {
+        Storage.users = users;
+        Storage.classrooms = classrooms;
+    }
+
+    public static synchronized UserRepository users() {
+        if (users == null) {
+            configure(FIRESTORE);
+        }
+        return users;
+    }
+
+    public static synchronized ClassroomRepository classrooms() {
+        if (classrooms == null) {
+            configure(FIRESTORE);
+        }
+        return classrooms;
+    }
+
+}
@@ -11,7 +11,9 @@ public class UserAccount {
     private String userID;
     private TypingPlan defaultTypingPlan;
     private TypingPlan personalisedTypingPlan;
+    // only on accounts made before typing tests were stored in their own documents (see UserDAO)
     private List<KeyLogsStructure> keyLogs;
+    private List<SessionSummary> sessionSummaries;
     private String password;
     private long joinedDate = System.currentTimeMillis();
 
@@ -44,6 +46,10 @@ public class UserAccount {
         return password;
     }
 
+    /**
+     * @return the typing tests stored in the account itself, by older versions. newer tests are stored in the
+     * account's "sessions" collection, and listed by getSessionSummaries.
+     */
     public List<KeyLogsStructure> getKeyLogs() {
         return keyLogs;
     }
@@ -52,6 +58,14 @@ public class UserAccount {
         this.keyLogs = keyLogs;
     }
 
+    public List<SessionSummary> getSessionSummaries() {
+        return sessionSummaries;
+    }
+
+    public void setSessionSummaries(List<SessionSummary> sessionSummaries) {
+        this.sessionSummaries = sessionSummaries;
+    }
+
     public TypingPlan getDefaultTypingPlan() {
         return defaultTypingPlan;
     }
@@ -2,19 +2,25 @@ package com.example.touchtyped.firestore;
 
 import com.example.touchtyped.model.KeyLogsStructure;
 import com.example.touchtyped.model.TypingPlan;
-import com.google.cloud.firestore.*;
-import com.google.api.core.ApiFuture;
 
-import java.security.SecureRandom;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
+/**
+ * reads and writes user accounts, in whichever UserRepository Storage chose (Firestore, unless configured otherwise),
+ * checking passwords on the way.
+ */
 public final class UserDAO {
 
-    private static final String USER_COLLECTION = "users";
-
     private UserDAO() {}
 
+    private static UserRepository repository() {
+        return Storage.users();
+    }
+
     /**
      * allow creation of a user without providing a password (will be the case the majority of the time)
      * @param classroomID is the classroom the user is joining (all users must be associated with one classroom).
@@ -44,16 +50,6 @@ public final class UserDAO {
      */
     public static String createUser(String classroomID, String userID, String username, TypingPlan defaultTypingPlan, TypingPlan personalisedTypingPlan, String password) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference userDoc = db.collection(USER_COLLECTION).document(classroomID+","+username);
-
-            // check if a user with that username already exists in the classroom
-            DocumentSnapshot document = userDoc.get().get();
-            if (document.exists()) {
-                // already exists
-                return null;
-            }
-
             // generate random userID
             if (userID == null) {
                 userID = generateUserID();
@@ -61,8 +57,8 @@ public final class UserDAO {
 
             UserAccount user = new UserAccount(classroomID, userID, username, defaultTypingPlan, personalisedTypingPlan, new ArrayList<>(), password);
 
-            userDoc.set(user).get();
-            return userID;
+            // fails if a user with that username already exists in the classroom
+            return repository().createAccount(classroomID, user) ? userID : null;
 
         } catch (Exception e) {
             Thread.currentThread().interrupt();
@@ -72,18 +68,8 @@ public final class UserDAO {
 
     public static String addUserAccount(String classroomID, UserAccount user) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference userDoc = db.collection(USER_COLLECTION).document(classroomID+","+user.getUsername());
-
-            // check if a user with that username already exists in the classroom
-            DocumentSnapshot document = userDoc.get().get();
-            if (document.exists()) {
-                // already exists
-                return null;
-            }
-
-            userDoc.set(user).get();
-            return user.getUserID();
+            // fails if a user with that username already exists in the classroom
+            return repository().createAccount(classroomID, user) ? user.getUserID() : null;
 
         } catch (Exception e) {
             Thread.currentThread().interrupt();
@@ -92,41 +78,11 @@ public final class UserDAO {
     }
 
     /**
-     * generate a random user ID, ensuring uniqueness in the database.
-     * @return the generated userID, or null if unsuccessful.
+     * generate a user ID. IdGenerator makes IDs that are unique without checking the database.
+     * @return the generated userID.
      */
     public static String generateUserID() {
-        try {
-            Firestore db = FirestoreClient.getFirestore();
-            SecureRandom random = new SecureRandom();
-            String char_pool = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-            int max_attempts = 100;
-
-            for (int i = 0; i < max_attempts; i++) {
-                // generate potential ID
-                StringBuilder sb = new StringBuilder("U");
-                for (int j = 0; j < 6; j++) {
-                    int index = random.nextInt(char_pool.length());
-                    sb.append(char_pool.charAt(index));
-                }
-                String id = sb.toString();
-
-                // check uniqueness
-                Query query = db.collection(USER_COLLECTION).whereEqualTo("userID", id).limit(1);
-                QuerySnapshot snapshot = query.get().get();
-
-                if (snapshot.isEmpty()) {
-                    return id; // it is unique.
-                }
-            }
-
-            throw new RuntimeException("DATABASE FAILURE. Failed to generate unique userID after "+max_attempts+" attempts.");
-
-        } catch (Exception e) {
-            System.out.println("DATABASE FAILURE. Failed to generate user ID.");
-            return null;
-        }
-
+        return IdGenerator.userID();
     }
 
     // make password optional
@@ -142,18 +98,13 @@ public final class UserDAO {
      */
     public static UserAccount getAccountByID(String userID, String password) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            Query query = db.collection(USER_COLLECTION).whereEqualTo("userID", userID).limit(1);
-            QuerySnapshot snapshot = query.get().get();
+            UserAccount userAccount = repository().getAccountByID(userID);
 
-            if (snapshot.isEmpty()) {
+            if (userAccount == null) {
                 System.out.println("DATABASE FAILURE. Failed to get user account: user doesn't exist. (1)");
                 return null;
             }
 
-            DocumentSnapshot document = snapshot.getDocuments().get(0);
-            UserAccount userAccount = document.toObject(UserAccount.class);
-
             // check for password
             if (userAccount.getPassword() == null) {
                 return userAccount;
@@ -186,13 +137,9 @@ public final class UserDAO {
      */
     public static UserAccount getAccount(String classroomID, String username, String password) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference userDoc = db.collection(USER_COLLECTION).document(classroomID + "," + username);
-            DocumentSnapshot document = userDoc.get().get();
-
-            if (document.exists()) {
-                UserAccount userAccount = document.toObject(UserAccount.class);
+            UserAccount userAccount = repository().getAccount(classroomID, username);
 
+            if (userAccount != null) {
                 // check if the account has a password. if so, ensure that the correct password was supplied to this function.
                 if (userAccount.getPassword() == null) {
                     return userAccount;
@@ -223,10 +170,7 @@ public final class UserDAO {
         }
 
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference userDoc = db.collection(USER_COLLECTION).document(classroomID + "," + username);
-            userDoc.delete().get();
-            return true;
+            return repository().deleteAccount(classroomID, username);
         } catch (Exception e) {
             System.out.println("DATABASE FAILURE. Failed to delete user");
             return false;
@@ -245,26 +189,81 @@ public final class UserDAO {
      */
     public static void addKeyLog(String classroomID, String username, KeyLogsStructure keyLogs, String password) throws InterruptedException, ExecutionException {
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference userDoc = db.collection(USER_COLLECTION).document(classroomID + "," + username);
-            DocumentSnapshot document = userDoc.get().get();
-            UserAccount userAccount = document.toObject(UserAccount.class);
-
-            if ((userAccount.getPassword() == null) || (userAccount.getPassword() != null && userAccount.getPassword().equals(password)))
-            {
-                // append to keyLogs List
-                ApiFuture<WriteResult> future = userDoc.update("keyLogs", FieldValue.arrayUnion(keyLogs));
-                future.get();
-            } else {
-                // denied access to account (invalid password provided)
-                System.out.println("DATABASE FAILURE. Failed to add key logs to user account: password provided did not match stored password.");
+            if (!tryAddKeyLog(classroomID, username, keyLogs, password)) {
+                System.out.println("DATABASE FAILURE. Failed to add key logs to user account: user doesn't exist or password provided did not match stored password.");
             }
-
         } catch (Exception e) {
             System.out.println("DATABASE FAILURE. Failed to add key logs to user account: user doesn't exist.");
         }
     }
 
+    /**
+     * same as addKeyLog, but telling the caller why it failed rather than printing it, so that it can be retried.
+     * the key logs and their summary are written together, under an ID made from the key logs, so adding the same key
+     * logs twice stores them once, and a retry after a lost reply is harmless.
+     * @return true if the key logs were added, false if the user doesn't exist or the password is wrong.
+     * @throws ExecutionException if the database couldn't be reached (worth trying again later).
+     * @throws IOException if the database couldn't be opened.
+     */
+    public static boolean tryAddKeyLog(String classroomID, String username, KeyLogsStructure keyLogs, String password) throws InterruptedException, ExecutionException, IOException {
+        UserAccount userAccount = repository().getAccount(classroomID, username);
+        if (userAccount == null) {
+            return false;
+        }
+
+        if ((userAccount.getPassword() == null) || (userAccount.getPassword() != null && userAccount.getPassword().equals(password)))
+        {
+            return repository().addSession(classroomID, username, keyLogs);
+        } else {
+            // denied access to account (invalid password provided)
+            return false;
+        }
+    }
+
+    /**
+     * returns the summaries of a user's typing tests, newest first. the tests themselves are loaded with getSession.
+     * @param classroomID is the classroom the user is a part of.
+     * @param username is the username of the user.
+     * @return the summaries, or null if failed.
+     */
+    public static List<SessionSummary> getSessionSummaries(String classroomID, String username) {
+        try {
+            List<SessionSummary> stored = repository().getSessionSummaries(classroomID, username);
+            if (stored == null) {
+                System.out.println("DATABASE FAILURE. Failed to get typing tests: user doesn't exist.");
+                return null;
+            }
+
+            List<SessionSummary> summaries = new ArrayList<>(stored);
+            summaries.sort(Comparator.comparingLong(SessionSummary::getTimeCreated).reversed());
+            return summaries;
+        } catch (Exception e) {
+            System.out.println("DATABASE FAILURE. Failed to get typing tests.");
+            return null;
+        }
+    }
+
+    /**
+     * returns the full key logs of one of a user's typing tests.
+     * @param classroomID is the classroom the user is a part of.
+     * @param username is the username of the user.
+     * @param sessionID is the test's SessionSummary.getSessionID().
+     * @return the key logs, or null if failed.
+     */
+    public static KeyLogsStructure getSession(String classroomID, String username, String sessionID) {
+        try {
+            KeyLogsStructure keyLogs = repository().getSession(classroomID, username, sessionID);
+            if (keyLogs == null) {
+                System.out.println("DATABASE FAILURE. Failed to get typing test: it doesn't exist.");
+                return null;
+            }
+            return keyLogs;
+        } catch (Exception e) {
+            System.out.println("DATABASE FAILURE. Failed to get typing test.");
+            return null;
+        }
+    }
+
     public static boolean updateDefaultTypingPlan (String classroomID, String username, TypingPlan newPlan) throws InterruptedException, ExecutionException {
         return updateDefaultTypingPlan(classroomID, username, newPlan, null);
     }
@@ -277,13 +276,10 @@ public final class UserDAO {
         }
 
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference userDoc = db.collection(USER_COLLECTION)
-                    .document(classroomID + "," + username);
-
-            ApiFuture<WriteResult> result = userDoc.update("defaultTypingPlan", newPlan);
+            if (!repository().updateDefaultTypingPlan(classroomID, username, newPlan)) {
+                return false;
+            }
             System.out.println("Updated default typing plan in database.");
-            result.get();
             return true;
 
         } catch (Exception e) {
@@ -304,13 +300,10 @@ public final class UserDAO {
         }
 
         try {
-            Firestore db = FirestoreClient.getFirestore();
-            DocumentReference userDoc = db.collection(USER_COLLECTION)
-                    .document(classroomID + "," + username);
-
-            ApiFuture<WriteResult> result = userDoc.update("personalisedTypingPlan", newPlan);
+            if (!repository().updatePersonalisedTypingPlan(classroomID, username, newPlan)) {
+                return false;
+            }
             System.out.println("Updated personalised typing plan in database.");
-            result.get();
             return true;
 
         } catch (Exception e) {
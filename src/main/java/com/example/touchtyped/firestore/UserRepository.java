@@ -0,0 +1,69 @@
+package com.example.touchtyped.firestore;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import com.example.touchtyped.model.TypingPlan;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * where user accounts and their typing tests are stored. implemented over Firestore by FirestoreUserRepository, and
+ * over a file on this computer by LocalUserRepository. UserDAO uses whichever Storage chose, and checks passwords
+ * itself, so implementations don't.
+ *
+ * every method throws if the store couldn't be reached, and returns null or false if what it was asked for doesn't
+ * exist.
+ */
+public interface UserRepository {
+
+    /**
+     * @return the account, or null if it doesn't exist
+     */
+    UserAccount getAccount(String classroomID, String username) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * @return the account with this userID, or null if there isn't one
+     */
+    UserAccount getAccountByID(String userID) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * store a new account.
+     * @return false if the classroom already has an account with its username
+     */
+    boolean createAccount(String classroomID, UserAccount account) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * delete an account and its typing tests.
+     * @return false if it doesn't exist
+     */
+    boolean deleteAccount(String classroomID, String username) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * @return false if the account doesn't exist
+     */
+    boolean updateDefaultTypingPlan(String classroomID, String username, TypingPlan plan) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * @return false if the account doesn't exist
+     */
+    boolean updatePersonalisedTypingPlan(String classroomID, String username, TypingPlan plan) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * add a typing test to an account: its key logs, and its SessionSummary. adding the same key logs twice stores them
+     * once, so a retry after a lost reply is harmless.
+     * @return false if the account doesn't exist
+     */
+    boolean addSession(String classroomID, String username, KeyLogsStructure keyLogs) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * @return the summaries of an account's typing tests, in any order, or null if it doesn't exist
+     */
+    List<SessionSummary> getSessionSummaries(String classroomID, String username) throws InterruptedException, ExecutionException, IOException;
+
+    /**
+     * @return the key logs of one typing test, or null if it doesn't exist
+     */
+    KeyLogsStructure getSession(String classroomID, String username, String sessionID) throws InterruptedException, ExecutionException, IOException;
+
+}
@@ -0,0 +1,107 @@
+package com.example.touchtyped.interfaces;
+
+import java.util.Arrays;
+
+/**
+ * matches ACK frames to the commands they acknowledge, and measures each command's round trip: from being written to
+ * the serial port to its ACK being read back.
+ * send times are kept in a small ring indexed by sequence number, so tracking never allocates.
+ */
+public class AckTracker {
+
+    private static final int WINDOW = 256;
+    private static final long NOT_SENT = Long.MIN_VALUE;
+
+    private final long[] sentNanos = new long[WINDOW];
+    private final int[] sentSeqs = new int[WINDOW];
+
+    private long sent = 0;
+    private long acks = 0;
+    private long rejections = 0;
+    private long unmatched = 0;
+    private long lastRoundTripNanos = 0;
+    private long totalRoundTripNanos = 0;
+    private long maxRoundTripNanos = 0;
+
+    public AckTracker() {
+        Arrays.fill(sentNanos, NOT_SENT);
+    }
+
+    /**
+     * record that a command was written.
+     * @param seq is the command's sequence number
+     * @param timestampNanos is the System.nanoTime() when it was written
+     */
+    public synchronized void sent(int seq, long timestampNanos) {
+        int slot = seq & (WINDOW - 1);
+        sentSeqs[slot] = seq;
+        sentNanos[slot] = timestampNanos;
+        sent++;
+    }
+
+    /**
+     * record an ACK.
+     * @param seq is the sequence number the ACK carries
+     * @param status is the ACK's status
+     * @param timestampNanos is the System.nanoTime() when the ACK was read
+     */
+    public synchronized void acknowledged(int seq, int status, long timestampNanos) {
+        int slot = seq & (WINDOW - 1);
+        if (sentSeqs[slot] != seq || sentNanos[slot] == NOT_SENT) {
+            unmatched++;
+            return;
+        }
+        long roundTrip = timestampNanos - sentNanos[slot];
+        sentNanos[slot] = NOT_SENT;
+        if (status != KeyboardProtocol.STATUS_OK) {
+            rejections++;
+            System.err.println("Keyboard rejected command " + seq + " with status " + status);
+            return;
+        }
+        acks++;
+        lastRoundTripNanos = roundTrip;
+        totalRoundTripNanos += roundTrip;
+        maxRoundTripNanos = Math.max(maxRoundTripNanos, roundTrip);
+    }
+
+    /**
+     * @return the number of commands written
+     */
+    public synchronized long sentCount() {
+        return sent;
+    }
+
+    /**
+     * @return the number of commands acknowledged successfully
+     */
+    public synchronized long ackCount() {
+        return acks;
+    }
+
+    /**
+     * @return the number of commands the keyboard rejected (e.g. because of a bad CRC)
+     */
+    public synchronized long rejectedCount() {
+        return rejections;
+    }
+
+    /**
+     * @return the number of ACKs that didn't match a command waiting for one
+     */
+    public synchronized long unmatchedCount() {
+        return unmatched;
+    }
+
+    public synchronized long lastRoundTripNanos() {
+        return lastRoundTripNanos;
+    }
+
+    public synchronized long meanRoundTripNanos() {
+        return (acks == 0) ? 0 : totalRoundTripNanos / acks;
+    }
+
+    public synchronized long maxRoundTripNanos() {
+        return maxRoundTripNanos;
+    }
+
+}
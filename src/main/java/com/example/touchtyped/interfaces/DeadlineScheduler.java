@@ -0,0 +1,147 @@
+package com.example.touchtyped.interfaces;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * runs an action when a deadline passes, with at most one deadline per key (e.g. per motor, or for the lights).
+ * every deadline shares one background thread, instead of a sleeping thread per deadline.
+ *
+ * extending a key that already has a deadline moves it later rather than adding a second one, so overlapping
+ * vibrations stop once, when the last of them ends.
+ * @param <K> is the type of key that deadlines are held against
+ */
+public class DeadlineScheduler<K> {
+
+    private static final class Deadline {
+        private final long dueNanos;
+        private ScheduledFuture<?> future;
+
+        private Deadline(long dueNanos) {
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<K, Deadline> deadlines = new HashMap<>();
+
+    /**
+     * constructor
+     * @param threadName is the name given to the scheduler's thread
+     */
+    public DeadlineScheduler(String threadName) {
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // cancelled deadlines are removed straight away, rather than waiting in the queue until they would have run
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * make sure a key's deadline is no earlier than delayMillis from now. if the key has no deadline, one is added;
+     * if its deadline is earlier, it is moved later; if it is already later, nothing changes.
+     * @param key is the key to set the deadline for
+     * @param delayMillis is the time from now, in milliseconds
+     * @param onExpire runs on the scheduler's thread when the deadline passes
+     */
+    public synchronized void extend(K key, long delayMillis, Runnable onExpire) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        long dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        Deadline existing = deadlines.get(key);
+        if (existing != null) {
+            if (existing.dueNanos - dueNanos >= 0) {
+                return;
+            }
+            existing.future.cancel(false);
+        }
+        Deadline deadline = new Deadline(dueNanos);
+        deadlines.put(key, deadline);
+        deadline.future = executor.schedule(() -> expire(key, deadline, onExpire), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void expire(K key, Deadline deadline, Runnable onExpire) {
+        synchronized (this) {
+            // the deadline may have been replaced or cancelled after this task was picked up
+            if (deadlines.get(key) != deadline) {
+                return;
+            }
+            deadlines.remove(key);
+        }
+        try {
+            onExpire.run();
+        } catch (RuntimeException e) {
+            System.err.println("Deadline action for " + key + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * cancel a key's deadline, without running its action.
+     * @param key is the key to cancel
+     * @return whether the key had a deadline
+     */
+    public synchronized boolean cancel(K key) {
+        Deadline deadline = deadlines.remove(key);
+        if (deadline == null) {
+            return false;
+        }
+        deadline.future.cancel(false);
+        return true;
+    }
+
+    /**
+     * cancel the deadlines of every key that matches, without running their actions.
+     * @param keys is a test for the keys to cancel
+     */
+    public synchronized void cancelIf(Predicate<K> keys) {
+        Iterator<Map.Entry<K, Deadline>> entries = deadlines.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<K, Deadline> entry = entries.next();
+            if (keys.test(entry.getKey())) {
+                entry.getValue().future.cancel(false);
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * cancel every deadline, without running their actions.
+     */
+    public synchronized void cancelAll() {
+        for (Deadline deadline : deadlines.values()) {
+            deadline.future.cancel(false);
+        }
+        deadlines.clear();
+    }
+
+    /**
+     * @return whether a key has a deadline that hasn't passed yet
+     */
+    public synchronized boolean isPending(K key) {
+        return deadlines.containsKey(key);
+    }
+
+    /**
+     * @return the number of deadlines that haven't passed yet
+     */
+    public synchronized int pendingCount() {
+        return deadlines.size();
+    }
+
+    /**
+     * cancel every deadline and stop the scheduler's thread.
+     */
+    public void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.example.touchtyped.interfaces;
+
+import java.util.Arrays;
+
+/**
+ * maps the keyboard's micros() clock onto System.nanoTime(), so that key events can be timed by the keyboard itself
+ * rather than by when the JavaFX thread got round to them.
+ *
+ * every timestamped frame from the keyboard gives a sample: the host time it arrived, minus the device time it was
+ * sent. that is the offset between the clocks plus the frame's transit delay, and the delay is never negative, so the
+ * lowest samples are the closest to the true offset. (what is left is the link's minimum latency, which is the same
+ * for every event and so cancels out of dwell and flight times.) the lowest sample in each window of device time is
+ * kept, and a line fitted through them follows the drift between the keyboard's resonator and the host clock.
+ *
+ * not thread-safe: samples and conversions should all come from the serial reader thread.
+ */
+public class DeviceClock {
+
+    public static final long WINDOW_MICROS = 2_000_000;
+    public static final int WINDOWS = 30;
+
+    private static final long WRAP = 1L << 32;
+    // a ceramic resonator is within 0.5%, so a steeper fit is noise
+    private static final double MAX_SKEW = 0.01;
+    // how far the device clock may disagree with the host's elapsed time before the keyboard is taken to have reset
+    private static final long RESET_SLACK_MICROS = 1_000_000;
+
+    private long lastRawMicros = -1;
+    private long lastHostNanos;
+    private long deviceMicros;
+    private long sampleCount = 0;
+
+    // the lowest sample in each window, in a ring indexed by window number
+    private final long[] windowNumbers = new long[WINDOWS];
+    private final long[] windowDeviceMicros = new long[WINDOWS];
+    private final long[] windowOffsetNanos = new long[WINDOWS];
+    private final boolean[] windowUsed = new boolean[WINDOWS];
+
+    // offset(d) = intercept + slope * (d - reference), refitted when a window minimum changes
+    private boolean fitDirty = false;
+    private long referenceMicros;
+    private double interceptNanos;
+    private double slope;
+
+    /**
+     * add a sample, and extend the keyboard's 32-bit clock to 64 bits.
+     * @param rawMicros is the keyboard's micros() value from a frame
+     * @param hostNanos is the System.nanoTime() at which the frame arrived
+     * @return the device time in microseconds, without wraparound, for toHostNanos
+     */
+    public long observe(long rawMicros, long hostNanos) {
+        rawMicros &= WRAP - 1;
+        if (lastRawMicros < 0) {
+            deviceMicros = rawMicros;
+        } else {
+            // the host clock says roughly how much device time has passed, which also covers gaps of several wraps
+            long expected = (hostNanos - lastHostNanos) / 1000;
+            long delta = (rawMicros - lastRawMicros) & (WRAP - 1);
+            if (delta > WRAP - RESET_SLACK_MICROS) {
+                // a frame stamped slightly before the previous one (e.g. an ACK sent while a key event was queued)
+                delta -= WRAP;
+            }
+            delta += Math.max(0, Math.round((expected - delta) / (double) WRAP)) * WRAP;
+            if (Math.abs(delta - expected) > RESET_SLACK_MICROS + (long) (expected * MAX_SKEW)) {
+                // the keyboard restarted, so its clock has nothing to do with the earlier samples
+                System.out.println("Keyboard clock jumped; resynchronising");
+                clearSamples();
+                delta = Math.max(0, expected);
+            }
+            deviceMicros += delta;
+        }
+        lastRawMicros = rawMicros;
+        lastHostNanos = hostNanos;
+        addSample(deviceMicros, hostNanos - deviceMicros * 1000);
+        return deviceMicros;
+    }
+
+    private void addSample(long micros, long offsetNanos) {
+        sampleCount++;
+        long window = micros / WINDOW_MICROS;
+        int slot = (int) (window % WINDOWS);
+        if (!windowUsed[slot] || windowNumbers[slot] != window || offsetNanos < windowOffsetNanos[slot]) {
+            windowUsed[slot] = true;
+            windowNumbers[slot] = window;
+            windowDeviceMicros[slot] = micros;
+            windowOffsetNanos[slot] = offsetNanos;
+            fitDirty = true;
+        }
+    }
+
+    private void fit() {
+        fitDirty = false;
+        long newestWindow = deviceMicros / WINDOW_MICROS;
+        referenceMicros = deviceMicros;
+        int n = 0;
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        long lowestOffset = Long.MAX_VALUE;
+        long firstMicros = Long.MAX_VALUE;
+        for (int slot = 0; slot < WINDOWS; slot++) {
+            if (!windowUsed[slot] || newestWindow - windowNumbers[slot] >= WINDOWS) {
+                continue;
+            }
+            double x = windowDeviceMicros[slot] - referenceMicros;
+            double y = windowOffsetNanos[slot];
+            n++;
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+            lowestOffset = Math.min(lowestOffset, windowOffsetNanos[slot]);
+            firstMicros = Math.min(firstMicros, windowDeviceMicros[slot]);
+        }
+        if (n < 2 || referenceMicros - firstMicros < WINDOW_MICROS) {
+            // not enough history to see any drift
+            slope = 0;
+            interceptNanos = lowestOffset;
+            return;
+        }
+        // offset is in nanos and x in micros, so a skew of s is a slope of 1000 * s
+        double fitted = (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+        slope = Math.max(-MAX_SKEW * 1000, Math.min(MAX_SKEW * 1000, fitted));
+        interceptNanos = (sumY - slope * sumX) / n;
+    }
+
+    /**
+     * @param micros is a device time returned by observe
+     * @return the System.nanoTime() at which the keyboard's clock read that time, or the time itself (as nanos) if no
+     * sample has been seen yet
+     */
+    public long toHostNanos(long micros) {
+        if (sampleCount == 0) {
+            return micros * 1000;
+        }
+        if (fitDirty) {
+            fit();
+        }
+        return micros * 1000 + Math.round(interceptNanos + slope * (micros - referenceMicros));
+    }
+
+    /**
+     * @return whether any sample has been seen since the keyboard (re)started
+     */
+    public boolean isSynchronised() {
+        return sampleCount > 0;
+    }
+
+    /**
+     * @return how fast the keyboard's clock runs slow (positive) or fast (negative) against the host, in parts per
+     * million
+     */
+    public double skewPpm() {
+        if (fitDirty) {
+            fit();
+        }
+        return slope * 1000;
+    }
+
+    /**
+     * @return the number of samples since the keyboard (re)started
+     */
+    public long sampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * forget every sample, e.g. when the keyboard is reconnected.
+     */
+    public void reset() {
+        lastRawMicros = -1;
+        clearSamples();
+    }
+
+    private void clearSamples() {
+        Arrays.fill(windowUsed, false);
+        sampleCount = 0;
+        slope = 0;
+        interceptNanos = 0;
+        fitDirty = false;
+    }
+
+}
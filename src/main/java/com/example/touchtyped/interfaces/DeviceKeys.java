@@ -0,0 +1,88 @@
+package com.example.touchtyped.interfaces;
+
+import javafx.scene.input.KeyCode;
+
+/**
+ * the keys the keyboard reports in KEY_EVENT frames. the firmware sends the same codes it passes to the Arduino
+ * Keyboard library: a key's unshifted US character (e.g. 'a', '1', ';'), or one of the library's KEY_ constants for
+ * keys without one. mapping them back to a KeyCode lets the host translate them with the same KeyboardLayout as keys
+ * typed on any other keyboard.
+ */
+public final class DeviceKeys {
+
+    public static final int KEY_LEFT_CTRL = 0x80;
+    public static final int KEY_LEFT_SHIFT = 0x81;
+    public static final int KEY_LEFT_ALT = 0x82;
+    public static final int KEY_LEFT_GUI = 0x83;
+    public static final int KEY_RIGHT_CTRL = 0x84;
+    public static final int KEY_RIGHT_SHIFT = 0x85;
+    public static final int KEY_RIGHT_ALT = 0x86;
+    public static final int KEY_RIGHT_GUI = 0x87;
+    public static final int KEY_RETURN = 0xB0;
+    public static final int KEY_ESC = 0xB1;
+    public static final int KEY_BACKSPACE = 0xB2;
+    public static final int KEY_TAB = 0xB3;
+    public static final int KEY_CAPS_LOCK = 0xC1;
+    public static final int KEY_RIGHT_ARROW = 0xD7;
+    public static final int KEY_LEFT_ARROW = 0xD8;
+    public static final int KEY_DOWN_ARROW = 0xD9;
+    public static final int KEY_UP_ARROW = 0xDA;
+    public static final int KEY_MENU = 0xED;
+    // the key left of Z on ISO boards: HID usage 0x64, which the Keyboard library takes as 0x64 + 136
+    public static final int KEY_NON_US_BACKSLASH = 0xEC;
+
+    private static final KeyCode[] KEY_CODES = new KeyCode[256];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            KEY_CODES[c] = KeyCode.valueOf(String.valueOf(Character.toUpperCase(c)));
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            KEY_CODES[c] = KeyCode.valueOf("DIGIT" + c);
+        }
+        KEY_CODES[' '] = KeyCode.SPACE;
+        KEY_CODES['-'] = KeyCode.MINUS;
+        KEY_CODES['='] = KeyCode.EQUALS;
+        KEY_CODES['['] = KeyCode.OPEN_BRACKET;
+        KEY_CODES[']'] = KeyCode.CLOSE_BRACKET;
+        KEY_CODES[';'] = KeyCode.SEMICOLON;
+        KEY_CODES['\''] = KeyCode.QUOTE;
+        KEY_CODES['#'] = KeyCode.NUMBER_SIGN;
+        KEY_CODES['\\'] = KeyCode.BACK_SLASH;
+        KEY_CODES[','] = KeyCode.COMMA;
+        KEY_CODES['.'] = KeyCode.PERIOD;
+        KEY_CODES['/'] = KeyCode.SLASH;
+        KEY_CODES['`'] = KeyCode.BACK_QUOTE;
+        KEY_CODES[KEY_NON_US_BACKSLASH] = KeyCode.BACK_SLASH;
+
+        KEY_CODES[KEY_LEFT_CTRL] = KeyCode.CONTROL;
+        KEY_CODES[KEY_RIGHT_CTRL] = KeyCode.CONTROL;
+        KEY_CODES[KEY_LEFT_SHIFT] = KeyCode.SHIFT;
+        KEY_CODES[KEY_RIGHT_SHIFT] = KeyCode.SHIFT;
+        KEY_CODES[KEY_LEFT_ALT] = KeyCode.ALT;
+        KEY_CODES[KEY_RIGHT_ALT] = KeyCode.ALT_GRAPH;
+        KEY_CODES[KEY_LEFT_GUI] = KeyCode.WINDOWS;
+        KEY_CODES[KEY_RIGHT_GUI] = KeyCode.WINDOWS;
+        KEY_CODES[KEY_MENU] = KeyCode.CONTEXT_MENU;
+        KEY_CODES[KEY_RETURN] = KeyCode.ENTER;
+        KEY_CODES[KEY_ESC] = KeyCode.ESCAPE;
+        KEY_CODES[KEY_BACKSPACE] = KeyCode.BACK_SPACE;
+        KEY_CODES[KEY_TAB] = KeyCode.TAB;
+        KEY_CODES[KEY_CAPS_LOCK] = KeyCode.CAPS;
+        KEY_CODES[KEY_RIGHT_ARROW] = KeyCode.RIGHT;
+        KEY_CODES[KEY_LEFT_ARROW] = KeyCode.LEFT;
+        KEY_CODES[KEY_DOWN_ARROW] = KeyCode.DOWN;
+        KEY_CODES[KEY_UP_ARROW] = KeyCode.UP;
+    }
+
+    private DeviceKeys() { }
+
+    /**
+     * @param deviceKey is a key code from a KEY_EVENT frame
+     * @return the KeyCode of the key, or null if it isn't one the host knows
+     */
+    public static KeyCode keyCodeFor(int deviceKey) {
+        return (deviceKey >= 0 && deviceKey < KEY_CODES.length) ? KEY_CODES[deviceKey] : null;
+    }
+
+}
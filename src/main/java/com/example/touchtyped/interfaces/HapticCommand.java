@@ -0,0 +1,217 @@
+package com.example.touchtyped.interfaces;
+
+import java.util.Arrays;
+
+/**
+ * a batch of motor and light changes, sent to the keyboard as a single KeyboardProtocol frame.
+ * motors are numbered 0 to 25 for the letter keys 'a' to 'z' (see motorFor).
+ *
+ * commands can be merged: a later command's changes are applied on top of an earlier one's, so everything that is
+ * waiting to be written can be sent in one frame.
+ */
+public final class HapticCommand {
+
+    public static final int MOTOR_COUNT = 32;
+    public static final int MAX_STRENGTH = 255;
+
+    /**
+     * light changes carried by a command.
+     */
+    public static final int LIGHTS_UNCHANGED = 0;
+    public static final int LIGHTS_ON = 1;
+    public static final int LIGHTS_OFF = 2;
+
+    private boolean stopAllMotors = false;
+    private int motorMask = 0;
+    private final int[] strengths = new int[MOTOR_COUNT];
+    private final int[] durations = new int[MOTOR_COUNT];
+    private int lightsCommand = LIGHTS_UNCHANGED;
+    private int lightsDuration = 0;
+
+    /**
+     * @param key is a letter key
+     * @return the motor beneath the key, or -1 if there isn't one
+     */
+    public static int motorFor(char key) {
+        char lower = Character.toLowerCase(key);
+        return (lower >= 'a' && lower <= 'z') ? lower - 'a' : -1;
+    }
+
+    /**
+     * vibrate a motor.
+     * @param motor is the motor to vibrate
+     * @param strength is the strength from 0 (off) to MAX_STRENGTH
+     * @param durationMillis is how long the keyboard should vibrate for, or 0 to vibrate until stopped
+     * @return this command
+     */
+    public HapticCommand vibrate(int motor, int strength, int durationMillis) {
+        checkMotor(motor);
+        motorMask |= 1 << motor;
+        strengths[motor] = Math.max(0, Math.min(MAX_STRENGTH, strength));
+        durations[motor] = Math.max(0, Math.min(0xFFFF, durationMillis));
+        return this;
+    }
+
+    /**
+     * stop one motor.
+     * @param motor is the motor to stop
+     * @return this command
+     */
+    public HapticCommand stopMotor(int motor) {
+        return vibrate(motor, 0, 0);
+    }
+
+    /**
+     * stop every motor, before applying any motor changes in this command.
+     * @return this command
+     */
+    public HapticCommand stopAllMotors() {
+        stopAllMotors = true;
+        motorMask = 0;
+        return this;
+    }
+
+    /**
+     * turn the lights on.
+     * @param durationMillis is how long the keyboard should keep them on for, or 0 to keep them on until turned off
+     * @return this command
+     */
+    public HapticCommand lightsOn(int durationMillis) {
+        lightsCommand = LIGHTS_ON;
+        lightsDuration = Math.max(0, Math.min(0xFFFF, durationMillis));
+        return this;
+    }
+
+    /**
+     * turn the lights off.
+     * @return this command
+     */
+    public HapticCommand lightsOff() {
+        lightsCommand = LIGHTS_OFF;
+        lightsDuration = 0;
+        return this;
+    }
+
+    /**
+     * apply a later command's changes on top of this one's.
+     * @param later is the command that was issued after this one
+     * @return this command
+     */
+    public HapticCommand merge(HapticCommand later) {
+        if (later.stopAllMotors) {
+            stopAllMotors();
+        }
+        for (int motor = 0; motor < MOTOR_COUNT; motor++) {
+            if (later.hasMotor(motor)) {
+                vibrate(motor, later.strengths[motor], later.durations[motor]);
+            }
+        }
+        if (later.lightsCommand != LIGHTS_UNCHANGED) {
+            lightsCommand = later.lightsCommand;
+            lightsDuration = later.lightsDuration;
+        }
+        return this;
+    }
+
+    /**
+     * @return whether this command changes nothing
+     */
+    public boolean isEmpty() {
+        return !stopAllMotors && motorMask == 0 && lightsCommand == LIGHTS_UNCHANGED;
+    }
+
+    public boolean stopsAllMotors() {
+        return stopAllMotors;
+    }
+
+    public int motorMask() {
+        return motorMask;
+    }
+
+    public boolean hasMotor(int motor) {
+        return (motorMask & (1 << motor)) != 0;
+    }
+
+    public int strengthOf(int motor) {
+        return strengths[motor];
+    }
+
+    public int durationOf(int motor) {
+        return durations[motor];
+    }
+
+    public int lightsCommand() {
+        return lightsCommand;
+    }
+
+    public int lightsDuration() {
+        return lightsDuration;
+    }
+
+    /**
+     * remove a motor's change from this command.
+     */
+    void dropMotor(int motor) {
+        motorMask &= ~(1 << motor);
+    }
+
+    /**
+     * remove the light change from this command.
+     */
+    void dropLights() {
+        lightsCommand = LIGHTS_UNCHANGED;
+        lightsDuration = 0;
+    }
+
+    void setStopAllMotors(boolean stopAllMotors) {
+        this.stopAllMotors = stopAllMotors;
+    }
+
+    private static void checkMotor(int motor) {
+        if (motor < 0 || motor >= MOTOR_COUNT) {
+            throw new IllegalArgumentException("No motor " + motor);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof HapticCommand other)) {
+            return false;
+        }
+        if (stopAllMotors != other.stopAllMotors || motorMask != other.motorMask
+                || lightsCommand != other.lightsCommand || lightsDuration != other.lightsDuration) {
+            return false;
+        }
+        for (int motor = 0; motor < MOTOR_COUNT; motor++) {
+            if (hasMotor(motor) && (strengths[motor] != other.strengths[motor] || durations[motor] != other.durations[motor])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new int[] {stopAllMotors ? 1 : 0, motorMask, lightsCommand, lightsDuration});
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder("HapticCommand[");
+        if (stopAllMotors) {
+            output.append("stop all; ");
+        }
+        for (int motor = 0; motor < MOTOR_COUNT; motor++) {
+            if (hasMotor(motor)) {
+                output.append(String.format("motor %d: %d for %dms; ", motor, strengths[motor], durations[motor]));
+            }
+        }
+        if (lightsCommand == LIGHTS_ON) {
+            output.append(String.format("lights on for %dms", lightsDuration));
+        } else if (lightsCommand == LIGHTS_OFF) {
+            output.append("lights off");
+        }
+        return output.append("]").toString();
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.example.touchtyped.interfaces;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * an interned, immutable representation of a key, passed to KeyTokenListeners instead of a String.
+ * a KeyToken is either a character (held as a codepoint) or one of the Special keys. there is exactly one KeyToken
+ * for each character or Special key, so tokens can be compared with ==, and no KeyToken is created while typing
+ * (ASCII characters and every Special key are built when the class is loaded).
+ */
+public final class KeyToken {
+
+    /**
+     * keys that do not produce a character. the names match the Strings that KeypressListeners have always received.
+     */
+    public enum Special {
+        BACK_SPACE, ENTER, ESCAPE, CONTROL, ALT, TAB, LEFT, RIGHT, UP, DOWN, CAPS, UNKNOWN
+    }
+
+    /**
+     * modifier flags, combined into the int passed alongside a KeyToken.
+     */
+    public static final int SHIFT = 1;
+    public static final int CONTROL_DOWN = 1 << 1;
+    public static final int ALT_DOWN = 1 << 2;
+    public static final int META_DOWN = 1 << 3;
+
+    private static final KeyToken[] ASCII = new KeyToken[128];
+    private static final KeyToken[] SPECIALS = new KeyToken[Special.values().length];
+    private static final Map<Integer, KeyToken> OTHERS = new ConcurrentHashMap<>();
+
+    /**
+     * older key names that some listeners used to receive (e.g. "SEMICOLON"), mapped to their character.
+     * only used when converting a legacy String with fromString.
+     */
+    private static final Map<String, Character> LEGACY_NAMES = Map.ofEntries(
+            Map.entry("SEMICOLON", ';'),
+            Map.entry("QUOTE", '\''),
+            Map.entry("COMMA", ','),
+            Map.entry("PERIOD", '.'),
+            Map.entry("SLASH", '/'),
+            Map.entry("BACK_SLASH", '\\'),
+            Map.entry("OPEN_BRACKET", '['),
+            Map.entry("CLOSE_BRACKET", ']'),
+            Map.entry("MINUS", '-'),
+            Map.entry("EQUALS", '='),
+            Map.entry("BACK_QUOTE", '`'),
+            Map.entry("EXCLAMATION", '!'),
+            Map.entry("AT", '@'),
+            Map.entry("NUMBER_SIGN", '#'),
+            Map.entry("HASHTAG", '#'),
+            Map.entry("DOLLAR", '$'),
+            Map.entry("PERCENT", '%'),
+            Map.entry("CIRCUMFLEX", '^'),
+            Map.entry("AMPERSAND", '&'),
+            Map.entry("ASTERISK", '*'),
+            Map.entry("LEFT_PARENTHESIS", '('),
+            Map.entry("RIGHT_PARENTHESIS", ')'),
+            Map.entry("UNDERSCORE", '_'),
+            Map.entry("PLUS", '+'),
+            Map.entry("BRACELEFT", '{'),
+            Map.entry("BRACERIGHT", '}'),
+            Map.entry("COLON", ':'),
+            Map.entry("QUOTEDBL", '"'),
+            Map.entry("LESS", '<'),
+            Map.entry("GREATER", '>'),
+            Map.entry("QUESTION", '?'),
+            Map.entry("PIPE", '|')
+    );
+
+    static {
+        for (int c = 0; c < ASCII.length; c++) {
+            ASCII[c] = new KeyToken(c, null);
+        }
+        for (Special special : Special.values()) {
+            SPECIALS[special.ordinal()] = new KeyToken(-1, special);
+        }
+    }
+
+    public static final KeyToken BACK_SPACE = of(Special.BACK_SPACE);
+    public static final KeyToken UNKNOWN = of(Special.UNKNOWN);
+    public static final KeyToken SPACE = of(' ');
+
+    private final int codepoint;
+    private final Special special;
+    private final String name;
+    private final int code;
+
+    private KeyToken(int codepoint, Special special) {
+        this.codepoint = codepoint;
+        this.special = special;
+        this.name = (special != null) ? special.name() : new String(Character.toChars(codepoint)).intern();
+        this.code = KeyLogsStructure.encodeKey(name);
+    }
+
+    /**
+     * @param codepoint is the character's codepoint
+     * @return the KeyToken for a character
+     */
+    public static KeyToken of(int codepoint) {
+        if (codepoint >= 0 && codepoint < ASCII.length) {
+            return ASCII[codepoint];
+        }
+        return OTHERS.computeIfAbsent(codepoint, c -> new KeyToken(c, null));
+    }
+
+    /**
+     * @param special is the special key
+     * @return the KeyToken for a special key
+     */
+    public static KeyToken of(Special special) {
+        return SPECIALS[special.ordinal()];
+    }
+
+    /**
+     * convert a key String, as received by a KeypressListener, to its KeyToken.
+     * @param key is the key String, e.g. "a", " " or "BACK_SPACE"
+     * @return the KeyToken, or UNKNOWN if the String isn't recognised
+     */
+    public static KeyToken fromString(String key) {
+        if (key == null || key.isEmpty()) {
+            return UNKNOWN;
+        }
+        int first = key.codePointAt(0);
+        if (key.length() == Character.charCount(first)) {
+            return of(first);
+        }
+        Character legacy = LEGACY_NAMES.get(key);
+        if (legacy != null) {
+            return of(legacy);
+        }
+        for (Special special : Special.values()) {
+            if (special.name().equals(key)) {
+                return of(special);
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public boolean isSpecial() {
+        return special != null;
+    }
+
+    public boolean is(Special special) {
+        return this.special == special;
+    }
+
+    /**
+     * @return the codepoint of this key's character, or -1 if it is a Special key.
+     */
+    public int getCodepoint() {
+        return codepoint;
+    }
+
+    /**
+     * @return the Special key, or null if this key is a character.
+     */
+    public Special getSpecial() {
+        return special;
+    }
+
+    /**
+     * @return the code used for this key by KeyLogsStructure.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return the String a KeypressListener receives for this key. the String is created once, not per call.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
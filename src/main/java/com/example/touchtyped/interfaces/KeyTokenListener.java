@@ -0,0 +1,29 @@
+package com.example.touchtyped.interfaces;
+
+/**
+ * a listener interface for receiving keyboard presses as KeyTokens.
+ * a class that implements KeyTokenListener can register with the keyboard interface with the .addKeyTokenListener
+ * method to then automatically run their onKeyToken method whenever a keypress occurs.
+ * unlike KeypressListener, no Strings are created or compared to deliver a keypress.
+ */
+public interface KeyTokenListener {
+
+    /**
+     * a class implementing KeyTokenListener will have the onKeyToken method be triggered when a keypress is registered.
+     * @param key is the key that was pressed
+     * @param modifiers is a combination of the KeyToken modifier flags (e.g. KeyToken.SHIFT) held during the press
+     * @param timestampNanos is the System.nanoTime() at which the press was received
+     */
+    void onKeyToken(KeyToken key, int modifiers, long timestampNanos);
+
+    /**
+     * triggered when a key is released. the KeyToken is the one that was delivered when the key was pressed, even if
+     * the modifiers have changed since. listeners that don't need release times can ignore this.
+     * @param key is the key that was released
+     * @param timestampNanos is the System.nanoTime() at which the release was received
+     */
+    default void onKeyRelease(KeyToken key, long timestampNanos) {
+
+    }
+
+}
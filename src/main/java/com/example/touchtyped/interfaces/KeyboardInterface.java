@@ -1,219 +1,377 @@
 package com.example.touchtyped.interfaces;
 
-import com.example.touchtyped.app.Application;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import javafx.stage.Window;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import com.fazecast.jSerialComm.*;
-import java.io.PrintWriter;
-import java.util.Scanner;
 
 /**
- * implements a mock keyboard interface for use during development.
- * provides sending haptic commands, registering listeners, removing listeners, notifying listeners
+ * the link between the app and the keyboard. key presses (from the scene, or from the keyboard's serial port in
+ * hardware input mode) are translated with a KeyboardLayout and passed to the registered listeners, and haptic and
+ * light commands are sent to the keyboard as binary frames through a SerialCommandWriter.
+ * works without a keyboard connected: commands are then dropped.
  */
 public class KeyboardInterface {
 
 
-    private final List<KeypressListener> listeners;
+    /**
+     * the registered listeners. the array is never modified: adding or removing a listener replaces it, so a
+     * dispatch loops over a snapshot and listeners can be added or removed from inside onKeyToken.
+     */
+    private volatile KeyTokenListener[] listeners = new KeyTokenListener[0];
     private static KeyboardInterface keyboardInterface;
-    private final SerialPort ioPort;
-    private int stopKeyPressQueue = 0;
-    private int stopLightQueue = 0;
-    //keys stop vibrating when another key is pressed, so we only need to actively stop them when vibrations durations
-    //wouldn't overlap. this keeps track of whether they're overlapping
+    /**
+     * writes commands to the keyboard off the JavaFX thread, and reads back its ACKs.
+     * all three are null when no keyboard is connected, and are replaced when it is reconnected.
+     */
+    private volatile SerialLink link;
+    private volatile SerialCommandWriter commandWriter;
+    private volatile SerialFrameReader frameReader;
+    // guarded by this: once closed, the keyboard is never reconnected
+    private boolean closed = false;
+    private final AckTracker ackTracker = new AckTracker();
+
+    /**
+     * in hardware input mode, key events come from the keyboard's serial port and are timed by the keyboard's own
+     * clock, mapped onto System.nanoTime() by deviceClock. scene key events are ignored, since the keyboard still
+     * types as a USB keyboard and each key would otherwise arrive twice.
+     */
+    private volatile boolean hardwareInput = false;
+    private final DeviceClock deviceClock = new DeviceClock();
+
+    /**
+     * when each vibrating motor (keyed by its letter) and the lights are due to stop.
+     */
+    private final DeadlineScheduler<String> deadlines = new DeadlineScheduler<>("keyboard-deadlines");
+    private static final String LIGHTS_DEADLINE = "lights";
+
+    private KeyboardLayout layout;
+    private boolean capsLockOn = false;
+    private boolean altGraphDown = false;
+
+    /**
+     * the KeyToken delivered for each key currently held down, indexed by KeyCode ordinal, so that a release is
+     * reported with the same KeyToken as its press.
+     */
+    private final KeyToken[] heldKeys = new KeyToken[KeyCode.values().length];
 
     /**
      * constructor
      */
     public KeyboardInterface(SerialPort ioPort) {
-        this.listeners = new ArrayList<>();
-        this.ioPort = ioPort;
+        this(ioPort, KeyboardLayout.load(KeyboardLayout.DEFAULT_LAYOUT));
+    }
+
+    /**
+     * constructor, for when the keyboard is connected later (see connect)
+     * @param layout is the keyboard layout used to translate key presses
+     */
+    public KeyboardInterface(KeyboardLayout layout) {
+        this((SerialLink) null, layout);
+    }
+
+    /**
+     * constructor
+     * @param ioPort is the keyboard's serial port, or null if no keyboard is connected
+     * @param layout is the keyboard layout used to translate key presses
+     */
+    public KeyboardInterface(SerialPort ioPort, KeyboardLayout layout) {
+        this((ioPort != null && ioPort.isOpen()) ? new SerialPortLink(ioPort) : null, layout);
+    }
+
+    /**
+     * constructor
+     * @param link is the link to the keyboard (e.g. a SerialPortLink), or null if no keyboard is connected
+     * @param layout is the keyboard layout used to translate key presses
+     */
+    public KeyboardInterface(SerialLink link, KeyboardLayout layout) {
+        this.layout = layout;
+        if (link != null && link.isOpen()) {
+            connect(link);
+        }
+    }
+
+    /**
+     * start talking to a keyboard, replacing the one connected before (if any).
+     * the link stays owned by the caller, which closes it after disconnect or close.
+     * @param link is the open link to the keyboard
+     */
+    public synchronized void connect(SerialLink link) {
+        if (closed) {
+            return;
+        }
+        disconnect();
+        deviceClock.reset();
+        this.link = link;
+        commandWriter = new SerialCommandWriter(link, ackTracker);
+        frameReader = new SerialFrameReader(link);
+        frameReader.setHandler(KeyboardProtocol.TYPE_ACK, this::handleAck);
+        frameReader.setHandler(KeyboardProtocol.TYPE_KEY_EVENT, this::handleDeviceKeyEvent);
+        frameReader.start();
+        if (hardwareInput) {
+            // a keyboard that was unplugged has restarted in its default input mode
+            commandWriter.submitInputMode(KeyboardProtocol.INPUT_HID_AND_SERIAL);
+        }
+    }
+
+    /**
+     * stop talking to the keyboard, e.g. because it was unplugged. motor and light deadlines are dropped, since a
+     * keyboard that comes back starts with everything off.
+     */
+    public synchronized void disconnect() {
+        if (commandWriter == null) {
+            return;
+        }
+        deadlines.cancelAll();
+        frameReader.stop();
+        commandWriter.close(200);
+        frameReader = null;
+        commandWriter = null;
+        link = null;
+        if (hardwareInput) {
+            // the keyboard's releases won't arrive now, and the scene takes over key events
+            Platform.runLater(() -> Arrays.fill(heldKeys, null));
+        }
+    }
+
+    /**
+     * @return whether a keyboard is connected and its link is still up
+     */
+    public boolean isConnected() {
+        SerialLink current = link;
+        SerialFrameReader reader = frameReader;
+        return current != null && current.isOpen() && reader != null && reader.isRunning();
     }
 
 
     /**
-     * attach an event handler to the specified scene to handle key presses and notify listeners
+     * attach an event handler to the specified scene to handle key presses and notify listeners.
+     * attaching the same scene more than once has no effect, so controllers can call this on every initialize.
      * @param scene is the scene to attach to
      */
     public void attachToScene(Scene scene) {
-        // 添加变量跟踪Shift键状态
-        final boolean[] shiftPressed = {false};
-        
-        // 处理Shift键按下和释放
-        scene.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
-            if (event.getCode() == KeyCode.SHIFT) {
-                shiftPressed[0] = true;
-            }
-        });
-        
-        scene.addEventFilter(KeyEvent.KEY_RELEASED, event -> {
-            if (event.getCode() == KeyCode.SHIFT) {
-                shiftPressed[0] = false;
-            }
-        });
-        
-        // 主要键盘事件处理
-        scene.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
-            KeyCode keyCode = event.getCode();
-
-            if (keyCode.isLetterKey() || keyCode.isDigitKey()) {
-                String key = event.getText();
-                
-                // 修复：处理Shift+键组合，保留大小写信息
-                if (shiftPressed[0] && key.length() > 0 && Character.isLowerCase(key.charAt(0))) {
-                    key = key.toUpperCase();
-                }
-                
-                notifyListeners(key);
+        if (scene.getProperties().get(KeyboardInterface.class) == this) {
+            return;
+        }
+        scene.getProperties().put(KeyboardInterface.class, this);
+
+        // pick up the current Caps Lock state, where the platform can report it
+        try {
+            capsLockOn = Platform.isKeyLocked(KeyCode.CAPS).orElse(capsLockOn);
+        } catch (IllegalStateException | UnsupportedOperationException e) {
+            // keep tracking Caps Lock from CAPS key presses instead
+        }
+
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, this::handleKeyPressed);
+        scene.addEventFilter(KeyEvent.KEY_RELEASED, this::handleKeyReleased);
+    }
+
+    /**
+     * translates a pressed key with the current layout and notifies listeners.
+     */
+    private void handleKeyPressed(KeyEvent event) {
+        long timestampNanos = System.nanoTime();
+        if (isHardwareInput()) {
+            return;
+        }
+        KeyCode keyCode = event.getCode();
+        if (keyCode == KeyCode.ALT_GRAPH) {
+            altGraphDown = true;
+        }
+
+        // on Windows, AltGr is reported as Ctrl+Alt
+        boolean altGraph = KeyboardLayout.isAltGraph(altGraphDown, event.isControlDown(), event.isAltDown(),
+                KeyboardLayout.CTRL_ALT_IS_ALT_GRAPH);
+        keyPressed(keyCode, event.isShiftDown(), altGraph, modifiersOf(event), timestampNanos);
+    }
+
+    /**
+     * notifies listeners of a released key, with the KeyToken it was pressed as.
+     */
+    private void handleKeyReleased(KeyEvent event) {
+        long timestampNanos = System.nanoTime();
+        if (isHardwareInput()) {
+            return;
+        }
+        KeyCode keyCode = event.getCode();
+        if (keyCode == KeyCode.ALT_GRAPH) {
+            altGraphDown = false;
+        }
+        keyReleased(keyCode, timestampNanos);
+    }
+
+    private void keyPressed(KeyCode keyCode, boolean shiftDown, boolean altGraph, int modifiers, long timestampNanos) {
+        if (keyCode == KeyCode.CAPS) {
+            capsLockOn = !capsLockOn;
+        }
+        KeyToken key = layout.translate(keyCode, shiftDown, capsLockOn, altGraph);
+        heldKeys[keyCode.ordinal()] = key;
+        notifyListeners(key, modifiers, timestampNanos);
+    }
+
+    private void keyReleased(KeyCode keyCode, long timestampNanos) {
+        KeyToken key = heldKeys[keyCode.ordinal()];
+        if (key == null) {
+            // pressed before this scene was attached, or before the input mode changed
+            return;
+        }
+        heldKeys[keyCode.ordinal()] = null;
+        notifyKeyReleased(key, timestampNanos);
+    }
+
+    /**
+     * records an ACK's round trip, and the keyboard's clock if the ACK carries it. runs on the serial reader thread.
+     */
+    private void handleAck(KeyboardProtocol.Frame frame) {
+        long receivedNanos = System.nanoTime();
+        byte[] payload = frame.payload();
+        ackTracker.acknowledged(frame.seq(),
+                (payload.length > 0) ? payload[0] & 0xFF : KeyboardProtocol.STATUS_MALFORMED, receivedNanos);
+        long deviceMicros = KeyboardProtocol.ackDeviceMicros(payload);
+        if (deviceMicros >= 0) {
+            deviceClock.observe(deviceMicros, receivedNanos);
+        }
+    }
+
+    /**
+     * maps a key event from the keyboard onto the host clock, and hands it to the JavaFX thread for the listeners.
+     * runs on the serial reader thread.
+     */
+    private void handleDeviceKeyEvent(KeyboardProtocol.Frame frame) {
+        long receivedNanos = System.nanoTime();
+        KeyboardProtocol.KeyEvent event;
+        try {
+            event = KeyboardProtocol.decodeKeyEvent(frame.payload());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring key event from keyboard: " + e.getMessage());
+            return;
+        }
+        // a key can't have changed after its event arrived, whatever the estimate says
+        long timestampNanos = Math.min(receivedNanos,
+                deviceClock.toHostNanos(deviceClock.observe(event.deviceMicros(), receivedNanos)));
+        KeyCode keyCode = DeviceKeys.keyCodeFor(event.key());
+        if (!hardwareInput || keyCode == null) {
+            return;
+        }
+
+        int modifiers = event.modifiers()
+                & (KeyToken.SHIFT | KeyToken.CONTROL_DOWN | KeyToken.ALT_DOWN | KeyToken.META_DOWN);
+        boolean shiftDown = (modifiers & KeyToken.SHIFT) != 0;
+        boolean altGraph = (event.modifiers() & KeyboardProtocol.MOD_ALT_GRAPH) != 0;
+        Platform.runLater(() -> {
+            if (event.action() == KeyboardProtocol.KEY_PRESSED) {
+                keyPressed(keyCode, shiftDown, altGraph, modifiers, timestampNanos);
             } else {
-                switch (keyCode) {
-                    case BACK_SPACE:
-                        notifyListeners("BACK_SPACE");
-                        break;
-                    case ENTER:
-                        notifyListeners("ENTER");
-                        break;
-                    case ESCAPE:
-                        notifyListeners("ESCAPE");
-                        break;
-                    case CONTROL:
-                        notifyListeners("CONTROL");
-                        break;
-                    case ALT:
-                        notifyListeners("ALT");
-                        break;
-                    case TAB:
-                        notifyListeners("TAB");
-                        break;
-                    case LEFT:
-                        notifyListeners("LEFT");
-                        break;
-                    case RIGHT:
-                        notifyListeners("RIGHT");
-                        break;
-                    case UP:
-                        notifyListeners("UP");
-                        break;
-                    case DOWN:
-                        notifyListeners("DOWN");
-                        break;
-                    case SPACE:
-                        notifyListeners(" ");
-                        break;
-                    case SEMICOLON:
-                        if (shiftPressed[0]) {
-                            notifyListeners(":");
-                        } else {
-                            notifyListeners(";");
-                        }
-                        break;
-                    case QUOTE:
-                        if (shiftPressed[0]) {
-                            notifyListeners("\"");
-                        } else {
-                            notifyListeners("'");
-                        }
-                        break;
-                    case OPEN_BRACKET:
-                        if (shiftPressed[0]) {
-                            notifyListeners("{");
-                        } else {
-                            notifyListeners("[");
-                        }
-                        break;
-                    case CLOSE_BRACKET:
-                        if (shiftPressed[0]) {
-                            notifyListeners("}");
-                        } else {
-                            notifyListeners("]");
-                        }
-                        break;
-                    case COMMA:
-                        if (shiftPressed[0]) {
-                            notifyListeners("<");
-                        } else {
-                            notifyListeners(",");
-                        }
-                        break;
-                    case CAPS:
-                        notifyListeners("CAPS");
-                        break;
-                    case NUMBER_SIGN: // this key represents the key with # on a British keyboard
-                        if (shiftPressed[0]) {
-                            notifyListeners("~");
-                        } else {
-                            notifyListeners("#");
-                        }
-                        break;
-                    case PERIOD:
-                        if (shiftPressed[0]) {
-                            notifyListeners(">");
-                        } else {
-                            notifyListeners(".");
-                        }
-                        break;
-                    case SLASH:
-                        if (shiftPressed[0]) {
-                            notifyListeners("?");
-                        } else {
-                            notifyListeners("/");
-                        }
-                        break;
-                    case BACK_SLASH:
-                        if (shiftPressed[0]) {
-                            notifyListeners("|");
-                        } else {
-                            notifyListeners("\\");
-                        }
-                        break;
-                    case BACK_QUOTE:
-                        if (shiftPressed[0]) {
-                            notifyListeners("~");
-                        } else {
-                            notifyListeners("`");
-                        }
-                        break;
-                    case EQUALS:
-                        if (shiftPressed[0]) {
-                            notifyListeners("+");
-                        } else {
-                            notifyListeners("=");
-                        }
-                        break;
-                    case MINUS:
-                        if (shiftPressed[0]) {
-                            notifyListeners("_");
-                        } else {
-                            notifyListeners("-");
-                        }
-                        break;
-                    default:
-                        notifyListeners("UNKNOWN");
-                        break;
-                }
+                keyReleased(keyCode, timestampNanos);
             }
         });
     }
 
+    /**
+     * switch between taking key events from the scene (the default) and from the keyboard's serial port. the keyboard
+     * types as a USB keyboard either way, so text fields still receive its keys. the choice is remembered while no
+     * keyboard is connected, and applied when one connects.
+     * @param enabled is whether to read key events from the keyboard
+     * @return whether hardware input is now in use
+     */
+    public synchronized boolean setHardwareInput(boolean enabled) {
+        if (enabled != hardwareInput && commandWriter != null) {
+            commandWriter.submitInputMode(enabled ? KeyboardProtocol.INPUT_HID_AND_SERIAL : KeyboardProtocol.INPUT_HID);
+            // keys held now were pressed in the other mode, and their releases will not arrive in this one
+            Platform.runLater(() -> Arrays.fill(heldKeys, null));
+        }
+        hardwareInput = enabled;
+        return isHardwareInput();
+    }
+
+    /**
+     * @return whether key events are read from the keyboard's serial port: hardware input is on, and a keyboard is
+     * connected to send them
+     */
+    public boolean isHardwareInput() {
+        return hardwareInput && commandWriter != null;
+    }
+
+    /**
+     * @return the mapping from the keyboard's clock onto System.nanoTime(), for diagnostics
+     */
+    public DeviceClock getDeviceClock() {
+        return deviceClock;
+    }
+
+    /**
+     * @return the keyboard layout used to translate key presses
+     */
+    public KeyboardLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * change the keyboard layout used to translate key presses.
+     * @param layout is the layout to use
+     */
+    public void setLayout(KeyboardLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * @return the KeyToken modifier flags held during a key event
+     */
+    private static int modifiersOf(KeyEvent event) {
+        int modifiers = 0;
+        if (event.isShiftDown()) modifiers |= KeyToken.SHIFT;
+        if (event.isControlDown()) modifiers |= KeyToken.CONTROL_DOWN;
+        if (event.isAltDown()) modifiers |= KeyToken.ALT_DOWN;
+        if (event.isMetaDown()) modifiers |= KeyToken.META_DOWN;
+        return modifiers;
+    }
+
     /**
      * notifies all registered KeypressListeners of a keypress, calling their .onKeypress methods.
+     * kept for callers that still produce Strings; the String is converted to its KeyToken first.
      */
     public void notifyListeners(String key) {
-        for (KeypressListener listener : listeners) {
-            listener.onKeypress(key);
+        notifyListeners(KeyToken.fromString(key), 0, System.nanoTime());
+    }
+
+    /**
+     * notifies all registered listeners of a keypress, calling their .onKeyToken methods.
+     * @param key is the key that was pressed
+     * @param modifiers is a combination of the KeyToken modifier flags
+     * @param timestampNanos is the System.nanoTime() at which the press was received
+     */
+    public void notifyListeners(KeyToken key, int modifiers, long timestampNanos) {
+        KeyTokenListener[] snapshot = listeners;
+        for (KeyTokenListener listener : snapshot) {
+            listener.onKeyToken(key, modifiers, timestampNanos);
+        }
+    }
+
+    /**
+     * notifies all registered listeners of a key release, calling their .onKeyRelease methods.
+     * @param key is the key that was released
+     * @param timestampNanos is the System.nanoTime() at which the release was received
+     */
+    public void notifyKeyReleased(KeyToken key, long timestampNanos) {
+        KeyTokenListener[] snapshot = listeners;
+        for (KeyTokenListener listener : snapshot) {
+            listener.onKeyRelease(key, timestampNanos);
         }
     }
 
     /**
      * registers a new listener to be notified of keypress events
      * @param listener is the listener to be registered
+     * @return a handle that removes the listener
      */
-    public void addKeypressListener(KeypressListener listener) {
-        listeners.add(listener);
+    public ListenerRegistration addKeypressListener(KeypressListener listener) {
+        return addKeyTokenListener(listener);
     }
 
     /**
@@ -221,102 +379,167 @@ public class KeyboardInterface {
      * @param listener is the listener to be removed
      */
     public void removeKeypressListener(KeypressListener listener) {
-        listeners.remove(listener);
+        removeKeyTokenListener(listener);
+    }
+
+    /**
+     * registers a new listener to be notified of keypress events as KeyTokens
+     * @param listener is the listener to be registered
+     * @return a handle that removes the listener
+     */
+    public synchronized ListenerRegistration addKeyTokenListener(KeyTokenListener listener) {
+        KeyTokenListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+        return new ListenerRegistration(this, listener);
+    }
+
+    /**
+     * registers a listener that is only notified while a node is on screen. the listener is removed as soon as the
+     * node leaves its scene, or its scene leaves its window (e.g. when the stage switches to another view), so a
+     * controller does not have to remember to deregister when navigating away.
+     * @param listener is the listener to be registered
+     * @param owner is the node whose lifetime the registration is tied to
+     * @return a handle that removes the listener early
+     */
+    public ListenerRegistration addKeyTokenListener(KeyTokenListener listener, Node owner) {
+        ListenerRegistration registration = addKeyTokenListener(listener);
+
+        // the controller usually registers before its scene has been shown, so only a window going away counts
+        ChangeListener<Window> windowListener = (obs, oldWindow, newWindow) -> {
+            if (oldWindow != null && newWindow == null) {
+                registration.remove();
+            }
+        };
+        owner.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (oldScene != null) {
+                oldScene.windowProperty().removeListener(windowListener);
+                if (newScene == null) {
+                    registration.remove();
+                }
+            }
+            if (newScene != null && registration.isActive()) {
+                newScene.windowProperty().addListener(windowListener);
+            }
+        });
+        if (owner.getScene() != null) {
+            owner.getScene().windowProperty().addListener(windowListener);
+        }
+        return registration;
+    }
+
+    /**
+     * removes a registered KeyTokenListener so that they are no longer notified of keypress events.
+     * @param listener is the listener to be removed
+     */
+    public synchronized void removeKeyTokenListener(KeyTokenListener listener) {
+        KeyTokenListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                KeyTokenListener[] updated = new KeyTokenListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of listeners currently registered, for diagnosing listeners that were never removed
+     */
+    public int getActiveListenerCount() {
+        return listeners.length;
     }
 
     /**
-     * sends a command to the haptic motor beneath a key
-     * TODO: still need to agree with hardware team on parameters
+     * sends a command to the haptic motor beneath a key, and another to stop it once the duration has passed.
+     * a key without a motor stops every motor instead.
      * @param key is the key to vibrate
      * @param duration is the duration to vibrate (in milliseconds)
-     * @param strength is the strength of the vibration.
+     * @param strength is the strength of the vibration, from 0 to 100
      */
     public void sendHapticCommand(String key, int duration, int strength) {
-        // for now, this method will simply output to the console.
-        String keyLower = key.toLowerCase();
-        if (keyLower.matches("[a-z]")) {
-            if (Application.keyboardConnected) {
-                PrintWriter keyCommand = new PrintWriter(ioPort.getOutputStream());
-                System.out.println("flag");
-                keyCommand.print(keyLower);
-                keyCommand.flush();
-                keyCommand.close();
-            }
+        int motor = (key.length() == 1) ? HapticCommand.motorFor(key.charAt(0)) : -1;
+        if (motor >= 0) {
+            // the keyboard stops the motor itself after the duration, as well as the deadline below
+            submit(new HapticCommand().vibrate(motor, strength * HapticCommand.MAX_STRENGTH / 100, duration));
             System.out.println(String.format("Key %s is vibrating for %d ms at strength %d", key, duration, strength));
-            stopKeyPressQueue++;
-            Thread thread = new Thread(() -> {
-                try {
-                    Thread.sleep(duration);
-                    if (stopKeyPressQueue==1){
-                        stopHaptic();
-                        System.out.println(String.format("Key %s has stopped vibrating after %d ms", key, duration));
-                    } else {
-                        stopKeyPressQueue--;
-                    }
-                    stopHaptic();
-                    System.out.println(String.format("Key %s has stopped vibrating after %d ms", key, duration));
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+            // a key that is already vibrating has its deadline extended, rather than being stopped by the earlier one
+            deadlines.extend(key.toLowerCase(), duration, () -> {
+                submit(new HapticCommand().stopMotor(motor));
+                System.out.println(String.format("Key %s has stopped vibrating", key));
             });
-            thread.start();
         } else {
             stopHaptic();
         }
-
-
     }
 
-
+    /**
+     * stops every motor straight away, cancelling their deadlines.
+     */
     public void stopHaptic(){
-        stopKeyPressQueue = 0;
-        if (Application.keyboardConnected) {
-            PrintWriter keyCommand = new PrintWriter(ioPort.getOutputStream());
-            keyCommand.print(0);
-            keyCommand.flush();
-            keyCommand.close();
-        }
+        deadlines.cancelIf(deadline -> !deadline.equals(LIGHTS_DEADLINE));
+        submit(new HapticCommand().stopAllMotors());
     }
 
     /**
      * sends a command to the keyboard to turn the LED lights on for a certain amount of time.
+     * if the lights are already on, they stay on until the later of the two deadlines.
      * @param duration is the duration to turn lights on for (in milliseconds)
      */
     public void activateLights(int duration) {
-        // for now, this method will simply output to the console
         System.out.println(String.format("Turned LED lights on for %d milliseconds", duration));
-        if (Application.keyboardConnected) {
-            PrintWriter lightCommand = new PrintWriter(ioPort.getOutputStream());
-            lightCommand.print("*");
-            lightCommand.flush();
-            lightCommand.close();
-        }
+        submit(new HapticCommand().lightsOn(duration));
 
-//        stopLightQueue ++;
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(duration);/*
-                if (stopKeyPressQueue==1){
-                    stopLight();
-                    System.out.println(String.format("Lights have turned off after %d ms", duration));
-                } else {
-                    stopLightQueue--;
-                }*/
-                stopLight();
-                System.out.println(String.format("Lights have turned off after %d ms", duration));
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        deadlines.extend(LIGHTS_DEADLINE, duration, () -> {
+            submit(new HapticCommand().lightsOff());
+            System.out.println("Lights have turned off");
         });
-        thread.start();
     }
+
+    /**
+     * turns the lights off straight away, cancelling their deadline.
+     */
     public void stopLight(){
-//        stopLightQueue = 0;
-        if (Application.keyboardConnected) {
-            PrintWriter keyCommand = new PrintWriter(ioPort.getOutputStream());
-            keyCommand.print("O");
-            keyCommand.flush();
-            keyCommand.close();
+        deadlines.cancel(LIGHTS_DEADLINE);
+        submit(new HapticCommand().lightsOff());
+    }
+
+    /**
+     * sends a command to the keyboard, if one is connected. never blocks.
+     * @param command is the motor and light changes to send in one frame
+     */
+    public void submit(HapticCommand command) {
+        SerialCommandWriter writer = commandWriter;
+        if (writer != null) {
+            writer.submit(command);
+        }
+    }
+
+    /**
+     * @return round trip measurements for the commands sent to the keyboard
+     */
+    public AckTracker getAckTracker() {
+        return ackTracker;
+    }
+
+    /**
+     * stops the motors and lights, and waits (briefly) for queued commands to reach the keyboard. the keyboard is not
+     * reconnected afterwards. call this before closing the serial port.
+     */
+    public synchronized void close() {
+        closed = true;
+        deadlines.shutdown();
+        if (commandWriter != null) {
+            stopHaptic();
+            stopLight();
+            if (hardwareInput) {
+                commandWriter.submitInputMode(KeyboardProtocol.INPUT_HID);
+                hardwareInput = false;
+            }
+            commandWriter.close(500);
+            disconnect();
         }
     }
 
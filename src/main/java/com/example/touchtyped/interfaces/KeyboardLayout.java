@@ -0,0 +1,187 @@
+package com.example.touchtyped.interfaces;
+
+import javafx.scene.input.KeyCode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * translates a KeyCode and modifier state into a KeyToken, using a lookup table built once per layout.
+ * translation is a single array read, so it can be done on every keypress (and by the hardware serial path).
+ *
+ * layouts are read from text files in /com/example/touchtyped/layouts/, one line per key:
+ *     KEYCODE plain shifted [altgr] [shifted-altgr]
+ * each column is a single character, U+XXXX for a codepoint, or "none". lines starting with # are comments.
+ * letters are affected by Caps Lock; every other key is not.
+ */
+public class KeyboardLayout {
+
+    public static final String UK = "uk";
+    public static final String US = "us";
+    public static final String DEFAULT_LAYOUT = UK;
+
+    private static final String LAYOUT_DIRECTORY = "/com/example/touchtyped/layouts/";
+
+    private static final int LEVELS = 4;
+    private static final int SHIFT_LEVEL = 1;
+    private static final int ALT_GRAPH_LEVEL = 2;
+
+    /**
+     * keys that translate the same way in every layout.
+     */
+    /**
+     * whether the platform reports AltGr as Ctrl+Alt, as Windows does.
+     */
+    public static final boolean CTRL_ALT_IS_ALT_GRAPH = System.getProperty("os.name", "").startsWith("Windows");
+
+    private static final Map<KeyCode, KeyToken> COMMON_KEYS = new EnumMap<>(KeyCode.class);
+    static {
+        COMMON_KEYS.put(KeyCode.BACK_SPACE, KeyToken.BACK_SPACE);
+        COMMON_KEYS.put(KeyCode.ENTER, KeyToken.of(KeyToken.Special.ENTER));
+        COMMON_KEYS.put(KeyCode.ESCAPE, KeyToken.of(KeyToken.Special.ESCAPE));
+        COMMON_KEYS.put(KeyCode.CONTROL, KeyToken.of(KeyToken.Special.CONTROL));
+        COMMON_KEYS.put(KeyCode.ALT, KeyToken.of(KeyToken.Special.ALT));
+        COMMON_KEYS.put(KeyCode.TAB, KeyToken.of(KeyToken.Special.TAB));
+        COMMON_KEYS.put(KeyCode.LEFT, KeyToken.of(KeyToken.Special.LEFT));
+        COMMON_KEYS.put(KeyCode.RIGHT, KeyToken.of(KeyToken.Special.RIGHT));
+        COMMON_KEYS.put(KeyCode.UP, KeyToken.of(KeyToken.Special.UP));
+        COMMON_KEYS.put(KeyCode.DOWN, KeyToken.of(KeyToken.Special.DOWN));
+        COMMON_KEYS.put(KeyCode.CAPS, KeyToken.of(KeyToken.Special.CAPS));
+        COMMON_KEYS.put(KeyCode.SPACE, KeyToken.SPACE);
+        for (int i = 0; i <= 9; i++) {
+            COMMON_KEYS.put(KeyCode.valueOf("NUMPAD" + i), KeyToken.of('0' + i));
+        }
+        COMMON_KEYS.put(KeyCode.DECIMAL, KeyToken.of('.'));
+        COMMON_KEYS.put(KeyCode.ADD, KeyToken.of('+'));
+        COMMON_KEYS.put(KeyCode.SUBTRACT, KeyToken.of('-'));
+        COMMON_KEYS.put(KeyCode.MULTIPLY, KeyToken.of('*'));
+        COMMON_KEYS.put(KeyCode.DIVIDE, KeyToken.of('/'));
+    }
+
+    private final String name;
+
+    /**
+     * the translation table, indexed by KeyCode ordinal * LEVELS + level.
+     */
+    private final KeyToken[] table = new KeyToken[KeyCode.values().length * LEVELS];
+    private final boolean[] capsAffected = new boolean[KeyCode.values().length];
+
+    private KeyboardLayout(String name) {
+        this.name = name;
+        for (Map.Entry<KeyCode, KeyToken> entry : COMMON_KEYS.entrySet()) {
+            for (int level = 0; level < LEVELS; level++) {
+                table[entry.getKey().ordinal() * LEVELS + level] = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * load one of the layouts in the layouts resource directory.
+     * @param name is the layout's name, e.g. "uk" or "us"
+     * @return the layout, or the default layout if it could not be loaded
+     */
+    public static KeyboardLayout load(String name) {
+        try (InputStream in = KeyboardLayout.class.getResourceAsStream(LAYOUT_DIRECTORY + name + ".layout")) {
+            if (in != null) {
+                return fromStream(name, in);
+            }
+            System.err.println("Keyboard layout '" + name + "' not found, using " + DEFAULT_LAYOUT);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Failed to load keyboard layout '" + name + "': " + e.getMessage());
+        }
+        if (DEFAULT_LAYOUT.equals(name)) {
+            // don't recurse if the default layout itself is missing: fall back to the common keys only
+            return new KeyboardLayout(name);
+        }
+        return load(DEFAULT_LAYOUT);
+    }
+
+    /**
+     * read a layout in the format described at the top of this class.
+     * @param name is the name to give the layout
+     * @param in is the stream to read from
+     * @return the layout
+     */
+    public static KeyboardLayout fromStream(String name, InputStream in) throws IOException {
+        KeyboardLayout layout = new KeyboardLayout(name);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\\s+");
+            if (columns.length < 3 || columns.length > 1 + LEVELS) {
+                throw new IllegalArgumentException("line " + lineNumber + " should have 2 to " + LEVELS + " characters");
+            }
+            KeyCode keyCode = KeyCode.valueOf(columns[0]);
+            int base = keyCode.ordinal() * LEVELS;
+            for (int level = 0; level < LEVELS; level++) {
+                // missing altgr columns fall back to the plain and shifted characters
+                String column = columns[1 + ((level < columns.length - 1) ? level : level % ALT_GRAPH_LEVEL)];
+                layout.table[base + level] = parseColumn(column, lineNumber);
+            }
+            layout.capsAffected[keyCode.ordinal()] = keyCode.isLetterKey();
+        }
+        return layout;
+    }
+
+    private static KeyToken parseColumn(String column, int lineNumber) {
+        if (column.equals("none")) {
+            return null;
+        }
+        if (column.startsWith("U+") && column.length() > 2) {
+            return KeyToken.of(Integer.parseInt(column.substring(2), 16));
+        }
+        if (column.codePointCount(0, column.length()) != 1) {
+            throw new IllegalArgumentException("line " + lineNumber + " has an invalid character '" + column + "'");
+        }
+        return KeyToken.of(column.codePointAt(0));
+    }
+
+    /**
+     * translate a key into a KeyToken.
+     * @param keyCode is the key that was pressed
+     * @param shift is whether shift was held
+     * @param capsLock is whether caps lock is on
+     * @param altGraph is whether AltGr was held
+     * @return the KeyToken for the key, or KeyToken.UNKNOWN if the layout doesn't have it
+     */
+    public KeyToken translate(KeyCode keyCode, boolean shift, boolean capsLock, boolean altGraph) {
+        int ordinal = keyCode.ordinal();
+        boolean shifted = shift ^ (capsLock && capsAffected[ordinal]);
+        int level = (shifted ? SHIFT_LEVEL : 0) | (altGraph ? ALT_GRAPH_LEVEL : 0);
+        KeyToken token = table[ordinal * LEVELS + level];
+        if (token == null && altGraph) {
+            // the key has no AltGr character, so ignore AltGr
+            token = table[ordinal * LEVELS + (level & SHIFT_LEVEL)];
+        }
+        return (token != null) ? token : KeyToken.UNKNOWN;
+    }
+
+    /**
+     * work out whether a key is typed with AltGr.
+     * @param altGraphDown is whether the AltGr key itself is held
+     * @param controlDown is whether Ctrl is held
+     * @param altDown is whether Alt is held
+     * @param ctrlAltIsAltGraph is whether the platform reports AltGr as Ctrl+Alt (see CTRL_ALT_IS_ALT_GRAPH). where
+     *                          it doesn't, Ctrl+Alt is an ordinary shortcut and the key is typed without AltGr
+     * @return whether to translate the key at its AltGr level
+     */
+    public static boolean isAltGraph(boolean altGraphDown, boolean controlDown, boolean altDown, boolean ctrlAltIsAltGraph) {
+        return altGraphDown || (ctrlAltIsAltGraph && controlDown && altDown);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.example.touchtyped.interfaces;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * finds the keyboard among the serial ports by its USB vendor and product IDs, rather than by device path (which
+ * changes between machines and with the order things are plugged in), and connects it to a KeyboardInterface.
+ *
+ * the ports are polled on a background thread, so opening a port never holds up the JavaFX thread. when the keyboard
+ * is unplugged it is disconnected, and when it comes back it is reconnected, so a reseated cable doesn't need a
+ * restart.
+ */
+public class KeyboardPortWatcher {
+
+    /**
+     * a USB vendor and product ID pair.
+     */
+    public record UsbId(int vendorId, int productId) {
+
+        /**
+         * @param text is the IDs in hex, as "vendor:product" (e.g. "2341:8036")
+         * @throws IllegalArgumentException if the text isn't a pair of 16-bit hex IDs
+         */
+        public static UsbId parse(String text) {
+            String[] parts = text.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("USB ID should be vendor:product, not " + text);
+            }
+            return new UsbId(parseId(parts[0], text), parseId(parts[1], text));
+        }
+
+        private static int parseId(String part, String text) {
+            int id;
+            try {
+                id = Integer.parseInt(part.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("USB ID should be hex, not " + text, e);
+            }
+            // jSerialComm gives -1 for ports without a USB ID, so a negative ID would match every one of them
+            if (id < 0 || id > 0xFFFF) {
+                throw new IllegalArgumentException("USB ID should be between 0000 and ffff, not " + text);
+            }
+            return id;
+        }
+
+        public boolean matches(SerialPort port) {
+            return port.getVendorID() == vendorId && port.getProductID() == productId;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%04x:%04x", vendorId, productId);
+        }
+    }
+
+    /**
+     * the boards the keyboard has been built on: Arduino Leonardo and Micro, and SparkFun Pro Micro (3.3V and 5V).
+     */
+    public static final String DEFAULT_USB_IDS = "2341:8036,2341:8037,1b4f:9204,1b4f:9206";
+    public static final long POLL_MILLIS = 2000;
+
+    private final KeyboardInterface keyboardInterface;
+    private final List<UsbId> usbIds;
+    private final Consumer<SerialPort> onChange;
+    private final ScheduledExecutorService executor;
+
+    // guarded by this
+    private SerialPort port;
+    private boolean closed = false;
+
+    /**
+     * constructor
+     * @param keyboardInterface is connected to the keyboard whenever it is plugged in
+     * @param usbIds is the IDs the keyboard may have
+     * @param onChange is told (on the watcher's thread) of the open port when the keyboard connects, and null when it
+     *                 disconnects
+     */
+    public KeyboardPortWatcher(KeyboardInterface keyboardInterface, List<UsbId> usbIds, Consumer<SerialPort> onChange) {
+        this.keyboardInterface = keyboardInterface;
+        this.usbIds = List.copyOf(usbIds);
+        this.onChange = onChange;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "keyboard-port-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * read a comma-separated list of USB IDs, skipping (and reporting) any that are malformed.
+     * @param text is e.g. DEFAULT_USB_IDS
+     * @return the IDs
+     */
+    public static List<UsbId> parseUsbIds(String text) {
+        List<UsbId> ids = new ArrayList<>();
+        for (String part : text.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            try {
+                ids.add(UsbId.parse(part));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring keyboard USB ID: " + e.getMessage());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * start looking for the keyboard. the first look happens straight away, in the background.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::poll, 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void poll() {
+        if (closed) {
+            return;
+        }
+        try {
+            SerialPort[] ports = SerialPort.getCommPorts();
+            if (port != null) {
+                if (isListed(ports, port) && keyboardInterface.isConnected()) {
+                    return;
+                }
+                System.out.println("Keyboard disconnected from " + port.getSystemPortPath());
+                disconnect();
+            }
+            for (SerialPort candidate : ports) {
+                if (matches(candidate) && open(candidate)) {
+                    port = candidate;
+                    keyboardInterface.connect(new SerialPortLink(candidate));
+                    System.out.println("Keyboard connected on " + candidate.getSystemPortPath());
+                    onChange.accept(candidate);
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            // keep polling; a port that vanished mid-enumeration is picked up next time
+            System.err.println("Error looking for keyboard: " + e.getMessage());
+        }
+    }
+
+    private boolean matches(SerialPort candidate) {
+        for (UsbId id : usbIds) {
+            if (id.matches(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isListed(SerialPort[] ports, SerialPort port) {
+        for (SerialPort listed : ports) {
+            if (listed.getSystemPortPath().equals(port.getSystemPortPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean open(SerialPort candidate) {
+        if (!candidate.openPort()) {
+            System.out.println("Unable to open keyboard port " + candidate.getSystemPortPath());
+            return false;
+        }
+        candidate.setComPortParameters(9600, 8, 1, SerialPort.NO_PARITY);
+        // reads block until bytes arrive, for the keyboard's frame reader thread
+        candidate.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 0, 0);
+        return true;
+    }
+
+    private void disconnect() {
+        keyboardInterface.disconnect();
+        port.closePort();
+        port = null;
+        onChange.accept(null);
+    }
+
+    /**
+     * @return whether the keyboard is currently connected
+     */
+    public synchronized boolean isConnected() {
+        return port != null;
+    }
+
+    /**
+     * stop looking for the keyboard, and close its port if it is open.
+     * call KeyboardInterface.close() first, so that its last commands are written before the port closes.
+     */
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+            if (port != null) {
+                disconnect();
+            }
+        }
+    }
+
+}
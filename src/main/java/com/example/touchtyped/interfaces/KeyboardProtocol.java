@@ -0,0 +1,332 @@
+package com.example.touchtyped.interfaces;
+
+import java.util.function.Consumer;
+
+/**
+ * the binary protocol spoken over the keyboard's serial port. every message, in either direction, is a frame:
+ *
+ *     offset  size  field
+ *     0       1     SYNC (0xA5)
+ *     1       1     VERSION (currently 1)
+ *     2       1     TYPE (TYPE_COMMAND, TYPE_ACK)
+ *     3       2     SEQ, big-endian. an ACK carries the SEQ of the command it acknowledges
+ *     5       1     LENGTH of the payload (0 to 255)
+ *     6       n     payload
+ *     6+n     2     CRC-16/CCITT-FALSE of bytes 1 to 5+n (everything but SYNC and the CRC), big-endian
+ *
+ * a COMMAND payload is:
+ *     1  flags (FLAG_STOP_ALL_MOTORS: stop every motor before applying the motor entries)
+ *     4  motor bitmask, big-endian. bit i is motor i
+ *     3  for each set bit, lowest first: strength (0 = off, 255 = full), then duration in ms (0 = until stopped)
+ *     1  lights command (HapticCommand.LIGHTS_UNCHANGED, LIGHTS_ON, LIGHTS_OFF)
+ *     2  lights duration in ms (0 = until turned off)
+ *
+ * a CONFIG payload (host to keyboard) is:
+ *     1  input mode (INPUT_HID: key presses only go to the computer as a USB keyboard;
+ *        INPUT_HID_AND_SERIAL: they are also streamed to the host as KEY_EVENT frames)
+ *
+ * an ACK payload is a status byte (STATUS_OK, or the reason the frame was rejected), optionally followed by the
+ * keyboard's clock (micros()) when the ACK was sent, as 4 bytes big-endian.
+ *
+ * a KEY_EVENT payload (keyboard to host, SEQ counts up per event) is:
+ *     1  KEY_PRESSED or KEY_RELEASED
+ *     1  the key, as an Arduino Keyboard code (see DeviceKeys)
+ *     1  modifiers held on the keyboard (the KeyToken flags, plus MOD_ALT_GRAPH)
+ *     4  the keyboard's clock (micros()) when the key changed, big-endian. it wraps every 71.6 minutes
+ *
+ * the firmware side of this protocol is in touchtypEd_9Key.ino.
+ */
+public final class KeyboardProtocol {
+
+    public static final int SYNC = 0xA5;
+    public static final int VERSION = 1;
+
+    public static final int TYPE_COMMAND = 1;
+    public static final int TYPE_ACK = 2;
+    public static final int TYPE_KEY_EVENT = 3;
+    public static final int TYPE_CONFIG = 4;
+
+    public static final int FLAG_STOP_ALL_MOTORS = 1;
+
+    public static final int INPUT_HID = 0;
+    public static final int INPUT_HID_AND_SERIAL = 1;
+
+    public static final int KEY_PRESSED = 1;
+    public static final int KEY_RELEASED = 2;
+    public static final int MOD_ALT_GRAPH = 1 << 4;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_BAD_CRC = 1;
+    public static final int STATUS_BAD_VERSION = 2;
+    public static final int STATUS_MALFORMED = 3;
+
+    public static final int HEADER_LENGTH = 6;
+    public static final int CRC_LENGTH = 2;
+    public static final int MAX_PAYLOAD = 255;
+    public static final int MAX_FRAME_LENGTH = HEADER_LENGTH + MAX_PAYLOAD + CRC_LENGTH;
+
+    /**
+     * a decoded frame. the payload array belongs to the frame.
+     */
+    public record Frame(int version, int type, int seq, byte[] payload) { }
+
+    /**
+     * a decoded KEY_EVENT payload.
+     * @param action is KEY_PRESSED or KEY_RELEASED
+     * @param key is the Arduino Keyboard code of the key
+     * @param modifiers is the modifiers held on the keyboard
+     * @param deviceMicros is the keyboard's 32-bit micros() clock when the key changed
+     */
+    public record KeyEvent(int action, int key, int modifiers, long deviceMicros) { }
+
+    private KeyboardProtocol() { }
+
+    /**
+     * build a frame.
+     * @param type is the frame type
+     * @param seq is the sequence number (only the low 16 bits are sent)
+     * @param payload is the payload, at most MAX_PAYLOAD bytes
+     * @return the encoded frame
+     */
+    public static byte[] encodeFrame(int type, int seq, byte[] payload) {
+        if (payload.length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload of " + payload.length + " bytes is too long");
+        }
+        byte[] frame = new byte[HEADER_LENGTH + payload.length + CRC_LENGTH];
+        frame[0] = (byte) SYNC;
+        frame[1] = (byte) VERSION;
+        frame[2] = (byte) type;
+        frame[3] = (byte) (seq >> 8);
+        frame[4] = (byte) seq;
+        frame[5] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, HEADER_LENGTH, payload.length);
+        int crc = crc16(frame, 1, HEADER_LENGTH - 1 + payload.length);
+        frame[frame.length - 2] = (byte) (crc >> 8);
+        frame[frame.length - 1] = (byte) crc;
+        return frame;
+    }
+
+    /**
+     * @return a COMMAND frame for a HapticCommand
+     */
+    public static byte[] encodeCommand(HapticCommand command, int seq) {
+        int motors = Integer.bitCount(command.motorMask());
+        byte[] payload = new byte[1 + 4 + motors * 3 + 3];
+        int i = 0;
+        payload[i++] = (byte) (command.stopsAllMotors() ? FLAG_STOP_ALL_MOTORS : 0);
+        int mask = command.motorMask();
+        payload[i++] = (byte) (mask >> 24);
+        payload[i++] = (byte) (mask >> 16);
+        payload[i++] = (byte) (mask >> 8);
+        payload[i++] = (byte) mask;
+        for (int motor = 0; motor < HapticCommand.MOTOR_COUNT; motor++) {
+            if (command.hasMotor(motor)) {
+                payload[i++] = (byte) command.strengthOf(motor);
+                payload[i++] = (byte) (command.durationOf(motor) >> 8);
+                payload[i++] = (byte) command.durationOf(motor);
+            }
+        }
+        payload[i++] = (byte) command.lightsCommand();
+        payload[i++] = (byte) (command.lightsDuration() >> 8);
+        payload[i] = (byte) command.lightsDuration();
+        return encodeFrame(TYPE_COMMAND, seq, payload);
+    }
+
+    /**
+     * @return an ACK frame
+     */
+    public static byte[] encodeAck(int seq, int status) {
+        return encodeFrame(TYPE_ACK, seq, new byte[] {(byte) status});
+    }
+
+    /**
+     * @return an ACK frame that also carries the keyboard's clock
+     */
+    public static byte[] encodeAck(int seq, int status, long deviceMicros) {
+        byte[] payload = new byte[5];
+        payload[0] = (byte) status;
+        putUnsignedInt(payload, 1, deviceMicros);
+        return encodeFrame(TYPE_ACK, seq, payload);
+    }
+
+    /**
+     * @return the keyboard's clock from an ACK payload, or -1 if the ACK doesn't carry it
+     */
+    public static long ackDeviceMicros(byte[] payload) {
+        return (payload.length >= 5) ? getUnsignedInt(payload, 1) : -1;
+    }
+
+    /**
+     * @return a CONFIG frame selecting the keyboard's input mode
+     */
+    public static byte[] encodeConfig(int seq, int inputMode) {
+        return encodeFrame(TYPE_CONFIG, seq, new byte[] {(byte) inputMode});
+    }
+
+    /**
+     * @return a KEY_EVENT frame, as the keyboard would send it
+     */
+    public static byte[] encodeKeyEvent(int seq, KeyEvent event) {
+        byte[] payload = new byte[7];
+        payload[0] = (byte) event.action();
+        payload[1] = (byte) event.key();
+        payload[2] = (byte) event.modifiers();
+        putUnsignedInt(payload, 3, event.deviceMicros());
+        return encodeFrame(TYPE_KEY_EVENT, seq, payload);
+    }
+
+    /**
+     * read a KEY_EVENT frame's payload.
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static KeyEvent decodeKeyEvent(byte[] payload) {
+        if (payload.length != 7) {
+            throw new IllegalArgumentException("Key event payload should be 7 bytes, not " + payload.length);
+        }
+        int action = payload[0] & 0xFF;
+        if (action != KEY_PRESSED && action != KEY_RELEASED) {
+            throw new IllegalArgumentException("Unknown key action " + action);
+        }
+        return new KeyEvent(action, payload[1] & 0xFF, payload[2] & 0xFF, getUnsignedInt(payload, 3));
+    }
+
+    private static void putUnsignedInt(byte[] data, int offset, long value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    private static long getUnsignedInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFFL) << 24) | ((data[offset + 1] & 0xFFL) << 16)
+                | ((data[offset + 2] & 0xFFL) << 8) | (data[offset + 3] & 0xFFL);
+    }
+
+    /**
+     * read the HapticCommand from a COMMAND frame's payload.
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static HapticCommand decodeCommand(byte[] payload) {
+        if (payload.length < 8) {
+            throw new IllegalArgumentException("Command payload is too short");
+        }
+        HapticCommand command = new HapticCommand();
+        if ((payload[0] & FLAG_STOP_ALL_MOTORS) != 0) {
+            command.stopAllMotors();
+        }
+        int mask = ((payload[1] & 0xFF) << 24) | ((payload[2] & 0xFF) << 16) | ((payload[3] & 0xFF) << 8) | (payload[4] & 0xFF);
+        if (payload.length != 1 + 4 + Integer.bitCount(mask) * 3 + 3) {
+            throw new IllegalArgumentException("Command payload length doesn't match its motor mask");
+        }
+        int i = 5;
+        for (int motor = 0; motor < HapticCommand.MOTOR_COUNT; motor++) {
+            if ((mask & (1 << motor)) != 0) {
+                command.vibrate(motor, payload[i] & 0xFF, ((payload[i + 1] & 0xFF) << 8) | (payload[i + 2] & 0xFF));
+                i += 3;
+            }
+        }
+        int lights = payload[i] & 0xFF;
+        int lightsDuration = ((payload[i + 1] & 0xFF) << 8) | (payload[i + 2] & 0xFF);
+        if (lights == HapticCommand.LIGHTS_ON) {
+            command.lightsOn(lightsDuration);
+        } else if (lights == HapticCommand.LIGHTS_OFF) {
+            command.lightsOff();
+        } else if (lights != HapticCommand.LIGHTS_UNCHANGED) {
+            throw new IllegalArgumentException("Unknown lights command " + lights);
+        }
+        return command;
+    }
+
+    /**
+     * CRC-16/CCITT-FALSE (polynomial 0x1021, initial value 0xFFFF).
+     */
+    public static int crc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+        return crc & 0xFFFF;
+    }
+
+    /**
+     * reassembles frames from a byte stream. bytes outside a frame (e.g. debug output from older firmware) and frames
+     * with a bad CRC are skipped, and decoding carries on from the next SYNC byte.
+     * a Decoder is not thread-safe; each reader should have its own.
+     */
+    public static final class Decoder {
+
+        private final byte[] buffer = new byte[MAX_FRAME_LENGTH];
+        private int length = 0;
+        private long rejectedFrames = 0;
+
+        /**
+         * add bytes from the stream, passing each frame they complete to the sink.
+         * @param data is the bytes read
+         * @param offset is the index of the first byte to use
+         * @param count is the number of bytes to use
+         * @param sink receives each complete frame
+         */
+        public void feed(byte[] data, int offset, int count, Consumer<Frame> sink) {
+            for (int i = offset; i < offset + count; i++) {
+                feed(data[i], sink);
+            }
+        }
+
+        /**
+         * add a byte from the stream, passing the frame it completes (if any) to the sink.
+         */
+        public void feed(int b, Consumer<Frame> sink) {
+            b &= 0xFF;
+            if (length == 0 && b != SYNC) {
+                return;
+            }
+            buffer[length++] = (byte) b;
+            if (length < HEADER_LENGTH) {
+                return;
+            }
+            int payloadLength = buffer[5] & 0xFF;
+            int frameLength = HEADER_LENGTH + payloadLength + CRC_LENGTH;
+            if (length < frameLength) {
+                return;
+            }
+
+            int crc = ((buffer[frameLength - 2] & 0xFF) << 8) | (buffer[frameLength - 1] & 0xFF);
+            if (crc != crc16(buffer, 1, HEADER_LENGTH - 1 + payloadLength)) {
+                rejectedFrames++;
+                resync(sink);
+                return;
+            }
+            byte[] payload = new byte[payloadLength];
+            System.arraycopy(buffer, HEADER_LENGTH, payload, 0, payloadLength);
+            length = 0;
+            sink.accept(new Frame(buffer[1] & 0xFF, buffer[2] & 0xFF, ((buffer[3] & 0xFF) << 8) | (buffer[4] & 0xFF), payload));
+        }
+
+        /**
+         * after a bad frame, decode again from the next SYNC byte in what has been buffered, since a real frame may
+         * have started inside the bad one (e.g. if a corrupted LENGTH made the bad frame look longer than it was).
+         */
+        private void resync(Consumer<Frame> sink) {
+            int start = 1;
+            while (start < length && (buffer[start] & 0xFF) != SYNC) {
+                start++;
+            }
+            byte[] leftover = new byte[length - start];
+            System.arraycopy(buffer, start, leftover, 0, leftover.length);
+            length = 0;
+            feed(leftover, 0, leftover.length, sink);
+        }
+
+        /**
+         * @return the number of frames dropped because their CRC didn't match
+         */
+        public long rejectedCount() {
+            return rejectedFrames;
+        }
+
+    }
+
+}
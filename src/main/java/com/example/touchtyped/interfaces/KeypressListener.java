@@ -6,8 +6,10 @@ package com.example.touchtyped.interfaces;
  * to then automatically run their onKeypress method whenever a keypress occurs.
  * To do this, a KeypressListener should receive the instance of the keyboard interface in its constructor, and run the
  * .addKeypressListener method.
+ * KeypressListener adapts KeyTokenListener: the KeyToken is passed on as its String form, which is created once per key
+ * rather than per press. listeners on the typing path should implement KeyTokenListener directly.
  */
-public interface KeypressListener {
+public interface KeypressListener extends KeyTokenListener {
 
     /**
      * a class implementing KeypressListener will have the onKeypress method be triggered when a keypress is registered.
@@ -15,4 +17,9 @@ public interface KeypressListener {
      */
     void onKeypress(String key);
 
+    @Override
+    default void onKeyToken(KeyToken key, int modifiers, long timestampNanos) {
+        onKeypress(key.toString());
+    }
+
 }
@@ -0,0 +1,35 @@
+package com.example.touchtyped.interfaces;
+
+/**
+ * a handle returned when a listener is registered with the KeyboardInterface.
+ * calling remove() deregisters the listener. it is safe to call more than once, and from inside onKeyToken.
+ */
+public final class ListenerRegistration {
+
+    private final KeyboardInterface keyboardInterface;
+    private final KeyTokenListener listener;
+    private volatile boolean active = true;
+
+    ListenerRegistration(KeyboardInterface keyboardInterface, KeyTokenListener listener) {
+        this.keyboardInterface = keyboardInterface;
+        this.listener = listener;
+    }
+
+    /**
+     * deregister the listener, if it is still registered.
+     */
+    public void remove() {
+        if (active) {
+            active = false;
+            keyboardInterface.removeKeyTokenListener(listener);
+        }
+    }
+
+    /**
+     * @return whether the listener is still registered through this handle
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+}
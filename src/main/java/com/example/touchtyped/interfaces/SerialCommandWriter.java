@@ -0,0 +1,180 @@
+package com.example.touchtyped.interfaces;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * owns the keyboard's serial output stream, and writes commands to it from a single background thread.
+ * callers only ever hand over a HapticCommand, so a slow (9600 baud) port never blocks the JavaFX thread.
+ *
+ * commands submitted while the writer is busy are merged into one waiting command (later changes win), which is
+ * sent as a single KeyboardProtocol frame. the waiting work is therefore bounded to one frame however fast commands
+ * arrive. before a frame is written, stops for motors or lights that are already off are dropped, and nothing is
+ * written if no change is left.
+ *
+ * a change of input mode is sent as its own CONFIG frame, ahead of any waiting command.
+ */
+public class SerialCommandWriter {
+
+    private final SerialLink link;
+    private final AckTracker ackTracker;
+    private final Thread thread;
+    private final Object lock = new Object();
+
+    // guarded by lock
+    private HapticCommand pending;
+    private int pendingInputMode = -1;
+    private boolean running = true;
+
+    // only used by the writer thread: the keyboard's state, as far as the commands written so far go
+    private int activeMotorMask = 0;
+    private boolean lightsOn = false;
+    private int seq = 0;
+
+    /**
+     * constructor. starts the writer thread.
+     * @param link is the open link to write to
+     * @param ackTracker is told when each frame is written, to measure its round trip
+     */
+    public SerialCommandWriter(SerialLink link, AckTracker ackTracker) {
+        this.link = link;
+        this.ackTracker = ackTracker;
+        this.thread = new Thread(this::run, "keyboard-serial-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * queue a command to be written, merging it with any command still waiting. never blocks.
+     * @param command is the command to write. it is copied, so the caller may reuse it
+     */
+    public void submit(HapticCommand command) {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            if (pending == null) {
+                pending = new HapticCommand();
+            }
+            pending.merge(command);
+            lock.notify();
+        }
+    }
+
+    /**
+     * queue a change of the keyboard's input mode, replacing any change still waiting. never blocks.
+     * @param inputMode is KeyboardProtocol.INPUT_HID or INPUT_HID_AND_SERIAL
+     */
+    public void submitInputMode(int inputMode) {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            pendingInputMode = inputMode;
+            lock.notify();
+        }
+    }
+
+    private void run() {
+        OutputStream out = link.getOutputStream();
+        while (true) {
+            HapticCommand command;
+            int inputMode;
+            synchronized (lock) {
+                while (pending == null && pendingInputMode < 0 && running) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                command = pending;
+                pending = null;
+                inputMode = pendingInputMode;
+                pendingInputMode = -1;
+                if (command == null && inputMode < 0) {
+                    // closed, and everything has been written
+                    return;
+                }
+            }
+            if (inputMode >= 0) {
+                seq = (seq + 1) & 0xFFFF;
+                write(out, KeyboardProtocol.encodeConfig(seq, inputMode));
+            }
+            if (command == null) {
+                continue;
+            }
+            dropRedundantStops(command);
+            if (command.isEmpty()) {
+                continue;
+            }
+            seq = (seq + 1) & 0xFFFF;
+            if (write(out, KeyboardProtocol.encodeCommand(command, seq))) {
+                track(command);
+            }
+        }
+    }
+
+    private boolean write(OutputStream out, byte[] frame) {
+        try {
+            ackTracker.sent(seq, System.nanoTime());
+            out.write(frame);
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to write to keyboard: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void dropRedundantStops(HapticCommand command) {
+        if (command.stopsAllMotors() && activeMotorMask == 0) {
+            command.setStopAllMotors(false);
+        }
+        int motorsOnAfterStop = command.stopsAllMotors() ? 0 : activeMotorMask;
+        for (int motor = 0; motor < HapticCommand.MOTOR_COUNT; motor++) {
+            if (command.hasMotor(motor) && command.strengthOf(motor) == 0 && (motorsOnAfterStop & (1 << motor)) == 0) {
+                command.dropMotor(motor);
+            }
+        }
+        if (command.lightsCommand() == HapticCommand.LIGHTS_OFF && !lightsOn) {
+            command.dropLights();
+        }
+    }
+
+    private void track(HapticCommand command) {
+        if (command.stopsAllMotors()) {
+            activeMotorMask = 0;
+        }
+        for (int motor = 0; motor < HapticCommand.MOTOR_COUNT; motor++) {
+            if (command.hasMotor(motor)) {
+                if (command.strengthOf(motor) > 0) {
+                    activeMotorMask |= 1 << motor;
+                } else {
+                    activeMotorMask &= ~(1 << motor);
+                }
+            }
+        }
+        if (command.lightsCommand() != HapticCommand.LIGHTS_UNCHANGED) {
+            lightsOn = command.lightsCommand() == HapticCommand.LIGHTS_ON;
+        }
+    }
+
+    /**
+     * stop accepting commands, and wait for the one waiting (if any) to be written.
+     * @param timeoutMillis is the longest to wait
+     */
+    public void close(long timeoutMillis) {
+        synchronized (lock) {
+            running = false;
+            lock.notify();
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.example.touchtyped.interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * reads frames from the keyboard on a background thread, and passes each one to the handler for its type.
+ * handlers run on the reader's thread, so they should be quick, and hand anything for the UI to Platform.runLater.
+ */
+public class SerialFrameReader {
+
+    private final SerialLink link;
+    private final KeyboardProtocol.Decoder decoder = new KeyboardProtocol.Decoder();
+    @SuppressWarnings("unchecked")
+    private final Consumer<KeyboardProtocol.Frame>[] handlers = new Consumer[256];
+    private final Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * constructor
+     * @param link is the link to read from
+     */
+    public SerialFrameReader(SerialLink link) {
+        this.link = link;
+        this.thread = new Thread(this::run, "keyboard-serial-reader");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * set the handler for a type of frame. frames of a type with no handler are ignored.
+     * @param type is the frame type, e.g. KeyboardProtocol.TYPE_ACK
+     * @param handler receives each frame of that type
+     */
+    public void setHandler(int type, Consumer<KeyboardProtocol.Frame> handler) {
+        handlers[type & 0xFF] = handler;
+    }
+
+    /**
+     * start reading.
+     */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * stop reading. the thread exits once its current read returns (closing the link makes it return).
+     */
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        InputStream in = link.getInputStream();
+        byte[] buffer = new byte[64];
+        while (running) {
+            int count;
+            try {
+                count = in.read(buffer);
+            } catch (IOException e) {
+                if (!running || !link.isOpen()) {
+                    return;
+                }
+                // read timeouts are reported as IOExceptions by some ports; keep reading, but without spinning if the
+                // port has actually gone (the port watcher notices that and disconnects it)
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            if (count < 0) {
+                return;
+            }
+            decoder.feed(buffer, 0, count, this::dispatch);
+        }
+    }
+
+    private void dispatch(KeyboardProtocol.Frame frame) {
+        if (frame.version() != KeyboardProtocol.VERSION) {
+            System.err.println("Ignoring keyboard frame with protocol version " + frame.version());
+            return;
+        }
+        Consumer<KeyboardProtocol.Frame> handler = handlers[frame.type()];
+        if (handler == null) {
+            return;
+        }
+        try {
+            handler.accept(frame);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to handle keyboard frame: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return whether the reader is still reading. it stops when stopped, or when the link reaches end of stream
+     */
+    public boolean isRunning() {
+        return running && thread.isAlive();
+    }
+
+    /**
+     * @return the number of frames dropped because their CRC didn't match
+     */
+    public long rejectedCount() {
+        return decoder.rejectedCount();
+    }
+
+}
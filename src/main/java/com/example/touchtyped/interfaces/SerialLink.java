@@ -0,0 +1,32 @@
+package com.example.touchtyped.interfaces;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * the byte streams to and from the keyboard. implemented over a real serial port by SerialPortLink, and, in the tests,
+ * in-process by LoopbackSerialLink, so that the protocol can be tested without the hardware.
+ */
+public interface SerialLink {
+
+    /**
+     * @return the stream of bytes from the keyboard
+     */
+    InputStream getInputStream();
+
+    /**
+     * @return the stream of bytes to the keyboard
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * @return whether the link can currently be read from and written to
+     */
+    boolean isOpen();
+
+    /**
+     * close the link. reads blocked on the input stream return.
+     */
+    void close();
+
+}
@@ -0,0 +1,47 @@
+package com.example.touchtyped.interfaces;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * a SerialLink over a jSerialComm SerialPort.
+ */
+public class SerialPortLink implements SerialLink {
+
+    private final SerialPort port;
+
+    /**
+     * constructor
+     * @param port is the open serial port. reads should block (e.g. SerialPort.TIMEOUT_READ_SEMI_BLOCKING)
+     */
+    public SerialPortLink(SerialPort port) {
+        this.port = port;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return port.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return port.getOutputStream();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return port.isOpen();
+    }
+
+    @Override
+    public void close() {
+        port.closePort();
+    }
+
+    public SerialPort getPort() {
+        return port;
+    }
+
+}
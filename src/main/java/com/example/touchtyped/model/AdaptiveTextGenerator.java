@@ -0,0 +1,102 @@
+package com.example.touchtyped.model;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * picks practice words and letters with a bias towards the keys a user is weakest at (see KeyWeakness).
+ *
+ * a word's weight is the mean weight of its keys, cubed so that one weak key in a word makes a clear difference. the
+ * weights are put into alias tables, so a pick costs the same however large the corpus is. the tables are built when
+ * the generator is made and rebuilt when a session is recorded, never while text is being generated.
+ */
+public class AdaptiveTextGenerator {
+
+    // how sharply words with weak keys are favoured
+    private static final int SHARPNESS = 3;
+
+    private final String[] words;
+    private final KeyWeakness weakness;
+    private final SplittableRandom random;
+
+    private double[] keyWeights;
+    private AliasTable wordTable;
+    // a table per set of letters asked for (e.g. each hand's keys in competition mode)
+    private final Map<char[], AliasTable> letterTables = new IdentityHashMap<>();
+
+    /**
+     * constructor
+     * @param words is the words to choose from (e.g. CorpusService.words())
+     * @param weakness is the user's weakness at each key. it is updated by recordSession
+     * @param random is the source of randomness
+     */
+    public AdaptiveTextGenerator(String[] words, KeyWeakness weakness, SplittableRandom random) {
+        this.words = words;
+        this.weakness = weakness;
+        this.random = random;
+        rebuild();
+    }
+
+    /**
+     * add a finished session to the user's weakness, and re-weight the words and letters to match.
+     * @param logs is the session's key logs
+     */
+    public void recordSession(KeyLogsStructure logs) {
+        weakness.update(logs);
+        rebuild();
+    }
+
+    private void rebuild() {
+        keyWeights = weakness.weights();
+        letterTables.clear();
+        if (words.length == 0) {
+            wordTable = null;
+            return;
+        }
+        double[] wordWeights = new double[words.length];
+        for (int i = 0; i < words.length; i++) {
+            wordWeights[i] = Math.pow(meanWeight(words[i]), SHARPNESS);
+        }
+        wordTable = new AliasTable(wordWeights);
+    }
+
+    private double meanWeight(String word) {
+        double total = 0;
+        int counted = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int slot = word.charAt(i) - KeyWeakness.FIRST_KEY;
+            if (slot >= 0 && slot < keyWeights.length) {
+                total += keyWeights[slot];
+                counted++;
+            }
+        }
+        return counted == 0 ? 1 : total / counted;
+    }
+
+    /**
+     * @return a word, favouring those with weak keys, or null if there are no words
+     */
+    public String nextWord() {
+        return wordTable == null ? null : words[wordTable.sample(random)];
+    }
+
+    /**
+     * @param letters is the letters to choose from. pass the same array each time, so its table is reused
+     * @return one of letters, favouring weak keys
+     */
+    public char nextLetter(char[] letters) {
+        AliasTable table = letterTables.get(letters);
+        if (table == null) {
+            double[] weights = new double[letters.length];
+            for (int i = 0; i < letters.length; i++) {
+                int slot = letters[i] - KeyWeakness.FIRST_KEY;
+                weights[i] = (slot >= 0 && slot < keyWeights.length) ? keyWeights[slot] : 1;
+            }
+            table = new AliasTable(weights);
+            letterTables.put(letters, table);
+        }
+        return letters[table.sample(random)];
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.example.touchtyped.model;
+
+import java.util.SplittableRandom;
+
+/**
+ * picks an index at random, in proportion to a weight per index, in constant time (Vose's alias method).
+ *
+ * the table splits the weights into n equal-sized columns, each holding at most two indices: its own, and an "alias"
+ * that fills the rest of the column. a pick is one column chosen uniformly, then one of its two indices. building the
+ * table is linear in the number of weights.
+ */
+public final class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights is the weight of each index. none may be negative, and at least one must be positive
+     * @throws IllegalArgumentException if there is nothing to pick
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("weights must not be negative");
+            }
+            total += weight;
+        }
+        if (n == 0 || total <= 0) {
+            throw new IllegalArgumentException("at least one weight must be positive");
+        }
+
+        probability = new double[n];
+        alias = new int[n];
+        // scaled so that an index with an average weight exactly fills its column
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            // the larger index gives up what it took to fill the smaller one's column
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left fills its own column (give or take rounding)
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+
+    /**
+     * @return a random index, chosen in proportion to its weight
+     */
+    public int sample(SplittableRandom random) {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    public int size() {
+        return probability.length;
+    }
+
+}
@@ -2,17 +2,38 @@ package com.example.touchtyped.model;
 
 import com.example.touchtyped.interfaces.KeyboardInterface;
 import com.example.touchtyped.interfaces.KeypressListener;
+import com.example.touchtyped.interfaces.ListenerRegistration;
+import javafx.scene.Node;
 
 import java.util.Objects;
 
 public class ExampleKeypressListener implements KeypressListener {
 
+    private final ListenerRegistration registration;
+
     /**
-     * constructor that automatically registers this instance as a listener with the KeyboardInterface.
+     * constructor that automatically registers this instance as a listener with the KeyboardInterface. it stays
+     * registered until remove() is called.
      * @param keyboardInterface is the keyboard interface to register with
      */
     public ExampleKeypressListener(KeyboardInterface keyboardInterface) {
-        keyboardInterface.addKeypressListener(this);
+        registration = keyboardInterface.addKeypressListener(this);
+    }
+
+    /**
+     * constructor that registers this instance as a listener for as long as the owner node's scene is shown.
+     * @param keyboardInterface is the keyboard interface to register with
+     * @param owner is the node whose lifetime the registration is tied to
+     */
+    public ExampleKeypressListener(KeyboardInterface keyboardInterface, Node owner) {
+        registration = keyboardInterface.addKeyTokenListener(this, owner);
+    }
+
+    /**
+     * stop listening for keypresses.
+     */
+    public void remove() {
+        registration.remove();
     }
 
     @Override
@@ -1,38 +1,57 @@
 package com.example.touchtyped.model;
 
+import com.example.touchtyped.interfaces.KeyToken;
+import com.example.touchtyped.interfaces.KeyTokenListener;
 import com.example.touchtyped.interfaces.KeyboardInterface;
-import com.example.touchtyped.interfaces.KeypressListener;
 import com.example.touchtyped.controller.GameViewController;
+import javafx.scene.Node;
 
 /**
  * Handles keyboard input events for the typing game.
- * Implements KeypressListener to receive keyboard events from KeyboardInterface.
+ * Implements KeyTokenListener to receive keyboard events from KeyboardInterface.
  */
-public class GameKeypressListener implements KeypressListener {
+public class GameKeypressListener implements KeyTokenListener {
     private final GameViewController gameController;
     private final KeyboardInterface keyboardInterface;
 
     /**
      * Creates a new GameKeypressListener and registers it with the keyboard interface.
+     * The listener is removed automatically once the owner node's scene is no longer shown.
      * @param gameController The game controller to handle game logic
      * @param keyboardInterface The keyboard interface to listen to
+     * @param owner A node in the game view, whose lifetime the registration is tied to
      */
-    public GameKeypressListener(GameViewController gameController, KeyboardInterface keyboardInterface) {
+    public GameKeypressListener(GameViewController gameController, KeyboardInterface keyboardInterface, Node owner) {
         this.gameController = gameController;
         this.keyboardInterface = keyboardInterface;
-        // Register as a listener
-        keyboardInterface.addKeypressListener(this);
+        // Register as a listener for as long as the game view is shown
+        keyboardInterface.addKeyTokenListener(this, owner);
     }
 
     /**
      * Called when a key is pressed.
      * Forwards the key press to the game controller if input is enabled.
      * @param key The key that was pressed
+     * @param modifiers The modifier flags held during the press
+     * @param timestampNanos The System.nanoTime() of the press
      */
     @Override
-    public void onKeypress(String key) {
+    public void onKeyToken(KeyToken key, int modifiers, long timestampNanos) {
         if (!gameController.isInputDisabled()) {
-            gameController.handleKeyPress(key);
+            gameController.handleKeyPress(key, timestampNanos);
+        }
+    }
+
+    /**
+     * Called when a key is released.
+     * Forwards the release to the game controller so that dwell and flight times can be recorded.
+     * @param key The key that was released
+     * @param timestampNanos The System.nanoTime() of the release
+     */
+    @Override
+    public void onKeyRelease(KeyToken key, long timestampNanos) {
+        if (!gameController.isInputDisabled()) {
+            gameController.handleKeyRelease(key, timestampNanos);
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,210 @@
+package com.example.touchtyped.model;
+
+import com.example.touchtyped.service.AppSettingsService;
+import javafx.geometry.Bounds;
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+import javafx.scene.transform.Transform;
+import javafx.stage.Screen;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * draws a competition lane (a window of letters with a cursor) onto a Canvas, by copying pre-drawn glyphs out of an
+ * atlas image. a keystroke redraws the lane in one pass, with no nodes created and no CSS looked up.
+ *
+ * an atlas holds every printable ASCII character in each style (typed, wrong, remaining, cursor), drawn in Consolas at
+ * one size with one palette. atlases are built on first use and shared by every lane that uses the same size and
+ * palette.
+ */
+public class GlyphLaneRenderer {
+
+    /**
+     * the colours of a lane. these match the typed-text, error-text, remaining-text and cursor rules in
+     * game-view-style.css for each display mode.
+     */
+    public record Palette(Color typed, Color error, Color remaining, Color cursor) {
+
+        public static final Palette DAY = new Palette(Color.web("#263F68"), Color.web("#ff5555"),
+                Color.web("#777777", 0.8), Color.web("#ffd700"));
+        public static final Palette NIGHT = new Palette(Color.web("#6B9FFF"), Color.web("#FF5252"),
+                Color.web("#B0B0B0", 0.8), Color.web("#FFFFFF"));
+        public static final Palette COLORBLIND = new Palette(Color.web("#0000FF"), Color.web("#9F0500"),
+                Color.web("#555555", 0.8), Color.web("#006E51"));
+
+        /**
+         * @param mode is an AppSettingsService display mode
+         * @return the palette for that mode
+         */
+        public static Palette forDisplayMode(String mode) {
+            if (AppSettingsService.NIGHT_MODE.equals(mode)) {
+                return NIGHT;
+            } else if (AppSettingsService.COLORBLIND_MODE.equals(mode)) {
+                return COLORBLIND;
+            }
+            return DAY;
+        }
+    }
+
+    private static final String FONT_FAMILY = "Consolas";
+    private static final char FIRST_GLYPH = ' ';
+    private static final char LAST_GLYPH = '~';
+    private static final char CURSOR = '|';
+
+    private static final int ROW_TYPED = 0;
+    private static final int ROW_ERROR = 1;
+    private static final int ROW_REMAINING = 2;
+    private static final int ROW_CURSOR = 3;
+
+    /**
+     * the glyphs of one font size and palette, in a grid: a row per style, a column per character.
+     */
+    private static final class GlyphAtlas {
+        private Image image;
+        private double scale;
+        private double cellWidth;
+        private double cellHeight;
+        private double baseline;
+        private Font regular;
+        private Font bold;
+        private Color[] colours;
+    }
+
+    private static final Map<String, GlyphAtlas> ATLASES = new HashMap<>();
+
+    private final Canvas canvas;
+    private final int visibleLength;
+    private final double fontSize;
+    private GlyphAtlas atlas;
+
+    /**
+     * constructor. sizes the canvas to fit visibleLength letters and the cursor.
+     * @param canvas is the canvas to draw on
+     * @param visibleLength is the number of letters shown at once
+     * @param fontSize is the font size, in pixels
+     * @param palette is the lane's colours
+     */
+    public GlyphLaneRenderer(Canvas canvas, int visibleLength, double fontSize, Palette palette) {
+        this.canvas = canvas;
+        this.visibleLength = visibleLength;
+        this.fontSize = fontSize;
+        setPalette(palette);
+    }
+
+    /**
+     * change the lane's colours, e.g. after the display mode changes. the lane is drawn with them from the next render.
+     */
+    public void setPalette(Palette palette) {
+        atlas = atlasFor(fontSize, palette);
+        canvas.setWidth((visibleLength + 1) * atlas.cellWidth);
+        canvas.setHeight(atlas.cellHeight);
+    }
+
+    private static synchronized GlyphAtlas atlasFor(double fontSize, Palette palette) {
+        return ATLASES.computeIfAbsent(fontSize + "/" + palette, key -> buildAtlas(fontSize, palette));
+    }
+
+    private static GlyphAtlas buildAtlas(double fontSize, Palette palette) {
+        GlyphAtlas atlas = new GlyphAtlas();
+        atlas.regular = Font.font(FONT_FAMILY, FontWeight.NORMAL, fontSize);
+        atlas.bold = Font.font(FONT_FAMILY, FontWeight.BOLD, fontSize);
+        atlas.colours = new Color[] {palette.typed(), palette.error(), palette.remaining(), palette.cursor()};
+
+        // Consolas is monospaced, so one cell fits every glyph
+        Text probe = new Text("M");
+        probe.setFont(atlas.bold);
+        Bounds bounds = probe.getLayoutBounds();
+        atlas.cellWidth = Math.ceil(bounds.getWidth());
+        atlas.cellHeight = Math.ceil(bounds.getHeight());
+        atlas.baseline = probe.getBaselineOffset();
+        // draw at the screen's scale, so the glyphs stay sharp on high-DPI displays
+        atlas.scale = Screen.getPrimary().getOutputScaleX();
+
+        int columns = LAST_GLYPH - FIRST_GLYPH + 1;
+        Canvas sheet = new Canvas(columns * atlas.cellWidth, atlas.colours.length * atlas.cellHeight);
+        GraphicsContext g = sheet.getGraphicsContext2D();
+        g.setTextBaseline(VPos.BASELINE);
+        for (int row = 0; row < atlas.colours.length; row++) {
+            g.setFont(row == ROW_REMAINING ? atlas.regular : atlas.bold);
+            g.setFill(atlas.colours[row]);
+            double baselineY = row * atlas.cellHeight + atlas.baseline;
+            for (char c = FIRST_GLYPH; c <= LAST_GLYPH; c++) {
+                g.fillText(String.valueOf(c), (c - FIRST_GLYPH) * atlas.cellWidth, baselineY);
+            }
+            if (row == ROW_ERROR) {
+                // wrong letters are underlined too, so they don't rely on colour alone
+                g.setStroke(atlas.colours[row]);
+                g.setLineWidth(2);
+                g.strokeLine(0, baselineY + 3, columns * atlas.cellWidth, baselineY + 3);
+            }
+        }
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        parameters.setTransform(Transform.scale(atlas.scale, atlas.scale));
+        atlas.image = sheet.snapshot(parameters, null);
+        return atlas;
+    }
+
+    /**
+     * redraw the lane: the letters typed so far in the window, the cursor, then the letters still to type, centred.
+     * @param letters is the lane's letters, with their error flags
+     * @param index is the index of the next letter to type
+     * @param showCursor is whether the cursor is drawn (its space is kept either way)
+     */
+    public void render(TargetText letters, int index, boolean showCursor) {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        if (letters == null) {
+            return;
+        }
+
+        int start = Math.max(0, index - visibleLength / 2);
+        int end = Math.min(letters.length(), start + visibleLength);
+        boolean cursorCell = index < end;
+        int cells = (end - start) + (cursorCell ? 1 : 0);
+        double x = (canvas.getWidth() - cells * atlas.cellWidth) / 2;
+
+        for (int i = start; i < index && i < end; i++) {
+            x = drawGlyph(g, letters.charAt(i), letters.isError(i) ? ROW_ERROR : ROW_TYPED, x);
+        }
+        if (cursorCell) {
+            x = showCursor ? drawGlyph(g, CURSOR, ROW_CURSOR, x) : x + atlas.cellWidth;
+        }
+        for (int i = Math.max(index, start); i < end; i++) {
+            x = drawGlyph(g, letters.charAt(i), ROW_REMAINING, x);
+        }
+    }
+
+    /**
+     * clear the lane.
+     */
+    public void clear() {
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    private double drawGlyph(GraphicsContext g, char c, int row, double x) {
+        if (c >= FIRST_GLYPH && c <= LAST_GLYPH) {
+            double s = atlas.scale;
+            g.drawImage(atlas.image,
+                    (c - FIRST_GLYPH) * atlas.cellWidth * s, row * atlas.cellHeight * s,
+                    atlas.cellWidth * s, atlas.cellHeight * s,
+                    x, 0, atlas.cellWidth, atlas.cellHeight);
+        } else {
+            // not in the atlas: draw it directly
+            g.setFont(row == ROW_REMAINING ? atlas.regular : atlas.bold);
+            g.setFill(atlas.colours[row]);
+            g.setTextBaseline(VPos.BASELINE);
+            g.fillText(String.valueOf(c), x, atlas.baseline);
+        }
+        return x + atlas.cellWidth;
+    }
+
+}
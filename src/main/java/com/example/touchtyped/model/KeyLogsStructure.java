@@ -1,10 +1,14 @@
 package com.example.touchtyped.model;
 
-import java.sql.Time;
+import com.example.touchtyped.serialisers.KeyLogsStructureSerialiser;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Objects;
 
+@JsonSerialize(using = KeyLogsStructureSerialiser.class)
 public class KeyLogsStructure {
 
     /**
@@ -30,11 +34,77 @@ public class KeyLogsStructure {
      *   "sessionDuration": 5000,
      *   "wordsGiven": "Hello World"
      * }
+     *
+     * the key logs are not held as KeyLog objects. they are stored column by column in primitive arrays, so that
+     * recording a keypress never allocates. KeyLog instances are only built when getKeyLogs() is called (e.g. by
+     * Firestore), and KeyLogsStructureSerialiser writes the JSON above straight from the columns.
+     *
+     * when keypresses are recorded with System.nanoTime() press and release times, dwell times (press to release of
+     * a key) are kept per key, and flight times (release of one key to press of the next, negative when keys overlap)
+     * per bigram. these tables are updated as keys are released, and are stored as "dwellTimes" and "flightTimes".
+     */
+
+    /**
+     * value stored in the expected column when there was no expected character (the user typed past the end).
+     */
+    public static final int NO_EXPECTED = Integer.MIN_VALUE;
+
+    /**
+     * multi-character key names that may be logged. a name is stored as -(index + 1), so it never collides with a
+     * real codepoint.
+     */
+    private static final String[] SPECIAL_KEYS = {
+            "BACK_SPACE", "ENTER", "ESCAPE", "CONTROL", "ALT", "TAB",
+            "LEFT", "RIGHT", "UP", "DOWN", "CAPS", "UNKNOWN"
+    };
+
+    /**
+     * any other multi-character key names seen at runtime. these are shared by every structure, so a name only has
+     * to be registered once.
+     */
+    private static final List<String> extraKeys = new ArrayList<>();
+
+    public static final int BACK_SPACE = encodeKey("BACK_SPACE");
+
+    /**
+     * cached single-character strings, so that decoding ASCII keys doesn't allocate.
+     */
+    private static final String[] ASCII_STRINGS = new String[128];
+    static {
+        for (int i = 0; i < ASCII_STRINGS.length; i++) {
+            ASCII_STRINGS[i] = String.valueOf((char) i);
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * value stored in the press and release time columns when the time is not known.
      */
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    /**
+     * how far back a release searches for its press. keys held down at the same time are rarely more than a few
+     * keystrokes apart.
+     */
+    private static final int RELEASE_SEARCH_LIMIT = 16;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] expectedKeys = new int[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] pressNanos = filled(INITIAL_CAPACITY);
+    private long[] releaseNanos = filled(INITIAL_CAPACITY);
+    private final BitSet errorFlags = new BitSet(INITIAL_CAPACITY);
+    private int size = 0;
+
+    private final KeystrokeTimings dwellTimes = new KeystrokeTimings();
+    private final KeystrokeTimings flightTimes = new KeystrokeTimings();
 
-    private List<KeyLog> keyLogs = new ArrayList<>();
     private long sessionDuration = 0; // will update every time a KeyLog is added
     private String wordsGiven = "";
+    // while a session is running, the text being typed. it may still be growing, so wordsGiven is only set from it
+    // (by finishText) when the session ends
+    private CharSequence targetText;
     private int charPosition = 0;
     private int errors = 0;
     private long timeCreated = System.currentTimeMillis();
@@ -60,40 +130,69 @@ public class KeyLogsStructure {
      * @param timestamp is the timestamp at which the key was pressed
      */
     public void addKeyLog(String key, long timestamp) {
+        addKeyLog(encodeKey(key), timestamp);
+    }
+
+    /**
+     * same as addKeyLog(String, long), but taking an already encoded key (a codepoint, or a code from encodeKey).
+     * this is the allocation-free path used while a game is running.
+     * @param key is the encoded key which was pressed
+     * @param timestamp is the timestamp at which the key was pressed
+     */
+    public void addKeyLog(int key, long timestamp) {
+        addKeyLog(key, timestamp, NO_TIME);
+    }
+
+    /**
+     * same as addKeyLog(int, long), also recording the System.nanoTime() of the press, so that dwell and flight
+     * times can be calculated when keys are released.
+     * @param key is the encoded key which was pressed
+     * @param timestamp is the timestamp at which the key was pressed
+     * @param pressTime is the System.nanoTime() at which the key was pressed
+     */
+    public void addKeyLog(int key, long timestamp, long pressTime) {
+        CharSequence target = (targetText != null) ? targetText : wordsGiven;
         if (charPosition < 0) {
             charPosition = 0;
-        } else if (charPosition > wordsGiven.length()) {
-            charPosition = wordsGiven.length();
+        } else if (charPosition > target.length()) {
+            charPosition = target.length();
         }
 
         // determine the expected keypress based on the expected character in wordsGiven at charPosition.
-        // if the last char was mistyped, errors == 1, and the user SHOULD be pressing BACK_SPACE to fix the error.
-        String expected = (charPosition < wordsGiven.length()) ? String.valueOf(wordsGiven.charAt(charPosition)) : null;
-
-        // if the user HAS pressed BACK_SPACE, they are trying to fix the error.
-        if (expected != null && expected.equals("BACK_SPACE") && key.equals("BACK_SPACE")) {
-            errors = Math.max(errors - 1, 0);
-        }
+        int expected = (charPosition < target.length()) ? target.charAt(charPosition) : NO_EXPECTED;
 
         // determine whether this keypress was an error based on the expected character
         boolean error = false;
-        if (expected == null || !Objects.equals(key, expected)) {
+        if (expected == NO_EXPECTED || key != expected) {
             error = true;
-            if (!key.equals("BACK_SPACE")) { errors++; }
+            if (key != BACK_SPACE) { errors++; }
         }
 
-        // build and add a new KeyLog
-        KeyLog keyLog = new KeyLog(key, expected, timestamp, error);
-        keyLogs.add(keyLog);
+        // append to each column
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        expectedKeys[size] = expected;
+        timestamps[size] = timestamp;
+        pressNanos[size] = pressTime;
+        releaseNanos[size] = NO_TIME;
+        if (error) {
+            errorFlags.set(size);
+        }
+        size++;
+
+        // if the previous key has already been released, the flight time to this key is known now
+        if (size > 1 && pressTime != NO_TIME && releaseNanos[size - 2] != NO_TIME) {
+            flightTimes.record(keys[size - 2], key, toMicros(pressTime - releaseNanos[size - 2]));
+        }
 
         // calculate session duration to be the time between the first and most recent KeyLog's timestamps
         // if there is only 0 or 1 logs in the structure, keep sessionDuration at 0.
-        if (keyLogs.size() > 1) {
-            sessionDuration = timestamp - keyLogs.get(0).getTimestamp();
+        if (size > 1) {
+            sessionDuration = timestamp - timestamps[0];
         }
 
         // if the key is a BACK_SPACE, decrement charPosition, otherwise increment it.
-        if (Objects.equals(key, "BACK_SPACE")) {
+        if (key == BACK_SPACE) {
             // avoid -1 index
             if (charPosition > 0) {
                 charPosition--;
@@ -105,17 +204,196 @@ public class KeyLogsStructure {
         // clamp again
         if (charPosition < 0) {
             charPosition = 0;
-        } else if (charPosition > wordsGiven.length()) {
-            charPosition = wordsGiven.length();
+        } else if (charPosition > target.length()) {
+            charPosition = target.length();
         }
 
     }
 
+    /**
+     * look up expected keys in text from now on, rather than in wordsGiven. text may grow as the session goes on,
+     * without wordsGiven being rebuilt each time.
+     * @param text is the text being typed (e.g. a TypingSession's text)
+     */
+    public void followText(CharSequence text) {
+        this.targetText = text;
+    }
+
+    /**
+     * set wordsGiven to the whole of the text being followed, and stop following it. call this once the session is
+     * over.
+     */
+    public void finishText() {
+        if (targetText != null) {
+            wordsGiven = targetText.toString();
+            targetText = null;
+        }
+    }
+
+    /**
+     * record the release of a key. the release is matched to the most recent unreleased press of the same key, and
+     * the dwell time of that key, and the flight time to the key pressed after it (if any), are recorded.
+     * @param key is the encoded key which was released
+     * @param releaseTime is the System.nanoTime() at which the key was released
+     */
+    public void addKeyRelease(int key, long releaseTime) {
+        int limit = Math.max(0, size - RELEASE_SEARCH_LIMIT);
+        for (int i = size - 1; i >= limit; i--) {
+            if (keys[i] != key) {
+                continue;
+            }
+            if (pressNanos[i] == NO_TIME || releaseNanos[i] != NO_TIME) {
+                // this key's latest press has already been matched (or wasn't timed), so there's nothing to pair with
+                return;
+            }
+            releaseNanos[i] = releaseTime;
+            dwellTimes.record(key, toMicros(releaseTime - pressNanos[i]));
+            if (i + 1 < size && pressNanos[i + 1] != NO_TIME) {
+                // the next key was pressed before this one was released
+                flightTimes.record(key, keys[i + 1], toMicros(pressNanos[i + 1] - releaseTime));
+            }
+            return;
+        }
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos / 1000;
+    }
+
+    private static long[] filled(int capacity) {
+        long[] times = new long[capacity];
+        Arrays.fill(times, NO_TIME);
+        return times;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, keys.length * 2);
+        keys = Arrays.copyOf(keys, newCapacity);
+        expectedKeys = Arrays.copyOf(expectedKeys, newCapacity);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        int oldCapacity = pressNanos.length;
+        pressNanos = Arrays.copyOf(pressNanos, newCapacity);
+        releaseNanos = Arrays.copyOf(releaseNanos, newCapacity);
+        Arrays.fill(pressNanos, oldCapacity, newCapacity, NO_TIME);
+        Arrays.fill(releaseNanos, oldCapacity, newCapacity, NO_TIME);
+    }
+
+    /**
+     * convert a key, as passed through KeypressListener, to the int stored in the key columns.
+     * single characters are stored as their codepoint, and key names such as "BACK_SPACE" as a negative code.
+     * @param key is the key to encode
+     * @return the encoded key
+     */
+    public static int encodeKey(String key) {
+        if (key == null) {
+            return NO_EXPECTED;
+        }
+        if (!key.isEmpty() && key.length() == Character.charCount(key.codePointAt(0))) {
+            return key.codePointAt(0);
+        }
+        for (int i = 0; i < SPECIAL_KEYS.length; i++) {
+            if (SPECIAL_KEYS[i].equals(key)) {
+                return -(i + 1);
+            }
+        }
+        synchronized (extraKeys) {
+            int index = extraKeys.indexOf(key);
+            if (index < 0) {
+                extraKeys.add(key);
+                index = extraKeys.size() - 1;
+            }
+            return -(SPECIAL_KEYS.length + index + 1);
+        }
+    }
+
+    /**
+     * convert an encoded key back to its String form.
+     * @param key is the encoded key
+     * @return the key as a String, or null for NO_EXPECTED
+     */
+    public static String decodeKey(int key) {
+        if (key == NO_EXPECTED) {
+            return null;
+        }
+        if (key >= 0) {
+            return (key < ASCII_STRINGS.length) ? ASCII_STRINGS[key] : new String(Character.toChars(key));
+        }
+        int index = -key - 1;
+        if (index < SPECIAL_KEYS.length) {
+            return SPECIAL_KEYS[index];
+        }
+        synchronized (extraKeys) {
+            return extraKeys.get(index - SPECIAL_KEYS.length);
+        }
+    }
+
+    /**
+     * @return the number of key logs recorded.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int keyAt(int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+
+    public int expectedAt(int index) {
+        checkIndex(index);
+        return expectedKeys[index];
+    }
+
+    public long timestampAt(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public boolean errorAt(int index) {
+        checkIndex(index);
+        return errorFlags.get(index);
+    }
+
+    /**
+     * @return how long the key was held in nanoseconds, or -1 if its press or release wasn't timed
+     */
+    public long dwellNanosAt(int index) {
+        checkIndex(index);
+        if (pressNanos[index] == NO_TIME || releaseNanos[index] == NO_TIME) {
+            return -1;
+        }
+        return releaseNanos[index] - pressNanos[index];
+    }
+
+    /**
+     * @return dwell time statistics, keyed by single key
+     */
+    public KeystrokeTimings dwellTimes() {
+        return dwellTimes;
+    }
+
+    /**
+     * @return flight time statistics, keyed by bigram
+     */
+    public KeystrokeTimings flightTimes() {
+        return flightTimes;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Key log index " + index + " out of bounds for size " + size);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder output = new StringBuilder();
-        for (KeyLog keyLog : keyLogs) {
-            output.append(keyLog.toString()).append("\n");
+        for (int i = 0; i < size; i++) {
+            output.append(String.format("key: %s, timestamp: %d, expected: %s, error: %b",
+                    decodeKey(keys[i]), timestamps[i], decodeKey(expectedKeys[i]), errorFlags.get(i))).append("\n");
         }
 
         output.append("Session Duration: " + sessionDuration + "\nWords Given: " + wordsGiven);
@@ -127,12 +405,62 @@ public class KeyLogsStructure {
     /**
      * Getters and setters
      */
+
+    /**
+     * builds a KeyLog for every recorded keypress. this allocates, so it should not be called while a game is running.
+     */
     public List<KeyLog> getKeyLogs() {
+        List<KeyLog> keyLogs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keyLogs.add(new KeyLog(decodeKey(keys[i]), decodeKey(expectedKeys[i]), timestamps[i], errorFlags.get(i)));
+        }
         return keyLogs;
     }
 
+    /**
+     * replaces the recorded keypresses with the given KeyLogs (used when reading a structure back from the database).
+     */
     public void setKeyLogs(List<KeyLog> keyLogs) {
-        this.keyLogs = keyLogs;
+        size = 0;
+        errorFlags.clear();
+        if (keyLogs == null) {
+            return;
+        }
+        ensureCapacity(keyLogs.size());
+        for (KeyLog keyLog : keyLogs) {
+            keys[size] = encodeKey(keyLog.getKey());
+            expectedKeys[size] = encodeKey(keyLog.getExpected());
+            timestamps[size] = keyLog.getTimestamp();
+            pressNanos[size] = NO_TIME;
+            releaseNanos[size] = NO_TIME;
+            if (keyLog.getError()) {
+                errorFlags.set(size);
+            }
+            size++;
+        }
+    }
+
+    /**
+     * builds a KeyTiming for every key's dwell time. this allocates, so it should not be called while a game is running.
+     */
+    public List<KeyTiming> getDwellTimes() {
+        return dwellTimes.toKeyTimings();
+    }
+
+    public void setDwellTimes(List<KeyTiming> dwellTimes) {
+        this.dwellTimes.setKeyTimings(dwellTimes);
+    }
+
+    /**
+     * builds a KeyTiming for every bigram's flight time. this allocates, so it should not be called while a game is
+     * running.
+     */
+    public List<KeyTiming> getFlightTimes() {
+        return flightTimes.toKeyTimings();
+    }
+
+    public void setFlightTimes(List<KeyTiming> flightTimes) {
+        this.flightTimes.setKeyTimings(flightTimes);
     }
 
     public long getSessionDuration() {
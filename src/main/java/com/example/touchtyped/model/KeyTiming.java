@@ -0,0 +1,103 @@
+package com.example.touchtyped.model;
+
+/**
+ * timing statistics for one key (dwell time) or one bigram (flight time), as stored in the database.
+ * times are in microseconds.
+ */
+public class KeyTiming {
+
+    private String key;
+    private String nextKey;
+    private int count;
+    private long totalMicros;
+    private long sumOfSquares;
+    private long minMicros;
+    private long maxMicros;
+
+    public KeyTiming() {
+
+    }
+
+    /**
+     * constructor
+     */
+    public KeyTiming(String key, String nextKey, int count, long totalMicros, long sumOfSquares, long minMicros, long maxMicros) {
+        this.key = key;
+        this.nextKey = nextKey;
+        this.count = count;
+        this.totalMicros = totalMicros;
+        this.sumOfSquares = sumOfSquares;
+        this.minMicros = minMicros;
+        this.maxMicros = maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("key: %s, nextKey: %s, count: %d, mean: %dus, min: %dus, max: %dus",
+                key, nextKey, count, (count > 0) ? totalMicros / count : 0, minMicros, maxMicros);
+    }
+
+
+    /**
+     * Getters and setters
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the second key of a bigram, or null for a single key
+     */
+    public String getNextKey() {
+        return nextKey;
+    }
+
+    public void setNextKey(String nextKey) {
+        this.nextKey = nextKey;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public void setTotalMicros(long totalMicros) {
+        this.totalMicros = totalMicros;
+    }
+
+    public long getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    public void setSumOfSquares(long sumOfSquares) {
+        this.sumOfSquares = sumOfSquares;
+    }
+
+    public long getMinMicros() {
+        return minMicros;
+    }
+
+    public void setMinMicros(long minMicros) {
+        this.minMicros = minMicros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public void setMaxMicros(long maxMicros) {
+        this.maxMicros = maxMicros;
+    }
+
+}
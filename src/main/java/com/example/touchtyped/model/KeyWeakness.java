@@ -0,0 +1,134 @@
+package com.example.touchtyped.model;
+
+import java.io.Serializable;
+
+/**
+ * how weak a user is at each key, judged by how often they type it wrong and how long it takes them to reach it.
+ *
+ * each session's key logs are added once, when the session ends, on top of the earlier sessions' counts decayed by
+ * DECAY, so the history never needs rescanning and recent sessions count the most. keys are the printable ASCII
+ * characters, with letters counted case-insensitively (both cases are the same key).
+ */
+public class KeyWeakness implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final char FIRST_KEY = ' ';
+    public static final char LAST_KEY = '~';
+
+    // how much a session counts, relative to the one after it
+    public static final double DECAY = 0.8;
+    // a key's rates are pulled towards the average until it has been typed about this many times
+    private static final double PRIOR_ATTEMPTS = 5;
+    // gaps longer than this are pauses, not the time taken to find a key
+    private static final long MAX_LATENCY_MILLIS = 2000;
+    private static final double MIN_WEIGHT = 0.25;
+    private static final double MAX_WEIGHT = 4;
+
+    private static final int KEYS = LAST_KEY - FIRST_KEY + 1;
+
+    private final double[] attempts = new double[KEYS];
+    private final double[] errors = new double[KEYS];
+    private final double[] latencyMillis = new double[KEYS];
+    private final double[] latencySamples = new double[KEYS];
+    private int sessions = 0;
+
+    /**
+     * add a finished session's key logs.
+     * @param logs is the session's key logs, with expected keys
+     */
+    public void update(KeyLogsStructure logs) {
+        for (int k = 0; k < KEYS; k++) {
+            attempts[k] *= DECAY;
+            errors[k] *= DECAY;
+            latencyMillis[k] *= DECAY;
+            latencySamples[k] *= DECAY;
+        }
+
+        for (int i = 0; i < logs.size(); i++) {
+            int slot = slotOf(logs.expectedAt(i));
+            if (logs.keyAt(i) == KeyLogsStructure.BACK_SPACE || slot < 0) {
+                continue;
+            }
+            attempts[slot]++;
+            if (logs.errorAt(i)) {
+                errors[slot]++;
+            } else if (i > 0) {
+                long latency = logs.timestampAt(i) - logs.timestampAt(i - 1);
+                if (latency > 0 && latency <= MAX_LATENCY_MILLIS) {
+                    latencyMillis[slot] += latency;
+                    latencySamples[slot]++;
+                }
+            }
+        }
+        sessions++;
+    }
+
+    /**
+     * @return how much practice c needs, relative to an average key (1). between 0.25 and 4, and 1 for every key until
+     * a session has been added
+     */
+    public double weightOf(char c) {
+        int slot = slotOf(c);
+        return slot < 0 ? 1 : weights()[slot];
+    }
+
+    /**
+     * @return the weight of every key, indexed by character - FIRST_KEY (with upper case letters the same as lower
+     * case). worked out in one pass, for weighting a whole corpus
+     */
+    public double[] weights() {
+        double[] weights = new double[KEYS];
+        double totalAttempts = sum(attempts);
+        double totalSamples = sum(latencySamples);
+        double averageErrorRate = totalAttempts > 0 ? sum(errors) / totalAttempts : 0;
+        double averageLatency = totalSamples > 0 ? sum(latencyMillis) / totalSamples : 0;
+
+        for (int slot = 0; slot < KEYS; slot++) {
+            if (totalAttempts <= 0) {
+                weights[slot] = 1;
+                continue;
+            }
+            double errorRate = (errors[slot] + PRIOR_ATTEMPTS * averageErrorRate) / (attempts[slot] + PRIOR_ATTEMPTS);
+            // with few mistakes overall, a key needs more than one slip to stand out
+            double relativeErrors = errorRate / Math.max(averageErrorRate, 0.02);
+
+            double relativeLatency = 1;
+            if (totalSamples > 0) {
+                double latency = (latencyMillis[slot] + PRIOR_ATTEMPTS * averageLatency)
+                        / (latencySamples[slot] + PRIOR_ATTEMPTS);
+                relativeLatency = latency / averageLatency;
+            }
+
+            double weight = (relativeErrors + relativeLatency) / 2;
+            weights[slot] = Math.max(MIN_WEIGHT, Math.min(MAX_WEIGHT, weight));
+        }
+        // upper case letters share their lower case key's counts
+        for (char c = 'A'; c <= 'Z'; c++) {
+            weights[c - FIRST_KEY] = weights[Character.toLowerCase(c) - FIRST_KEY];
+        }
+        return weights;
+    }
+
+    /**
+     * @return the number of sessions added
+     */
+    public int sessionCount() {
+        return sessions;
+    }
+
+    private static int slotOf(int key) {
+        if (key >= 'A' && key <= 'Z') {
+            key = Character.toLowerCase(key);
+        }
+        return (key >= FIRST_KEY && key <= LAST_KEY) ? key - FIRST_KEY : -1;
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+}
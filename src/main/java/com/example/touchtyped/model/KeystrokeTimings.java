@@ -0,0 +1,211 @@
+package com.example.touchtyped.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * running timing statistics (count, total, sum of squares, min and max, in microseconds) keyed by a single key or by
+ * a bigram of two keys. keys are the ints used by KeyLogsStructure.
+ *
+ * entries are stored densely in insertion order, in primitive columns, with an open-addressing index over them, so
+ * recording a time is a hash lookup and never allocates once the key has been seen.
+ */
+public class KeystrokeTimings {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] firstKeys = new int[INITIAL_CAPACITY];
+    private int[] secondKeys = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private long[] totals = new long[INITIAL_CAPACITY];
+    private long[] sumsOfSquares = new long[INITIAL_CAPACITY];
+    private long[] mins = new long[INITIAL_CAPACITY];
+    private long[] maxs = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * open-addressing index: each slot holds entry index + 1, or 0 if empty. always at least twice the capacity.
+     */
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * record a time for a single key.
+     * @param key is the encoded key
+     * @param micros is the time in microseconds
+     */
+    public void record(int key, long micros) {
+        record(key, KeyLogsStructure.NO_EXPECTED, micros);
+    }
+
+    /**
+     * record a time for a bigram.
+     * @param firstKey is the encoded first key
+     * @param secondKey is the encoded second key, or NO_EXPECTED to record a single key
+     * @param micros is the time in microseconds
+     */
+    public void record(int firstKey, int secondKey, long micros) {
+        int entry = findOrAdd(firstKey, secondKey);
+        counts[entry]++;
+        totals[entry] += micros;
+        sumsOfSquares[entry] += micros * micros;
+        if (counts[entry] == 1 || micros < mins[entry]) {
+            mins[entry] = micros;
+        }
+        if (counts[entry] == 1 || micros > maxs[entry]) {
+            maxs[entry] = micros;
+        }
+    }
+
+    /**
+     * @return the entry index for a key or bigram, or -1 if nothing has been recorded for it
+     */
+    public int find(int firstKey, int secondKey) {
+        int mask = index.length - 1;
+        for (int slot = hash(firstKey, secondKey) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = index[slot] - 1;
+            if (firstKeys[entry] == firstKey && secondKeys[entry] == secondKey) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int findOrAdd(int firstKey, int secondKey) {
+        int entry = find(firstKey, secondKey);
+        if (entry >= 0) {
+            return entry;
+        }
+        ensureCapacity(size + 1);
+        entry = size++;
+        firstKeys[entry] = firstKey;
+        secondKeys[entry] = secondKey;
+        insertIntoIndex(entry);
+        return entry;
+    }
+
+    private void insertIntoIndex(int entry) {
+        int mask = index.length - 1;
+        int slot = hash(firstKeys[entry], secondKeys[entry]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry + 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= firstKeys.length) {
+            return;
+        }
+        int newCapacity = firstKeys.length * 2;
+        firstKeys = Arrays.copyOf(firstKeys, newCapacity);
+        secondKeys = Arrays.copyOf(secondKeys, newCapacity);
+        counts = Arrays.copyOf(counts, newCapacity);
+        totals = Arrays.copyOf(totals, newCapacity);
+        sumsOfSquares = Arrays.copyOf(sumsOfSquares, newCapacity);
+        mins = Arrays.copyOf(mins, newCapacity);
+        maxs = Arrays.copyOf(maxs, newCapacity);
+
+        index = new int[newCapacity * 2];
+        for (int entry = 0; entry < size; entry++) {
+            insertIntoIndex(entry);
+        }
+    }
+
+    private static int hash(int firstKey, int secondKey) {
+        long h = (((long) firstKey) << 32 | (secondKey & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the number of distinct keys or bigrams recorded.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int firstKeyAt(int entry) {
+        checkIndex(entry);
+        return firstKeys[entry];
+    }
+
+    /**
+     * @return the second key of a bigram, or NO_EXPECTED for a single key
+     */
+    public int secondKeyAt(int entry) {
+        checkIndex(entry);
+        return secondKeys[entry];
+    }
+
+    public int countAt(int entry) {
+        checkIndex(entry);
+        return counts[entry];
+    }
+
+    public long totalAt(int entry) {
+        checkIndex(entry);
+        return totals[entry];
+    }
+
+    public long sumOfSquaresAt(int entry) {
+        checkIndex(entry);
+        return sumsOfSquares[entry];
+    }
+
+    public long minAt(int entry) {
+        checkIndex(entry);
+        return mins[entry];
+    }
+
+    public long maxAt(int entry) {
+        checkIndex(entry);
+        return maxs[entry];
+    }
+
+    /**
+     * @return the mean time in microseconds for an entry
+     */
+    public double meanAt(int entry) {
+        checkIndex(entry);
+        return (double) totals[entry] / counts[entry];
+    }
+
+    private void checkIndex(int entry) {
+        if (entry < 0 || entry >= size) {
+            throw new IndexOutOfBoundsException("Timing index " + entry + " out of bounds for size " + size);
+        }
+    }
+
+    /**
+     * builds a KeyTiming for every entry. this allocates, so it is only used when saving to the database.
+     */
+    public List<KeyTiming> toKeyTimings() {
+        List<KeyTiming> keyTimings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keyTimings.add(new KeyTiming(KeyLogsStructure.decodeKey(firstKeys[i]), KeyLogsStructure.decodeKey(secondKeys[i]),
+                    counts[i], totals[i], sumsOfSquares[i], mins[i], maxs[i]));
+        }
+        return keyTimings;
+    }
+
+    /**
+     * replaces every entry with the given KeyTimings (used when reading a structure back from the database).
+     */
+    public void setKeyTimings(List<KeyTiming> keyTimings) {
+        size = 0;
+        Arrays.fill(index, 0);
+        if (keyTimings == null) {
+            return;
+        }
+        for (KeyTiming keyTiming : keyTimings) {
+            int entry = findOrAdd(KeyLogsStructure.encodeKey(keyTiming.getKey()),
+                    KeyLogsStructure.encodeKey(keyTiming.getNextKey()));
+            counts[entry] = keyTiming.getCount();
+            totals[entry] = keyTiming.getTotalMicros();
+            sumsOfSquares[entry] = keyTiming.getSumOfSquares();
+            mins[entry] = keyTiming.getMinMicros();
+            maxs[entry] = keyTiming.getMaxMicros();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.example.touchtyped.model;
+
+/**
+ * the one clock a game is timed by: key log timestamps, the countdown and the elapsed time used for WPM all come from
+ * it, so they can never disagree.
+ *
+ * it runs on System.nanoTime(), which only ever moves forward (unlike System.currentTimeMillis(), which jumps when the
+ * wall clock is corrected). every method takes the nanoTime to answer for, rather than reading it, so a key can be
+ * timed by when it was pressed rather than when it was handled, and tests can drive it by hand.
+ *
+ * a clock with a limit counts down, and never reports more than the limit as elapsed. once stopped, it reports the
+ * time it was stopped at.
+ */
+public class SessionClock {
+
+    public static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_TENTH = 100_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final long limitNanos;
+    private boolean started = false;
+    private long startNanos;
+    private boolean stopped = false;
+    private long stopNanos;
+
+    /**
+     * constructor
+     * @param limitSeconds is how long the game lasts, or 0 if it has no time limit
+     */
+    public SessionClock(int limitSeconds) {
+        this.limitNanos = limitSeconds * NANOS_PER_SECOND;
+    }
+
+    /**
+     * start the clock. does nothing if it has already started.
+     * @param nanos is the System.nanoTime() the game started at (e.g. when its first key was pressed)
+     */
+    public void start(long nanos) {
+        if (started) {
+            return;
+        }
+        started = true;
+        startNanos = nanos;
+    }
+
+    /**
+     * stop the clock, freezing the elapsed time. only the first call counts.
+     * @param nanos is the System.nanoTime() the game ended at. a time past the limit is taken as the limit
+     */
+    public void stop(long nanos) {
+        if (!started || stopped) {
+            return;
+        }
+        stopped = true;
+        stopNanos = startNanos + clamp(nanos - startNanos);
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public boolean hasLimit() {
+        return limitNanos > 0;
+    }
+
+    /**
+     * @return the time from the start to nanos (or to when the clock stopped, if it has), never more than the limit
+     */
+    public long elapsedNanos(long nanos) {
+        if (!started) {
+            return 0;
+        }
+        return clamp((stopped ? stopNanos : nanos) - startNanos);
+    }
+
+    /**
+     * @return the elapsed time in minutes, for words per minute
+     */
+    public double elapsedMinutes(long nanos) {
+        return elapsedNanos(nanos) / (60.0 * NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return the milliseconds from the start to nanos, for timestamping a key log
+     */
+    public long millisAt(long nanos) {
+        return started ? (nanos - startNanos) / NANOS_PER_MILLI : 0;
+    }
+
+    /**
+     * @return the time left before the limit, or 0 if the clock has no limit
+     */
+    public long remainingNanos(long nanos) {
+        return hasLimit() ? limitNanos - elapsedNanos(nanos) : 0;
+    }
+
+    /**
+     * @return the time left in tenths of a second, rounded up, so that 0 is only shown once time is up
+     */
+    public int remainingTenths(long nanos) {
+        return (int) ((remainingNanos(nanos) + NANOS_PER_TENTH - 1) / NANOS_PER_TENTH);
+    }
+
+    /**
+     * @return whether the clock has a limit and it has been reached by nanos
+     */
+    public boolean isExpired(long nanos) {
+        return hasLimit() && started && nanos - startNanos >= limitNanos;
+    }
+
+    private long clamp(long elapsed) {
+        if (elapsed < 0) {
+            return 0;
+        }
+        return hasLimit() ? Math.min(elapsed, limitNanos) : elapsed;
+    }
+
+}
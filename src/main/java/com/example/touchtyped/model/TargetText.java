@@ -0,0 +1,152 @@
+package com.example.touchtyped.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the text of a typing session, which may keep growing for as long as the session runs (e.g. a timed game tops it up
+ * a word at a time), with a flag per character for whether it was typed wrong.
+ *
+ * the text is held in fixed-size segments, each with its own error bits, so appending never copies what is already
+ * there. segments well behind the cursor are retired: their characters are kept as a read-only string, and their
+ * error bits are dropped. so an hour of typing costs the same per word as the first minute, and only the segments
+ * around the cursor stay mutable.
+ */
+public class TargetText implements CharSequence {
+
+    public static final int SEGMENT_SIZE = 1024;
+    private static final int SEGMENT_SHIFT = 10;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // a segment is live (chars and error bits) until retired, then archived (string only)
+    private final List<char[]> chars = new ArrayList<>();
+    private final List<long[]> errorBits = new ArrayList<>();
+    private final List<String> archived = new ArrayList<>();
+    private int retiredSegments = 0;
+    private int length = 0;
+
+    public TargetText() { }
+
+    public TargetText(CharSequence text) {
+        append(text);
+    }
+
+    /**
+     * add to the end of the text.
+     */
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    public void append(char c) {
+        int offset = length & SEGMENT_MASK;
+        if (offset == 0) {
+            chars.add(new char[SEGMENT_SIZE]);
+            errorBits.add(new long[SEGMENT_SIZE / 64]);
+            archived.add(null);
+        }
+        chars.get(length >> SEGMENT_SHIFT)[offset] = c;
+        length++;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        int segment = index >> SEGMENT_SHIFT;
+        if (segment < retiredSegments) {
+            return archived.get(segment).charAt(index & SEGMENT_MASK);
+        }
+        return chars.get(segment)[index & SEGMENT_MASK];
+    }
+
+    /**
+     * @return whether the character at index is marked as typed wrong. characters in retired segments never are
+     */
+    public boolean isError(int index) {
+        int segment = index >> SEGMENT_SHIFT;
+        if (index < 0 || index >= length || segment < retiredSegments) {
+            return false;
+        }
+        return (errorBits.get(segment)[(index & SEGMENT_MASK) >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * mark or unmark the character at index as typed wrong.
+     * @throws IndexOutOfBoundsException if index is past the end, or in a retired segment
+     */
+    public void setError(int index, boolean error) {
+        if (index < retiredStart() || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " is not in a live segment");
+        }
+        long[] bits = errorBits.get(index >> SEGMENT_SHIFT);
+        int word = (index & SEGMENT_MASK) >> 6;
+        if (error) {
+            bits[word] |= 1L << index;
+        } else {
+            bits[word] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * retire every whole segment before index, so their characters can no longer be marked.
+     * @param index is the first character that must stay live
+     * @return how many of the retired characters were marked wrong (isError no longer reports them)
+     */
+    public int retireBefore(int index) {
+        int segments = Math.min(index, length) >> SEGMENT_SHIFT;
+        int errors = 0;
+        while (retiredSegments < segments) {
+            for (long bits : errorBits.get(retiredSegments)) {
+                errors += Long.bitCount(bits);
+            }
+            archived.set(retiredSegments, new String(chars.get(retiredSegments)));
+            chars.set(retiredSegments, null);
+            errorBits.set(retiredSegments, null);
+            retiredSegments++;
+        }
+        return errors;
+    }
+
+    /**
+     * @return the index of the first character that can still be marked
+     */
+    public int retiredStart() {
+        return retiredSegments << SEGMENT_SHIFT;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            builder.append(charAt(i));
+        }
+        return builder;
+    }
+
+    /**
+     * @return the whole text, built in one pass. call this once the session is over, not per keystroke
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(length);
+        for (int segment = 0; segment < chars.size(); segment++) {
+            int segmentLength = Math.min(SEGMENT_SIZE, length - (segment << SEGMENT_SHIFT));
+            if (segment < retiredSegments) {
+                builder.append(archived.get(segment));
+            } else {
+                builder.append(chars.get(segment), 0, segmentLength);
+            }
+        }
+        return builder.toString();
+    }
+
+}
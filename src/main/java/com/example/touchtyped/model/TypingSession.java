@@ -0,0 +1,295 @@
+package com.example.touchtyped.model;
+
+import com.example.touchtyped.interfaces.KeyToken;
+
+import java.util.function.Supplier;
+
+/**
+ * the rules of a typing exercise, with no UI: a target text, a cursor, the characters typed wrong, the keystroke counts
+ * and the word streak. key presses go in, and what they changed comes out through a Listener, so a view only has to
+ * redraw what it is told about.
+ *
+ * a session is deterministic (it has no clock or randomness of its own: timestamps come with the keys, and more text
+ * comes from the supplier it was given) and allocates nothing per keystroke, so it can be driven as fast as a test
+ * likes. it is not thread-safe.
+ */
+public class TypingSession {
+
+    /**
+     * how a session treats its keys.
+     * @param caseSensitive is whether a key must match the expected character's case
+     * @param allowBackspace is whether BACK_SPACE moves the cursor back (otherwise it is ignored)
+     * @param endAtLastChar is whether the session ends when the last character is typed
+     * @param refillMargin is how close to the end of the text the cursor may get before more is asked for, if the
+     *                     session has a supplier of more text
+     */
+    public record Rules(boolean caseSensitive, boolean allowBackspace, boolean endAtLastChar, int refillMargin) {
+
+        // timed games: the text is topped up as it is typed, until the time runs out
+        public static final Rules TIMED = new Rules(true, true, false, 30);
+        // article games: one text, which ends the game once typed
+        public static final Rules ARTICLE = new Rules(true, true, true, 0);
+        // a competition lane: no going back
+        public static final Rules LANE = new Rules(true, false, false, 0);
+        // a learn module level: case doesn't matter
+        public static final Rules LEVEL = new Rules(false, true, false, 0);
+    }
+
+    /**
+     * told what each key press changed. every method does nothing by default.
+     */
+    public interface Listener {
+
+        /**
+         * a character was typed over.
+         * @param index is the character's index in the text
+         * @param key is the key that was pressed
+         * @param correct is whether the key matched the character
+         */
+        default void charTyped(int index, KeyToken key, boolean correct) { }
+
+        /**
+         * a character was backspaced over, and is no longer marked wrong.
+         */
+        default void charErased(int index) { }
+
+        /**
+         * the cursor (the index of the next character to type) moved.
+         */
+        default void cursorMoved(int cursor) { }
+
+        /**
+         * the number of words in a row typed without a mistake changed.
+         */
+        default void streakChanged(int streak) { }
+
+        /**
+         * a key was pressed with the cursor already past the end of the text. it is counted as wrong.
+         */
+        default void overrun(KeyToken key) { }
+
+        /**
+         * a word was added to the end of the text (after a space, unless the text was empty).
+         */
+        default void textAppended(String word) { }
+
+        /**
+         * the session ended, and will ignore any more keys.
+         */
+        default void sessionEnded() { }
+    }
+
+    private static final Listener NO_LISTENER = new Listener() { };
+
+    // how far behind the cursor the text is kept live, and so how far BACK_SPACE can reach
+    public static final int BACKSPACE_REACH = TargetText.SEGMENT_SIZE;
+
+    private final TargetText text;
+    private final Supplier<String> moreText;
+    private final Rules rules;
+    private Listener listener = NO_LISTENER;
+
+    private int cursor = 0;
+    private int errorCount = 0;
+    // the part of errorCount in retired text, which can no longer be corrected
+    private int retiredErrorCount = 0;
+    private int correctKeystrokes = 0;
+    private int wrongKeystrokes = 0;
+    private int streak = 0;
+    private int maxStreak = 0;
+    private boolean wordHasMistake = false;
+    private boolean ended = false;
+    private long firstKeyNanos = -1;
+    private long lastKeyNanos = -1;
+
+    /**
+     * constructor
+     * @param text is the text to type
+     * @param moreText gives another word whenever the cursor gets within rules.refillMargin() of the end, or is null if
+     *                 the text is fixed
+     * @param rules is how keys are treated
+     */
+    public TypingSession(CharSequence text, Supplier<String> moreText, Rules rules) {
+        this.text = new TargetText(text);
+        this.moreText = moreText;
+        this.rules = rules;
+    }
+
+    /**
+     * @param listener is told of every change from now on, or null to stop telling anyone
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener == null ? NO_LISTENER : listener;
+    }
+
+    /**
+     * apply a key press.
+     * @param key is the key that was pressed
+     * @param nanos is when it was pressed (any monotonic clock, e.g. System.nanoTime())
+     */
+    public void keyPressed(KeyToken key, long nanos) {
+        if (ended) {
+            return;
+        }
+        if (firstKeyNanos < 0) {
+            firstKeyNanos = nanos;
+        }
+        lastKeyNanos = nanos;
+
+        if (key == KeyToken.BACK_SPACE) {
+            if (rules.allowBackspace() && cursor > text.retiredStart()) {
+                cursor--;
+                if (text.isError(cursor)) {
+                    text.setError(cursor, false);
+                    errorCount--;
+                }
+                listener.charErased(cursor);
+                listener.cursorMoved(cursor);
+            }
+            return;
+        }
+
+        if (cursor >= text.length()) {
+            wrongKeystrokes++;
+            listener.overrun(key);
+            return;
+        }
+
+        char expected = text.charAt(cursor);
+        boolean correct = matches(key.getCodepoint(), expected);
+        if (correct) {
+            correctKeystrokes++;
+        } else {
+            wrongKeystrokes++;
+            text.setError(cursor, true);
+            errorCount++;
+            wordHasMistake = true;
+        }
+        listener.charTyped(cursor, key, correct);
+        if (!correct) {
+            setStreak(0);
+        }
+
+        cursor++;
+        listener.cursorMoved(cursor);
+        retiredErrorCount += text.retireBefore(cursor - BACKSPACE_REACH);
+
+        if (expected == ' ' || cursor == text.length()) {
+            // a word is done: it counts towards the streak only if none of it was typed wrong
+            setStreak(wordHasMistake ? 0 : streak + 1);
+            wordHasMistake = false;
+        }
+
+        if (rules.endAtLastChar() && cursor >= text.length()) {
+            end();
+        } else if (moreText != null && text.length() - cursor < rules.refillMargin()) {
+            appendWord(moreText.get());
+        }
+    }
+
+    private boolean matches(int typed, char expected) {
+        if (typed == expected) {
+            return true;
+        }
+        return !rules.caseSensitive() && Character.toLowerCase(typed) == Character.toLowerCase((int) expected);
+    }
+
+    private void setStreak(int value) {
+        if (value == streak) {
+            return;
+        }
+        streak = value;
+        maxStreak = Math.max(maxStreak, streak);
+        listener.streakChanged(streak);
+    }
+
+    private void appendWord(String word) {
+        if (text.length() > 0) {
+            text.append(' ');
+        }
+        text.append(word);
+        listener.textAppended(word);
+    }
+
+    /**
+     * end the session (e.g. when its time runs out). any more keys are ignored.
+     */
+    public void end() {
+        if (!ended) {
+            ended = true;
+            listener.sessionEnded();
+        }
+    }
+
+    /**
+     * @return the text to type, including anything appended to it, with its error flags
+     */
+    public TargetText text() {
+        return text;
+    }
+
+    public int cursor() {
+        return cursor;
+    }
+
+    /**
+     * @return whether every character has been typed over
+     */
+    public boolean isAtEnd() {
+        return cursor >= text.length();
+    }
+
+    /**
+     * @return the number of characters before the cursor that were typed wrong and not corrected, including those in
+     *         retired text (which text().isError no longer reports)
+     */
+    public int errorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return how many of errorCount are in retired text, out of BACK_SPACE's reach
+     */
+    public int retiredErrorCount() {
+        return retiredErrorCount;
+    }
+
+    public int correctKeystrokes() {
+        return correctKeystrokes;
+    }
+
+    public int wrongKeystrokes() {
+        return wrongKeystrokes;
+    }
+
+    public int totalKeystrokes() {
+        return correctKeystrokes + wrongKeystrokes;
+    }
+
+    public int streak() {
+        return streak;
+    }
+
+    public int maxStreak() {
+        return maxStreak;
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return the time of the first key press, or -1 if there hasn't been one
+     */
+    public long firstKeyNanos() {
+        return firstKeyNanos;
+    }
+
+    /**
+     * @return the time of the latest key press, or -1 if there hasn't been one
+     */
+    public long lastKeyNanos() {
+        return lastKeyNanos;
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.example.touchtyped.model;
+
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * draws a window of the target text into a TextFlow, one Text node per character, styled as typed, wrong or remaining.
+ *
+ * the nodes are created once and reused. when the window moves, the nodes that scrolled off one end are moved to the
+ * other and given their new characters; otherwise only the characters whose state may have changed (those between the
+ * old and new cursor) are looked at, and a node is only touched if its character or style actually differs. a keypress
+ * therefore restyles one or two nodes instead of rebuilding the whole flow.
+ */
+public class TypingTextRenderer {
+
+    public static final String TYPED = "typed-text";
+    public static final String ERROR = "error-text";
+    public static final String REMAINING = "remaining-text";
+
+    private final TextFlow flow;
+    private final int windowSize;
+
+    // what each node shows, in the same order as the flow's children. the style is one of the constants above, or
+    // null for a node past the end of the text
+    private final char[] shownChars;
+    private final String[] shownStyles;
+
+    private TargetText text;
+    private int shownStart = 0;
+    private int shownLength = 0;
+    private int shownCursor = 0;
+    private boolean shownCurrentError = false;
+    private boolean valid = false;
+
+    /**
+     * constructor. replaces the flow's children with the renderer's nodes.
+     * @param flow is the TextFlow to draw into
+     * @param windowSize is the number of characters shown at once
+     */
+    public TypingTextRenderer(TextFlow flow, int windowSize) {
+        this.flow = flow;
+        this.windowSize = windowSize;
+        this.shownChars = new char[windowSize];
+        this.shownStyles = new String[windowSize];
+        List<Text> nodes = new ArrayList<>(windowSize);
+        for (int i = 0; i < windowSize; i++) {
+            Text node = new Text("");
+            node.setTextOrigin(VPos.BASELINE);
+            nodes.add(node);
+        }
+        flow.getChildren().setAll(nodes);
+    }
+
+    /**
+     * forget what is shown, so the next render redraws every character. call this when the text or error flags are
+     * changed other than by typing (e.g. when a new game starts).
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * bring the flow up to date.
+     * @param text is the target text, with its error flags. it may have grown since the last render
+     * @param cursor is the index of the next character to type
+     * @param showCurrentError is whether the character at the cursor should be shown as wrong if it is flagged
+     * @param start is the index of the first character in the window
+     */
+    public void render(TargetText text, int cursor, boolean showCurrentError, int start) {
+        if (!valid || text != this.text || text.length() < shownLength) {
+            this.text = text;
+            shownStart = start;
+            shownCursor = cursor;
+            shownCurrentError = showCurrentError;
+            shownLength = text.length();
+            valid = true;
+            refresh(0, windowSize, true);
+            return;
+        }
+
+        int oldCursor = shownCursor;
+        shownCursor = cursor;
+        shownCurrentError = showCurrentError;
+
+        if (start != shownStart) {
+            shift(start);
+        }
+        if (text.length() > shownLength) {
+            // characters appended inside the window replace blank nodes
+            refresh(shownLength - shownStart, text.length() - shownStart, false);
+            shownLength = text.length();
+        }
+        Slots dirty = dirtySlots(oldCursor, cursor, start, windowSize);
+        if (!dirty.isEmpty()) {
+            refresh(dirty.from(), dirty.to(), false);
+        }
+    }
+
+    /**
+     * a range of slots, [from, to). empty when from >= to.
+     */
+    record Slots(int from, int to) {
+
+        boolean isEmpty() {
+            return from >= to;
+        }
+    }
+
+    /**
+     * work out which slots may need restyling after the cursor moves: every character between the old and new
+     * cursor, both included. the character at the cursor is always in the range, so a change to showCurrentError
+     * is covered too.
+     * @param oldCursor is the cursor at the last render
+     * @param cursor is the cursor now
+     * @param start is the index of the first character in the window
+     * @param windowSize is the number of slots
+     * @return the slots, clipped to the window
+     */
+    static Slots dirtySlots(int oldCursor, int cursor, int start, int windowSize) {
+        int from = Math.min(oldCursor, cursor) - start;
+        int to = Math.max(oldCursor, cursor) + 1 - start;
+        return new Slots(Math.max(0, from), Math.min(windowSize, to));
+    }
+
+    /**
+     * move the window so it starts at start, moving nodes from one end of the flow to the other.
+     */
+    private void shift(int start) {
+        int by = start - shownStart;
+        shownStart = start;
+        if (Math.abs(by) >= windowSize) {
+            refresh(0, windowSize, true);
+            return;
+        }
+        List<Node> children = flow.getChildren();
+        if (by > 0) {
+            List<Node> moved = new ArrayList<>(children.subList(0, by));
+            children.remove(0, by);
+            children.addAll(moved);
+            rotate(by);
+            refresh(windowSize - by, windowSize, true);
+        } else {
+            List<Node> moved = new ArrayList<>(children.subList(windowSize + by, windowSize));
+            children.remove(windowSize + by, windowSize);
+            children.addAll(0, moved);
+            rotate(windowSize + by);
+            refresh(0, -by, true);
+        }
+    }
+
+    /**
+     * rotate the shown-state arrays left by n, to match the children.
+     */
+    private void rotate(int n) {
+        char[] chars = shownChars.clone();
+        String[] styles = shownStyles.clone();
+        for (int slot = 0; slot < windowSize; slot++) {
+            shownChars[slot] = chars[(slot + n) % windowSize];
+            shownStyles[slot] = styles[(slot + n) % windowSize];
+        }
+    }
+
+    /**
+     * update the nodes in slots [from, to), touching only those whose character or style differs.
+     * @param force is whether the shown state is unknown, so every node in the range is written
+     */
+    private void refresh(int from, int to, boolean force) {
+        from = Math.max(0, from);
+        to = Math.min(windowSize, to);
+        for (int slot = from; slot < to; slot++) {
+            int index = shownStart + slot;
+            Text node = (Text) flow.getChildren().get(slot);
+            if (index >= text.length()) {
+                if (force || shownStyles[slot] != null) {
+                    node.setText("");
+                    node.getStyleClass().clear();
+                    shownStyles[slot] = null;
+                }
+                continue;
+            }
+            char c = text.charAt(index);
+            String style = styleOf(index);
+            if (force || shownStyles[slot] == null || c != shownChars[slot]) {
+                node.setText(String.valueOf(c));
+                shownChars[slot] = c;
+            }
+            if (force || !style.equals(shownStyles[slot])) {
+                node.getStyleClass().setAll(style);
+                shownStyles[slot] = style;
+            }
+        }
+    }
+
+    private String styleOf(int index) {
+        if (index < shownCursor) {
+            return text.isError(index) ? ERROR : TYPED;
+        }
+        if (index == shownCursor && shownCurrentError && text.isError(index)) {
+            return ERROR;
+        }
+        return REMAINING;
+    }
+
+}
@@ -15,6 +15,7 @@ public class UserProfile implements Serializable {
     
     private String playerName;
     private Boolean completedTutorial = false;
+    private KeyWeakness keyWeakness = new KeyWeakness();
 
     // Private constructor to prevent external instantiation
     private UserProfile() {
@@ -119,6 +120,18 @@ public class UserProfile implements Serializable {
         saveProfile();
     }
 
+    /**
+     * Get the user's weakness at each key, built up from their games. call saveProfile() after updating it
+     * @return Key weakness
+     */
+    public KeyWeakness getKeyWeakness() {
+        // profiles saved before this was added don't have one
+        if (keyWeakness == null) {
+            keyWeakness = new KeyWeakness();
+        }
+        return keyWeakness;
+    }
+
     /**
      * Check if it's the first time using (has a username but hasn't completed the tutorial)
      * @return true if it's the first time using, false otherwise
@@ -0,0 +1,69 @@
+package com.example.touchtyped.serialisers;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import com.example.touchtyped.model.KeystrokeTimings;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * writes a KeyLogsStructure as JSON directly from its primitive columns, without building any KeyLog objects.
+ * the output has the same shape (and field order) that Jackson produced when the key logs were stored as a
+ * List of KeyLog, so the REST service does not need to change. the dwell and flight time tables are written after
+ * the original fields.
+ */
+public class KeyLogsStructureSerialiser extends StdSerializer<KeyLogsStructure> {
+
+    public KeyLogsStructureSerialiser() {
+        super(KeyLogsStructure.class);
+    }
+
+    @Override
+    public void serialize(KeyLogsStructure structure, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+
+        gen.writeArrayFieldStart("keyLogs");
+        for (int i = 0; i < structure.size(); i++) {
+            gen.writeStartObject();
+            gen.writeStringField("key", KeyLogsStructure.decodeKey(structure.keyAt(i)));
+            gen.writeStringField("expected", KeyLogsStructure.decodeKey(structure.expectedAt(i)));
+            gen.writeNumberField("timestamp", structure.timestampAt(i));
+            gen.writeBooleanField("error", structure.errorAt(i));
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        gen.writeNumberField("sessionDuration", structure.getSessionDuration());
+        gen.writeStringField("wordsGiven", structure.getWordsGiven());
+        gen.writeNumberField("charPosition", structure.getCharPosition());
+        gen.writeNumberField("errors", structure.getErrors());
+        gen.writeNumberField("timeCreated", structure.getTimeCreated());
+        gen.writeNumberField("wpm", structure.getWpm());
+        gen.writeNumberField("correctKeystrokes", structure.getCorrectKeystrokes());
+        gen.writeNumberField("incorrectKeystrokes", structure.getIncorrectKeystrokes());
+
+        writeTimings(gen, "dwellTimes", structure.dwellTimes());
+        writeTimings(gen, "flightTimes", structure.flightTimes());
+
+        gen.writeEndObject();
+    }
+
+    private static void writeTimings(JsonGenerator gen, String fieldName, KeystrokeTimings timings) throws IOException {
+        gen.writeArrayFieldStart(fieldName);
+        for (int i = 0; i < timings.size(); i++) {
+            gen.writeStartObject();
+            gen.writeStringField("key", KeyLogsStructure.decodeKey(timings.firstKeyAt(i)));
+            gen.writeStringField("nextKey", KeyLogsStructure.decodeKey(timings.secondKeyAt(i)));
+            gen.writeNumberField("count", timings.countAt(i));
+            gen.writeNumberField("totalMicros", timings.totalAt(i));
+            gen.writeNumberField("sumOfSquares", timings.sumOfSquaresAt(i));
+            gen.writeNumberField("minMicros", timings.minAt(i));
+            gen.writeNumberField("maxMicros", timings.maxAt(i));
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+}
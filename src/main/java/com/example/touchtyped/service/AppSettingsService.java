@@ -1,5 +1,8 @@
 package com.example.touchtyped.service;
 
+import com.example.touchtyped.firestore.Storage;
+import com.example.touchtyped.interfaces.KeyboardLayout;
+import com.example.touchtyped.interfaces.KeyboardPortWatcher;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
@@ -24,6 +27,12 @@ public class AppSettingsService {
     
     public static final String DISPLAY_MODE_KEY = "displayMode";
     public static final String FONT_SIZE_KEY = "fontSize";
+    public static final String KEYBOARD_LAYOUT_KEY = "keyboardLayout";
+    public static final String HARDWARE_INPUT_KEY = "hardwareInput";
+    public static final String KEYBOARD_USB_IDS_KEY = "keyboardUsbIds";
+    public static final String TYPING_SOUNDS_KEY = "typingSounds";
+    public static final String STORAGE_KEY = "storage";
+    public static final String FIRESTORE_CREDENTIALS_KEY = "firestoreCredentials";
     
     public static final String DAY_MODE = "day";
     public static final String NIGHT_MODE = "night";
@@ -111,6 +120,70 @@ public class AppSettingsService {
         appSettings.setProperty(FONT_SIZE_KEY, String.valueOf(fontSize));
     }
     
+    /**
+     * Get the keyboard layout name (e.g. "uk" or "us")
+     */
+    public String getKeyboardLayout() {
+        return appSettings.getProperty(KEYBOARD_LAYOUT_KEY, KeyboardLayout.DEFAULT_LAYOUT);
+    }
+    
+    /**
+     * Set the keyboard layout name
+     */
+    public void setKeyboardLayout(String layout) {
+        appSettings.setProperty(KEYBOARD_LAYOUT_KEY, layout);
+    }
+    
+    /**
+     * Whether key events should be read from the keyboard's serial port, timed by the keyboard itself
+     */
+    public boolean isHardwareInput() {
+        return Boolean.parseBoolean(appSettings.getProperty(HARDWARE_INPUT_KEY, "false"));
+    }
+    
+    /**
+     * Set whether key events should be read from the keyboard's serial port
+     */
+    public void setHardwareInput(boolean hardwareInput) {
+        appSettings.setProperty(HARDWARE_INPUT_KEY, String.valueOf(hardwareInput));
+    }
+    
+    /**
+     * Get the USB IDs the keyboard may have, as comma-separated "vendor:product" hex pairs
+     */
+    public String getKeyboardUsbIds() {
+        return appSettings.getProperty(KEYBOARD_USB_IDS_KEY, KeyboardPortWatcher.DEFAULT_USB_IDS);
+    }
+    
+    /**
+     * Whether a sound is played for each key typed and each mistake (the combo sound always plays)
+     */
+    public boolean isTypingSounds() {
+        return Boolean.parseBoolean(appSettings.getProperty(TYPING_SOUNDS_KEY, "false"));
+    }
+    
+    /**
+     * Set whether a sound is played for each key typed and each mistake
+     */
+    public void setTypingSounds(boolean typingSounds) {
+        appSettings.setProperty(TYPING_SOUNDS_KEY, String.valueOf(typingSounds));
+    }
+    
+    /**
+     * Get where accounts and classrooms are stored: Storage.FIRESTORE, or Storage.LOCAL to run without the cloud
+     */
+    public String getStorage() {
+        return appSettings.getProperty(STORAGE_KEY, Storage.FIRESTORE);
+    }
+    
+    /**
+     * Get the path of the Firestore service account key, or null to use the one on the classpath.
+     * Defaults to the GOOGLE_APPLICATION_CREDENTIALS environment variable
+     */
+    public String getFirestoreCredentials() {
+        return appSettings.getProperty(FIRESTORE_CREDENTIALS_KEY, System.getenv("GOOGLE_APPLICATION_CREDENTIALS"));
+    }
+    
     /**
      * 检查是否是暗黑模式
      */
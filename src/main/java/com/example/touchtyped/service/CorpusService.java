@@ -0,0 +1,242 @@
+package com.example.touchtyped.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+/**
+ * the practice texts (sentences, articles, and the words in the sentences), shared by every view.
+ *
+ * each resource is read once per process, the first time it is needed (or in the background, after preload()), into
+ * one string with an index of where each line starts. picking a random line is then a lookup, however large the
+ * corpus, and holding 100k sentences costs one string rather than 100k.
+ */
+public class CorpusService {
+
+    public static final String SENTENCES_RESOURCE = "/com/example/touchtyped/sentences.txt";
+    public static final String ARTICLES_RESOURCE = "/com/example/touchtyped/articles.txt";
+
+    private static CorpusService instance;
+
+    /**
+     * the non-blank lines of a text resource, trimmed, stored end to end.
+     */
+    private static final class Lines {
+        private final String text;
+        // line i is text[starts[i], starts[i + 1])
+        private final int[] starts;
+
+        private Lines(String text, int[] starts) {
+            this.text = text;
+            this.starts = starts;
+        }
+
+        private int size() {
+            return starts.length - 1;
+        }
+
+        private String get(int i) {
+            return text.substring(starts[i], starts[i + 1]);
+        }
+    }
+
+    private static final Lines NO_LINES = new Lines("", new int[] {0});
+    // what separates words in the word pool
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}']+");
+    private static final Pattern EDGE_APOSTROPHES = Pattern.compile("^'+|'+$");
+
+    private volatile Lines sentences;
+    private volatile Lines articles;
+    private volatile String[] words;
+    private final SplittableRandom random;
+
+    private CorpusService(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * constructor, with the texts given instead of read from the resources (e.g. for tests).
+     * @param sentences is the sentences, one per line.
+     * @param articles is the articles, one per line.
+     * @param random is the source of randomness, which may be seeded.
+     */
+    CorpusService(Reader sentences, Reader articles, SplittableRandom random) throws IOException {
+        this(random);
+        this.sentences = readLines(sentences);
+        this.articles = readLines(articles);
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized CorpusService getInstance() {
+        if (instance == null) {
+            instance = new CorpusService(new SplittableRandom());
+        }
+        return instance;
+    }
+
+    /**
+     * load every resource on a background thread, so that the first game doesn't wait for it.
+     */
+    public void preload() {
+        Thread thread = new Thread(() -> {
+            sentences();
+            articles();
+            words();
+        }, "corpus-preload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return a random sentence, or null if there are none
+     */
+    public String randomSentence() {
+        return pick(sentences());
+    }
+
+    /**
+     * @return a random article (a paragraph, on one line), or null if there are none
+     */
+    public String randomArticle() {
+        return pick(articles());
+    }
+
+    /**
+     * @return a random word from the sentences, in lower case and without punctuation, or null if there are none
+     */
+    public String randomWord() {
+        String[] all = words();
+        return all.length == 0 ? null : all[nextInt(all.length)];
+    }
+
+    public int sentenceCount() {
+        return sentences().size();
+    }
+
+    public int articleCount() {
+        return articles().size();
+    }
+
+    /**
+     * @return every distinct word in the sentences, in lower case and without punctuation. the array is shared, so it
+     *         must not be modified
+     */
+    public String[] words() {
+        String[] loaded = words;
+        if (loaded == null) {
+            synchronized (this) {
+                if (words == null) {
+                    words = splitWords(sentences());
+                }
+                loaded = words;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @return a new generator for one view's own picks (e.g. its AdaptiveTextGenerator's), split from the shared one,
+     *         so a seeded service seeds those too
+     */
+    public synchronized SplittableRandom splitRandom() {
+        return random.split();
+    }
+
+    private String pick(Lines lines) {
+        return lines.size() == 0 ? null : lines.get(nextInt(lines.size()));
+    }
+
+    // SplittableRandom isn't thread-safe, but picks are cheap enough to share one behind a lock
+    private synchronized int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    private Lines sentences() {
+        Lines loaded = sentences;
+        if (loaded == null) {
+            synchronized (this) {
+                if (sentences == null) {
+                    sentences = load(SENTENCES_RESOURCE);
+                }
+                loaded = sentences;
+            }
+        }
+        return loaded;
+    }
+
+    private Lines articles() {
+        Lines loaded = articles;
+        if (loaded == null) {
+            synchronized (this) {
+                if (articles == null) {
+                    articles = load(ARTICLES_RESOURCE);
+                }
+                loaded = articles;
+            }
+        }
+        return loaded;
+    }
+
+    private static Lines load(String resource) {
+        try (InputStream in = CorpusService.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                System.out.println(resource + " not found!");
+                return NO_LINES;
+            }
+            return readLines(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Error loading " + resource + ": " + e.getMessage());
+            return NO_LINES;
+        }
+    }
+
+    private static Lines readLines(Reader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[256];
+        int count = 0;
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (count + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[count++] = text.length();
+            text.append(line);
+        }
+        starts[count] = text.length();
+        return new Lines(text.toString(), Arrays.copyOf(starts, count + 1));
+    }
+
+    /**
+     * split the sentences into words for the word pool: lower case, without punctuation or digits (an apostrophe inside
+     * a word, as in "don't", is kept).
+     */
+    private static String[] splitWords(Lines lines) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            for (String word : NON_WORD.split(lines.get(i).toLowerCase(Locale.ROOT))) {
+                word = EDGE_APOSTROPHES.matcher(word).replaceAll("");
+                if (!word.isEmpty()) {
+                    distinct.add(word);
+                }
+            }
+        }
+        return distinct.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.example.touchtyped.service;
+
+import com.example.touchtyped.firestore.ClassroomDAO;
+import com.example.touchtyped.firestore.UserDAO;
+import com.example.touchtyped.model.KeyLogsStructure;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * uploads finished games' key logs to the logged in user's account, without making the game wait for the database.
+ *
+ * submit() hands the results to a background thread, which writes them to a file in OUTBOX_DIR before trying to
+ * upload them. a file is only deleted once the database has stored it (or refused it for good, e.g. because the
+ * account was deleted), so results typed offline, or just before a crash, are uploaded the next time the database can
+ * be reached, in the order they were played. while it can't be reached, uploads are retried with a growing delay.
+ */
+public class ResultOutbox {
+
+    public static final String OUTBOX_DIR = "result_outbox";
+
+    private static final String SUFFIX = ".json";
+    private static final long MIN_RETRY_MILLIS = 2_000;
+    private static final long MAX_RETRY_MILLIS = 5 * 60_000;
+
+    /**
+     * stores one game's results in the database.
+     */
+    interface Sender {
+        /**
+         * @return true if the results were stored, false if they never will be (e.g. the account doesn't exist)
+         * @throws Exception if the database couldn't be reached, so it is worth trying again later
+         */
+        boolean send(String classroomID, String username, KeyLogsStructure keyLogs, String password) throws Exception;
+    }
+
+    private static ResultOutbox instance;
+
+    private final Path directory;
+    private final Sender sender;
+    private final Supplier<Map<String, String>> userCache;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "result-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // only used on the worker thread
+    private long retryMillis = MIN_RETRY_MILLIS;
+    private ScheduledFuture<?> retry;
+    private int sequence = 0;
+
+    ResultOutbox(Path directory, Sender sender, Supplier<Map<String, String>> userCache) {
+        this.directory = directory;
+        this.sender = sender;
+        this.userCache = userCache;
+    }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized ResultOutbox getInstance() {
+        if (instance == null) {
+            instance = new ResultOutbox(Paths.get(OUTBOX_DIR), UserDAO::tryAddKeyLog, ClassroomDAO::loadUserCache);
+        }
+        return instance;
+    }
+
+    /**
+     * upload any results left over from an earlier run. call this once at startup.
+     */
+    public void start() {
+        worker.execute(this::flush);
+    }
+
+    /**
+     * save a finished game's results to the logged in user's account, in the background. does nothing if no one is
+     * logged in.
+     * @param keyLogs is the game's key logs, which must not change afterwards
+     */
+    public void submit(KeyLogsStructure keyLogs) {
+        // copied now, on the caller's thread, so the worker never reads a structure the game is using
+        JsonNode snapshot = mapper.valueToTree(keyLogs);
+        worker.execute(() -> {
+            if (store(snapshot)) {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * write results to the outbox, for the user logged in now.
+     * @return whether they were written
+     */
+    boolean store(JsonNode keyLogs) {
+        Map<String, String> userDetails = userCache.get();
+        if (userDetails == null) {
+            // not logged in: nowhere to save them
+            return false;
+        }
+        ObjectNode entry = mapper.createObjectNode();
+        entry.put("classroomID", userDetails.get("classroomID"));
+        entry.put("username", userDetails.get("username"));
+        entry.put("password", userDetails.getOrDefault("password", null));
+        entry.set("keyLogs", keyLogs);
+
+        try {
+            Files.createDirectories(directory);
+            // names sort in the order the games were played
+            String name = String.format("%d-%05d", System.currentTimeMillis(), sequence++ % 100_000);
+            Path temp = directory.resolve(name + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(mapper.writeValueAsBytes(entry));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            // a crash mid-write leaves a .tmp file, which is never sent, rather than half an entry
+            Files.move(temp, directory.resolve(name + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("OUTBOX ERROR: Failed to save results: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * try to upload everything in the outbox, oldest first, and if the database can't be reached, try again later.
+     */
+    private void flush() {
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
+        if (sendPending()) {
+            retryMillis = MIN_RETRY_MILLIS;
+        } else {
+            System.out.println("DATABASE FAILURE. Results will be uploaded later (retrying in " + retryMillis / 1000 + "s).");
+            retry = worker.schedule(this::flush, retryMillis, TimeUnit.MILLISECONDS);
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * upload the outbox's entries in order, stopping at the first that can't be sent.
+     * @return true if the outbox is now empty
+     */
+    boolean sendPending() {
+        for (Path file : pending()) {
+            JsonNode entry;
+            KeyLogsStructure keyLogs;
+            try {
+                entry = mapper.readTree(file.toFile());
+                ObjectNode logs = (ObjectNode) entry.get("keyLogs");
+                // setWordsGiven upper-cases, so the text goes to the constructor instead, to upload it as it was
+                String wordsGiven = logs.path("wordsGiven").asText("");
+                logs.remove("wordsGiven");
+                keyLogs = mapper.readerForUpdating(new KeyLogsStructure(wordsGiven)).readValue(logs);
+            } catch (Exception e) {
+                // unreadable, so it will never send: set it aside rather than block everything after it
+                System.err.println("OUTBOX ERROR: Skipping unreadable results " + file.getFileName());
+                rename(file, ".bad");
+                continue;
+            }
+
+            try {
+                boolean stored = sender.send(entry.path("classroomID").asText(null), entry.path("username").asText(null),
+                        keyLogs, entry.path("password").asText(null));
+                if (stored) {
+                    System.out.println("Added key logs structure to database.");
+                } else {
+                    System.out.println("DATABASE FAILURE. Results refused: user doesn't exist or password is wrong.");
+                }
+                Files.deleteIfExists(file);
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the entries waiting to be sent, oldest first
+     */
+    List<Path> pending() {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            System.err.println("OUTBOX ERROR: Failed to list results: " + e.getMessage());
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void rename(Path file, String suffix) {
+        try {
+            Files.move(file, file.resolveSibling(file.getFileName() + suffix), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("OUTBOX ERROR: Failed to move " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.example.touchtyped.service;
+
+import javafx.scene.media.AudioClip;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * plays the game's sound effects with as little delay as possible.
+ *
+ * every sound is decoded into an AudioClip once, by preload() on a background thread, so playing one is a single
+ * call that allocates nothing and can be made from the key path. each sound may only play MAX_VOICES times at once:
+ * a sound triggered while all its voices are still playing is dropped, so a burst of keys can't pile up dozens of
+ * copies.
+ *
+ * sounds without a resource file are synthesised. call play() from the JavaFX thread.
+ */
+public class SoundService {
+
+    /**
+     * the sound effects. each has a resource file, or (if it has none, or it is missing) a synthesised tone.
+     */
+    public enum Sound {
+        COMBO("/com/example/touchtyped/sounds/338905__toxemiccarton__combo-clap.wav", 0, 0),
+        ERROR("/com/example/touchtyped/sounds/error.wav", 160, 120),
+        KEYPRESS("/com/example/touchtyped/sounds/keypress.wav", 1800, 12);
+
+        private final String resource;
+        private final double toneHz;
+        private final int toneMillis;
+
+        Sound(String resource, double toneHz, int toneMillis) {
+            this.resource = resource;
+            this.toneHz = toneHz;
+            this.toneMillis = toneMillis;
+        }
+    }
+
+    public static final int MAX_VOICES = 4;
+    private static final float SAMPLE_RATE = 44100;
+
+    private static SoundService instance;
+
+    // swapped in whole by the preload thread, once every clip is decoded. until then every sound is silent
+    private volatile AudioClip[] clips = new AudioClip[Sound.values().length];
+    private final long[] durationNanos = new long[Sound.values().length];
+    // when each voice of each sound started (0 if it never has), in a ring: nextVoice is the oldest
+    private final long[][] voiceStarts = new long[Sound.values().length][MAX_VOICES];
+    private final int[] nextVoice = new int[Sound.values().length];
+    private boolean loaded = false;
+
+    private SoundService() { }
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized SoundService getInstance() {
+        if (instance == null) {
+            instance = new SoundService();
+        }
+        return instance;
+    }
+
+    /**
+     * decode every sound on a background thread, so startup doesn't wait for it. call this once at startup; sounds
+     * played before the decoding finishes are silent.
+     */
+    public synchronized void preload() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        Thread thread = new Thread(this::load, "sound-preload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void load() {
+        AudioClip[] decoded = new AudioClip[Sound.values().length];
+        for (Sound sound : Sound.values()) {
+            try {
+                URL url = getClass().getResource(sound.resource);
+                if (url == null && sound.toneMillis > 0) {
+                    url = synthesise(sound);
+                }
+                if (url == null) {
+                    System.out.println(sound.resource + " not found!");
+                    continue;
+                }
+                decoded[sound.ordinal()] = new AudioClip(url.toExternalForm());
+                durationNanos[sound.ordinal()] = durationNanos(url);
+            } catch (Exception e) {
+                // a sound that can't be loaded is skipped; the game works without it
+                System.err.println("Error loading sound " + sound + ": " + e.getMessage());
+            }
+        }
+        // the durations are written before this, so whoever sees the clips sees them too
+        clips = decoded;
+    }
+
+    /**
+     * play a sound, unless all its voices are busy.
+     * @param sound is the sound to play
+     * @param volume is between 0 (silent) and 1 (full)
+     */
+    public void play(Sound sound, double volume) {
+        int s = sound.ordinal();
+        AudioClip clip = clips[s];
+        if (clip == null || volume <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        int voice = nextVoice[s];
+        if (voiceStarts[s][voice] != 0 && now - voiceStarts[s][voice] < durationNanos[s]) {
+            // the oldest voice is still playing, so they all are
+            return;
+        }
+        voiceStarts[s][voice] = now;
+        nextVoice[s] = (voice + 1) % MAX_VOICES;
+        clip.play(Math.min(1, volume));
+    }
+
+    private static long durationNanos(URL url) {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(url)) {
+            AudioFormat format = in.getFormat();
+            return (long) (in.getFrameLength() / format.getFrameRate() * 1_000_000_000L);
+        } catch (Exception e) {
+            // unknown length: assume a short effect
+            return 500_000_000L;
+        }
+    }
+
+    /**
+     * write a short tone, fading out, to a temporary WAV file.
+     */
+    private static URL synthesise(Sound sound) throws IOException {
+        int samples = (int) (SAMPLE_RATE * sound.toneMillis / 1000);
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            double fade = 1 - (double) i / samples;
+            double value = Math.sin(2 * Math.PI * sound.toneHz * i / SAMPLE_RATE) * fade * fade * 0.6;
+            short sample = (short) (value * Short.MAX_VALUE);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        File file = File.createTempFile("touchtyped-" + sound.name().toLowerCase(), ".wav");
+        file.deleteOnExit();
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(pcm), format, samples)) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+        }
+        return file.toURI().toURL();
+    }
+
+}
@@ -54,6 +54,6 @@ module com.example.touchtyped {
     exports com.example.touchtyped.service;
     exports com.example.touchtyped.controller;
     exports com.example.touchtyped.serialisers to com.fasterxml.jackson.databind;
-    exports com.example.touchtyped.firestore to google.cloud.firestore;
-    opens com.example.touchtyped.firestore to google.cloud.firestore;
+    exports com.example.touchtyped.firestore to google.cloud.firestore, com.fasterxml.jackson.databind;
+    opens com.example.touchtyped.firestore to google.cloud.firestore, com.fasterxml.jackson.databind;
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+package com.example.touchtyped.firestore;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.ListenerRegistration;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class FirestoreCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    /**
+     * a document whose listener sends its first snapshot as soon as it is added.
+     * @param registrations collects the registration of every listener added.
+     */
+    private static DocumentReference document(String path, Classroom classroom, List<ListenerRegistration> registrations) {
+        DocumentReference document = mock(DocumentReference.class);
+        DocumentSnapshot snapshot = snapshot(classroom);
+        when(document.getPath()).thenReturn(path);
+        when(document.addSnapshotListener(any())).thenAnswer(invocation -> {
+            EventListener<DocumentSnapshot> listener = invocation.getArgument(0);
+            listener.onEvent(snapshot, null);
+            ListenerRegistration registration = mock(ListenerRegistration.class);
+            registrations.add(registration);
+            return registration;
+        });
+        return document;
+    }
+
+    private static DocumentSnapshot snapshot(Classroom classroom) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.toObject(Classroom.class)).thenReturn(classroom);
+        return snapshot;
+    }
+
+    @Test
+    void testReadsAreAnsweredFromMemoryUntilTtl() throws Exception {
+        FirestoreCache cache = new FirestoreCache(10, now::get);
+        Classroom classroom = new Classroom();
+        List<ListenerRegistration> registrations = new ArrayList<>();
+        DocumentReference document = document("classrooms/C1", classroom, registrations);
+
+        // act
+        Classroom first = cache.get(document, Classroom.class);
+        now.addAndGet(FirestoreCache.TTL_MILLIS / 2);
+        Classroom second = cache.get(document, Classroom.class);
+        now.addAndGet(FirestoreCache.TTL_MILLIS);
+        Classroom third = cache.get(document, Classroom.class);
+
+        // assert
+        assertSame(classroom, first);
+        assertSame(classroom, second);
+        assertSame(classroom, third);
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(2, registrations.size());
+        verify(registrations.get(0)).remove();
+        verify(registrations.get(1), never()).remove();
+    }
+
+    @Test
+    void testIdleDocumentsExpireWithoutBeingRead() throws Exception {
+        FirestoreCache cache = new FirestoreCache(10, now::get);
+        List<ListenerRegistration> registrations = new ArrayList<>();
+        DocumentReference idle = document("classrooms/C1", new Classroom(), registrations);
+        DocumentReference busy = document("classrooms/C2", new Classroom(), registrations);
+        cache.get(idle, Classroom.class);
+        cache.get(busy, Classroom.class);
+
+        // act
+        now.addAndGet(FirestoreCache.IDLE_MILLIS - 1);
+        cache.get(busy, Classroom.class);
+        now.addAndGet(2);
+        cache.expire();
+
+        // assert
+        assertEquals(1, cache.size());
+        verify(registrations.get(0)).remove();
+        verify(registrations.get(1), never()).remove();
+    }
+
+    @Test
+    void testLeastRecentlyReadDocumentIsEvicted() throws Exception {
+        FirestoreCache cache = new FirestoreCache(2, now::get);
+        List<ListenerRegistration> registrations = new ArrayList<>();
+        DocumentReference a = document("users/C1,a", new Classroom(), registrations);
+        DocumentReference b = document("users/C1,b", new Classroom(), registrations);
+        DocumentReference c = document("users/C1,c", new Classroom(), registrations);
+
+        // act
+        cache.get(a, Classroom.class);
+        now.incrementAndGet();
+        cache.get(b, Classroom.class);
+        now.incrementAndGet();
+        cache.get(a, Classroom.class);
+        now.incrementAndGet();
+        cache.get(c, Classroom.class);
+
+        // assert
+        assertEquals(2, cache.size());
+        verify(registrations.get(0), never()).remove();
+        verify(registrations.get(1)).remove();
+        verify(registrations.get(2), never()).remove();
+    }
+
+    @Test
+    void testConcurrentFirstReadsSubscribeOnce() throws Exception {
+        FirestoreCache cache = new FirestoreCache(10, now::get);
+        Classroom classroom = new Classroom();
+        DocumentReference document = mock(DocumentReference.class);
+        AtomicReference<EventListener<DocumentSnapshot>> listener = new AtomicReference<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        when(document.getPath()).thenReturn("classrooms/C1");
+        when(document.addSnapshotListener(any())).thenAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            subscribed.countDown();
+            return mock(ListenerRegistration.class);
+        });
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+
+        // act
+        Future<Classroom> first = readers.submit(() -> cache.get(document, Classroom.class));
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        Future<Classroom> second = readers.submit(() -> cache.get(document, Classroom.class));
+        listener.get().onEvent(snapshot(classroom), null);
+
+        // assert
+        assertSame(classroom, first.get(5, TimeUnit.SECONDS));
+        assertSame(classroom, second.get(5, TimeUnit.SECONDS));
+        verify(document, times(1)).addSnapshotListener(any());
+        assertEquals(1, cache.missCount());
+        readers.shutdown();
+    }
+
+    @Test
+    void testInvalidatingBeforeSubscribedRemovesListener() throws Exception {
+        FirestoreCache cache = new FirestoreCache(10, now::get);
+        Classroom classroom = new Classroom();
+        DocumentSnapshot snapshot = snapshot(classroom);
+        DocumentReference document = mock(DocumentReference.class);
+        ListenerRegistration registration = mock(ListenerRegistration.class);
+        when(document.getPath()).thenReturn("classrooms/C1");
+        when(document.addSnapshotListener(any())).thenAnswer(invocation -> {
+            EventListener<DocumentSnapshot> listener = invocation.getArgument(0);
+            listener.onEvent(snapshot, null);
+            // a write elsewhere invalidates the document before its listener has been stored
+            cache.invalidate(document);
+            return registration;
+        });
+
+        // act
+        Classroom read = cache.get(document, Classroom.class);
+
+        // assert
+        assertSame(classroom, read);
+        verify(registration).remove();
+        assertEquals(0, cache.size());
+    }
+
+}
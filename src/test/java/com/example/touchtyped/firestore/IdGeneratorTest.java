@@ -0,0 +1,51 @@
+package com.example.touchtyped.firestore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdGeneratorTest {
+
+    @Test
+    void testIdsAreTypeable() {
+        Random random = new Random(1);
+
+        // act
+        String userID = IdGenerator.userID(1_760_000_000_000L, random);
+        String classroomID = IdGenerator.classroomID(random);
+
+        // assert
+        assertTrue(userID.matches("U[0-9A-HJKMNP-TV-Z]{14}"), userID);
+        assertTrue(classroomID.matches("C[0-9A-HJKMNP-TV-Z]{6}"), classroomID);
+    }
+
+    @Test
+    void testUserIdsDifferWithoutChecking() {
+        Set<String> ids = new HashSet<>();
+        // always the same random characters: the time alone must keep them apart
+        Random fixed = new Random() {
+            @Override
+            public long nextLong() {
+                return 42;
+            }
+        };
+
+        // act
+        for (long millis = 1_760_000_000_000L; millis < 1_760_000_010_000L; millis++) {
+            ids.add(IdGenerator.userID(millis, fixed));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(IdGenerator.userID());
+        }
+
+        // assert
+        assertEquals(20_000, ids.size());
+        // later IDs sort after earlier ones
+        assertTrue(IdGenerator.userID(1_760_000_000_000L, fixed).compareTo(IdGenerator.userID(1_760_000_000_001L, fixed)) < 0);
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.example.touchtyped.firestore;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import com.example.touchtyped.model.TypingPlan;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalClassroomRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private LocalStore store;
+    private LocalUserRepository users;
+    private LocalClassroomRepository classrooms;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        open();
+        classrooms.createClassroom(new Classroom("U0", "C1", "Class 1", new ArrayList<>()));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    private void open() throws IOException {
+        store = new LocalStore(directory);
+        users = new LocalUserRepository(store);
+        classrooms = new LocalClassroomRepository(store, users);
+    }
+
+    private static UserAccount student(String userID, String username) {
+        return new UserAccount("C1", userID, username, new TypingPlan(), new TypingPlan(), new ArrayList<>(), null);
+    }
+
+    private static KeyLogsStructure session(long timeCreated) {
+        KeyLogsStructure keyLogs = new KeyLogsStructure("the quick brown fox");
+        keyLogs.setTimeCreated(timeCreated);
+        keyLogs.addKeyLog("T", 0);
+        keyLogs.addKeyLog("h", 110);
+        return keyLogs;
+    }
+
+    @Test
+    void testRenameMovesAccountAndSessions() throws Exception {
+        assertTrue(classrooms.addStudents("C1", List.of(student("U1", "amy"), student("U2", "ben"))).get());
+        KeyLogsStructure first = session(1000);
+        KeyLogsStructure second = session(2000);
+        users.addSession("C1", "amy", first);
+        users.addSession("C1", "amy", second);
+
+        // act
+        boolean renamed = classrooms.renameStudent("C1", "amy", "amelia").get();
+        boolean taken = classrooms.renameStudent("C1", "amelia", "ben").get();
+        boolean missing = classrooms.renameStudent("C1", "amy", "anna").get();
+        store.close();
+        open();
+
+        // assert
+        assertTrue(renamed);
+        assertFalse(taken);
+        assertFalse(missing);
+        assertNull(users.getAccount("C1", "amy"));
+        assertEquals("amelia", users.getAccount("C1", "amelia").getUsername());
+        assertEquals("amelia", users.getAccountByID("U1").getUsername());
+        assertEquals(2, users.getSessionSummaries("C1", "amelia").size());
+        assertNotNull(users.getSession("C1", "amelia", SessionSummary.sessionID(first)));
+        assertNotNull(users.getSession("C1", "amelia", SessionSummary.sessionID(second)));
+        assertNull(users.getSession("C1", "amy", SessionSummary.sessionID(first)));
+        assertTrue(store.keys(LocalUserRepository.userKey("C1", "amy")).isEmpty());
+        assertEquals(List.of("amelia", "ben"), classrooms.getClassroom("C1").getStudentUsernames());
+    }
+
+    @Test
+    void testRemoveDeletesAccountAndSessions() throws Exception {
+        assertTrue(classrooms.addStudents("C1", List.of(student("U1", "amy"), student("U2", "ben"))).get());
+        users.addSession("C1", "amy", session(1000));
+        users.addSession("C1", "ben", session(1000));
+
+        // act
+        classrooms.removeStudent("C1", "amy").get();
+
+        // assert
+        assertNull(users.getAccount("C1", "amy"));
+        assertNull(users.getAccountByID("U1"));
+        assertTrue(store.keys(LocalUserRepository.userKey("C1", "amy")).isEmpty());
+        assertEquals(1, store.keys(LocalUserRepository.userKey("C1", "ben") + "/sessions/").size());
+        assertEquals(List.of("ben"), classrooms.getClassroom("C1").getStudentUsernames());
+    }
+
+    @Test
+    void testAddStudentsIsAllOrNothing() throws Exception {
+        assertTrue(classrooms.addStudents("C1", List.of(student("U1", "amy"))).get());
+
+        // act
+        boolean added = classrooms.addStudents("C1", List.of(student("U2", "ben"), student("U3", "amy"))).get();
+        boolean noClassroom = classrooms.addStudents("C2", List.of(student("U4", "cal"))).get();
+
+        // assert
+        assertFalse(added);
+        assertFalse(noClassroom);
+        assertNull(users.getAccount("C1", "ben"));
+        assertNull(users.getAccountByID("U2"));
+        assertEquals("U1", users.getAccount("C1", "amy").getUserID());
+        assertNull(users.getAccount("C2", "cal"));
+        assertEquals(List.of("amy"), classrooms.getClassroom("C1").getStudentUsernames());
+    }
+
+}
@@ -0,0 +1,309 @@
+package com.example.touchtyped.firestore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * a channel that fails on demand: a write once writeLimit more bytes have been written, the next force, or a
+     * truncate.
+     */
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel channel;
+        private long writeLimit = Long.MAX_VALUE;
+        private boolean failForce = false;
+        private boolean failTruncate = false;
+
+        private FailingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                while (srcs[i].hasRemaining()) {
+                    if (writeLimit == 0) {
+                        throw new IOException("disk full");
+                    }
+                    ByteBuffer part = srcs[i].duplicate();
+                    part.limit(part.position() + (int) Math.min(part.remaining(), writeLimit));
+                    int n = channel.write(part);
+                    srcs[i].position(srcs[i].position() + n);
+                    writeLimit -= n;
+                    written += n;
+                }
+            }
+            return written;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return (int) write(new ByteBuffer[] {src}, 0, 1);
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failForce) {
+                failForce = false;
+                throw new IOException("flush failed");
+            }
+            channel.force(metaData);
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failTruncate) {
+                throw new IOException("truncate failed");
+            }
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Test
+    void testChangesSurviveReopening() throws Exception {
+        try (LocalStore store = new LocalStore(directory)) {
+            store.batch()
+                    .put("users/C1,amy", mapper.valueToTree(Map.of("username", "amy")))
+                    .put("users/C1,amy/sessions/1", mapper.valueToTree(Map.of("wpm", 40)))
+                    .put("users/C1,amy/sessions/2", mapper.valueToTree(Map.of("wpm", 45)))
+                    .put("users/C1,amyx", mapper.valueToTree(Map.of("username", "amyx")))
+                    .commit();
+            store.batch()
+                    .put("users/C1,amy/sessions/2", mapper.valueToTree(Map.of("wpm", 50)))
+                    .delete("users/C1,amyx")
+                    .commit();
+        }
+
+        // act
+        // a crash part way through a batch leaves it without its commit record
+        long complete = Files.size(directory.resolve(LocalStore.LOG_FILE));
+        try (LocalStore store = new LocalStore(directory)) {
+            store.batch().delete("users/C1,amy").put("classrooms/C1", mapper.createObjectNode()).commit();
+        }
+        try (FileChannel log = FileChannel.open(directory.resolve(LocalStore.LOG_FILE), StandardOpenOption.WRITE)) {
+            log.truncate(Files.size(directory.resolve(LocalStore.LOG_FILE)) - 3);
+        }
+        LocalStore reopened = new LocalStore(directory);
+
+        // assert
+        assertEquals("amy", reopened.get("users/C1,amy").get("username").asText());
+        assertEquals(50, reopened.get("users/C1,amy/sessions/2").get("wpm").asInt());
+        assertEquals(List.of("users/C1,amy/sessions/1", "users/C1,amy/sessions/2"), reopened.keys("users/C1,amy/sessions/"));
+        assertNull(reopened.get("users/C1,amyx"));
+        assertFalse(reopened.contains("classrooms/C1"));
+        assertEquals(complete, Files.size(directory.resolve(LocalStore.LOG_FILE)));
+        reopened.close();
+    }
+
+    @Test
+    void testCompactionKeepsLatestVersions() throws Exception {
+        LocalStore store = new LocalStore(directory);
+        for (int i = 0; i < 200; i++) {
+            store.batch()
+                    .put("classrooms/C1", mapper.valueToTree(Map.of("version", i)))
+                    .put("classrooms/C" + (i % 3 + 2), mapper.valueToTree(Map.of("version", i)))
+                    .commit();
+        }
+        long before = Files.size(directory.resolve(LocalStore.LOG_FILE));
+
+        // act
+        store.compact();
+        store.batch().put("classrooms/C9", mapper.createObjectNode()).commit();
+        store.close();
+        LocalStore reopened = new LocalStore(directory);
+
+        // assert
+        assertTrue(Files.size(directory.resolve(LocalStore.LOG_FILE)) < before / 10);
+        assertEquals(5, reopened.size());
+        assertEquals(199, reopened.get("classrooms/C1").get("version").asInt());
+        assertEquals(197, reopened.get("classrooms/C4").get("version").asInt());
+        reopened.close();
+    }
+
+    @Test
+    void testCommitSucceedsWhenCompactionFails() throws Exception {
+        LocalStore store = new LocalStore(directory);
+        // the compacted copy can't be written where a directory is in the way
+        Files.createDirectories(directory.resolve(LocalStore.LOG_FILE + ".tmp").resolve("blocked"));
+        String text = "x".repeat(10_000);
+
+        // act
+        for (int i = 0; i < 150; i++) {
+            store.batch().put("classrooms/C1", mapper.valueToTree(Map.of("version", i, "text", text))).commit();
+        }
+        store.batch().put("classrooms/C2", mapper.createObjectNode()).commit();
+        store.close();
+        LocalStore reopened = new LocalStore(directory);
+
+        // assert
+        assertTrue(Files.size(directory.resolve(LocalStore.LOG_FILE)) > 1 << 20);
+        assertEquals(149, reopened.get("classrooms/C1").get("version").asInt());
+        assertTrue(reopened.contains("classrooms/C2"));
+        reopened.close();
+    }
+
+    @Test
+    void testFailedWriteIsDiscarded() throws Exception {
+        FailingChannel[] channel = new FailingChannel[1];
+        LocalStore store = new LocalStore(directory, c -> channel[0] = new FailingChannel(c));
+        store.batch().put("classrooms/C1", mapper.createObjectNode()).commit();
+        long size = Files.size(directory.resolve(LocalStore.LOG_FILE));
+
+        // act
+        // the disk fills up part way through the second batch's first record
+        channel[0].writeLimit = 7;
+        assertThrows(IOException.class, () -> store.batch()
+                .put("classrooms/C2", mapper.createObjectNode())
+                .put("classrooms/C3", mapper.createObjectNode())
+                .commit());
+        long afterFailure = Files.size(directory.resolve(LocalStore.LOG_FILE));
+        channel[0].writeLimit = Long.MAX_VALUE;
+        store.batch().put("classrooms/C4", mapper.createObjectNode()).commit();
+        store.close();
+        LocalStore reopened = new LocalStore(directory);
+
+        // assert
+        assertEquals(size, afterFailure);
+        assertTrue(reopened.contains("classrooms/C1"));
+        assertFalse(reopened.contains("classrooms/C2"));
+        assertFalse(reopened.contains("classrooms/C3"));
+        assertTrue(reopened.contains("classrooms/C4"));
+        reopened.close();
+    }
+
+    @Test
+    void testBatchThatFailedToFlushDoesntComeBack() throws Exception {
+        FailingChannel[] channel = new FailingChannel[1];
+        LocalStore store = new LocalStore(directory, c -> channel[0] = new FailingChannel(c));
+
+        // act
+        // every record, including the commit record, is written, but the flush fails
+        channel[0].failForce = true;
+        assertThrows(IOException.class, () -> store.batch().put("classrooms/C1", mapper.createObjectNode()).commit());
+        store.batch().put("classrooms/C2", mapper.createObjectNode()).commit();
+        store.close();
+        LocalStore reopened = new LocalStore(directory);
+
+        // assert
+        assertFalse(reopened.contains("classrooms/C1"));
+        assertTrue(reopened.contains("classrooms/C2"));
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void testStoreRefusesWritesIfAFailedBatchCantBeDiscarded() throws Exception {
+        FailingChannel[] channel = new FailingChannel[1];
+        LocalStore store = new LocalStore(directory, c -> channel[0] = new FailingChannel(c));
+        store.batch().put("classrooms/C1", mapper.createObjectNode()).commit();
+
+        // act
+        channel[0].writeLimit = 7;
+        channel[0].failTruncate = true;
+        assertThrows(IOException.class, () -> store.batch().put("classrooms/C2", mapper.createObjectNode()).commit());
+        channel[0].writeLimit = Long.MAX_VALUE;
+        channel[0].failTruncate = false;
+
+        // assert
+        assertThrows(IOException.class, () -> store.batch().put("classrooms/C3", mapper.createObjectNode()).commit());
+        // what was already stored can still be read
+        assertNotNull(store.get("classrooms/C1"));
+        store.close();
+        LocalStore reopened = new LocalStore(directory);
+        assertTrue(reopened.contains("classrooms/C1"));
+        assertFalse(reopened.contains("classrooms/C2"));
+        assertFalse(reopened.contains("classrooms/C3"));
+        reopened.close();
+    }
+
+}
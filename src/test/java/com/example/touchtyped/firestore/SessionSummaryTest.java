@@ -0,0 +1,30 @@
+package com.example.touchtyped.firestore;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionSummaryTest {
+
+    @Test
+    void testSummaryOfKeyLogs() {
+        KeyLogsStructure keyLogs = new KeyLogsStructure("hello");
+        keyLogs.setTimeCreated(1_700_000_000_000L);
+        keyLogs.setWpm(55);
+        keyLogs.setCorrectKeystrokes(45);
+        keyLogs.setIncorrectKeystrokes(5);
+
+        // act
+        SessionSummary summary = new SessionSummary("1700000000000", keyLogs);
+        SessionSummary empty = new SessionSummary("0", new KeyLogsStructure("hello"));
+
+        // assert
+        assertEquals("1700000000000", summary.getSessionID());
+        assertEquals(1_700_000_000_000L, summary.getTimeCreated());
+        assertEquals(55, summary.getWpm());
+        assertEquals(90.0, summary.getAccuracy(), 1e-9);
+        assertEquals(0.0, empty.getAccuracy());
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.example.touchtyped.interfaces;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadlineSchedulerTest {
+
+    private final DeadlineScheduler<String> scheduler = new DeadlineScheduler<>("test-deadlines");
+    private final List<String> expired = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testExtendingMovesTheDeadlineLater() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scheduler.extend("motor", 50, () -> expired.add("early"));
+
+        // act
+        scheduler.extend("motor", 300, () -> {
+            expired.add("late");
+            done.countDown();
+        });
+
+        // assert
+        assertEquals(1, scheduler.pendingCount());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+        Thread.sleep(100);
+        // the earlier deadline was replaced, so only the later action ran, and only once
+        assertEquals(List.of("late"), expired);
+        assertFalse(scheduler.isPending("motor"));
+    }
+
+    @Test
+    void testExtendingToAnEarlierTimeChangesNothing() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.extend("motor", 200, () -> {
+            expired.add("first");
+            done.countDown();
+        });
+
+        // act
+        scheduler.extend("motor", 10, () -> expired.add("second"));
+
+        // assert
+        Thread.sleep(100);
+        assertTrue(expired.isEmpty());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(List.of("first"), expired);
+    }
+
+    @Test
+    void testCancelIfOnlyCancelsMatchingKeys() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.extend("motor 1", 100, () -> expired.add("motor 1"));
+        scheduler.extend("motor 2", 100, () -> expired.add("motor 2"));
+        scheduler.extend("lights", 100, () -> {
+            expired.add("lights");
+            done.countDown();
+        });
+
+        // act
+        scheduler.cancelIf(key -> key.startsWith("motor"));
+
+        // assert
+        assertEquals(1, scheduler.pendingCount());
+        assertFalse(scheduler.isPending("motor 1"));
+        assertTrue(scheduler.isPending("lights"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(List.of("lights"), expired);
+    }
+
+    @Test
+    void testCancelledKeyCanBeGivenANewDeadline() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.extend("motor", 500, () -> expired.add("cancelled"));
+
+        // act
+        assertTrue(scheduler.cancel("motor"));
+        assertFalse(scheduler.cancel("motor"));
+        scheduler.extend("motor", 20, () -> {
+            expired.add("new");
+            done.countDown();
+        });
+
+        // assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("new"), expired);
+    }
+
+    @Test
+    void testNothingIsScheduledAfterShutdown() throws Exception {
+        scheduler.extend("motor", 20, () -> expired.add("before"));
+
+        // act
+        scheduler.shutdown();
+        scheduler.extend("motor", 10, () -> expired.add("after"));
+
+        // assert
+        Thread.sleep(100);
+        assertTrue(expired.isEmpty());
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+}
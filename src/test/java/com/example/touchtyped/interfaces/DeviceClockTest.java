@@ -0,0 +1,59 @@
+package com.example.touchtyped.interfaces;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeviceClockTest {
+
+    @Test
+    void testDeviceClockWrapsAround() {
+        DeviceClock clock = new DeviceClock();
+        long host = 5_000_000_000L;
+
+        // act
+        long first = clock.observe(0xFFFFFF00L, host);
+        long second = clock.observe(0x00000100L, host + 512_000);
+
+        // assert
+        assertEquals(0x200, second - first);
+        assertEquals(host + 512_000, clock.toHostNanos(second));
+    }
+
+    @Test
+    void testOffsetFollowsFastestFramesAndDrift() {
+        DeviceClock clock = new DeviceClock();
+        long offsetNanos = 1_000_000_000L;
+        // the keyboard's clock runs 500ppm slow, and every frame is delayed by between 1ms and 4ms
+        double skew = 0.0005;
+        long device = 0;
+
+        // act
+        for (int i = 0; i < 600; i++) {
+            device += 100_000;
+            long trueHost = offsetNanos + Math.round(device * 1000 * (1 + skew));
+            long delay = 1_000_000 + (i * 7919L % 3) * 1_000_000;
+            clock.observe(device, trueHost + delay);
+        }
+
+        // assert
+        long expected = offsetNanos + Math.round(device * 1000 * (1 + skew)) + 1_000_000;
+        assertEquals(expected, clock.toHostNanos(device), 200_000);
+        assertEquals(500, clock.skewPpm(), 50);
+    }
+
+    @Test
+    void testKeyboardResetIsDetected() {
+        DeviceClock clock = new DeviceClock();
+        clock.observe(3_000_000_000L, 10_000_000_000L);
+        clock.observe(3_001_000_000L, 11_000_000_000L);
+
+        // act
+        long afterReset = clock.observe(5_000, 11_100_000_000L);
+
+        // assert
+        assertEquals(1, clock.sampleCount());
+        assertEquals(11_100_000_000L, clock.toHostNanos(afterReset));
+    }
+
+}
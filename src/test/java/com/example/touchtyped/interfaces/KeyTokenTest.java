@@ -0,0 +1,36 @@
+package com.example.touchtyped.interfaces;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyTokenTest {
+
+    @Test
+    void testTokensAreInterned() {
+        assertSame(KeyToken.of('a'), KeyToken.of('a'));
+        assertSame(KeyToken.of(0x00E9), KeyToken.of(0x00E9));
+        assertSame(KeyToken.BACK_SPACE, KeyToken.of(KeyToken.Special.BACK_SPACE));
+    }
+
+    @Test
+    void testFromString() {
+        assertSame(KeyToken.of('a'), KeyToken.fromString("a"));
+        assertSame(KeyToken.SPACE, KeyToken.fromString(" "));
+        assertSame(KeyToken.BACK_SPACE, KeyToken.fromString("BACK_SPACE"));
+        assertSame(KeyToken.of(';'), KeyToken.fromString("SEMICOLON"));
+        assertSame(KeyToken.UNKNOWN, KeyToken.fromString("NOT_A_KEY"));
+    }
+
+    @Test
+    void testStringAndCodeMatchLegacyForm() {
+        assertEquals("BACK_SPACE", KeyToken.BACK_SPACE.toString());
+        assertEquals("Q", KeyToken.of('Q').toString());
+        assertEquals(KeyLogsStructure.BACK_SPACE, KeyToken.BACK_SPACE.getCode());
+        assertEquals('Q', KeyToken.of('Q').getCode());
+        assertTrue(KeyToken.BACK_SPACE.isSpecial());
+        assertEquals(-1, KeyToken.BACK_SPACE.getCodepoint());
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.example.touchtyped.interfaces;
+
+import javafx.scene.input.KeyCode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyboardLayoutTest {
+
+    private static KeyboardLayout layout(String text) throws Exception {
+        return KeyboardLayout.fromStream("test", new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testShiftedKeysDifferByLayout() {
+        KeyboardLayout uk = KeyboardLayout.load(KeyboardLayout.UK);
+        KeyboardLayout us = KeyboardLayout.load(KeyboardLayout.US);
+
+        // assert
+        assertSame(KeyToken.of('2'), uk.translate(KeyCode.DIGIT2, false, false, false));
+        assertSame(KeyToken.of('"'), uk.translate(KeyCode.DIGIT2, true, false, false));
+        assertSame(KeyToken.of('@'), us.translate(KeyCode.DIGIT2, true, false, false));
+        assertSame(KeyToken.of('@'), uk.translate(KeyCode.QUOTE, true, false, false));
+        assertSame(KeyToken.of('"'), us.translate(KeyCode.QUOTE, true, false, false));
+        assertSame(KeyToken.of('£'), uk.translate(KeyCode.DIGIT3, true, false, false));
+    }
+
+    @Test
+    void testCapsLockOnlyShiftsLetters() {
+        KeyboardLayout uk = KeyboardLayout.load(KeyboardLayout.UK);
+
+        // assert
+        assertSame(KeyToken.of('A'), uk.translate(KeyCode.A, false, true, false));
+        // shift with caps lock on gives lower case again
+        assertSame(KeyToken.of('a'), uk.translate(KeyCode.A, true, true, false));
+        assertSame(KeyToken.of('2'), uk.translate(KeyCode.DIGIT2, false, true, false));
+    }
+
+    @Test
+    void testAltGraph() {
+        KeyboardLayout uk = KeyboardLayout.load(KeyboardLayout.UK);
+
+        // assert
+        assertSame(KeyToken.of('á'), uk.translate(KeyCode.A, false, false, true));
+        assertSame(KeyToken.of('Á'), uk.translate(KeyCode.A, true, false, true));
+        // a key without an AltGr character ignores AltGr
+        assertSame(KeyToken.of('b'), uk.translate(KeyCode.B, false, false, true));
+    }
+
+    @Test
+    void testCtrlAltIsOnlyAltGraphOnWindows() {
+        KeyboardLayout uk = KeyboardLayout.load(KeyboardLayout.UK);
+
+        // act
+        boolean windows = KeyboardLayout.isAltGraph(false, true, true, true);
+        boolean elsewhere = KeyboardLayout.isAltGraph(false, true, true, false);
+
+        // assert
+        assertSame(KeyToken.of('€'), uk.translate(KeyCode.DIGIT4, false, false, windows));
+        // Ctrl+Alt+4 is a shortcut, so it stays a plain 4 with modifiers
+        assertSame(KeyToken.of('4'), uk.translate(KeyCode.DIGIT4, false, false, elsewhere));
+        // the AltGr key itself works everywhere
+        assertTrue(KeyboardLayout.isAltGraph(true, false, false, false));
+        assertFalse(KeyboardLayout.isAltGraph(false, true, false, true));
+        assertFalse(KeyboardLayout.isAltGraph(false, false, true, true));
+    }
+
+    @Test
+    void testUnknownKeys() throws Exception {
+        KeyboardLayout layout = layout("# just one key\nQ q Q\nSEMICOLON ; none\n");
+
+        // assert
+        assertSame(KeyToken.of('Q'), layout.translate(KeyCode.Q, true, false, false));
+        assertSame(KeyToken.UNKNOWN, layout.translate(KeyCode.W, false, false, false));
+        assertSame(KeyToken.UNKNOWN, layout.translate(KeyCode.F1, false, false, false));
+        assertSame(KeyToken.UNKNOWN, layout.translate(KeyCode.SEMICOLON, true, false, false));
+        // keys every layout has
+        assertSame(KeyToken.BACK_SPACE, layout.translate(KeyCode.BACK_SPACE, true, false, false));
+        assertSame(KeyToken.SPACE, layout.translate(KeyCode.SPACE, false, true, true));
+        assertSame(KeyToken.of('7'), layout.translate(KeyCode.NUMPAD7, false, false, false));
+    }
+
+    @Test
+    void testColumnFormats() throws Exception {
+
+        // act
+        KeyboardLayout layout = layout("E e E U+20AC\n");
+
+        // assert
+        assertSame(KeyToken.of(0x20AC), layout.translate(KeyCode.E, false, false, true));
+        // a missing shifted-AltGr column falls back to the shifted character
+        assertSame(KeyToken.of('E'), layout.translate(KeyCode.E, true, false, true));
+        assertThrows(IllegalArgumentException.class, () -> layout("E e\n"));
+        assertThrows(IllegalArgumentException.class, () -> layout("E e EE\n"));
+        assertThrows(IllegalArgumentException.class, () -> layout("NOT_A_KEY a A\n"));
+    }
+
+    @Test
+    void testMissingLayoutFallsBackToDefault() {
+
+        // act
+        KeyboardLayout layout = KeyboardLayout.load("no-such-layout");
+
+        // assert
+        assertEquals(KeyboardLayout.DEFAULT_LAYOUT, layout.getName());
+        assertSame(KeyToken.of('"'), layout.translate(KeyCode.DIGIT2, true, false, false));
+    }
+
+}
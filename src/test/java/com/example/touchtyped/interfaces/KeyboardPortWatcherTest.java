@@ -0,0 +1,66 @@
+package com.example.touchtyped.interfaces;
+
+import com.example.touchtyped.interfaces.KeyboardPortWatcher.UsbId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyboardPortWatcherTest {
+
+    @Test
+    void testDefaultIdsParse() {
+
+        // act
+        List<UsbId> ids = KeyboardPortWatcher.parseUsbIds(KeyboardPortWatcher.DEFAULT_USB_IDS);
+
+        // assert
+        assertEquals(List.of(new UsbId(0x2341, 0x8036), new UsbId(0x2341, 0x8037),
+                new UsbId(0x1b4f, 0x9204), new UsbId(0x1b4f, 0x9206)), ids);
+    }
+
+    @Test
+    void testHexIsCaseInsensitive() {
+
+        // act
+        List<UsbId> ids = KeyboardPortWatcher.parseUsbIds("1B4F:9204, 1b4f:9204 ,AbCd:eF01");
+
+        // assert
+        assertEquals(List.of(new UsbId(0x1b4f, 0x9204), new UsbId(0x1b4f, 0x9204), new UsbId(0xabcd, 0xef01)), ids);
+        // always written back in lower case, with leading zeros
+        assertEquals("abcd:ef01", ids.get(2).toString());
+        assertEquals("0001:000a", new UsbId(1, 10).toString());
+    }
+
+    @Test
+    void testMalformedIdsAreSkipped() {
+
+        // act
+        List<UsbId> ids = KeyboardPortWatcher.parseUsbIds(
+                "2341, 2341:8036:1, :8036, 2341:, xyz:8036, 0x2341:8036, -1:8036, 12345:8036, , 2341:8037,");
+
+        // assert
+        assertEquals(List.of(new UsbId(0x2341, 0x8037)), ids);
+    }
+
+    @Test
+    void testEmptyListHasNoIds() {
+
+        // assert
+        assertTrue(KeyboardPortWatcher.parseUsbIds("").isEmpty());
+        assertTrue(KeyboardPortWatcher.parseUsbIds(" , ,").isEmpty());
+    }
+
+    @Test
+    void testParseRejectsMalformedId() {
+
+        // assert
+        assertEquals(new UsbId(0xffff, 0), UsbId.parse(" FFFF : 0000 "));
+        assertThrows(IllegalArgumentException.class, () -> UsbId.parse("2341"));
+        assertThrows(IllegalArgumentException.class, () -> UsbId.parse("2341:80g6"));
+        assertThrows(IllegalArgumentException.class, () -> UsbId.parse("-1:-1"));
+        assertThrows(IllegalArgumentException.class, () -> UsbId.parse("10000:8036"));
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.example.touchtyped.interfaces;
+
+import javafx.scene.input.KeyCode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyboardProtocolTest {
+
+    @Test
+    void testCommandRoundTrip() {
+        HapticCommand command = new HapticCommand()
+                .stopAllMotors()
+                .vibrate(HapticCommand.motorFor('a'), 200, 500)
+                .vibrate(HapticCommand.motorFor('z'), 100, 1000)
+                .lightsOn(750);
+        List<KeyboardProtocol.Frame> frames = new ArrayList<>();
+
+        // act
+        byte[] encoded = KeyboardProtocol.encodeCommand(command, 42);
+        new KeyboardProtocol.Decoder().feed(encoded, 0, encoded.length, frames::add);
+
+        // assert
+        assertEquals(1, frames.size());
+        KeyboardProtocol.Frame frame = frames.get(0);
+        assertEquals(KeyboardProtocol.VERSION, frame.version());
+        assertEquals(KeyboardProtocol.TYPE_COMMAND, frame.type());
+        assertEquals(42, frame.seq());
+        assertEquals(command, KeyboardProtocol.decodeCommand(frame.payload()));
+    }
+
+    @Test
+    void testDecoderSkipsNoiseAndBadCrc() {
+        byte[] good = KeyboardProtocol.encodeAck(7, KeyboardProtocol.STATUS_OK);
+        byte[] corrupt = KeyboardProtocol.encodeAck(8, KeyboardProtocol.STATUS_OK);
+        corrupt[corrupt.length - 1] ^= 0x01;
+        byte[] noise = "motor S is HIGH\r\n".getBytes();
+        KeyboardProtocol.Decoder decoder = new KeyboardProtocol.Decoder();
+        List<KeyboardProtocol.Frame> frames = new ArrayList<>();
+
+        // act
+        decoder.feed(noise, 0, noise.length, frames::add);
+        decoder.feed(corrupt, 0, corrupt.length, frames::add);
+        decoder.feed(good, 0, good.length, frames::add);
+
+        // assert
+        assertEquals(1, frames.size());
+        assertEquals(7, frames.get(0).seq());
+        assertEquals(1, decoder.rejectedCount());
+    }
+
+    @Test
+    void testWriterMergesCommandsAndReceivesAcks() throws Exception {
+        LoopbackSerialLink link = new LoopbackSerialLink();
+        AckTracker ackTracker = new AckTracker();
+        SerialFrameReader reader = new SerialFrameReader(link);
+        reader.setHandler(KeyboardProtocol.TYPE_ACK, frame ->
+                ackTracker.acknowledged(frame.seq(), frame.payload()[0], System.nanoTime()));
+        reader.start();
+        SerialCommandWriter writer = new SerialCommandWriter(link, ackTracker);
+
+        // act
+        writer.submit(new HapticCommand().vibrate(HapticCommand.motorFor('f'), 255, 500));
+        writer.submit(new HapticCommand().vibrate(HapticCommand.motorFor('j'), 255, 500).lightsOn(500));
+        assertTrue(link.awaitCommands(1, 2000));
+        writer.submit(new HapticCommand().lightsOff());
+        writer.close(2000);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (ackTracker.ackCount() < ackTracker.sentCount() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // assert
+        int fj = (1 << HapticCommand.motorFor('f')) | (1 << HapticCommand.motorFor('j'));
+        assertEquals(fj, link.activeMotorMask());
+        assertFalse(link.lightsOn());
+        assertEquals(ackTracker.sentCount(), ackTracker.ackCount());
+        assertEquals(ackTracker.sentCount(), link.commandCount());
+        assertTrue(ackTracker.maxRoundTripNanos() > 0);
+        link.close();
+        reader.stop();
+    }
+
+    @Test
+    void testRedundantStopsAreNotSent() throws Exception {
+        LoopbackSerialLink link = new LoopbackSerialLink();
+        SerialCommandWriter writer = new SerialCommandWriter(link, new AckTracker());
+
+        // act
+        writer.submit(new HapticCommand().stopAllMotors().lightsOff());
+        writer.submit(new HapticCommand().stopMotor(HapticCommand.motorFor('k')));
+        writer.close(2000);
+
+        // assert
+        assertEquals(0, link.commandCount());
+        link.close();
+    }
+
+    @Test
+    void testKeyEventsAreStreamedOnceRequested() throws Exception {
+        // the simulated keyboard's clock is about to wrap
+        LoopbackSerialLink link = new LoopbackSerialLink(0, 0xFFFFFFFFL - System.nanoTime() / 1000 - 1000);
+        AckTracker ackTracker = new AckTracker();
+        DeviceClock clock = new DeviceClock();
+        List<KeyboardProtocol.KeyEvent> events = new ArrayList<>();
+        List<Long> hostTimes = new ArrayList<>();
+        SerialFrameReader reader = new SerialFrameReader(link);
+        reader.setHandler(KeyboardProtocol.TYPE_KEY_EVENT, frame -> {
+            long received = System.nanoTime();
+            KeyboardProtocol.KeyEvent event = KeyboardProtocol.decodeKeyEvent(frame.payload());
+            synchronized (events) {
+                events.add(event);
+                hostTimes.add(clock.toHostNanos(clock.observe(event.deviceMicros(), received)));
+                events.notifyAll();
+            }
+        });
+        reader.start();
+        SerialCommandWriter writer = new SerialCommandWriter(link, ackTracker);
+
+        // act
+        link.pressKey('f', 0);
+        writer.submitInputMode(KeyboardProtocol.INPUT_HID_AND_SERIAL);
+        assertTrue(link.awaitInputMode(KeyboardProtocol.INPUT_HID_AND_SERIAL, 2000));
+        long before = System.nanoTime();
+        link.pressKey('j', KeyToken.SHIFT);
+        Thread.sleep(5);
+        link.releaseKey('j', 0);
+        long after = System.nanoTime();
+        synchronized (events) {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (events.size() < 2 && System.currentTimeMillis() < deadline) {
+                events.wait(100);
+            }
+        }
+
+        // assert
+        assertEquals(2, events.size());
+        assertEquals(KeyboardProtocol.KEY_PRESSED, events.get(0).action());
+        assertEquals('j', events.get(0).key());
+        assertEquals(KeyToken.SHIFT, events.get(0).modifiers());
+        assertEquals(KeyboardProtocol.KEY_RELEASED, events.get(1).action());
+        long dwell = hostTimes.get(1) - hostTimes.get(0);
+        assertTrue(dwell >= 5_000_000 && dwell <= after - before, "dwell was " + dwell);
+        assertEquals(KeyCode.J, DeviceKeys.keyCodeFor(events.get(0).key()));
+        writer.close(2000);
+        link.close();
+        reader.stop();
+    }
+
+}
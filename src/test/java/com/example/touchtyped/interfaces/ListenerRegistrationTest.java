@@ -0,0 +1,88 @@
+package com.example.touchtyped.interfaces;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ListenerRegistrationTest {
+
+    private final KeyboardInterface keyboard = new KeyboardInterface(KeyboardLayout.load(KeyboardLayout.DEFAULT_LAYOUT));
+    private final List<String> received = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        keyboard.close();
+    }
+
+    /**
+     * records each key it is given, prefixed with its name.
+     */
+    private KeyTokenListener recorder(String name) {
+        return (key, modifiers, timestampNanos) -> received.add(name + " " + key);
+    }
+
+    private void press(char key) {
+        keyboard.notifyListeners(KeyToken.of(key), 0, 0);
+    }
+
+    @Test
+    void testRemovingDuringDispatch() {
+        keyboard.addKeyTokenListener(recorder("first"));
+        ListenerRegistration[] self = new ListenerRegistration[1];
+        self[0] = keyboard.addKeyTokenListener((key, modifiers, timestampNanos) -> {
+            received.add("once " + key);
+            self[0].remove();
+        });
+        keyboard.addKeyTokenListener(recorder("last"));
+
+        // act
+        press('a');
+        press('b');
+
+        // assert
+        // the key being dispatched still reaches every listener, but the removed one gets nothing after it
+        assertEquals(List.of("first a", "once a", "last a", "first b", "last b"), received);
+        assertFalse(self[0].isActive());
+        assertEquals(2, keyboard.getActiveListenerCount());
+    }
+
+    @Test
+    void testAddingDuringDispatch() {
+        boolean[] added = {false};
+        keyboard.addKeyTokenListener((key, modifiers, timestampNanos) -> {
+            if (!added[0]) {
+                added[0] = true;
+                keyboard.addKeyTokenListener(recorder("late"));
+            }
+        });
+
+        // act
+        press('a');
+        press('b');
+
+        // assert
+        assertEquals(List.of("late b"), received);
+        assertEquals(2, keyboard.getActiveListenerCount());
+    }
+
+    @Test
+    void testRemovingTwiceRemovesOnlyThatListener() {
+        KeyTokenListener shared = recorder("shared");
+        ListenerRegistration first = keyboard.addKeyTokenListener(shared);
+        keyboard.addKeyTokenListener(recorder("other"));
+
+        // act
+        first.remove();
+        first.remove();
+        press('a');
+
+        // assert
+        assertEquals(List.of("other a"), received);
+        assertEquals(1, keyboard.getActiveListenerCount());
+    }
+
+}
@@ -0,0 +1,345 @@
+package com.example.touchtyped.interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * an in-process stand-in for the keyboard's serial port. a simulated keyboard decodes the frames written to it,
+ * applies their commands, and sends back ACKs, so the protocol can be exercised without hardware.
+ * once the host selects INPUT_HID_AND_SERIAL, pressKey and releaseKey send KEY_EVENT frames stamped with the simulated
+ * keyboard's own clock.
+ */
+public class LoopbackSerialLink implements SerialLink {
+
+    private static final int PIPE_CAPACITY = 4096;
+
+    private final Pipe toKeyboard = new Pipe(PIPE_CAPACITY);
+    private final Pipe fromKeyboard = new Pipe(PIPE_CAPACITY);
+    private final InputStream in = fromKeyboard.inputStream();
+    private final OutputStream out = toKeyboard.outputStream();
+    private final OutputStream keyboardOut = fromKeyboard.outputStream();
+    private final long ackDelayMillis;
+    private final long deviceClockOffsetMicros;
+    private final Thread keyboard;
+    private volatile boolean open = true;
+
+    // state of the simulated keyboard, guarded by this
+    private int activeMotorMask = 0;
+    private final int[] strengths = new int[HapticCommand.MOTOR_COUNT];
+    private boolean lightsOn = false;
+    private long commandCount = 0;
+    private HapticCommand lastCommand;
+    private int inputMode = KeyboardProtocol.INPUT_HID;
+    private int keyEventSeq = 0;
+
+    public LoopbackSerialLink() {
+        this(0, 0);
+    }
+
+    public LoopbackSerialLink(long ackDelayMillis) {
+        this(ackDelayMillis, 0);
+    }
+
+    /**
+     * constructor. starts the simulated keyboard.
+     * @param ackDelayMillis is how long the simulated keyboard waits before acknowledging a command
+     * @param deviceClockOffsetMicros is how far the simulated keyboard's micros() clock is ahead of the host's
+     */
+    public LoopbackSerialLink(long ackDelayMillis, long deviceClockOffsetMicros) {
+        this.ackDelayMillis = ackDelayMillis;
+        this.deviceClockOffsetMicros = deviceClockOffsetMicros;
+        this.keyboard = new Thread(this::runKeyboard, "loopback-keyboard");
+        this.keyboard.setDaemon(true);
+        this.keyboard.start();
+    }
+
+    private void runKeyboard() {
+        KeyboardProtocol.Decoder decoder = new KeyboardProtocol.Decoder();
+        InputStream keyboardIn = toKeyboard.inputStream();
+        byte[] buffer = new byte[64];
+        try {
+            int count;
+            while ((count = keyboardIn.read(buffer)) >= 0) {
+                decoder.feed(buffer, 0, count, this::receive);
+            }
+        } catch (IOException e) {
+            // the link was closed
+        }
+    }
+
+    private void receive(KeyboardProtocol.Frame frame) {
+        int status = KeyboardProtocol.STATUS_OK;
+        if (frame.version() != KeyboardProtocol.VERSION) {
+            status = KeyboardProtocol.STATUS_BAD_VERSION;
+        } else if (frame.type() == KeyboardProtocol.TYPE_COMMAND) {
+            try {
+                apply(KeyboardProtocol.decodeCommand(frame.payload()));
+            } catch (IllegalArgumentException e) {
+                status = KeyboardProtocol.STATUS_MALFORMED;
+            }
+        } else if (frame.type() == KeyboardProtocol.TYPE_CONFIG) {
+            if (frame.payload().length == 1) {
+                setInputMode(frame.payload()[0] & 0xFF);
+            } else {
+                status = KeyboardProtocol.STATUS_MALFORMED;
+            }
+        } else {
+            return;
+        }
+        try {
+            if (ackDelayMillis > 0) {
+                Thread.sleep(ackDelayMillis);
+            }
+            sendFromKeyboard(KeyboardProtocol.encodeAck(frame.seq(), status, deviceMicros()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void apply(HapticCommand command) {
+        if (command.stopsAllMotors()) {
+            activeMotorMask = 0;
+        }
+        for (int motor = 0; motor < HapticCommand.MOTOR_COUNT; motor++) {
+            if (command.hasMotor(motor)) {
+                strengths[motor] = command.strengthOf(motor);
+                if (command.strengthOf(motor) > 0) {
+                    activeMotorMask |= 1 << motor;
+                } else {
+                    activeMotorMask &= ~(1 << motor);
+                }
+            }
+        }
+        if (command.lightsCommand() == HapticCommand.LIGHTS_ON) {
+            lightsOn = true;
+        } else if (command.lightsCommand() == HapticCommand.LIGHTS_OFF) {
+            lightsOn = false;
+        }
+        commandCount++;
+        lastCommand = command;
+        notifyAll();
+    }
+
+    private synchronized void setInputMode(int inputMode) {
+        this.inputMode = inputMode;
+        notifyAll();
+    }
+
+    /**
+     * @return the simulated keyboard's micros() clock, which wraps like the real one
+     */
+    public long deviceMicros() {
+        return (System.nanoTime() / 1000 + deviceClockOffsetMicros) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * press a key on the simulated keyboard. nothing is sent unless the host has asked for key events.
+     * @param deviceKey is the key's Arduino Keyboard code (see DeviceKeys)
+     * @param modifiers is the modifiers held on the keyboard
+     */
+    public void pressKey(int deviceKey, int modifiers) {
+        sendKeyEvent(KeyboardProtocol.KEY_PRESSED, deviceKey, modifiers);
+    }
+
+    /**
+     * release a key on the simulated keyboard. nothing is sent unless the host has asked for key events.
+     */
+    public void releaseKey(int deviceKey, int modifiers) {
+        sendKeyEvent(KeyboardProtocol.KEY_RELEASED, deviceKey, modifiers);
+    }
+
+    private void sendKeyEvent(int action, int deviceKey, int modifiers) {
+        int seq;
+        synchronized (this) {
+            if (inputMode != KeyboardProtocol.INPUT_HID_AND_SERIAL) {
+                return;
+            }
+            seq = keyEventSeq = (keyEventSeq + 1) & 0xFFFF;
+        }
+        KeyboardProtocol.KeyEvent event = new KeyboardProtocol.KeyEvent(action, deviceKey, modifiers, deviceMicros());
+        sendFromKeyboard(KeyboardProtocol.encodeKeyEvent(seq, event));
+    }
+
+    /**
+     * wait until the host has selected an input mode.
+     * @return whether it did before the timeout
+     */
+    public synchronized boolean awaitInputMode(int mode, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (inputMode != mode) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * send bytes to the host as if the keyboard had written them.
+     * @param bytes is the bytes to send, e.g. an encoded frame
+     */
+    public void sendFromKeyboard(byte[] bytes) {
+        try {
+            synchronized (keyboardOut) {
+                keyboardOut.write(bytes);
+            }
+        } catch (IOException e) {
+            // the link was closed
+        }
+    }
+
+    /**
+     * wait until the simulated keyboard has applied a number of commands.
+     * @return whether it did before the timeout
+     */
+    public synchronized boolean awaitCommands(long count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (commandCount < count) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public synchronized int activeMotorMask() {
+        return activeMotorMask;
+    }
+
+    public synchronized int strengthOf(int motor) {
+        return strengths[motor];
+    }
+
+    public synchronized boolean lightsOn() {
+        return lightsOn;
+    }
+
+    public synchronized long commandCount() {
+        return commandCount;
+    }
+
+    public synchronized HapticCommand lastCommand() {
+        return lastCommand;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        toKeyboard.close();
+        fromKeyboard.close();
+    }
+
+    /**
+     * a bounded in-memory byte pipe. writes block while it is full, reads block while it is empty.
+     */
+    private static final class Pipe {
+
+        private final byte[] buffer;
+        private int head = 0;
+        private int count = 0;
+        private boolean closed = false;
+
+        private Pipe(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private synchronized void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                while (count == buffer.length && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while writing", e);
+                    }
+                }
+                if (closed) {
+                    throw new IOException("Pipe closed");
+                }
+                int tail = (head + count) % buffer.length;
+                int chunk = Math.min(length, Math.min(buffer.length - count, buffer.length - tail));
+                System.arraycopy(data, offset, buffer, tail, chunk);
+                count += chunk;
+                offset += chunk;
+                length -= chunk;
+                notifyAll();
+            }
+        }
+
+        private synchronized int read(byte[] data, int offset, int length) throws IOException {
+            while (count == 0 && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading", e);
+                }
+            }
+            if (count == 0) {
+                return -1;
+            }
+            int chunk = Math.min(length, Math.min(count, buffer.length - head));
+            System.arraycopy(buffer, head, data, offset, chunk);
+            head = (head + chunk) % buffer.length;
+            count -= chunk;
+            notifyAll();
+            return chunk;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private InputStream inputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return (Pipe.this.read(single, 0, 1) < 0) ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] data, int offset, int length) throws IOException {
+                    return (length == 0) ? 0 : Pipe.this.read(data, offset, length);
+                }
+            };
+        }
+
+        private OutputStream outputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    Pipe.this.write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] data, int offset, int length) throws IOException {
+                    Pipe.this.write(data, offset, length);
+                }
+            };
+        }
+
+    }
+
+}
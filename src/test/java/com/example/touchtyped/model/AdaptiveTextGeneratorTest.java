@@ -0,0 +1,62 @@
+package com.example.touchtyped.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveTextGeneratorTest {
+
+    @Test
+    void testAliasTableFollowsWeights() {
+        AliasTable table = new AliasTable(new double[] {1, 0, 3, 4});
+        SplittableRandom random = new SplittableRandom(42);
+        int[] counts = new int[4];
+
+        // act
+        for (int i = 0; i < 80_000; i++) {
+            counts[table.sample(random)]++;
+        }
+
+        // assert
+        assertEquals(10_000, counts[0], 500);
+        assertEquals(0, counts[1]);
+        assertEquals(30_000, counts[2], 500);
+        assertEquals(40_000, counts[3], 500);
+    }
+
+    @Test
+    void testMissedKeysAreFavoured() {
+        // "q" is typed wrong every time, everything else is right
+        KeyLogsStructure logs = new KeyLogsStructure("qa qa qa qa qa qa qa qa");
+        for (int i = 0; i < 8; i++) {
+            logs.addKeyLog("w", i * 300L);
+            logs.addKeyLog("a", i * 300L + 100);
+            logs.addKeyLog(" ", i * 300L + 200);
+        }
+        KeyWeakness weakness = new KeyWeakness();
+        AdaptiveTextGenerator generator = new AdaptiveTextGenerator(new String[] {"quiz", "salad"}, weakness,
+                new SplittableRandom(7));
+        char[] letters = {'q', 'a'};
+        String uniform = generator.nextWord();
+
+        // act
+        generator.recordSession(logs);
+        int quiz = 0;
+        int q = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (generator.nextWord().equals("quiz")) quiz++;
+            if (generator.nextLetter(letters) == 'q') q++;
+        }
+
+        // assert
+        assertNotNull(uniform);
+        assertEquals(1, weakness.sessionCount());
+        assertTrue(weakness.weightOf('q') > weakness.weightOf('a'));
+        assertEquals(weakness.weightOf('q'), weakness.weightOf('Q'));
+        assertTrue(quiz > 6_000, "quiz picked " + quiz + " times");
+        assertTrue(q > 6_000, "q picked " + q + " times");
+    }
+
+}
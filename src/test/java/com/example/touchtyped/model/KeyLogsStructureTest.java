@@ -0,0 +1,146 @@
+package com.example.touchtyped.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyLogsStructureTest {
+
+    @Test
+    void testAddKeyLog() {
+        KeyLogsStructure structure = new KeyLogsStructure("AB");
+
+        // act
+        structure.addKeyLog("A", 100);
+        structure.addKeyLog("X", 200);
+        structure.addKeyLog("BACK_SPACE", 300);
+        structure.addKeyLog("B", 400);
+
+        // assert
+        assertEquals(4, structure.size());
+        assertEquals(300, structure.getSessionDuration());
+        assertEquals(2, structure.getCharPosition());
+        assertEquals(1, structure.getErrors());
+        assertFalse(structure.errorAt(0));
+        assertTrue(structure.errorAt(1));
+        assertTrue(structure.errorAt(2));
+        assertEquals(KeyLogsStructure.BACK_SPACE, structure.keyAt(2));
+        assertEquals('B', structure.expectedAt(1));
+    }
+
+    @Test
+    void testFollowText() {
+        StringBuilder text = new StringBuilder("A");
+        KeyLogsStructure structure = new KeyLogsStructure();
+        structure.followText(text);
+
+        // act
+        structure.addKeyLog("A", 10);
+        text.append(" B");
+        structure.addKeyLog(" ", 20);
+        structure.addKeyLog("B", 30);
+        structure.finishText();
+
+        // assert
+        assertEquals(0, structure.getErrors());
+        assertEquals('B', structure.expectedAt(2));
+        assertEquals("A B", structure.getWordsGiven());
+    }
+
+    @Test
+    void testGetAndSetKeyLogsRoundTrip() {
+        KeyLogsStructure structure = new KeyLogsStructure("HI");
+        structure.addKeyLog("H", 10);
+        structure.addKeyLog("I", 20);
+        structure.addKeyLog("I", 30);
+
+        // act
+        KeyLogsStructure copy = new KeyLogsStructure();
+        copy.setKeyLogs(structure.getKeyLogs());
+        List<KeyLog> keyLogs = copy.getKeyLogs();
+
+        // assert
+        assertEquals(3, keyLogs.size());
+        assertEquals("H", keyLogs.get(0).getKey());
+        assertEquals(20, keyLogs.get(1).getTimestamp());
+        assertNull(keyLogs.get(2).getExpected());
+        assertTrue(keyLogs.get(2).getError());
+    }
+
+    @Test
+    void testSerialisedShape() throws Exception {
+        KeyLogsStructure structure = new KeyLogsStructure("A");
+        structure.addKeyLog("A", 5);
+        structure.addKeyLog("BACK_SPACE", 15);
+        structure.setWpm(40);
+
+        // act
+        JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(structure));
+
+        // assert
+        assertEquals(2, json.get("keyLogs").size());
+        JsonNode first = json.get("keyLogs").get(0);
+        assertEquals("A", first.get("key").asText());
+        assertEquals("A", first.get("expected").asText());
+        assertEquals(5, first.get("timestamp").asLong());
+        assertFalse(first.get("error").asBoolean());
+        assertEquals("BACK_SPACE", json.get("keyLogs").get(1).get("key").asText());
+        assertEquals(10, json.get("sessionDuration").asLong());
+        assertEquals("A", json.get("wordsGiven").asText());
+        assertEquals(40, json.get("wpm").asInt());
+        assertTrue(json.has("timeCreated"));
+        assertTrue(json.has("correctKeystrokes"));
+        assertTrue(json.has("incorrectKeystrokes"));
+    }
+
+    @Test
+    void testDwellAndFlightTimes() {
+        KeyLogsStructure structure = new KeyLogsStructure("AB");
+        int a = KeyLogsStructure.encodeKey("A");
+        int b = KeyLogsStructure.encodeKey("B");
+
+        // act: A is held 80us, B is pressed 20us before A is released (rollover), then held 50us
+        structure.addKeyLog(a, 0, 1_000_000);
+        structure.addKeyLog(b, 0, 1_060_000);
+        structure.addKeyRelease(a, 1_080_000);
+        structure.addKeyRelease(b, 1_110_000);
+
+        // assert
+        assertEquals(80_000, structure.dwellNanosAt(0));
+        assertEquals(50_000, structure.dwellNanosAt(1));
+        KeystrokeTimings dwell = structure.dwellTimes();
+        assertEquals(2, dwell.size());
+        assertEquals(80, dwell.totalAt(dwell.find(a, KeyLogsStructure.NO_EXPECTED)));
+        KeystrokeTimings flight = structure.flightTimes();
+        assertEquals(1, flight.size());
+        int ab = flight.find(a, b);
+        assertEquals(1, flight.countAt(ab));
+        assertEquals(-20, flight.totalAt(ab));
+    }
+
+    @Test
+    void testTimingsRoundTrip() throws Exception {
+        KeyLogsStructure structure = new KeyLogsStructure("AB");
+        structure.addKeyLog(KeyLogsStructure.encodeKey("A"), 0, 0);
+        structure.addKeyRelease(KeyLogsStructure.encodeKey("A"), 100_000);
+        structure.addKeyLog(KeyLogsStructure.encodeKey("B"), 0, 300_000);
+
+        // act
+        KeyLogsStructure copy = new KeyLogsStructure();
+        copy.setDwellTimes(structure.getDwellTimes());
+        copy.setFlightTimes(structure.getFlightTimes());
+        JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(copy));
+
+        // assert
+        assertEquals(100, copy.dwellTimes().totalAt(0));
+        assertEquals(200, copy.flightTimes().minAt(0));
+        assertEquals("A", json.get("flightTimes").get(0).get("key").asText());
+        assertEquals("B", json.get("flightTimes").get(0).get("nextKey").asText());
+        assertTrue(json.get("dwellTimes").get(0).get("nextKey").isNull());
+    }
+
+}
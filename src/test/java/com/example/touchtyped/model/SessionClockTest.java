@@ -0,0 +1,52 @@
+package com.example.touchtyped.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionClockTest {
+
+    private static final long SECOND = SessionClock.NANOS_PER_SECOND;
+
+    @Test
+    void testCountdown() {
+        SessionClock clock = new SessionClock(15);
+        long start = 5_000 * SECOND;
+
+        // act
+        clock.start(start);
+
+        // assert
+        assertEquals(150, clock.remainingTenths(start));
+        // 14.95s left still shows 15.0
+        assertEquals(150, clock.remainingTenths(start + SECOND / 20));
+        assertEquals(149, clock.remainingTenths(start + SECOND / 10));
+        assertEquals(1, clock.remainingTenths(start + 15 * SECOND - 1));
+        assertFalse(clock.isExpired(start + 15 * SECOND - 1));
+        assertTrue(clock.isExpired(start + 15 * SECOND));
+        assertEquals(0, clock.remainingTenths(start + 20 * SECOND));
+        assertEquals(2_500, clock.millisAt(start + 2_500_000_000L));
+    }
+
+    @Test
+    void testElapsedStopsAtLimitOrStop() {
+        SessionClock timed = new SessionClock(30);
+        SessionClock untimed = new SessionClock(0);
+        timed.start(-10 * SECOND);
+        untimed.start(-10 * SECOND);
+
+        // act
+        // the game noticed the deadline a frame late
+        timed.stop(20 * SECOND + SECOND / 60);
+        untimed.stop(2 * SECOND);
+        untimed.stop(50 * SECOND);
+
+        // assert
+        assertEquals(30 * SECOND, timed.elapsedNanos(100 * SECOND));
+        assertEquals(0.5, timed.elapsedMinutes(100 * SECOND));
+        assertEquals(12 * SECOND, untimed.elapsedNanos(100 * SECOND));
+        assertFalse(untimed.isExpired(100 * SECOND));
+        assertEquals(0, untimed.remainingTenths(0));
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.example.touchtyped.model;
+
+import com.example.touchtyped.interfaces.KeyToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypingSessionTest {
+
+    /**
+     * records every delta as a line of text.
+     */
+    private static class Recorder implements TypingSession.Listener {
+        final List<String> deltas = new ArrayList<>();
+
+        @Override
+        public void charTyped(int index, KeyToken key, boolean correct) {
+            deltas.add((correct ? "typed " : "wrong ") + index);
+        }
+
+        @Override
+        public void charErased(int index) {
+            deltas.add("erased " + index);
+        }
+
+        @Override
+        public void cursorMoved(int cursor) {
+            deltas.add("cursor " + cursor);
+        }
+
+        @Override
+        public void streakChanged(int streak) {
+            deltas.add("streak " + streak);
+        }
+
+        @Override
+        public void overrun(KeyToken key) {
+            deltas.add("overrun");
+        }
+
+        @Override
+        public void textAppended(String word) {
+            deltas.add("appended " + word);
+        }
+
+        @Override
+        public void sessionEnded() {
+            deltas.add("ended");
+        }
+    }
+
+    private static void type(TypingSession session, String keys) {
+        for (int i = 0; i < keys.length(); i++) {
+            KeyToken key = keys.charAt(i) == '<' ? KeyToken.BACK_SPACE : KeyToken.of(keys.charAt(i));
+            session.keyPressed(key, i * 1_000_000L);
+        }
+    }
+
+    @Test
+    void testArticleDeltas() {
+        TypingSession session = new TypingSession("ab c", null, TypingSession.Rules.ARTICLE);
+        Recorder recorder = new Recorder();
+        session.setListener(recorder);
+
+        // act
+        type(session, "ax<b c");
+
+        // assert
+        assertEquals(List.of(
+                "typed 0", "cursor 1",
+                "wrong 1", "cursor 2",
+                "erased 1", "cursor 1",
+                "typed 1", "cursor 2",
+                "typed 2", "cursor 3",
+                "typed 3", "cursor 4", "streak 1",
+                "ended"), recorder.deltas);
+        assertEquals(4, session.correctKeystrokes());
+        assertEquals(1, session.wrongKeystrokes());
+        assertEquals(0, session.errorCount());
+        // "ab " had a mistake, so only "c" counts towards the streak
+        assertEquals(1, session.maxStreak());
+        assertTrue(session.isEnded());
+        assertEquals(5_000_000L, session.lastKeyNanos());
+    }
+
+    @Test
+    void testTimedTextIsToppedUp() {
+        TypingSession session = new TypingSession("go", () -> "on", new TypingSession.Rules(true, true, false, 3));
+        Recorder recorder = new Recorder();
+        session.setListener(recorder);
+
+        // act
+        type(session, "go on!");
+
+        // assert
+        assertEquals("go on on on", session.text().toString());
+        assertEquals(List.of("appended on", "appended on", "appended on"),
+                recorder.deltas.stream().filter(d -> d.startsWith("appended")).toList());
+        // "!" was typed for the space after the second word
+        assertTrue(session.text().isError(5));
+        assertEquals(0, session.streak());
+        assertEquals(1, session.maxStreak());
+        assertFalse(session.isEnded());
+    }
+
+    @Test
+    void testLaneIgnoresBackspaceAndCountsOverrun() {
+        TypingSession session = new TypingSession("ab", null, TypingSession.Rules.LANE);
+
+        // act
+        type(session, "aX<bb");
+
+        // assert
+        assertEquals(2, session.cursor());
+        assertEquals(1, session.correctKeystrokes());
+        assertEquals(3, session.wrongKeystrokes());
+        assertEquals(1, session.errorCount());
+        assertTrue(session.text().isError(1));
+    }
+
+    @Test
+    void testLevelIgnoresCase() {
+        TypingSession session = new TypingSession("Ab", null, TypingSession.Rules.LEVEL);
+
+        // act
+        type(session, "aB");
+
+        // assert
+        assertTrue(session.isAtEnd());
+        assertEquals(0, session.errorCount());
+        assertFalse(session.isEnded());
+    }
+
+    @Test
+    void testManyEvents() {
+        TypingSession session = new TypingSession("the quick brown fox", () -> "jumps over the lazy dog",
+                TypingSession.Rules.TIMED);
+        KeyToken space = KeyToken.SPACE;
+
+        // act
+        for (int i = 0; i < 1_000_000; i++) {
+            char expected = session.text().charAt(session.cursor());
+            session.keyPressed(i % 50 == 0 ? space : KeyToken.of(expected), i);
+        }
+
+        // assert
+        assertEquals(1_000_000, session.totalKeystrokes());
+        assertEquals(session.cursor(), session.totalKeystrokes());
+        assertTrue(session.text().length() - session.cursor() >= TypingSession.Rules.TIMED.refillMargin());
+    }
+
+    @Test
+    void testTypedSegmentsAreRetired() {
+        TypingSession session = new TypingSession("abcdefg", () -> "abcdefg", TypingSession.Rules.TIMED);
+        int length = 3 * TargetText.SEGMENT_SIZE;
+
+        // act
+        type(session, "abcdefg ".repeat(length / 8));
+        type(session, "<".repeat(2 * TypingSession.BACKSPACE_REACH));
+
+        // assert
+        int retiredStart = session.text().retiredStart();
+        assertEquals(2 * TargetText.SEGMENT_SIZE, retiredStart);
+        // BACK_SPACE stops at the first live character, and retired characters can still be read
+        assertEquals(retiredStart, session.cursor());
+        assertEquals('a', session.text().charAt(8));
+        assertEquals(session.text().length(), session.text().toString().length());
+        assertTrue(session.text().toString().startsWith("abcdefg abcdefg"));
+        assertEquals(0, session.wrongKeystrokes());
+    }
+
+    @Test
+    void testRetiredErrorsAreStillCounted() {
+        TypingSession session = new TypingSession("abcdefg", () -> "abcdefg", TypingSession.Rules.TIMED);
+
+        // act
+        type(session, "xbcdefg ");
+        type(session, "abcdefg ".repeat((TypingSession.BACKSPACE_REACH + TargetText.SEGMENT_SIZE) / 8));
+        type(session, "x<x<<");
+
+        // assert
+        assertTrue(session.text().retiredStart() > 0);
+        assertFalse(session.text().isError(0));
+        assertEquals(1, session.errorCount());
+        assertEquals(1, session.retiredErrorCount());
+        assertEquals(3, session.wrongKeystrokes());
+    }
+
+}
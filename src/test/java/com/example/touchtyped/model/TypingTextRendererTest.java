@@ -0,0 +1,66 @@
+package com.example.touchtyped.model;
+
+import com.example.touchtyped.model.TypingTextRenderer.Slots;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypingTextRendererTest {
+
+    @Test
+    void testTypingDirtiesTheOldAndNewCursor() {
+
+        // act
+        Slots typed = TypingTextRenderer.dirtySlots(5, 6, 0, 40);
+        Slots backspaced = TypingTextRenderer.dirtySlots(6, 5, 0, 40);
+
+        // assert
+        assertEquals(new Slots(5, 7), typed);
+        assertEquals(new Slots(5, 7), backspaced);
+    }
+
+    @Test
+    void testCursorThatDidntMoveDirtiesOnlyItself() {
+
+        // act
+        // e.g. a wrong key, where only whether the current character shows as an error changes
+        Slots dirty = TypingTextRenderer.dirtySlots(12, 12, 10, 40);
+
+        // assert
+        assertEquals(new Slots(2, 3), dirty);
+        assertFalse(dirty.isEmpty());
+    }
+
+    @Test
+    void testLongJumpDirtiesEverythingBetween() {
+
+        // act
+        Slots dirty = TypingTextRenderer.dirtySlots(30, 22, 20, 40);
+
+        // assert
+        assertEquals(new Slots(2, 11), dirty);
+    }
+
+    @Test
+    void testRangeIsClippedToTheWindow() {
+
+        // act
+        // the window has moved on past the old cursor
+        Slots scrolled = TypingTextRenderer.dirtySlots(8, 15, 10, 40);
+        Slots pastEnd = TypingTextRenderer.dirtySlots(45, 52, 10, 40);
+
+        // assert
+        assertEquals(new Slots(0, 6), scrolled);
+        assertEquals(new Slots(35, 40), pastEnd);
+    }
+
+    @Test
+    void testRangeOutsideTheWindowIsEmpty() {
+
+        // assert
+        assertTrue(TypingTextRenderer.dirtySlots(3, 4, 10, 40).isEmpty());
+        assertTrue(TypingTextRenderer.dirtySlots(50, 55, 10, 40).isEmpty());
+        assertTrue(TypingTextRenderer.dirtySlots(9, 9, 10, 40).isEmpty());
+    }
+
+}
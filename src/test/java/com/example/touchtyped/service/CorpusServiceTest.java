@@ -0,0 +1,103 @@
+package com.example.touchtyped.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CorpusServiceTest {
+
+    private static CorpusService corpus(String sentences, String articles, long seed) throws Exception {
+        return new CorpusService(new StringReader(sentences), new StringReader(articles), new SplittableRandom(seed));
+    }
+
+    @Test
+    void testBlankLinesAreSkippedAndLinesTrimmed() throws Exception {
+        CorpusService corpus = corpus("The first line.\n\n   A second line.  \n\t\nThird\n\n", "", 1);
+
+        // act
+        Set<String> picked = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            picked.add(corpus.randomSentence());
+        }
+
+        // assert
+        assertEquals(3, corpus.sentenceCount());
+        assertEquals(Set.of("The first line.", "A second line.", "Third"), picked);
+    }
+
+    @Test
+    void testLastLineWithoutNewline() throws Exception {
+
+        // act
+        CorpusService one = corpus("", "Only article", 1);
+        CorpusService none = corpus("\n\n", "", 1);
+
+        // assert
+        assertEquals(1, one.articleCount());
+        assertEquals("Only article", one.randomArticle());
+        assertEquals(0, one.sentenceCount());
+        assertNull(one.randomSentence());
+        assertEquals(0, none.sentenceCount());
+        assertNull(none.randomSentence());
+        assertNull(none.randomArticle());
+    }
+
+    @Test
+    void testEveryLineIsIndexedPastTheFirstBlock() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append(i % 7 == 0 ? "\n\n" : "\n");
+        }
+        CorpusService corpus = corpus(text.toString(), "", 7);
+
+        // act
+        Set<String> picked = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            picked.add(corpus.randomSentence());
+        }
+
+        // assert
+        assertEquals(1000, corpus.sentenceCount());
+        assertEquals(1000, picked.size());
+        for (String line : picked) {
+            assertTrue(line.matches("line \\d+"), line);
+        }
+    }
+
+    @Test
+    void testPicksAreReproducibleWithASeed() throws Exception {
+        String sentences = "one\ntwo\nthree\nfour\nfive\n";
+        CorpusService first = corpus(sentences, "", 42);
+        CorpusService second = corpus(sentences, "", 42);
+
+        // act
+        List<String> firstPicks = new ArrayList<>();
+        List<String> secondPicks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            firstPicks.add(first.randomSentence());
+            secondPicks.add(second.randomSentence());
+        }
+
+        // assert
+        assertEquals(firstPicks, secondPicks);
+    }
+
+    @Test
+    void testWordsAreLowerCaseWithoutPunctuation() throws Exception {
+        CorpusService corpus = corpus("The cat's hat, \"it's\" red!\nWell-known cats: 42 of them.\n'Quoted' THE end...\n", "", 1);
+
+        // act
+        List<String> words = List.of(corpus.words());
+
+        // assert
+        assertEquals(List.of("the", "cat's", "hat", "it's", "red", "well", "known", "cats", "of", "them", "quoted", "end"), words);
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.example.touchtyped.service;
+
+import com.example.touchtyped.model.KeyLogsStructure;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    private static KeyLogsStructure game(String text) {
+        KeyLogsStructure logs = new KeyLogsStructure(text);
+        logs.addKeyLog(text.substring(0, 1), 0);
+        logs.addKeyLog("x", 150);
+        logs.setWpm(42);
+        return logs;
+    }
+
+    @Test
+    void testResultsWaitUntilTheDatabaseIsBack() {
+        List<String> sent = new ArrayList<>();
+        List<JsonNode> uploaded = new ArrayList<>();
+        boolean[] online = {false};
+        ObjectMapper mapper = new ObjectMapper();
+        ResultOutbox.Sender sender = (classroomID, username, keyLogs, password) -> {
+            if (!online[0]) {
+                throw new IllegalStateException("offline");
+            }
+            sent.add(username + ":" + keyLogs.getWordsGiven() + ":" + keyLogs.getWpm() + ":" + keyLogs.size());
+            uploaded.add(mapper.valueToTree(keyLogs));
+            return true;
+        };
+        ResultOutbox outbox = new ResultOutbox(directory, sender, () -> Map.of("classroomID", "C1", "username", "amy"));
+        JsonNode first = mapper.valueToTree(game("ab"));
+
+        // act
+        outbox.store(first);
+        outbox.store(mapper.valueToTree(game("cd")));
+        boolean sentOffline = outbox.sendPending();
+        // a restart: a new outbox finds the same files
+        ResultOutbox restarted = new ResultOutbox(directory, sender, () -> null);
+        online[0] = true;
+        boolean sentOnline = restarted.sendPending();
+
+        // assert
+        assertFalse(sentOffline);
+        assertTrue(sentOnline);
+        assertEquals(List.of("amy:ab:42:2", "amy:cd:42:2"), sent);
+        // nothing is lost on the way through the file
+        assertEquals(first, uploaded.get(0));
+        assertTrue(restarted.pending().isEmpty());
+    }
+
+    @Test
+    void testRefusedAndUnreadableResultsAreDropped() throws Exception {
+        List<String> sent = new ArrayList<>();
+        ResultOutbox outbox = new ResultOutbox(directory, (classroomID, username, keyLogs, password) -> {
+            sent.add(keyLogs.getWordsGiven());
+            return !keyLogs.getWordsGiven().equals("refused");
+        }, () -> Map.of("classroomID", "C1", "username", "amy"));
+        ObjectMapper mapper = new ObjectMapper();
+
+        // act
+        outbox.store(mapper.valueToTree(game("refused")));
+        Files.writeString(directory.resolve("1-00000.json"), "{not json");
+        outbox.store(mapper.valueToTree(game("kept")));
+        boolean empty = outbox.sendPending();
+
+        // assert
+        assertTrue(empty);
+        assertEquals(List.of("refused", "kept"), sent);
+        assertTrue(Files.exists(directory.resolve("1-00000.json.bad")));
+        assertFalse(new ResultOutbox(directory, null, () -> null).store(mapper.valueToTree(game("ab"))));
+    }
+
+}
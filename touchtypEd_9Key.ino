@@ -17,6 +17,49 @@ int keycodes[3][3] = { {97, 115, 100}, {102, 103, 104}, {106, 107, 108} };
 //wildcat - same as keys but with ascii codes for the lower case letters instead.  
 //needs to be kept at parity with keys.  
 
+// ---- host protocol: see KeyboardProtocol.java for the frame layout ----
+const byte SYNC = 0xA5;
+const byte PROTOCOL_VERSION = 1;
+const byte TYPE_COMMAND = 1;
+const byte TYPE_ACK = 2;
+const byte TYPE_KEY_EVENT = 3;
+const byte TYPE_CONFIG = 4;
+const byte INPUT_HID = 0;
+const byte INPUT_HID_AND_SERIAL = 1;
+const byte KEY_PRESSED = 1;
+const byte KEY_RELEASED = 2;
+const byte FLAG_STOP_ALL_MOTORS = 1;
+const byte STATUS_OK = 0;
+const byte STATUS_BAD_CRC = 1;
+const byte STATUS_BAD_VERSION = 2;
+const byte STATUS_MALFORMED = 3;
+const byte LIGHTS_ON = 1;
+const byte LIGHTS_OFF = 2;
+const int HEADER_LENGTH = 6;
+
+// motor pin for each letter 'a' to 'z' (motor number = letter - 'a'), or -1 where this board has no motor
+const int motorPins[26] = {
+  -1, -1, -1, motorD, -1, motorF, motorG, motorH, -1, motorJ, motorK, -1, -1,
+  -1, -1, -1, -1, -1, motorS, -1, -1, -1, -1, -1, -1, -1
+};
+unsigned long motorOffAt[26];  // millis() when each motor should stop, or 0 to run until stopped
+bool motorOn[26];
+
+const int lightsPin = LED_BUILTIN;
+unsigned long lightsOffAt = 0;
+bool lightsOn = false;
+
+byte frame[HEADER_LENGTH + 255 + 2];
+int frameLength = 0;
+
+// whether key presses are also streamed to the host as KEY_EVENT frames, as well as typed over USB
+bool streamKeys = false;
+uint16_t keyEventSeq = 0;
+
+const unsigned long DEBOUNCE_MICROS = 5000;
+bool keyDown[3][3];
+unsigned long keyChangedAt[3][3];  // micros() of each key's last accepted change, for debouncing
+
   
 
 void setup() {  
@@ -28,6 +71,8 @@ void setup() {
   pinMode(motorJ, OUTPUT);  
   pinMode(motorK, OUTPUT);  
 
+  pinMode(lightsPin, OUTPUT);  
+
   Serial.begin(9600);  
   Keyboard.begin();   
 
@@ -44,87 +89,178 @@ void setup() {
 
 
 void loop() {  
-  if (Serial.available() > 0) {  
-    digitalWrite(motorS, LOW);  
-    digitalWrite(motorD, LOW);  
-    digitalWrite(motorF, LOW);  
-    digitalWrite(motorG, LOW);  
-    digitalWrite(motorH, LOW);  
-    digitalWrite(motorJ, LOW);  
-    digitalWrite(motorK, LOW);  
-
-    char command = Serial.read();  
-    
-    if (command == 's') {  
-      digitalWrite(motorS, HIGH);  
-      Serial.println("motor S is HIGH");  
-      delay(10);  
-    }   
-    if (command == 'd') {  
-      digitalWrite(motorD, HIGH);  
-      Serial.println("motor D is HIGH");  
-      delay(10);  
-    }   
-    if (command == 'f') {  
-      digitalWrite(motorF, HIGH);  
-      Serial.println("motor F is HIGH");  
-      delay(10);  
-    }   
-    if (command == 'g') {  
-      digitalWrite(motorG, HIGH);  
-      Serial.println("motor G is HIGH");  
-      delay(10);  
-    }   
-    if (command == 'h') {  
-      digitalWrite(motorH, HIGH);  
-      Serial.println("motor H is HIGH");  
-      delay(10);  
-    }   
-    if (command == 'j') {  
-      digitalWrite(motorJ, HIGH);  
-      Serial.println("motor J is HIGH");  
-      delay(10);  
-    }   
-    if (command == 'k') {  
-      digitalWrite(motorK, HIGH);  
-      Serial.println("motor K is HIGH");  
-      delay(10);  
-    }   
-    if (command == '0') { 
-      digitalWrite(motorS, LOW); 
-      digitalWrite(motorD, LOW); 
-      digitalWrite(motorF, LOW); 
-      digitalWrite(motorG, LOW); 
-      digitalWrite(motorH, LOW); 
-      digitalWrite(motorJ, LOW); 
-      digitalWrite(motorK, LOW); 
-      //wildcat - needs each motor to be set to low. maybe easier to update if motors in array? 
-      delay(10); 
-    } 
+  while (Serial.available() > 0) {  
+    readByte(Serial.read());  
   }  
+  expireOutputs();  
 
-  delay(10);  // small delay for stability  
-
+  // scan without waiting for keys to be released, so commands and key events keep flowing while a key is held
   for (int row = 0; row < numRows; row++) {   
     digitalWrite(rowPins[row], LOW);   
 
     for (int col = 0; col < numCols; col++) {   
-      if (digitalRead(colPins[col]) == LOW) {  // Key is PRESSED, LOW = PRESSED   
-        //Serial.print(keys[row][col]);   
-        //Serial.print("\n");   
+      bool down = digitalRead(colPins[col]) == LOW;  // LOW = PRESSED   
+      unsigned long now = micros();
+      if (down == keyDown[row][col] || now - keyChangedAt[row][col] < DEBOUNCE_MICROS) {
+        continue;
+      }
+      keyDown[row][col] = down;
+      keyChangedAt[row][col] = now;
+      if (down) {
         Keyboard.press(keycodes[row][col]); 
         Keyboard.release(keycodes[row][col]); 
         //wildcat - probably doesn't need changing but related to other Keyboard stuff 
-
-        while (digitalRead(colPins[col]) == LOW) {   
-          delay(0);   
-        }   
-
-        delay(5);        
-      }   
+      }
+      if (streamKeys) {
+        sendKeyEvent(down ? KEY_PRESSED : KEY_RELEASED, keycodes[row][col], now);
+      }
     }   
 
     digitalWrite(rowPins[row], HIGH);   
 
   }   
-}  
\ No newline at end of file
+}
+
+
+uint16_t crc16(const byte *data, int length) {
+  uint16_t crc = 0xFFFF;
+  for (int i = 0; i < length; i++) {
+    crc ^= (uint16_t) data[i] << 8;
+    for (int bit = 0; bit < 8; bit++) {
+      crc = (crc & 0x8000) ? (crc << 1) ^ 0x1021 : crc << 1;
+    }
+  }
+  return crc;
+}
+
+// send a frame to the host
+void sendFrame(byte type, uint16_t seq, const byte *payload, int payloadLength) {
+  byte header[HEADER_LENGTH] = {SYNC, PROTOCOL_VERSION, type, (byte) (seq >> 8), (byte) seq, (byte) payloadLength};
+  byte body[HEADER_LENGTH - 1 + 7];
+  memcpy(body, header + 1, HEADER_LENGTH - 1);
+  memcpy(body + HEADER_LENGTH - 1, payload, payloadLength);
+  uint16_t crc = crc16(body, HEADER_LENGTH - 1 + payloadLength);
+  byte trailer[2] = {(byte) (crc >> 8), (byte) crc};
+  Serial.write(header, HEADER_LENGTH);
+  Serial.write(payload, payloadLength);
+  Serial.write(trailer, 2);
+}
+
+void putMicros(byte *data, unsigned long value) {
+  data[0] = value >> 24;
+  data[1] = value >> 16;
+  data[2] = value >> 8;
+  data[3] = value;
+}
+
+// the ACK carries micros() as well, so the host can map this board's clock onto its own
+void sendAck(uint16_t seq, byte status) {
+  byte payload[5] = {status};
+  putMicros(payload + 1, micros());
+  sendFrame(TYPE_ACK, seq, payload, sizeof(payload));
+}
+
+void sendKeyEvent(byte action, byte key, unsigned long at) {
+  byte payload[7] = {action, key, 0};  // this board has no modifier keys
+  putMicros(payload + 3, at);
+  sendFrame(TYPE_KEY_EVENT, ++keyEventSeq, payload, sizeof(payload));
+}
+
+// reassemble frames one byte at a time, skipping anything before a SYNC byte
+void readByte(byte b) {
+  if (frameLength == 0 && b != SYNC) {
+    return;
+  }
+  frame[frameLength++] = b;
+  if (frameLength < HEADER_LENGTH) {
+    return;
+  }
+  int payloadLength = frame[5];
+  if (frameLength < HEADER_LENGTH + payloadLength + 2) {
+    return;
+  }
+  frameLength = 0;
+
+  uint16_t seq = ((uint16_t) frame[3] << 8) | frame[4];
+  uint16_t crc = ((uint16_t) frame[HEADER_LENGTH + payloadLength] << 8) | frame[HEADER_LENGTH + payloadLength + 1];
+  if (crc != crc16(frame + 1, HEADER_LENGTH - 1 + payloadLength)) {
+    sendAck(seq, STATUS_BAD_CRC);
+  } else if (frame[1] != PROTOCOL_VERSION) {
+    sendAck(seq, STATUS_BAD_VERSION);
+  } else if (frame[2] == TYPE_COMMAND) {
+    sendAck(seq, applyCommand(frame + HEADER_LENGTH, payloadLength) ? STATUS_OK : STATUS_MALFORMED);
+  } else if (frame[2] == TYPE_CONFIG) {
+    if (payloadLength == 1 && frame[HEADER_LENGTH] <= INPUT_HID_AND_SERIAL) {
+      streamKeys = frame[HEADER_LENGTH] == INPUT_HID_AND_SERIAL;
+      sendAck(seq, STATUS_OK);
+    } else {
+      sendAck(seq, STATUS_MALFORMED);
+    }
+  }
+}
+
+void setMotor(int motor, byte strength, uint16_t duration) {
+  if (motorPins[motor] < 0) {
+    return;
+  }
+  // the motors are switched, not driven with PWM, so any strength above 0 is full strength
+  digitalWrite(motorPins[motor], strength > 0 ? HIGH : LOW);
+  motorOn[motor] = strength > 0;
+  motorOffAt[motor] = (strength > 0 && duration > 0) ? millis() + duration : 0;
+}
+
+bool applyCommand(const byte *payload, int length) {
+  if (length < 8) {
+    return false;
+  }
+  uint32_t mask = ((uint32_t) payload[1] << 24) | ((uint32_t) payload[2] << 16) | ((uint32_t) payload[3] << 8) | payload[4];
+  int motors = 0;
+  for (int motor = 0; motor < 32; motor++) {
+    if (mask & ((uint32_t) 1 << motor)) {
+      motors++;
+    }
+  }
+  if (length != 5 + motors * 3 + 3) {
+    return false;
+  }
+
+  if (payload[0] & FLAG_STOP_ALL_MOTORS) {
+    for (int motor = 0; motor < 26; motor++) {
+      setMotor(motor, 0, 0);
+    }
+  }
+  int i = 5;
+  for (int motor = 0; motor < 32; motor++) {
+    if (mask & ((uint32_t) 1 << motor)) {
+      if (motor < 26) {
+        setMotor(motor, payload[i], ((uint16_t) payload[i + 1] << 8) | payload[i + 2]);
+      }
+      i += 3;
+    }
+  }
+
+  uint16_t lightsDuration = ((uint16_t) payload[i + 1] << 8) | payload[i + 2];
+  if (payload[i] == LIGHTS_ON) {
+    digitalWrite(lightsPin, HIGH);
+    lightsOn = true;
+    lightsOffAt = (lightsDuration > 0) ? millis() + lightsDuration : 0;
+  } else if (payload[i] == LIGHTS_OFF) {
+    digitalWrite(lightsPin, LOW);
+    lightsOn = false;
+  }
+  return true;
+}
+
+// stop motors and lights whose duration has passed
+void expireOutputs() {
+  unsigned long now = millis();
+  for (int motor = 0; motor < 26; motor++) {
+    if (motorOn[motor] && motorOffAt[motor] != 0 && (long) (now - motorOffAt[motor]) >= 0) {
+      setMotor(motor, 0, 0);
+    }
+  }
+  if (lightsOn && lightsOffAt != 0 && (long) (now - lightsOffAt) >= 0) {
+    digitalWrite(lightsPin, LOW);
+    lightsOn = false;
+  }
+}